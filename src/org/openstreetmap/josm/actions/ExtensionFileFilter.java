@@ -27,6 +27,7 @@ import org.openstreetmap.josm.gui.io.importexport.NMEAImporter;
 import org.openstreetmap.josm.gui.io.importexport.NoteImporter;
 import org.openstreetmap.josm.gui.io.importexport.OsmChangeImporter;
 import org.openstreetmap.josm.gui.io.importexport.OsmImporter;
+import org.openstreetmap.josm.gui.io.importexport.OsmPbfImporter;
 import org.openstreetmap.josm.gui.io.importexport.RtkLibImporter;
 import org.openstreetmap.josm.gui.io.importexport.WMSLayerImporter;
 import org.openstreetmap.josm.gui.widgets.AbstractFileChooser;
@@ -63,6 +64,7 @@ public class ExtensionFileFilter extends FileFilter implements java.io.FileFilte
 
         final List<Class<? extends FileImporter>> importerNames = Arrays.asList(
                 OsmImporter.class,
+                OsmPbfImporter.class,
                 OsmChangeImporter.class,
                 GeoJSONImporter.class,
                 GpxImporter.class,
@@ -108,6 +110,7 @@ public class ExtensionFileFilter extends FileFilter implements java.io.FileFilte
                 org.openstreetmap.josm.gui.io.importexport.OsmGzipExporter.class,
                 org.openstreetmap.josm.gui.io.importexport.OsmBzip2Exporter.class,
                 org.openstreetmap.josm.gui.io.importexport.OsmXzExporter.class,
+                org.openstreetmap.josm.gui.io.importexport.OsmPbfExporter.class,
                 org.openstreetmap.josm.gui.io.importexport.GeoJSONExporter.class,
                 org.openstreetmap.josm.gui.io.importexport.WMSLayerExporter.class,
                 org.openstreetmap.josm.gui.io.importexport.NoteExporter.class,
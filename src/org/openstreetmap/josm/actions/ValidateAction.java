@@ -8,9 +8,13 @@ import java.awt.event.KeyEvent;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DataSetSnapshot;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.preferences.sources.ValidatorPrefHelper;
 import org.openstreetmap.josm.data.validation.OsmValidator;
@@ -72,11 +76,12 @@ public class ValidateAction extends JosmAction {
         if (tests.isEmpty())
             return;
 
+        DataSet ds = getLayerManager().getActiveDataSet();
         Collection<OsmPrimitive> selection;
         if (getSelectedItems) {
-            selection = getLayerManager().getActiveDataSet().getAllSelected();
+            selection = ds.getAllSelected();
             if (selection.isEmpty()) {
-                selection = getLayerManager().getActiveDataSet().allNonDeletedPrimitives();
+                selection = ds.allNonDeletedPrimitives();
                 lastSelection = null;
             } else {
                 AggregatePrimitivesVisitor v = new AggregatePrimitivesVisitor();
@@ -84,11 +89,10 @@ public class ValidateAction extends JosmAction {
                 lastSelection = selection;
             }
         } else {
-            selection = Optional.ofNullable(lastSelection).orElseGet(
-                    () -> getLayerManager().getActiveDataSet().allNonDeletedPrimitives());
+            selection = Optional.ofNullable(lastSelection).orElseGet(ds::allNonDeletedPrimitives);
         }
 
-        MainApplication.worker.submit(new ValidationTask(tests, selection, lastSelection));
+        MainApplication.worker.submit(new ValidationTask(ds, tests, selection, lastSelection));
     }
 
     @Override
@@ -107,6 +111,7 @@ public class ValidateAction extends JosmAction {
      * Asynchronous task for running a collection of tests against a collection of primitives
      */
     static class ValidationTask extends PleaseWaitRunnable {
+        private final DataSet dataSet;
         private Collection<Test> tests;
         private final Collection<OsmPrimitive> validatedPrimitives;
         private final Collection<OsmPrimitive> formerValidatedPrimitives;
@@ -115,13 +120,15 @@ public class ValidateAction extends JosmAction {
 
         /**
          * Constructs a new {@code ValidationTask}
+         * @param dataSet the data set of the primitives to validate
          * @param tests  the tests to run
          * @param validatedPrimitives the collection of primitives to validate.
          * @param formerValidatedPrimitives the last collection of primitives being validates. May be null.
          */
-        ValidationTask(Collection<Test> tests, Collection<OsmPrimitive> validatedPrimitives,
+        ValidationTask(DataSet dataSet, Collection<Test> tests, Collection<OsmPrimitive> validatedPrimitives,
                 Collection<OsmPrimitive> formerValidatedPrimitives) {
             super(tr("Validating"), false /*don't ignore exceptions */);
+            this.dataSet = dataSet;
             this.validatedPrimitives = validatedPrimitives;
             this.formerValidatedPrimitives = formerValidatedPrimitives;
             this.tests = tests;
@@ -156,22 +163,30 @@ public class ValidateAction extends JosmAction {
             if (tests == null || tests.isEmpty())
                 return;
             errors = new ArrayList<>();
-            getProgressMonitor().setTicksCount(tests.size() * validatedPrimitives.size());
-            int testCounter = 0;
-            for (Test test : tests) {
-                if (canceled)
-                    return;
-                testCounter++;
-                getProgressMonitor().setCustomText(tr("Test {0}/{1}: Starting {2}", testCounter, tests.size(), test.getName()));
-                test.setBeforeUpload(false);
-                test.setPartialSelection(formerValidatedPrimitives != null);
-                test.startTest(getProgressMonitor().createSubTaskMonitor(validatedPrimitives.size(), false));
-                test.visit(validatedPrimitives);
-                test.endTest();
-                errors.addAll(test.getErrors());
-                test.clear();
+            Collection<Test> testsToRun = tests;
+            // the user can keep editing while the tests are running
+            DataSetSnapshot before = dataSet.snapshot();
+            try {
+                getProgressMonitor().setTicksCount(testsToRun.size() * validatedPrimitives.size());
+                int testCounter = 0;
+                for (Test test : testsToRun) {
+                    if (canceled)
+                        return;
+                    testCounter++;
+                    getProgressMonitor().setCustomText(tr("Test {0}/{1}: Starting {2}", testCounter, testsToRun.size(), test.getName()));
+                    test.setBeforeUpload(false);
+                    test.setPartialSelection(formerValidatedPrimitives != null);
+                    test.startTest(getProgressMonitor().createSubTaskMonitor(validatedPrimitives.size(), false));
+                    test.visit(validatedPrimitives);
+                    test.endTest();
+                    errors.addAll(test.getErrors());
+                    test.clear();
+                }
+                tests = null;
+                revalidateChangedPrimitives(testsToRun, before);
+            } finally {
+                dataSet.releaseSnapshot(before);
             }
-            tests = null;
             if (Boolean.TRUE.equals(ValidatorPrefHelper.PREF_USE_IGNORE.get())) {
                 getProgressMonitor().setCustomText("");
                 getProgressMonitor().subTask(tr("Updating ignored errors ..."));
@@ -181,5 +196,57 @@ public class ValidateAction extends JosmAction {
                 }
             }
         }
+
+        /**
+         * Validates again the primitives changed by the user while the tests were running, and replaces their errors.
+         * The data set is locked meanwhile, so that the errors match the current state of the primitives.
+         * @param testsToRun the tests
+         * @param before the snapshot taken before running the tests
+         */
+        private void revalidateChangedPrimitives(Collection<Test> testsToRun, DataSetSnapshot before) {
+            dataSet.getReadLock().lock();
+            try {
+                DataSetSnapshot after = dataSet.snapshot();
+                try {
+                    if (after == before)
+                        return;
+                    Set<OsmPrimitive> changed = new HashSet<>();
+                    for (OsmPrimitive p : validatedPrimitives) {
+                        if (!before.isUnchangedIn(p, after)) {
+                            changed.add(p);
+                        }
+                    }
+                    for (TestError error : errors) {
+                        for (OsmPrimitive p : error.getPrimitives()) {
+                            if (!before.isUnchangedIn(p, after)) {
+                                changed.add(p);
+                            }
+                        }
+                    }
+                    if (changed.isEmpty())
+                        return;
+                    errors.removeIf(error -> error.getPrimitives().stream().anyMatch(changed::contains));
+                    changed.removeIf(p -> p.isDeleted() || p.getDataSet() != dataSet);
+                    if (changed.isEmpty() || canceled)
+                        return;
+                    getProgressMonitor().setCustomText(tr("Validating {0} modified objects", changed.size()));
+                    for (Test test : testsToRun) {
+                        test.setBeforeUpload(false);
+                        test.setPartialSelection(true);
+                        test.startTest(null);
+                        test.visit(changed);
+                        test.endTest();
+                        // the errors of the unchanged primitives are already known
+                        test.getErrors().stream().filter(error -> error.getPrimitives().stream().anyMatch(changed::contains))
+                                .forEach(errors::add);
+                        test.clear();
+                    }
+                } finally {
+                    dataSet.releaseSnapshot(after);
+                }
+            } finally {
+                dataSet.getReadLock().unlock();
+            }
+        }
     }
 }
@@ -0,0 +1,215 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.gpx;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+
+/**
+ * The points of a track segment, stored in columns to load large tracks with little memory.
+ * <p>
+ * The coordinates, elevations and times are stored in arrays. The other attributes are only allocated for the points
+ * having some. The {@link WayPoint}s are created on the first access to the list, and replace the columns afterwards.
+ * <p>
+ * The points are added with {@link #addPoint}, then the other methods refer to the last added point.
+ * The list is read-only, and no point can be added once the way points have been created.
+ * @see GpxTrackSegment#GpxTrackSegment(java.util.Collection)
+ */
+public final class GpxTrackPoints extends AbstractList<WayPoint> implements RandomAccess {
+
+    private int size;
+    private double[] lats = new double[16];
+    private double[] lons = new double[16];
+    /** Elevations, {@code NaN} if unset */
+    private double[] elevations = new double[16];
+    /** Times in milliseconds, {@link Long#MIN_VALUE} if unset */
+    private long[] times = new long[16];
+    /** Points whose elevation was written as an integer */
+    private final BitSet integerElevations = new BitSet();
+    /** Other attributes, by point index */
+    private final Map<Integer, Map<String, Object>> attributes = new HashMap<>();
+    private volatile List<WayPoint> wayPoints;
+
+    /**
+     * Adds a point.
+     * @param lat latitude
+     * @param lon longitude
+     */
+    public void addPoint(double lat, double lon) {
+        if (wayPoints != null) {
+            throw new IllegalStateException("The way points have already been created");
+        }
+        if (size == lats.length) {
+            int capacity = size + (size >> 1);
+            lats = Arrays.copyOf(lats, capacity);
+            lons = Arrays.copyOf(lons, capacity);
+            elevations = Arrays.copyOf(elevations, capacity);
+            times = Arrays.copyOf(times, capacity);
+        }
+        lats[size] = lat;
+        lons[size] = lon;
+        elevations[size] = Double.NaN;
+        times[size] = Long.MIN_VALUE;
+        size++;
+    }
+
+    /**
+     * Sets the elevation of the last point.
+     * <p>
+     * The elevation is stored as a number if it is written back the same way, as a string attribute otherwise.
+     * @param elevation the elevation, as read
+     */
+    public void setElevation(String elevation) {
+        int index = size - 1;
+        try {
+            double value = Double.parseDouble(elevation);
+            if (Double.toString(value).equals(elevation)) {
+                elevations[index] = value;
+                return;
+            } else if (value == Math.rint(value) && Math.abs(value) < 1e15 && Long.toString((long) value).equals(elevation)) {
+                elevations[index] = value;
+                integerElevations.set(index);
+                return;
+            }
+        } catch (NumberFormatException e) {
+            // stored as is, below
+        }
+        getOrCreateAttributes().put(GpxConstants.PT_ELE, elevation);
+    }
+
+    /**
+     * Sets the time of the last point.
+     * @param time the time in milliseconds
+     */
+    public void setTimeInMillis(long time) {
+        times[size - 1] = time;
+    }
+
+    /**
+     * Returns the other attributes of the last point.
+     * @return the other attributes of the last point, or {@code null} if it has none
+     */
+    public Map<String, Object> getAttributes() {
+        return attributes.get(size - 1);
+    }
+
+    /**
+     * Returns the other attributes of the last point, created if needed.
+     * @return the other attributes of the last point
+     */
+    public Map<String, Object> getOrCreateAttributes() {
+        return attributes.computeIfAbsent(size - 1, k -> new HashMap<>(0));
+    }
+
+    /**
+     * Frees the unused capacity, once all the points have been added.
+     */
+    public synchronized void trimToSize() {
+        if (wayPoints != null) {
+            return;
+        }
+        lats = Arrays.copyOf(lats, size);
+        lons = Arrays.copyOf(lons, size);
+        elevations = Arrays.copyOf(elevations, size);
+        times = Arrays.copyOf(times, size);
+    }
+
+    /**
+     * Calculates the bounds of the points, without creating the way points.
+     * @return the bounds, or {@code null} if there is no point
+     */
+    synchronized Bounds calculateBounds() {
+        Bounds result = null;
+        for (int i = 0; i < size; i++) {
+            if (result == null) {
+                result = new Bounds(lat(i), lon(i), true);
+            } else {
+                result.extend(lat(i), lon(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Calculates the length of the points, in meters, without creating the way points.
+     * @return the length
+     */
+    synchronized double calculateLength() {
+        double result = 0.0;
+        LatLon last = null;
+        for (int i = 0; i < size; i++) {
+            LatLon ll = new LatLon(lat(i), lon(i));
+            if (last != null) {
+                double d = last.greatCircleDistance(ll);
+                if (!Double.isNaN(d) && !Double.isInfinite(d)) {
+                    result += d;
+                }
+            }
+            last = ll;
+        }
+        return result;
+    }
+
+    private double lat(int index) {
+        return wayPoints != null ? wayPoints.get(index).lat() : lats[index];
+    }
+
+    private double lon(int index) {
+        return wayPoints != null ? wayPoints.get(index).lon() : lons[index];
+    }
+
+    private List<WayPoint> getWayPoints() {
+        List<WayPoint> result = wayPoints;
+        if (result == null) {
+            synchronized (this) {
+                result = wayPoints;
+                if (result == null) {
+                    result = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        result.add(createWayPoint(i));
+                    }
+                    wayPoints = result;
+                    // the way points hold the data from now on
+                    lats = lons = elevations = null;
+                    times = null;
+                    attributes.clear();
+                }
+            }
+        }
+        return result;
+    }
+
+    private WayPoint createWayPoint(int index) {
+        WayPoint wpt = new WayPoint(new LatLon(lats[index], lons[index]));
+        if (!Double.isNaN(elevations[index])) {
+            wpt.put(GpxConstants.PT_ELE, integerElevations.get(index)
+                    ? Long.toString((long) elevations[index]) : Double.toString(elevations[index]));
+        }
+        if (times[index] != Long.MIN_VALUE) {
+            wpt.setTimeInMillis(times[index]);
+        }
+        Map<String, Object> attr = attributes.get(index);
+        if (attr != null) {
+            wpt.attr.putAll(attr);
+        }
+        return wpt;
+    }
+
+    @Override
+    public WayPoint get(int index) {
+        return getWayPoints().get(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -21,12 +21,21 @@ public class GpxTrackSegment extends WithAttributes implements IGpxTrackSegment
 
     /**
      * Constructs a new {@code GpxTrackSegment}.
+     * <p>
+     * {@link GpxTrackPoints} are kept as they are, so that the way points are only created when needed.
      * @param wayPoints list of waypoints
      */
     public GpxTrackSegment(Collection<WayPoint> wayPoints) {
-        this.wayPoints = Collections.unmodifiableList(new ArrayList<>(wayPoints));
-        this.bounds = calculateBounds();
-        this.length = calculateLength();
+        if (wayPoints instanceof GpxTrackPoints) {
+            GpxTrackPoints points = (GpxTrackPoints) wayPoints;
+            this.wayPoints = Collections.unmodifiableList(points);
+            this.bounds = points.calculateBounds();
+            this.length = points.calculateLength();
+        } else {
+            this.wayPoints = Collections.unmodifiableList(new ArrayList<>(wayPoints));
+            this.bounds = calculateBounds();
+            this.length = calculateLength();
+        }
     }
 
     private Bounds calculateBounds() {
@@ -0,0 +1,419 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A variant of {@link Storage} that can be read concurrently without any locking.
+ * <p>
+ * Lookups ({@link #get}, {@link #contains}, the {@link #foreignKey foreign key} maps) never block, so that parallel readers
+ * scale with the number of cores. Modifications are serialized by a lock, which is not a restriction for the
+ * {@link DataSet} as it already serializes them with its write lock.
+ * <p>
+ * The table uses open addressing like {@link Storage}, but removed entries are replaced by a tombstone rather than by
+ * moving subsequent entries around, so that a concurrent lookup never misses an entry that is present. The tombstones
+ * are purged when the table is rebuilt. A table is never shrunk or rebuilt in place: a new table is published instead.
+ * <p>
+ * Iterators are weakly consistent: they never throw {@link java.util.ConcurrentModificationException}. With
+ * {@code safeIterator}, iteration happens on a snapshot taken at iterator creation, as with {@link Storage}.
+ *
+ * @param <T> type of stored objects
+ */
+public class ConcurrentStorage<T> extends AbstractSet<T> {
+
+    private static final Object TOMBSTONE = new Object();
+    private static final double LOAD_FACTOR = 0.6d;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final Hash<? super T, ? super T> hash;
+    private final boolean safeIterator;
+    private final Object writeLock = new Object();
+
+    private volatile AtomicReferenceArray<Object> table;
+    private volatile int size;
+    /** number of used slots, including tombstones. Guarded by {@link #writeLock} */
+    private int used;
+    /** true if an iterator is using the current table as snapshot. Guarded by {@link #writeLock} */
+    private boolean copyOnWrite;
+
+    /**
+     * Constructs a new {@code ConcurrentStorage} with default capacity.
+     * @param ha hash
+     * @param safeIterator If set to false, iteration reflects concurrent modifications.
+     * If set to true, the read-only iteration will happen on a copy of the unmodified storage.
+     */
+    public ConcurrentStorage(Hash<? super T, ? super T> ha, boolean safeIterator) {
+        this(ha, DEFAULT_CAPACITY, safeIterator);
+    }
+
+    /**
+     * Constructs a new {@code ConcurrentStorage}.
+     * @param ha hash
+     * @param capacity capacity
+     * @param safeIterator If set to false, iteration reflects concurrent modifications.
+     * If set to true, the read-only iteration will happen on a copy of the unmodified storage.
+     */
+    public ConcurrentStorage(Hash<? super T, ? super T> ha, int capacity, boolean safeIterator) {
+        this.hash = ha;
+        this.safeIterator = safeIterator;
+        this.table = new AtomicReferenceArray<>(tableSize(capacity));
+    }
+
+    private static int tableSize(int capacity) {
+        return 1 << (int) Math.ceil(Math.log(Math.max(capacity, 1) / LOAD_FACTOR) / Math.log(2));
+    }
+
+    // --------------- Collection implementation ------------------------
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        if (safeIterator) {
+            synchronized (writeLock) {
+                copyOnWrite = true;
+                return new Iter(table, false);
+            }
+        }
+        return new Iter(table, true);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        @SuppressWarnings("unchecked")
+        T t = (T) o;
+        return find(hash, t) != null;
+    }
+
+    @Override
+    public boolean add(T t) {
+        return putUnique(t) == t;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        @SuppressWarnings("unchecked")
+        T t = (T) o;
+        return removeElem(t) != null;
+    }
+
+    @Override
+    public void clear() {
+        synchronized (writeLock) {
+            table = new AtomicReferenceArray<>(tableSize(DEFAULT_CAPACITY));
+            size = 0;
+            used = 0;
+            copyOnWrite = false;
+        }
+    }
+
+    // ----------------- Extended API ----------------------------
+
+    /**
+     * Adds or replaces an object.
+     * @param t the object
+     * @return the replaced equivalent object, or {@code null}
+     */
+    public T put(T t) {
+        synchronized (writeLock) {
+            AtomicReferenceArray<Object> tab = writableTable();
+            int slot = findSlot(tab, hash, t);
+            if (slot >= 0) {
+                @SuppressWarnings("unchecked")
+                T old = (T) tab.get(slot);
+                tab.set(slot, t);
+                return old;
+            }
+            insert(~slot, t);
+            return null;
+        }
+    }
+
+    /**
+     * Looks up an equivalent object.
+     * @param t the object to look for
+     * @return the stored equivalent object, or {@code null}
+     */
+    public T get(T t) {
+        return find(hash, t);
+    }
+
+    /**
+     * Adds an object unless an equivalent one is already stored.
+     * @param t the object
+     * @return the stored equivalent object, or {@code t} if it has been added
+     */
+    public T putUnique(T t) {
+        synchronized (writeLock) {
+            AtomicReferenceArray<Object> tab = writableTable();
+            int slot = findSlot(tab, hash, t);
+            if (slot >= 0) {
+                @SuppressWarnings("unchecked")
+                T existing = (T) tab.get(slot);
+                return existing;
+            }
+            insert(~slot, t);
+            return t;
+        }
+    }
+
+    /**
+     * Removes an equivalent object.
+     * @param t the object to remove
+     * @return the removed object, or {@code null}
+     */
+    public T removeElem(T t) {
+        return removeKey(hash, t);
+    }
+
+    /**
+     * Returns a map view to look up objects by another key type.
+     * @param <K> key type
+     * @param h hash to compare keys and stored objects
+     * @return map view, backed by this storage
+     */
+    public <K> Map<K, T> foreignKey(Hash<K, ? super T> h) {
+        return new FMap<>(h);
+    }
+
+    // ---------------- Implementation
+
+    private <K> T find(Hash<K, ? super T> ha, K key) {
+        while (true) {
+            AtomicReferenceArray<Object> tab = table;
+            int mask = tab.length() - 1;
+            int bucket = Storage.rehash(ha.getHashCode(key)) & mask;
+            for (int i = 0; i <= mask; i++) {
+                Object entry = tab.get(bucket);
+                if (entry == null) {
+                    break;
+                }
+                if (entry != TOMBSTONE) {
+                    @SuppressWarnings("unchecked")
+                    T t = (T) entry;
+                    if (ha.equals(key, t)) {
+                        return t;
+                    }
+                }
+                bucket = (bucket + 1) & mask;
+            }
+            if (tab == table) {
+                return null;
+            }
+            // the table has been replaced meanwhile, the entry may have been added to the new one
+        }
+    }
+
+    /**
+     * Finds the slot of the given key. Must be called with the write lock held.
+     * @return the slot of the key, or ~slot of a free slot where it can be inserted
+     */
+    private <K> int findSlot(AtomicReferenceArray<Object> tab, Hash<K, ? super T> ha, K key) {
+        int mask = tab.length() - 1;
+        int bucket = Storage.rehash(ha.getHashCode(key)) & mask;
+        int free = -1;
+        Object entry;
+        while ((entry = tab.get(bucket)) != null) {
+            if (entry == TOMBSTONE) {
+                if (free < 0) {
+                    free = bucket;
+                }
+            } else {
+                @SuppressWarnings("unchecked")
+                T t = (T) entry;
+                if (ha.equals(key, t)) {
+                    return bucket;
+                }
+            }
+            bucket = (bucket + 1) & mask;
+        }
+        return ~(free >= 0 ? free : bucket);
+    }
+
+    private void insert(int slot, T t) {
+        AtomicReferenceArray<Object> tab = table;
+        if (tab.get(slot) == null) {
+            used++;
+        }
+        tab.set(slot, t);
+        size++;
+        if (used > tab.length() * LOAD_FACTOR) {
+            rebuild(size > tab.length() * LOAD_FACTOR / 2 ? tab.length() * 2 : tab.length());
+        }
+    }
+
+    private <K> T removeKey(Hash<K, ? super T> ha, K key) {
+        synchronized (writeLock) {
+            AtomicReferenceArray<Object> tab = writableTable();
+            int slot = findSlot(tab, ha, key);
+            if (slot < 0) {
+                return null;
+            }
+            @SuppressWarnings("unchecked")
+            T old = (T) tab.get(slot);
+            tab.set(slot, TOMBSTONE);
+            size--;
+            return old;
+        }
+    }
+
+    /**
+     * Returns the table to modify, after copying it if an iterator uses it as snapshot. Must be called with the write lock held.
+     */
+    private AtomicReferenceArray<Object> writableTable() {
+        if (copyOnWrite) {
+            rebuild(table.length());
+        }
+        return table;
+    }
+
+    /**
+     * Copies all entries to a new table and publishes it. Must be called with the write lock held.
+     */
+    private void rebuild(int length) {
+        AtomicReferenceArray<Object> old = table;
+        AtomicReferenceArray<Object> tab = new AtomicReferenceArray<>(length);
+        int mask = length - 1;
+        for (int i = 0; i < old.length(); i++) {
+            Object entry = old.get(i);
+            if (entry != null && entry != TOMBSTONE) {
+                @SuppressWarnings("unchecked")
+                T t = (T) entry;
+                int bucket = Storage.rehash(hash.getHashCode(t)) & mask;
+                while (tab.get(bucket) != null) {
+                    bucket = (bucket + 1) & mask;
+                }
+                tab.set(bucket, entry);
+            }
+        }
+        used = size;
+        copyOnWrite = false;
+        table = tab;
+    }
+
+    private final class FMap<K> implements Map<K, T> {
+        private final Hash<K, ? super T> fHash;
+
+        private FMap(Hash<K, ? super T> h) {
+            fHash = h;
+        }
+
+        @Override
+        public int size() {
+            return ConcurrentStorage.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return ConcurrentStorage.this.isEmpty();
+        }
+
+        @Override
+        public boolean containsKey(Object o) {
+            return get(o) != null;
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            return ConcurrentStorage.this.contains(value);
+        }
+
+        @Override
+        public T get(Object o) {
+            @SuppressWarnings("unchecked")
+            K key = (K) o;
+            return find(fHash, key);
+        }
+
+        @Override
+        public T put(K key, T value) {
+            if (!fHash.equals(key, value)) throw new IllegalArgumentException("inconsistent key");
+            return ConcurrentStorage.this.put(value);
+        }
+
+        @Override
+        public T remove(Object o) {
+            @SuppressWarnings("unchecked")
+            K key = (K) o;
+            return removeKey(fHash, key);
+        }
+
+        @Override
+        public void putAll(Map<? extends K, ? extends T> m) {
+            for (Map.Entry<? extends K, ? extends T> e : m.entrySet()) {
+                put(e.getKey(), e.getValue());
+            }
+        }
+
+        @Override
+        public void clear() {
+            ConcurrentStorage.this.clear();
+        }
+
+        @Override
+        public Set<K> keySet() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Collection<T> values() {
+            return ConcurrentStorage.this;
+        }
+
+        @Override
+        public Set<Entry<K, T>> entrySet() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private final class Iter implements Iterator<T> {
+        private final AtomicReferenceArray<Object> tab;
+        private final boolean removable;
+        private int slot;
+        private T next;
+        private T last;
+
+        Iter(AtomicReferenceArray<Object> tab, boolean removable) {
+            this.tab = tab;
+            this.removable = removable;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && slot < tab.length()) {
+                Object entry = tab.get(slot++);
+                if (entry != null && entry != TOMBSTONE) {
+                    @SuppressWarnings("unchecked")
+                    T t = (T) entry;
+                    next = t;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            last = next;
+            next = null;
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (!removable) throw new UnsupportedOperationException();
+            if (last == null) throw new IllegalStateException();
+            removeElem(last);
+            last = null;
+        }
+    }
+}
@@ -9,6 +9,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -42,6 +43,7 @@ import org.openstreetmap.josm.data.osm.DataSelectionListener.SelectionToggleEven
 import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
 import org.openstreetmap.josm.data.osm.event.ChangesetIdChangedEvent;
 import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetEventBatch;
 import org.openstreetmap.josm.data.osm.event.DataSetListener;
 import org.openstreetmap.josm.data.osm.event.DataSourceAddedEvent;
 import org.openstreetmap.josm.data.osm.event.DataSourceRemovedEvent;
@@ -114,17 +116,19 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
      */
     private static final int MAX_SINGLE_EVENTS = 30;
 
+    private final QuadBucketPrimitiveStore<Node, Way, Relation> store;
+
+    private final Set<OsmPrimitive> allPrimitives;
     /**
-     * Maximum number of events to kept between beginUpdate/endUpdate. When more events are created, that simple DatasetChangedEvent is sent)
+     * The only index of the primitives by id, a view of {@link #allPrimitives}. Each lookup only synchronizes on
+     * the storage for its own duration (or not at all with a {@link ConcurrentStorage}), it never waits for an update.
      */
-    private static final int MAX_EVENTS = 1000;
-
-    private final QuadBucketPrimitiveStore<Node, Way, Relation> store = new QuadBucketPrimitiveStore<>();
-
-    private final Storage<OsmPrimitive> allPrimitives = new Storage<>(new Storage.PrimitiveIdHash(), true);
-    private final Map<PrimitiveId, OsmPrimitive> primitivesMap = allPrimitives
-            .foreignKey(new Storage.PrimitiveIdHash());
+    private final Map<PrimitiveId, OsmPrimitive> primitivesMap;
     private final CopyOnWriteArrayList<DataSetListener> listeners = new CopyOnWriteArrayList<>();
+    /**
+     * The columnar coordinate store of the nodes of this dataset.
+     */
+    private final NodeCoordinateStore nodeCoordinates = new NodeCoordinateStore();
 
     // provide means to highlight map elements that are not osm primitives
     private Collection<WaySegment> highlightedVirtualNodes = new LinkedList<>();
@@ -135,6 +139,8 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
     private int updateCount;
     // Events that occurred while dataset was locked but should be fired after write lock is released
     private final List<AbstractDatasetChangedEvent> cachedEvents = new ArrayList<>();
+    // Merged events, used instead of cachedEvents when there are too many events to send them as single events
+    private DataSetEventBatch cachedEventBatch;
 
     private String name;
     private DownloadPolicy downloadPolicy = DownloadPolicy.NORMAL;
@@ -144,6 +150,15 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
 
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
+    /** The mutex lock that is used to synchronize the creation of snapshots */
+    private final Object snapshotLock = new Object();
+    /** The last snapshot, {@code null} until {@link #snapshot()} is called for the first time */
+    private DataSetSnapshot lastSnapshot;
+    /** The primitives changed since {@link #lastSnapshot} was taken, only modified while holding the write lock */
+    private final Set<PrimitiveId> snapshotChanges = new HashSet<>();
+    /** The number of snapshots returned by {@link #snapshot()} and not released yet */
+    private int snapshotUsers;
+
     /**
      * The mutex lock that is used to synchronize selection changes.
      */
@@ -160,8 +175,8 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
      */
     private final ListenerList<DataSelectionListener> selectionListeners = ListenerList.create();
 
-    private Area cachedDataSourceArea;
-    private List<Bounds> cachedDataSourceBounds;
+    private volatile Area cachedDataSourceArea;
+    private volatile List<Bounds> cachedDataSourceBounds;
 
     /**
      * All data sources of this DataSet.
@@ -188,6 +203,26 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
      * Constructs a new {@code DataSet}.
      */
     public DataSet() {
+        this(Config.getPref() != null && Config.getPref().getBoolean("osm.dataset.concurrent-storage", false));
+    }
+
+    /**
+     * Constructs a new {@code DataSet}.
+     * @param concurrentStorage if {@code true}, primitives are stored in a {@link ConcurrentStorage}, allowing lock-free
+     * lookups by id, iterations and membership tests from several threads. Otherwise a {@link Storage} is used, which
+     * synchronizes each of them.
+     */
+    DataSet(boolean concurrentStorage) {
+        if (concurrentStorage) {
+            ConcurrentStorage<OsmPrimitive> storage = new ConcurrentStorage<>(new Storage.PrimitiveIdHash(), true);
+            allPrimitives = storage;
+            primitivesMap = storage.foreignKey(new Storage.PrimitiveIdHash());
+        } else {
+            Storage<OsmPrimitive> storage = new Storage<>(new Storage.PrimitiveIdHash(), true);
+            allPrimitives = storage;
+            primitivesMap = storage.foreignKey(new Storage.PrimitiveIdHash());
+        }
+        store = new QuadBucketPrimitiveStore<>(Config.getPref() != null && Config.getPref().getBoolean("osm.dataset.packed-rtree", false));
         // Transparently register as projection change listener. No need to explicitly remove
         // the listener, projection change listeners are managed as WeakReferences.
         ProjectionRegistry.addProjectionChangeListener(this);
@@ -292,6 +327,72 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
         return lock.readLock();
     }
 
+    /**
+     * Returns an immutable snapshot of the primitives of this dataset.
+     * <p>
+     * The snapshot can be used by background tasks (saving, validation...) without holding the read lock while the
+     * user keeps editing. Only the primitives changed since the previous snapshot are copied.
+     * <p>
+     * The caller must {@link #releaseSnapshot release} the snapshot once done with it: as long as snapshots are in use,
+     * the data set keeps its last snapshot and records the primitives changed since.
+     * @return an immutable snapshot of this dataset
+     */
+    public DataSetSnapshot snapshot() {
+        lock.readLock().lock();
+        try {
+            synchronized (snapshotLock) {
+                if (lastSnapshot == null || !snapshotChanges.isEmpty() || !isSnapshotMetadataUpToDate(lastSnapshot)) {
+                    lastSnapshot = DataSetSnapshot.create(this, allPrimitives, lastSnapshot, snapshotChanges);
+                    snapshotChanges.clear();
+                }
+                snapshotUsers++;
+                return lastSnapshot;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Releases a snapshot returned by {@link #snapshot()}. The snapshot itself remains usable.
+     * <p>
+     * Once all snapshots are released, the data set forgets its last snapshot and stops recording changes, so that
+     * the memory of the copied primitives can be reclaimed. The next snapshot copies all primitives again.
+     * @param snapshot the snapshot
+     */
+    public void releaseSnapshot(DataSetSnapshot snapshot) {
+        Objects.requireNonNull(snapshot, "snapshot");
+        // the recorded changes are modified while holding the write lock
+        lock.readLock().lock();
+        try {
+            synchronized (snapshotLock) {
+                if (snapshotUsers > 0 && --snapshotUsers == 0) {
+                    lastSnapshot = null;
+                    snapshotChanges.clear();
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean isSnapshotMetadataUpToDate(DataSetSnapshot snapshot) {
+        return Objects.equals(snapshot.getVersion(), version) && snapshot.getDownloadPolicy() == downloadPolicy
+                && snapshot.getUploadPolicy() == uploadPolicy && snapshot.isLocked() == isLocked()
+                && snapshot.getDataSources().equals(new ArrayList<>(getDataSources()));
+    }
+
+    /**
+     * Records that a primitive of this dataset is about to change, so that the next snapshot copies it.
+     * Must be called while holding the write lock.
+     * @param primitive the primitive
+     */
+    void snapshotPrimitiveChanged(OsmPrimitive primitive) {
+        if (lastSnapshot != null) {
+            snapshotChanges.add(primitive.getPrimitiveId());
+        }
+    }
+
     /**
      * History of selections - shared by plugins and SelectionListDialog
      */
@@ -499,6 +600,7 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
                         null, primitive);
 
             allPrimitives.add(primitive);
+            snapshotPrimitiveChanged(primitive);
             primitive.setDataset(this);
             primitive.updatePosition(); // Set cached bbox for way and relation (required for reindexWay and reindexRelation to work properly)
             store.addPrimitive(primitive);
@@ -534,9 +636,92 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
         }
         store.removePrimitive(primitive);
         allPrimitives.remove(primitive);
+        snapshotPrimitiveChanged(primitive);
         primitive.setDataset(null);
     }
 
+    /**
+     * Sets the ids and versions known to the OSM API of primitives of this dataset in one update, e.g. after an upload.
+     * <p>
+     * Unlike {@link OsmPrimitive#setOsmId}, the primitives are neither removed from nor added again to the dataset: they
+     * stay in the spatial index, and only the indexes by id are rekeyed, in one pass. A single {@link DataChangedEvent}
+     * is fired for all of them, with a {@link DataSetEventBatch} listing one {@link PrimitiveFlagsChangedEvent} per
+     * primitive. As when removed, primitives whose id changes are removed from the selection.
+     * <p>
+     * The new ids are checked before any change, so that nothing is changed if one of them is already used.
+     *
+     * @param primitives the primitives of this dataset
+     * @param ids the new ids, in the order of {@code primitives}. &gt; 0 required
+     * @param versions the new versions, in the order of {@code primitives}. &gt; 0 required
+     * @throws IllegalStateException if the dataset is read-only
+     * @throws IllegalArgumentException if an id or version is not positive, or if a primitive is not in this dataset
+     * @throws DataIntegrityProblemException if a new id is already used by another primitive of this dataset
+     */
+    public void setOsmIds(List<? extends OsmPrimitive> primitives, long[] ids, int[] versions) {
+        checkModifiable();
+        if (ids.length != primitives.size() || versions.length != primitives.size())
+            throw new IllegalArgumentException("One id and version per primitive expected");
+        update(() -> {
+            List<OsmPrimitive> rekeyed = new ArrayList<>();
+            List<PrimitiveId> newIds = new ArrayList<>();
+            for (int i = 0; i < ids.length; i++) {
+                OsmPrimitive p = primitives.get(i);
+                if (p.getDataSet() != this)
+                    throw new IllegalArgumentException("Primitive not in this dataset: " + p);
+                if (ids[i] <= 0)
+                    throw new IllegalArgumentException(tr("ID > 0 expected. Got {0}.", ids[i]));
+                if (versions[i] <= 0)
+                    throw new IllegalArgumentException(tr("Version > 0 expected. Got {0}.", versions[i]));
+                if (ids[i] != p.getUniqueId()) {
+                    rekeyed.add(p);
+                    newIds.add(new SimplePrimitiveId(ids[i], p.getType()));
+                }
+            }
+            checkNewIds(rekeyed, newIds);
+            if (!rekeyed.isEmpty()) {
+                clearSelection(rekeyed);
+            }
+            for (OsmPrimitive p : rekeyed) {
+                snapshotPrimitiveChanged(p);
+                allPrimitives.remove(p);
+            }
+            for (int i = 0; i < ids.length; i++) {
+                OsmPrimitive p = primitives.get(i);
+                snapshotPrimitiveChanged(p);
+                p.setOsmIdNoReindex(ids[i], versions[i]);
+            }
+            for (OsmPrimitive p : rekeyed) {
+                allPrimitives.add(p);
+                snapshotPrimitiveChanged(p);
+            }
+            DataSetEventBatch batch = new DataSetEventBatch(this);
+            for (OsmPrimitive p : primitives) {
+                batch.add(new PrimitiveFlagsChangedEvent(this, p));
+            }
+            fireEvent(new DataChangedEvent(this, batch));
+        });
+    }
+
+    /**
+     * Checks that the new ids of rekeyed primitives are neither used twice nor used by other primitives of this dataset.
+     * An id may be used by another rekeyed primitive, which will have another id.
+     * @param rekeyed the primitives whose id changes
+     * @param newIds their new ids, in the same order
+     * @throws DataIntegrityProblemException if a new id is already used
+     */
+    private void checkNewIds(List<OsmPrimitive> rekeyed, List<PrimitiveId> newIds) {
+        Set<OsmPrimitive> rekeyedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        rekeyedSet.addAll(rekeyed);
+        Set<PrimitiveId> seen = new HashSet<>();
+        for (int i = 0; i < rekeyed.size(); i++) {
+            OsmPrimitive p = rekeyed.get(i);
+            OsmPrimitive existing = getPrimitiveById(newIds.get(i));
+            if (!seen.add(newIds.get(i)) || (existing != null && !rekeyedSet.contains(existing)))
+                throw new DataIntegrityProblemException(
+                        tr("Unable to add primitive {0} to the dataset because it is already included", p.toString()), null, p);
+        }
+    }
+
     void removePrimitive(OsmPrimitive primitive) {
         checkModifiable();
         update(() -> {
@@ -731,19 +916,32 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
     }
 
     @Override
-    public synchronized Area getDataSourceArea() {
-        if (cachedDataSourceArea == null) {
-            cachedDataSourceArea = OsmData.super.getDataSourceArea();
+    public Area getDataSourceArea() {
+        // called for every primitive by some validator tests: avoid locking once computed
+        Area area = cachedDataSourceArea;
+        if (area == null) {
+            synchronized (this) {
+                if (cachedDataSourceArea == null) {
+                    cachedDataSourceArea = OsmData.super.getDataSourceArea();
+                }
+                area = cachedDataSourceArea;
+            }
         }
-        return cachedDataSourceArea;
+        return area;
     }
 
     @Override
-    public synchronized List<Bounds> getDataSourceBounds() {
-        if (cachedDataSourceBounds == null) {
-            cachedDataSourceBounds = OsmData.super.getDataSourceBounds();
+    public List<Bounds> getDataSourceBounds() {
+        List<Bounds> bounds = cachedDataSourceBounds;
+        if (bounds == null) {
+            synchronized (this) {
+                if (cachedDataSourceBounds == null) {
+                    cachedDataSourceBounds = OsmData.super.getDataSourceBounds();
+                }
+                bounds = cachedDataSourceBounds;
+            }
         }
-        return Collections.unmodifiableList(cachedDataSourceBounds);
+        return Collections.unmodifiableList(bounds);
     }
 
     @Override
@@ -756,6 +954,33 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
         return primitiveId != null ? primitivesMap.get(primitiveId) : null;
     }
 
+    /**
+     * Returns the node with the given unique id.
+     * @param id the unique id of the node, negative for new nodes
+     * @return the node, or {@code null} if this data set does not contain it
+     */
+    public Node getNode(long id) {
+        return (Node) getPrimitiveById(id, OsmPrimitiveType.NODE);
+    }
+
+    /**
+     * Returns the way with the given unique id.
+     * @param id the unique id of the way, negative for new ways
+     * @return the way, or {@code null} if this data set does not contain it
+     */
+    public Way getWay(long id) {
+        return (Way) getPrimitiveById(id, OsmPrimitiveType.WAY);
+    }
+
+    /**
+     * Returns the relation with the given unique id.
+     * @param id the unique id of the relation, negative for new relations
+     * @return the relation, or {@code null} if this data set does not contain it
+     */
+    public Relation getRelation(long id) {
+        return (Relation) getPrimitiveById(id, OsmPrimitiveType.RELATION);
+    }
+
     /**
      * Show message and stack trace in log in case primitive is not found
      * @param primitiveId primitive id to look for
@@ -916,7 +1141,13 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
             updateCount--;
             List<AbstractDatasetChangedEvent> eventsToFire = Collections.emptyList();
             if (updateCount == 0) {
-                eventsToFire = new ArrayList<>(cachedEvents);
+                store.flush();
+                if (cachedEventBatch != null) {
+                    eventsToFire = Collections.singletonList(new DataChangedEvent(this, cachedEventBatch));
+                    cachedEventBatch = null;
+                } else {
+                    eventsToFire = new ArrayList<>(cachedEvents);
+                }
                 cachedEvents.clear();
             }
 
@@ -924,14 +1155,8 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
                 lock.readLock().lock();
                 try {
                     lock.writeLock().unlock();
-                    if (eventsToFire.size() < MAX_SINGLE_EVENTS) {
-                        for (AbstractDatasetChangedEvent event : eventsToFire) {
-                            fireEventToListeners(event);
-                        }
-                    } else if (eventsToFire.size() == MAX_EVENTS) {
-                        fireEventToListeners(new DataChangedEvent(this));
-                    } else {
-                        fireEventToListeners(new DataChangedEvent(this, eventsToFire));
+                    for (AbstractDatasetChangedEvent event : eventsToFire) {
+                        fireEventToListeners(event);
                     }
                 } finally {
                     lock.readLock().unlock();
@@ -1002,8 +1227,16 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
     private void fireEvent(AbstractDatasetChangedEvent event) {
         if (updateCount == 0)
             throw new AssertionError("dataset events can be fired only when dataset is locked");
-        if (cachedEvents.size() < MAX_EVENTS) {
+        if (cachedEventBatch != null) {
+            cachedEventBatch.add(event);
+        } else {
             cachedEvents.add(event);
+            if (cachedEvents.size() >= MAX_SINGLE_EVENTS) {
+                // merge the events instead of keeping all of them, there can be millions for large commands
+                cachedEventBatch = new DataSetEventBatch(this);
+                cachedEvents.forEach(cachedEventBatch::add);
+                cachedEvents.clear();
+            }
         }
     }
 
@@ -1062,7 +1295,15 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
     public void invalidateEastNorthCache() {
         if (ProjectionRegistry.getProjection() == null)
             return; // sanity check
-        update(() -> getNodes().forEach(Node::invalidateEastNorthCache));
+        update(() -> nodeCoordinates.invalidateEastNorthCache());
+    }
+
+    /**
+     * Returns the columnar store holding the coordinates of the nodes of this dataset.
+     * @return the node coordinate store
+     */
+    NodeCoordinateStore getNodeCoordinates() {
+        return nodeCoordinates;
     }
 
     /**
@@ -1101,6 +1342,8 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
             }
             store.clear();
             allPrimitives.clear();
+            lastSnapshot = null;
+            snapshotChanges.clear();
         });
     }
 
@@ -0,0 +1,330 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+import org.openstreetmap.josm.data.DataSource;
+
+/**
+ * An immutable view of the primitives of a {@link DataSet} at a given point in time, see {@link DataSet#snapshot()}.
+ * <p>
+ * The primitives are stored as {@link PrimitiveData} (tags, flags, coordinates, way node ids and relation members),
+ * spread over buckets by id. Consecutive snapshots of a data set share the buckets that did not change, and the
+ * entries of unchanged primitives inside changed buckets. Hence taking a snapshot costs roughly the number of
+ * primitives changed since the previous one, and a snapshot can be read from any thread while the data set is edited.
+ * <p>
+ * The returned {@code PrimitiveData} objects are shared between snapshots and must not be modified.
+ */
+public final class DataSetSnapshot {
+
+    /** Targeted average number of primitives per bucket */
+    private static final int BUCKET_SIZE = 32;
+    private static final int MIN_BUCKET_BITS = 6;
+    private static final PrimitiveData[] EMPTY = new PrimitiveData[0];
+
+    private final PrimitiveData[][] buckets;
+    private final int bucketBits;
+    private final int size;
+
+    private final String version;
+    private final DownloadPolicy downloadPolicy;
+    private final UploadPolicy uploadPolicy;
+    private final boolean locked;
+    private final List<DataSource> dataSources;
+
+    private DataSetSnapshot(DataSet ds, PrimitiveData[][] buckets, int bucketBits, int size) {
+        this.buckets = buckets;
+        this.bucketBits = bucketBits;
+        this.size = size;
+        this.version = ds.getVersion();
+        this.downloadPolicy = ds.getDownloadPolicy();
+        this.uploadPolicy = ds.getUploadPolicy();
+        this.locked = ds.isLocked();
+        this.dataSources = Collections.unmodifiableList(new ArrayList<>(ds.getDataSources()));
+    }
+
+    /**
+     * Creates a snapshot of the given data set. Must be called with the read lock of {@code ds} held.
+     * @param ds the data set
+     * @param primitives all primitives of the data set
+     * @param previous the previous snapshot of {@code ds}, or {@code null} to copy all primitives
+     * @param changed the primitives changed or removed since {@code previous} was taken
+     * @return the new snapshot
+     */
+    static DataSetSnapshot create(DataSet ds, Collection<OsmPrimitive> primitives, DataSetSnapshot previous,
+            Collection<? extends PrimitiveId> changed) {
+        int bits = bucketBits(primitives.size());
+        if (previous == null || bits > previous.bucketBits + 1) {
+            return createFull(ds, primitives, bits);
+        }
+        Map<Integer, Set<PrimitiveId>> changedByBucket = new HashMap<>();
+        for (PrimitiveId id : changed) {
+            changedByBucket.computeIfAbsent(bucket(id.getUniqueId(), id.getType(), previous.bucketBits), b -> new HashSet<>()).add(id);
+        }
+        PrimitiveData[][] buckets = previous.buckets.clone();
+        int size = previous.size;
+        List<PrimitiveData> entries = new ArrayList<>();
+        for (Map.Entry<Integer, Set<PrimitiveId>> e : changedByBucket.entrySet()) {
+            Set<PrimitiveId> ids = e.getValue();
+            PrimitiveData[] old = buckets[e.getKey()];
+            entries.clear();
+            for (PrimitiveData data : old) {
+                if (!ids.contains(new SimplePrimitiveId(data.getUniqueId(), data.getType()))) {
+                    entries.add(data);
+                }
+            }
+            for (PrimitiveId id : ids) {
+                OsmPrimitive osm = ds.getPrimitiveById(id);
+                if (osm != null) {
+                    entries.add(osm.save());
+                }
+            }
+            size += entries.size() - old.length;
+            buckets[e.getKey()] = entries.isEmpty() ? EMPTY : entries.toArray(EMPTY);
+        }
+        return new DataSetSnapshot(ds, buckets, previous.bucketBits, size);
+    }
+
+    private static DataSetSnapshot createFull(DataSet ds, Collection<OsmPrimitive> primitives, int bits) {
+        List<List<PrimitiveData>> lists = new ArrayList<>(1 << bits);
+        for (int i = 0; i < 1 << bits; i++) {
+            lists.add(new ArrayList<>());
+        }
+        for (OsmPrimitive osm : primitives) {
+            lists.get(bucket(osm.getUniqueId(), osm.getType(), bits)).add(osm.save());
+        }
+        PrimitiveData[][] buckets = new PrimitiveData[1 << bits][];
+        for (int i = 0; i < buckets.length; i++) {
+            List<PrimitiveData> list = lists.get(i);
+            buckets[i] = list.isEmpty() ? EMPTY : list.toArray(EMPTY);
+        }
+        return new DataSetSnapshot(ds, buckets, bits, primitives.size());
+    }
+
+    private static int bucketBits(int size) {
+        int bits = MIN_BUCKET_BITS;
+        while (bits < 30 && (BUCKET_SIZE << bits) < size) {
+            bits++;
+        }
+        return bits;
+    }
+
+    private static int bucket(long id, OsmPrimitiveType type, int bits) {
+        long h = (id * 31 + type.ordinal()) * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> (64 - bits));
+    }
+
+    /**
+     * Returns the primitive with the given id.
+     * @param id the primitive id
+     * @return the primitive, or {@code null} if the data set did not contain it
+     */
+    public PrimitiveData getPrimitiveById(PrimitiveId id) {
+        for (PrimitiveData data : buckets[bucket(id.getUniqueId(), id.getType(), bucketBits)]) {
+            if (data.getUniqueId() == id.getUniqueId() && data.getType() == id.getType()) {
+                return data;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Determines if the given primitive has the same content in this snapshot and in the other one.
+     * @param id the primitive id
+     * @param other another snapshot of the same data set
+     * @return {@code true} if the primitive is missing in both snapshots, or if its tags, flags, metadata and
+     * coordinates, nodes or members are the same
+     */
+    public boolean isUnchangedIn(PrimitiveId id, DataSetSnapshot other) {
+        PrimitiveData a = getPrimitiveById(id);
+        PrimitiveData b = other.getPrimitiveById(id);
+        if (a == b) {
+            return true;
+        } else if (a == null || b == null || a.getClass() != b.getClass() || a.flags != b.flags || a.getVersion() != b.getVersion()
+                || a.getChangesetId() != b.getChangesetId() || a.getRawTimestamp() != b.getRawTimestamp()
+                || !Objects.equals(a.getUser(), b.getUser()) || !Arrays.equals(a.keys, b.keys)) {
+            return false;
+        } else if (a instanceof NodeData) {
+            return Objects.equals(((NodeData) a).getCoor(), ((NodeData) b).getCoor());
+        } else if (a instanceof WayData) {
+            return ((WayData) a).getNodeIds().equals(((WayData) b).getNodeIds());
+        } else {
+            return ((RelationData) a).getMembers().equals(((RelationData) b).getMembers());
+        }
+    }
+
+    /**
+     * Finds the primitives changed between a previous snapshot of the same data set and this one.
+     * <p>
+     * Only the buckets which are not shared by both snapshots are compared, so the cost is roughly the number of
+     * primitives changed in between.
+     * @param previous a previous snapshot of the same data set
+     * @param changed receives the primitives added or changed since {@code previous}
+     * @param removed receives the ids of the primitives removed since {@code previous}
+     * @return {@code false} if the snapshots do not share their buckets, as the data set grew too much in between.
+     * Nothing is reported in this case
+     */
+    public boolean diff(DataSetSnapshot previous, Collection<PrimitiveData> changed, Collection<PrimitiveId> removed) {
+        if (previous.bucketBits != bucketBits) {
+            return false;
+        }
+        Map<PrimitiveId, PrimitiveData> old = new HashMap<>();
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] == previous.buckets[i]) {
+                continue;
+            }
+            old.clear();
+            for (PrimitiveData data : previous.buckets[i]) {
+                old.put(new SimplePrimitiveId(data.getUniqueId(), data.getType()), data);
+            }
+            for (PrimitiveData data : buckets[i]) {
+                if (old.remove(new SimplePrimitiveId(data.getUniqueId(), data.getType())) != data) {
+                    changed.add(data);
+                }
+            }
+            removed.addAll(old.keySet());
+        }
+        return true;
+    }
+
+    /**
+     * Returns all primitives of the snapshot.
+     * @return all primitives, in no particular order
+     */
+    public Collection<PrimitiveData> getPrimitives() {
+        return new AbstractCollection<PrimitiveData>() {
+            @Override
+            public Iterator<PrimitiveData> iterator() {
+                return new BucketIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private <T extends PrimitiveData> List<T> getPrimitives(Class<T> type) {
+        List<T> result = new ArrayList<>();
+        for (PrimitiveData[] bucket : buckets) {
+            for (PrimitiveData data : bucket) {
+                if (type.isInstance(data)) {
+                    result.add(type.cast(data));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the nodes of the snapshot.
+     * @return the nodes, in no particular order
+     */
+    public List<NodeData> getNodes() {
+        return getPrimitives(NodeData.class);
+    }
+
+    /**
+     * Returns the ways of the snapshot.
+     * @return the ways, in no particular order
+     */
+    public List<WayData> getWays() {
+        return getPrimitives(WayData.class);
+    }
+
+    /**
+     * Returns the relations of the snapshot.
+     * @return the relations, in no particular order
+     */
+    public List<RelationData> getRelations() {
+        return getPrimitives(RelationData.class);
+    }
+
+    /**
+     * Returns the number of primitives of the snapshot.
+     * @return the number of primitives
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the API version of the data set.
+     * @return the API version, can be {@code null}
+     * @see DataSet#getVersion()
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the download policy of the data set.
+     * @return the download policy
+     * @see DataSet#getDownloadPolicy()
+     */
+    public DownloadPolicy getDownloadPolicy() {
+        return downloadPolicy;
+    }
+
+    /**
+     * Returns the upload policy of the data set.
+     * @return the upload policy
+     * @see DataSet#getUploadPolicy()
+     */
+    public UploadPolicy getUploadPolicy() {
+        return uploadPolicy;
+    }
+
+    /**
+     * Determines if the data set was read-only.
+     * @return {@code true} if the data set was read-only
+     * @see DataSet#isLocked()
+     */
+    public boolean isLocked() {
+        return locked;
+    }
+
+    /**
+     * Returns the data sources of the data set.
+     * @return the data sources, unmodifiable
+     * @see DataSet#getDataSources()
+     */
+    public List<DataSource> getDataSources() {
+        return dataSources;
+    }
+
+    private class BucketIterator implements Iterator<PrimitiveData> {
+        private int bucket;
+        private int index;
+
+        @Override
+        public boolean hasNext() {
+            while (bucket < buckets.length && index >= buckets[bucket].length) {
+                bucket++;
+                index = 0;
+            }
+            return bucket < buckets.length;
+        }
+
+        @Override
+        public PrimitiveData next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return buckets[bucket][index++];
+        }
+    }
+}
@@ -0,0 +1,995 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.openstreetmap.josm.command.Command;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.UndoRedoHandler;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * An off-heap store of OSM primitives, kept in memory-mapped files, for data sets too large for the Java heap.
+ * <p>
+ * Nodes and ways are stored as fixed-size records sorted by id in the files of a private directory, with their tags
+ * and way nodes in separate files. A grid index allows to find the nodes and ways of an area without reading the others.
+ * Relations are far less numerous and are kept in the heap.
+ * <p>
+ * An {@link org.openstreetmap.josm.gui.layer.OsmDataLayer} backed by a store only contains the primitives of the areas
+ * {@linkplain #materialize materialized} so far, typically the viewed ones. The primitives of the store which are not
+ * in the data set are still written when saving the layer, see
+ * {@link org.openstreetmap.josm.io.OsmWriter#write(DataSetSnapshot, MappedDataStore)}.
+ * <p>
+ * Stores are created by a {@link Builder}, with primitives added by ascending positive ids, for each type.
+ * The directory of a store is locked as long as the store is open, see {@link #deleteStaleDirectories(File)}.
+ */
+public final class MappedDataStore implements Closeable {
+
+    /** Size of the tiles in which the store is materialized, in degrees */
+    public static final double TILE_SIZE = 0.05;
+
+    private static final int COMMON_SIZE = 28;
+    private static final int RECORD_SIZE = COMMON_SIZE + 16;
+    private static final int SAMPLE_SHIFT = 6;
+    private static final int GRID_BITS = 10;
+    private static final int GRID_SIZE = 1 << GRID_BITS;
+    private static final int MAX_WAY_CELLS = 16;
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+    private static final double FIXED_POINT = 1e7;
+    private static final String LOCK_FILE = "store.lock";
+    /** Age from which a directory without lock file is considered stale, it may be a store being created otherwise */
+    private static final long STALE_UNLOCKED_AGE = TimeUnit.HOURS.toMillis(1);
+
+    private final File directory;
+    private final FileChannel lock;
+    private final MappedFile nodes;
+    private final MappedFile ways;
+    private final MappedFile wayNodes;
+    private final MappedFile tags;
+    private final int nodeCount;
+    private final int wayCount;
+    private final long[] nodeSamples;
+    private final long[] waySamples;
+    private final List<User> users;
+    private final List<RelationData> relations;
+    private final int[] relationBoxes;
+
+    private final String version;
+    private final DownloadPolicy downloadPolicy;
+    private final UploadPolicy uploadPolicy;
+    private final boolean locked;
+    private final List<DataSource> dataSources;
+
+    // grid index
+    private int minLat = Integer.MAX_VALUE;
+    private int minLon = Integer.MAX_VALUE;
+    private int maxLat = Integer.MIN_VALUE;
+    private int maxLon = Integer.MIN_VALUE;
+    private long cellHeight;
+    private long cellWidth;
+    private MappedFile nodeGrid;
+    private int[] nodeCells;
+    private MappedFile wayBoxes;
+    private MappedFile wayGrid;
+    private int[] wayCells;
+    private int[] largeWays;
+
+    /** Materialized tiles, read without lock by {@link #isMaterialized} */
+    private final Set<Long> materializedTiles = ConcurrentHashMap.newKeySet();
+    /** Materialized tiles, from the least recently viewed, guarded by {@link #materializeLock} */
+    private final Set<Long> tileOrder = new LinkedHashSet<>();
+    private final Object materializeLock = new Object();
+    private volatile boolean closed;
+
+    private MappedDataStore(Builder builder, DataSet header) throws IOException {
+        this.directory = builder.directory;
+        this.lock = builder.lock;
+        this.nodes = builder.nodes;
+        this.ways = builder.ways;
+        this.wayNodes = builder.wayNodes;
+        this.tags = builder.tags;
+        this.nodeCount = builder.nodeCount;
+        this.wayCount = builder.wayCount;
+        this.nodeSamples = Arrays.copyOf(builder.nodeSamples, (nodeCount + (1 << SAMPLE_SHIFT) - 1) >> SAMPLE_SHIFT);
+        this.waySamples = Arrays.copyOf(builder.waySamples, (wayCount + (1 << SAMPLE_SHIFT) - 1) >> SAMPLE_SHIFT);
+        this.users = builder.users;
+        this.relations = builder.relations;
+        this.relationBoxes = new int[4 * relations.size()];
+        this.version = header.getVersion();
+        this.downloadPolicy = header.getDownloadPolicy();
+        this.uploadPolicy = header.getUploadPolicy();
+        this.locked = header.isLocked();
+        this.dataSources = Collections.unmodifiableList(new ArrayList<>(header.getDataSources()));
+        for (MappedFile f : Arrays.asList(nodes, ways, wayNodes, tags)) {
+            f.seal();
+        }
+        buildNodeGrid();
+        buildWayGrid();
+        buildRelationBoxes();
+    }
+
+    /**
+     * Builds a {@link MappedDataStore}.
+     */
+    public static final class Builder {
+        private static final int MAX_CACHED_TAGS = 1 << 16;
+
+        private final File directory;
+        private final FileChannel lock;
+        private final MappedFile nodes;
+        private final MappedFile ways;
+        private final MappedFile wayNodes;
+        private final MappedFile tags;
+        private int nodeCount;
+        private int wayCount;
+        private long[] nodeSamples = new long[1024];
+        private long[] waySamples = new long[1024];
+        private final List<User> users = new ArrayList<>();
+        private final Map<User, Integer> userIndexes = new HashMap<>();
+        private final List<RelationData> relations = new ArrayList<>();
+        private final Map<List<String>, Long> tagPositions = new HashMap<>();
+        private long lastNodeId;
+        private long lastWayId;
+        private long lastRelationId;
+
+        /**
+         * Constructs a new {@code Builder}.
+         * @param directory the directory where the files of the store are created. Created if needed, must be empty.
+         * The directory and its files are deleted when the store is closed, or on exit
+         * @throws IOException in case of I/O error
+         */
+        public Builder(File directory) throws IOException {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException(tr("Unable to create directory {0}", directory));
+            }
+            this.directory = directory;
+            // registered before the files, so that the directory is deleted after them
+            directory.deleteOnExit();
+            File lockFile = new File(directory, LOCK_FILE);
+            lockFile.deleteOnExit();
+            this.lock = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                if (lock.tryLock() == null) {
+                    throw new IOException(tr("Directory {0} is used by another store", directory));
+                }
+                this.nodes = MappedFile.create(new File(directory, "nodes.bin"));
+                this.ways = MappedFile.create(new File(directory, "ways.bin"));
+                this.wayNodes = MappedFile.create(new File(directory, "waynodes.bin"));
+                this.tags = MappedFile.create(new File(directory, "tags.bin"));
+            } catch (IOException | OverlappingFileLockException e) {
+                Utils.close(lock);
+                throw e;
+            }
+        }
+
+        private static long checkId(PrimitiveData data, long lastId) {
+            long id = data.getUniqueId();
+            if (id <= lastId) {
+                throw new IllegalArgumentException(tr("{0} {1} is not sorted by ascending positive id", data.getType().getAPIName(), id));
+            }
+            return id;
+        }
+
+        private static long[] addSample(long[] samples, int count, long id) {
+            if ((count & ((1 << SAMPLE_SHIFT) - 1)) != 0) {
+                return samples;
+            }
+            int index = count >> SAMPLE_SHIFT;
+            long[] result = index < samples.length ? samples : Arrays.copyOf(samples, 2 * samples.length);
+            result[index] = id;
+            return result;
+        }
+
+        private void writeCommon(MappedFile file, PrimitiveData data) throws IOException {
+            int user = -1;
+            if (data.getUser() != null) {
+                user = userIndexes.computeIfAbsent(data.getUser(), u -> {
+                    users.add(u);
+                    return users.size() - 1;
+                });
+            }
+            file.appendLong(data.getUniqueId());
+            file.appendInt(data.getVersion());
+            file.appendInt(data.getChangesetId());
+            file.appendInt(data.getRawTimestamp());
+            file.appendInt(user);
+            file.appendShort(data.flags);
+            file.appendShort((short) 0);
+        }
+
+        private long writeTags(PrimitiveData data) throws IOException {
+            String[] keys = data.keys;
+            if (keys == null || keys.length == 0) {
+                return -1;
+            }
+            List<String> key = Arrays.asList(keys);
+            Long cached = tagPositions.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            long position = tags.length();
+            tags.appendShort((short) keys.length);
+            for (String s : keys) {
+                byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                tags.appendShort((short) b.length);
+                tags.appendBytes(b);
+            }
+            if (tagPositions.size() >= MAX_CACHED_TAGS) {
+                tagPositions.clear();
+            }
+            tagPositions.put(key, position);
+            return position;
+        }
+
+        /**
+         * Adds a node.
+         * @param data the node
+         * @throws IOException in case of I/O error
+         * @throws IllegalArgumentException if the id is not positive, or not greater than the id of the previous node
+         */
+        public void addNode(NodeData data) throws IOException {
+            lastNodeId = checkId(data, lastNodeId);
+            nodeSamples = addSample(nodeSamples, nodeCount++, lastNodeId);
+            long tagsPosition = writeTags(data);
+            writeCommon(nodes, data);
+            LatLon ll = data.getCoor();
+            nodes.appendInt(ll != null ? toFixed(ll.lat()) : UNKNOWN);
+            nodes.appendInt(ll != null ? toFixed(ll.lon()) : UNKNOWN);
+            nodes.appendLong(tagsPosition);
+        }
+
+        /**
+         * Adds a way.
+         * @param data the way
+         * @throws IOException in case of I/O error
+         * @throws IllegalArgumentException if the id is not positive, or not greater than the id of the previous way
+         */
+        public void addWay(WayData data) throws IOException {
+            lastWayId = checkId(data, lastWayId);
+            waySamples = addSample(waySamples, wayCount++, lastWayId);
+            long tagsPosition = writeTags(data);
+            long nodesPosition = wayNodes.length();
+            List<Long> nodeIds = data.getNodeIds();
+            wayNodes.appendInt(nodeIds.size());
+            for (Long id : nodeIds) {
+                wayNodes.appendLong(id);
+            }
+            writeCommon(ways, data);
+            ways.appendLong(tagsPosition);
+            ways.appendLong(nodesPosition);
+        }
+
+        /**
+         * Adds a relation. Relations are kept in the heap.
+         * @param data the relation
+         * @throws IllegalArgumentException if the id is not positive, or not greater than the id of the previous relation
+         */
+        public void addRelation(RelationData data) {
+            lastRelationId = checkId(data, lastRelationId);
+            relations.add(data);
+        }
+
+        /**
+         * Builds the store. The builder must not be used afterwards.
+         * @param header empty data set holding the metadata of the primitives (version, policies, data sources)
+         * @return the store
+         * @throws IOException in case of I/O error
+         */
+        public MappedDataStore build(DataSet header) throws IOException {
+            tagPositions.clear();
+            userIndexes.clear();
+            return new MappedDataStore(this, header);
+        }
+
+        /**
+         * Deletes the files written so far, when the store cannot be built.
+         */
+        public void cancel() {
+            for (MappedFile f : Arrays.asList(nodes, ways, wayNodes, tags)) {
+                try {
+                    f.close();
+                } catch (IOException e) {
+                    Logging.trace(e);
+                }
+            }
+            deleteDirectory(directory, lock);
+        }
+    }
+
+    private static int toFixed(double coordinate) {
+        return (int) Math.round(coordinate * FIXED_POINT);
+    }
+
+    private static void deleteDirectory(File directory, FileChannel lock) {
+        Utils.close(lock);
+        // the files which cannot be deleted now are deleted on exit
+        Utils.deleteFile(new File(directory, LOCK_FILE));
+        if (!directory.delete()) {
+            Logging.debug("Unable to delete {0} now, will delete it on exit", directory);
+        }
+    }
+
+    /**
+     * Deletes the directories of the stores of previous sessions, left behind after a crash. The directories locked
+     * by an open store, of this or another running instance, are kept.
+     * @param parent the parent directory of the store directories
+     */
+    public static void deleteStaleDirectories(File parent) {
+        File[] directories = parent.listFiles(File::isDirectory);
+        if (directories == null)
+            return;
+        for (File directory : directories) {
+            File lockFile = new File(directory, LOCK_FILE);
+            boolean stale;
+            if (lockFile.isFile()) {
+                try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.WRITE)) {
+                    FileLock fileLock = channel.tryLock();
+                    stale = fileLock != null;
+                    if (stale) {
+                        fileLock.release();
+                    }
+                } catch (IOException | OverlappingFileLockException e) {
+                    Logging.trace(e);
+                    stale = false;
+                }
+            } else {
+                stale = System.currentTimeMillis() - directory.lastModified() > STALE_UNLOCKED_AGE;
+            }
+            if (stale) {
+                Logging.info("Deleting stale mapped data store {0}", directory);
+                if (!Utils.deleteDirectory(directory)) {
+                    Logging.warn("Unable to delete stale mapped data store {0}", directory);
+                }
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------------------------------ */
+    /* index building                                                                       */
+    /* ------------------------------------------------------------------------------------ */
+
+    private static long recordPosition(int index) {
+        return (long) index * RECORD_SIZE;
+    }
+
+    private void buildNodeGrid() throws IOException {
+        for (int i = 0; i < nodeCount; i++) {
+            int lat = nodes.getInt(recordPosition(i) + COMMON_SIZE);
+            if (lat != UNKNOWN) {
+                int lon = nodes.getInt(recordPosition(i) + COMMON_SIZE + 4);
+                minLat = Math.min(minLat, lat);
+                minLon = Math.min(minLon, lon);
+                maxLat = Math.max(maxLat, lat);
+                maxLon = Math.max(maxLon, lon);
+            }
+        }
+        cellHeight = Math.max(1, ((long) maxLat - minLat) / GRID_SIZE + 1);
+        cellWidth = Math.max(1, ((long) maxLon - minLon) / GRID_SIZE + 1);
+        // counting sort of the node indexes by cell
+        nodeCells = new int[GRID_SIZE * GRID_SIZE + 1];
+        for (int i = 0; i < nodeCount; i++) {
+            int lat = nodes.getInt(recordPosition(i) + COMMON_SIZE);
+            if (lat != UNKNOWN) {
+                nodeCells[cell(lat, nodes.getInt(recordPosition(i) + COMMON_SIZE + 4)) + 1]++;
+            }
+        }
+        for (int c = 0; c < GRID_SIZE * GRID_SIZE; c++) {
+            nodeCells[c + 1] += nodeCells[c];
+        }
+        nodeGrid = MappedFile.allocate(new File(directory, "nodegrid.bin"), 4L * nodeCells[GRID_SIZE * GRID_SIZE]);
+        int[] next = Arrays.copyOf(nodeCells, GRID_SIZE * GRID_SIZE);
+        for (int i = 0; i < nodeCount; i++) {
+            int lat = nodes.getInt(recordPosition(i) + COMMON_SIZE);
+            if (lat != UNKNOWN) {
+                nodeGrid.putInt(4L * next[cell(lat, nodes.getInt(recordPosition(i) + COMMON_SIZE + 4))]++, i);
+            }
+        }
+    }
+
+    private void buildWayGrid() throws IOException {
+        wayBoxes = MappedFile.allocate(new File(directory, "wayboxes.bin"), 16L * wayCount);
+        wayCells = new int[GRID_SIZE * GRID_SIZE + 1];
+        int[] box = new int[4];
+        int large = 0;
+        for (int i = 0; i < wayCount; i++) {
+            computeWayBox(i, box);
+            for (int k = 0; k < 4; k++) {
+                wayBoxes.putInt(16L * i + 4 * k, box[k]);
+            }
+            if (box[0] == UNKNOWN) {
+                continue;
+            }
+            int lat1 = cellRow(box[0]);
+            int lon1 = cellColumn(box[1]);
+            int lat2 = cellRow(box[2]);
+            int lon2 = cellColumn(box[3]);
+            if ((lat2 - lat1 + 1) * (lon2 - lon1 + 1) > MAX_WAY_CELLS) {
+                large++;
+            } else {
+                for (int r = lat1; r <= lat2; r++) {
+                    for (int c = lon1; c <= lon2; c++) {
+                        wayCells[(r << GRID_BITS) + c + 1]++;
+                    }
+                }
+            }
+        }
+        for (int c = 0; c < GRID_SIZE * GRID_SIZE; c++) {
+            wayCells[c + 1] += wayCells[c];
+        }
+        wayGrid = MappedFile.allocate(new File(directory, "waygrid.bin"), 4L * wayCells[GRID_SIZE * GRID_SIZE]);
+        largeWays = new int[large];
+        large = 0;
+        int[] next = Arrays.copyOf(wayCells, GRID_SIZE * GRID_SIZE);
+        for (int i = 0; i < wayCount; i++) {
+            readWayBox(i, box);
+            if (box[0] == UNKNOWN) {
+                continue;
+            }
+            int lat1 = cellRow(box[0]);
+            int lon1 = cellColumn(box[1]);
+            int lat2 = cellRow(box[2]);
+            int lon2 = cellColumn(box[3]);
+            if ((lat2 - lat1 + 1) * (lon2 - lon1 + 1) > MAX_WAY_CELLS) {
+                largeWays[large++] = i;
+            } else {
+                for (int r = lat1; r <= lat2; r++) {
+                    for (int c = lon1; c <= lon2; c++) {
+                        wayGrid.putInt(4L * next[(r << GRID_BITS) + c]++, i);
+                    }
+                }
+            }
+        }
+    }
+
+    private void computeWayBox(int way, int[] box) {
+        Arrays.fill(box, UNKNOWN);
+        long position = ways.getLong(recordPosition(way) + COMMON_SIZE + 8);
+        int count = wayNodes.getInt(position);
+        for (int k = 0; k < count; k++) {
+            int node = findNode(wayNodes.getLong(position + 4 + 8L * k));
+            if (node >= 0) {
+                int lat = nodes.getInt(recordPosition(node) + COMMON_SIZE);
+                if (lat != UNKNOWN) {
+                    extend(box, lat, nodes.getInt(recordPosition(node) + COMMON_SIZE + 4));
+                }
+            }
+        }
+    }
+
+    private static void extend(int[] box, int lat, int lon) {
+        if (box[0] == UNKNOWN) {
+            box[0] = box[2] = lat;
+            box[1] = box[3] = lon;
+        } else {
+            box[0] = Math.min(box[0], lat);
+            box[1] = Math.min(box[1], lon);
+            box[2] = Math.max(box[2], lat);
+            box[3] = Math.max(box[3], lon);
+        }
+    }
+
+    private void readWayBox(int way, int[] box) {
+        for (int k = 0; k < 4; k++) {
+            box[k] = wayBoxes.getInt(16L * way + 4 * k);
+        }
+    }
+
+    private void buildRelationBoxes() {
+        int[] box = new int[4];
+        int[] memberBox = new int[4];
+        for (int i = 0; i < relations.size(); i++) {
+            Arrays.fill(box, UNKNOWN);
+            for (RelationMemberData member : relations.get(i).getMembers()) {
+                if (member.getMemberType() == OsmPrimitiveType.NODE) {
+                    int node = findNode(member.getMemberId());
+                    if (node >= 0 && nodes.getInt(recordPosition(node) + COMMON_SIZE) != UNKNOWN) {
+                        extend(box, nodes.getInt(recordPosition(node) + COMMON_SIZE), nodes.getInt(recordPosition(node) + COMMON_SIZE + 4));
+                    }
+                } else if (member.getMemberType() == OsmPrimitiveType.WAY) {
+                    int way = findWay(member.getMemberId());
+                    if (way >= 0) {
+                        readWayBox(way, memberBox);
+                        if (memberBox[0] != UNKNOWN) {
+                            extend(box, memberBox[0], memberBox[1]);
+                            extend(box, memberBox[2], memberBox[3]);
+                        }
+                    }
+                }
+            }
+            System.arraycopy(box, 0, relationBoxes, 4 * i, 4);
+        }
+    }
+
+    private int cellRow(int lat) {
+        return (int) Math.max(0, Math.min(GRID_SIZE - 1, ((long) lat - minLat) / cellHeight));
+    }
+
+    private int cellColumn(int lon) {
+        return (int) Math.max(0, Math.min(GRID_SIZE - 1, ((long) lon - minLon) / cellWidth));
+    }
+
+    private int cell(int lat, int lon) {
+        return (cellRow(lat) << GRID_BITS) + cellColumn(lon);
+    }
+
+    /* ------------------------------------------------------------------------------------ */
+    /* lookup                                                                               */
+    /* ------------------------------------------------------------------------------------ */
+
+    private static int find(MappedFile file, long[] samples, int count, long id) {
+        int block = Arrays.binarySearch(samples, id);
+        if (block >= 0) {
+            return block << SAMPLE_SHIFT;
+        }
+        block = -block - 2;
+        if (block < 0) {
+            return -1;
+        }
+        int low = (block << SAMPLE_SHIFT) + 1;
+        int high = Math.min(count, (block + 1) << SAMPLE_SHIFT) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midId = file.getLong(recordPosition(mid));
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int findNode(long id) {
+        return find(nodes, nodeSamples, nodeCount, id);
+    }
+
+    private int findWay(long id) {
+        return find(ways, waySamples, wayCount, id);
+    }
+
+    private void readCommon(MappedFile file, long position, PrimitiveData data) {
+        data.setVersion(file.getInt(position + 8));
+        data.setChangesetId(file.getInt(position + 12));
+        data.setRawTimestamp(file.getInt(position + 16));
+        int user = file.getInt(position + 20);
+        data.setUser(user >= 0 ? users.get(user) : null);
+        data.flags = file.getShort(position + 24);
+    }
+
+    private String[] readTags(long position) {
+        if (position < 0) {
+            return null;
+        }
+        int count = tags.getShort(position);
+        String[] result = new String[count];
+        long p = position + 2;
+        for (int i = 0; i < count; i++) {
+            byte[] b = new byte[tags.getShort(p) & 0xffff];
+            tags.getBytes(p + 2, b);
+            result[i] = new String(b, StandardCharsets.UTF_8).intern();
+            p += 2 + b.length;
+        }
+        return result;
+    }
+
+    private NodeData readNode(int index) {
+        long position = recordPosition(index);
+        NodeData data = new NodeData(nodes.getLong(position));
+        readCommon(nodes, position, data);
+        int lat = nodes.getInt(position + COMMON_SIZE);
+        if (lat != UNKNOWN) {
+            data.setCoor(new LatLon(lat / FIXED_POINT, nodes.getInt(position + COMMON_SIZE + 4) / FIXED_POINT));
+        }
+        data.keys = readTags(nodes.getLong(position + COMMON_SIZE + 8));
+        return data;
+    }
+
+    private WayData readWay(int index) {
+        long position = recordPosition(index);
+        WayData data = new WayData(ways.getLong(position));
+        readCommon(ways, position, data);
+        data.keys = readTags(ways.getLong(position + COMMON_SIZE));
+        long nodesPosition = ways.getLong(position + COMMON_SIZE + 8);
+        int count = wayNodes.getInt(nodesPosition);
+        List<Long> nodeIds = new ArrayList<>(count);
+        for (int k = 0; k < count; k++) {
+            nodeIds.add(wayNodes.getLong(nodesPosition + 4 + 8L * k));
+        }
+        data.setNodeIds(nodeIds);
+        return data;
+    }
+
+    /**
+     * Returns the number of primitives of the given type in the store.
+     * @param type the primitive type
+     * @return the number of primitives of the given type
+     */
+    public int size(OsmPrimitiveType type) {
+        switch (type) {
+        case NODE:
+            return nodeCount;
+        case WAY:
+            return wayCount;
+        default:
+            return relations.size();
+        }
+    }
+
+    /**
+     * Returns the primitive with the given id.
+     * @param id the primitive id
+     * @return the primitive, or {@code null} if the store does not contain it
+     */
+    public PrimitiveData getPrimitiveById(PrimitiveId id) {
+        switch (id.getType()) {
+        case NODE:
+            int node = findNode(id.getUniqueId());
+            return node >= 0 ? readNode(node) : null;
+        case WAY:
+            int way = findWay(id.getUniqueId());
+            return way >= 0 ? readWay(way) : null;
+        default:
+            for (RelationData r : relations) {
+                if (r.getUniqueId() == id.getUniqueId()) {
+                    return r.makeCopy();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Calls the given consumer for every primitive of the given type, by ascending id.
+     * @param type the primitive type
+     * @param consumer the consumer. The primitives are new copies of the stored ones
+     */
+    public void forEachPrimitive(OsmPrimitiveType type, Consumer<? super PrimitiveData> consumer) {
+        switch (type) {
+        case NODE:
+            for (int i = 0; i < nodeCount; i++) {
+                consumer.accept(readNode(i));
+            }
+            break;
+        case WAY:
+            for (int i = 0; i < wayCount; i++) {
+                consumer.accept(readWay(i));
+            }
+            break;
+        default:
+            relations.forEach(r -> consumer.accept(r.makeCopy()));
+        }
+    }
+
+    private static boolean intersects(int[] box, int offset, int[] query) {
+        return box[offset] != UNKNOWN && box[offset] <= query[2] && box[offset + 2] >= query[0]
+                && box[offset + 1] <= query[3] && box[offset + 3] >= query[1];
+    }
+
+    /**
+     * Returns the primitives intersecting the given bounds: the nodes inside, the ways having a node inside and the
+     * relations having a member inside (approximated by bounding boxes for ways and relations), and the nodes of the
+     * returned ways.
+     * @param bounds the bounds
+     * @return the primitives: nodes, then ways, then relations. They are new copies of the stored ones
+     */
+    public List<PrimitiveData> getPrimitives(Bounds bounds) {
+        int[] query = {
+            (int) Math.floor(bounds.getMinLat() * FIXED_POINT), (int) Math.floor(bounds.getMinLon() * FIXED_POINT),
+            (int) Math.ceil(bounds.getMaxLat() * FIXED_POINT), (int) Math.ceil(bounds.getMaxLon() * FIXED_POINT)};
+        List<PrimitiveData> result = new ArrayList<>();
+        if (query[0] > maxLat || query[2] < minLat || query[1] > maxLon || query[3] < minLon) {
+            return result;
+        }
+        int row1 = cellRow(query[0]);
+        int col1 = cellColumn(query[1]);
+        int row2 = cellRow(query[2]);
+        int col2 = cellColumn(query[3]);
+        Set<Integer> foundNodes = new HashSet<>();
+        Set<Integer> foundWays = new HashSet<>();
+        int[] box = new int[4];
+        for (int r = row1; r <= row2; r++) {
+            for (int c = col1; c <= col2; c++) {
+                int cell = (r << GRID_BITS) + c;
+                for (int i = nodeCells[cell]; i < nodeCells[cell + 1]; i++) {
+                    int node = nodeGrid.getInt(4L * i);
+                    int lat = nodes.getInt(recordPosition(node) + COMMON_SIZE);
+                    int lon = nodes.getInt(recordPosition(node) + COMMON_SIZE + 4);
+                    if (lat >= query[0] && lat <= query[2] && lon >= query[1] && lon <= query[3]) {
+                        foundNodes.add(node);
+                    }
+                }
+                for (int i = wayCells[cell]; i < wayCells[cell + 1]; i++) {
+                    int way = wayGrid.getInt(4L * i);
+                    readWayBox(way, box);
+                    if (intersects(box, 0, query)) {
+                        foundWays.add(way);
+                    }
+                }
+            }
+        }
+        for (int way : largeWays) {
+            readWayBox(way, box);
+            if (intersects(box, 0, query)) {
+                foundWays.add(way);
+            }
+        }
+        List<WayData> wayData = new ArrayList<>(foundWays.size());
+        for (int way : foundWays) {
+            WayData data = readWay(way);
+            for (Long id : data.getNodeIds()) {
+                int node = findNode(id);
+                if (node >= 0) {
+                    foundNodes.add(node);
+                }
+            }
+            wayData.add(data);
+        }
+        for (int node : foundNodes) {
+            result.add(readNode(node));
+        }
+        result.addAll(wayData);
+        for (int i = 0; i < relations.size(); i++) {
+            if (intersects(relationBoxes, 4 * i, query)) {
+                result.add(relations.get(i).makeCopy());
+            }
+        }
+        return result;
+    }
+
+    /* ------------------------------------------------------------------------------------ */
+    /* materialization                                                                      */
+    /* ------------------------------------------------------------------------------------ */
+
+    private static List<Long> tiles(Bounds bounds) {
+        List<Long> result = new ArrayList<>();
+        long row1 = (long) Math.floor((bounds.getMinLat() + 90) / TILE_SIZE);
+        long row2 = (long) Math.floor((bounds.getMaxLat() + 90) / TILE_SIZE);
+        long col1 = (long) Math.floor((bounds.getMinLon() + 180) / TILE_SIZE);
+        long col2 = (long) Math.floor((bounds.getMaxLon() + 180) / TILE_SIZE);
+        for (long r = row1; r <= row2; r++) {
+            for (long c = col1; c <= col2; c++) {
+                result.add((r << 32) | c);
+            }
+        }
+        return result;
+    }
+
+    private static Bounds tileBounds(long tile) {
+        double minTileLat = (tile >> 32) * TILE_SIZE - 90;
+        double minTileLon = (tile & 0xffffffffL) * TILE_SIZE - 180;
+        return new Bounds(minTileLat, minTileLon, minTileLat + TILE_SIZE, minTileLon + TILE_SIZE);
+    }
+
+    /**
+     * Determines if the primitives of the given area are all in the data set already. Does not block, so that it can
+     * be called while painting.
+     * @param bounds the area
+     * @return {@code true} if all tiles of {@code bounds} have been {@linkplain #materialize materialized}
+     */
+    public boolean isMaterialized(Bounds bounds) {
+        return materializedTiles.containsAll(tiles(bounds));
+    }
+
+    /**
+     * Copies the primitives of the given area into the data set, in tiles of {@link #TILE_SIZE} degrees.
+     * The tiles copied before are skipped. The primitives are merged with a {@link DataSetMerger}, so that the
+     * primitives modified in the data set are kept as they are. Relation members outside of the area are added as
+     * incomplete primitives.
+     * <p>
+     * When more than {@code maxTiles} tiles are materialized, the least recently viewed ones are evicted: their
+     * primitives are removed from the data set, unless they are modified, selected, still used by the other tiles,
+     * or by commands which can be undone or redone.
+     * @param target the data set, usually the one of the layer backed by this store
+     * @param bounds the area
+     * @param maxTiles the maximum number of materialized tiles. The tiles of {@code bounds} are never evicted
+     * @return the number of primitives copied
+     */
+    public int materialize(DataSet target, Bounds bounds, int maxTiles) {
+        synchronized (materializeLock) {
+            if (closed)
+                return 0;
+            List<Long> viewedTiles = tiles(bounds);
+            DataSet source = new DataSet();
+            for (Long tile : viewedTiles) {
+                if (!materializedTiles.contains(tile)) {
+                    for (PrimitiveData data : getPrimitives(tileBounds(tile))) {
+                        OsmPrimitive existing = source.getPrimitiveById(data);
+                        if (existing == null || existing.isIncomplete()) {
+                            addPrimitive(source, data);
+                        }
+                    }
+                }
+            }
+            if (!source.isEmpty()) {
+                runUnlocked(target, () -> new DataSetMerger(target, source).merge(null, false));
+            }
+            for (Long tile : viewedTiles) {
+                tileOrder.remove(tile);
+                tileOrder.add(tile);
+            }
+            materializedTiles.addAll(viewedTiles);
+            List<Long> evictedTiles = new ArrayList<>();
+            for (Iterator<Long> it = tileOrder.iterator(); it.hasNext() && tileOrder.size() > Math.max(maxTiles, viewedTiles.size());) {
+                Long tile = it.next();
+                it.remove();
+                materializedTiles.remove(tile);
+                evictedTiles.add(tile);
+            }
+            if (!evictedTiles.isEmpty()) {
+                evict(target, evictedTiles);
+            }
+            return source.allPrimitives().size();
+        }
+    }
+
+    private static void runUnlocked(DataSet target, Runnable runnable) {
+        boolean readOnly = target.isLocked();
+        if (readOnly) {
+            target.unlock();
+        }
+        try {
+            runnable.run();
+        } finally {
+            if (readOnly) {
+                target.lock();
+            }
+        }
+    }
+
+    private void evict(DataSet target, List<Long> tiles) {
+        Set<OsmPrimitive> candidates = new LinkedHashSet<>();
+        for (Long tile : tiles) {
+            for (PrimitiveData data : getPrimitives(tileBounds(tile))) {
+                OsmPrimitive p = target.getPrimitiveById(data);
+                if (p != null) {
+                    candidates.add(p);
+                }
+            }
+        }
+        // collected before taking the write lock, undo and redo take it while holding the handler monitor
+        Set<OsmPrimitive> commandPrimitives = getCommandPrimitives(target);
+        runUnlocked(target, () -> target.update(() -> {
+            // referrers first, a primitive is only removed once it is not used anymore
+            for (OsmPrimitiveType type : Arrays.asList(OsmPrimitiveType.RELATION, OsmPrimitiveType.WAY, OsmPrimitiveType.NODE)) {
+                for (OsmPrimitive p : candidates) {
+                    if (p.getType() == type && isEvictable(p, commandPrimitives)) {
+                        List<? extends OsmPrimitive> children = p instanceof Way ? ((Way) p).getNodes()
+                                : p instanceof Relation ? ((Relation) p).getMemberPrimitivesList() : Collections.emptyList();
+                        target.removePrimitive(p);
+                        // members outside of the materialized tiles
+                        children.stream().filter(c -> c.isIncomplete() && c.getDataSet() == target && c.getReferrers(false).isEmpty()
+                                && !commandPrimitives.contains(c)).forEach(target::removePrimitive);
+                    }
+                }
+            }
+        }));
+    }
+
+    /**
+     * Returns the primitives of the data set used by the commands which can be undone or redone. These commands would
+     * fail, or modify primitives no longer in the data set, if the primitives were evicted.
+     * @param target the data set
+     * @return the primitives of {@code target} used by the commands of the {@link UndoRedoHandler}
+     */
+    private static Set<OsmPrimitive> getCommandPrimitives(DataSet target) {
+        UndoRedoHandler handler = UndoRedoHandler.getInstance();
+        List<Command> commands = new ArrayList<>();
+        synchronized (handler) {
+            commands.addAll(handler.getUndoCommands());
+            commands.addAll(handler.getRedoCommands());
+        }
+        Set<OsmPrimitive> primitives = new HashSet<>();
+        for (Command command : commands) {
+            if (command.getAffectedDataSet() == target) {
+                primitives.addAll(command.getParticipatingPrimitives());
+            }
+        }
+        return primitives;
+    }
+
+    private boolean isEvictable(OsmPrimitive p, Set<OsmPrimitive> commandPrimitives) {
+        if (p.getDataSet() == null || p.isModified() || p.isNew() || p.isSelected() || !p.getReferrers(false).isEmpty()
+                || commandPrimitives.contains(p))
+            return false;
+        BBox box = p.getBBox();
+        return !box.isValid() || tiles(new Bounds(box.getBottomRightLat(), box.getTopLeftLon(), box.getTopLeftLat(), box.getBottomRightLon()))
+                .stream().noneMatch(materializedTiles::contains);
+    }
+
+    private static void addPrimitive(DataSet source, PrimitiveData data) {
+        if (data instanceof WayData) {
+            for (Long id : ((WayData) data).getNodeIds()) {
+                addIncomplete(source, new SimplePrimitiveId(id, OsmPrimitiveType.NODE));
+            }
+        } else if (data instanceof RelationData) {
+            for (RelationMemberData member : ((RelationData) data).getMembers()) {
+                addIncomplete(source, member);
+            }
+        }
+        OsmPrimitive osm = source.getPrimitiveById(data);
+        if (osm == null) {
+            osm = data.getType().newInstance(data.getUniqueId(), false);
+            source.addPrimitive(osm);
+        }
+        // completes the primitive
+        osm.load(data);
+    }
+
+    private static void addIncomplete(DataSet source, PrimitiveId id) {
+        if (source.getPrimitiveById(id) == null) {
+            source.addPrimitive(id.getType().newInstance(id.getUniqueId(), false));
+        }
+    }
+
+    /* ------------------------------------------------------------------------------------ */
+    /* metadata                                                                             */
+    /* ------------------------------------------------------------------------------------ */
+
+    /**
+     * Creates an empty data set with the metadata of the stored data: version, policies, data sources.
+     * @return a new empty data set
+     */
+    public DataSet createDataSet() {
+        DataSet ds = new DataSet();
+        ds.setVersion(version);
+        ds.setDownloadPolicy(downloadPolicy);
+        ds.setUploadPolicy(uploadPolicy);
+        dataSources.forEach(ds::addDataSource);
+        if (locked) {
+            ds.lock();
+        }
+        return ds;
+    }
+
+    /**
+     * Returns the data sources of the stored data.
+     * @return the data sources, unmodifiable
+     */
+    public List<DataSource> getDataSources() {
+        return dataSources;
+    }
+
+    /**
+     * Closes the store and deletes its files. The reads still running complete normally, but nothing is materialized
+     * anymore.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        for (MappedFile f : Arrays.asList(nodes, ways, wayNodes, tags, nodeGrid, wayBoxes, wayGrid)) {
+            if (f != null) {
+                f.close();
+            }
+        }
+        deleteDirectory(directory, lock);
+    }
+}
@@ -0,0 +1,172 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.openstreetmap.josm.tools.Logging;
+
+/**
+ * A file mapped in memory, used by {@link MappedDataStore} to keep data outside of the Java heap.
+ * <p>
+ * The file is either written sequentially and then {@linkplain #seal() sealed} for reading, or {@linkplain #allocate
+ * allocated} with a fixed length for random reads and writes. It is mapped in segments, because a single
+ * {@link MappedByteBuffer} is limited to 2 GB. The segments overlap by {@link #MAX_READ} bytes, so that a value or
+ * a byte array of at most this length can always be read from a single segment.
+ */
+final class MappedFile implements Closeable {
+
+    /** Maximum length of a single read */
+    static final int MAX_READ = 1 << 20;
+    private static final int DEFAULT_SEGMENT_SHIFT = 30;
+
+    private final File file;
+    private final int segmentShift;
+    private DataOutputStream out;
+    private long length;
+    private MappedByteBuffer[] segments;
+
+    private MappedFile(File file, int segmentShift) {
+        this.file = file;
+        this.segmentShift = segmentShift;
+    }
+
+    /**
+     * Creates a new file to be written sequentially.
+     * @param file the file
+     * @return the mapped file, to be {@linkplain #seal() sealed} when written
+     * @throws IOException in case of I/O error
+     */
+    static MappedFile create(File file) throws IOException {
+        return create(file, DEFAULT_SEGMENT_SHIFT);
+    }
+
+    static MappedFile create(File file, int segmentShift) throws IOException {
+        MappedFile result = new MappedFile(file, segmentShift);
+        result.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        return result;
+    }
+
+    /**
+     * Creates a new file of the given length, mapped for random reads and writes.
+     * @param file the file
+     * @param length the file length
+     * @return the mapped file
+     * @throws IOException in case of I/O error
+     */
+    static MappedFile allocate(File file, long length) throws IOException {
+        MappedFile result = new MappedFile(file, DEFAULT_SEGMENT_SHIFT);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+            result.length = length;
+            result.map(raf.getChannel(), MapMode.READ_WRITE);
+        }
+        return result;
+    }
+
+    private void map(FileChannel channel, MapMode mode) throws IOException {
+        long segmentSize = 1L << segmentShift;
+        int count = (int) ((length + segmentSize - 1) >>> segmentShift);
+        segments = new MappedByteBuffer[Math.max(1, count)];
+        for (int i = 0; i < segments.length; i++) {
+            long start = i * segmentSize;
+            segments[i] = channel.map(mode, start, Math.min(segmentSize + MAX_READ, length - start));
+        }
+    }
+
+    /**
+     * Returns the current length of the file.
+     * @return the current length of the file, i.e. the position of the next appended value
+     */
+    long length() {
+        return length;
+    }
+
+    void appendLong(long v) throws IOException {
+        out.writeLong(v);
+        length += 8;
+    }
+
+    void appendInt(int v) throws IOException {
+        out.writeInt(v);
+        length += 4;
+    }
+
+    void appendShort(short v) throws IOException {
+        out.writeShort(v);
+        length += 2;
+    }
+
+    void appendBytes(byte[] b) throws IOException {
+        out.write(b);
+        length += b.length;
+    }
+
+    /**
+     * Ends the sequential writing and maps the file for reading.
+     * @throws IOException in case of I/O error
+     */
+    void seal() throws IOException {
+        out.close();
+        out = null;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            map(raf.getChannel(), MapMode.READ_ONLY);
+        }
+    }
+
+    private ByteBuffer segment(long position) {
+        return segments[(int) (position >>> segmentShift)];
+    }
+
+    private int offset(long position) {
+        return (int) (position & ((1L << segmentShift) - 1));
+    }
+
+    long getLong(long position) {
+        return segment(position).getLong(offset(position));
+    }
+
+    int getInt(long position) {
+        return segment(position).getInt(offset(position));
+    }
+
+    short getShort(long position) {
+        return segment(position).getShort(offset(position));
+    }
+
+    void getBytes(long position, byte[] dst) {
+        ByteBuffer b = segment(position).duplicate();
+        b.position(offset(position));
+        b.get(dst);
+    }
+
+    void putInt(long position, int v) {
+        segment(position).putInt(offset(position), v);
+    }
+
+    /**
+     * Deletes the file. The segments are kept, so that the reads still running in other threads complete: they are
+     * unmapped by the garbage collector once this object is not referenced anymore. Until then the file may not be
+     * deletable on some platforms, it is deleted on exit in that case.
+     */
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        if (file.exists() && !file.delete()) {
+            Logging.debug("Unable to delete {0} now, will delete it on exit", file);
+            file.deleteOnExit();
+        }
+    }
+}
@@ -25,20 +25,39 @@ public final class Node extends OsmPrimitive implements INode {
     static final UniqueIdGenerator idGenerator = new UniqueIdGenerator();
 
     /*
-     * We "inline" lat/lon rather than using a LatLon-object => reduces memory footprint
+     * Coordinates and cached projected coordinates of nodes in a data set are kept in the columnar store of the
+     * data set rather than in fields => reduces memory footprint. Other nodes keep them in plain fields.
      */
-    private double lat = Double.NaN;
-    private double lon = Double.NaN;
-
-    /*
-     * the cached projected coordinates
+    /**
+     * The slot of this node in the {@link NodeCoordinateStore} of its data set, or -1.
      */
-    private double east = Double.NaN;
-    private double north = Double.NaN;
+    private int coorSlot = -1;
     /**
-     * The cache key to use for {@link #east} and {@link #north}.
+     * The coordinates of this node while it is not in a data set, or {@code null}.
      */
-    private Object eastNorthCacheKey;
+    private DetachedCoor detachedCoor;
+
+    /**
+     * Coordinates of a node that is not in a data set.
+     */
+    private static final class DetachedCoor {
+        final double lat;
+        final double lon;
+        /*
+         * the cached projected coordinates
+         */
+        double east = Double.NaN;
+        double north = Double.NaN;
+        /**
+         * The cache key to use for {@link #east} and {@link #north}.
+         */
+        Object eastNorthCacheKey;
+
+        DetachedCoor(double lat, double lon) {
+            this.lat = lat;
+            this.lon = lon;
+        }
+    }
 
     @Override
     public void setCoor(LatLon coor) {
@@ -72,33 +91,61 @@ public final class Node extends OsmPrimitive implements INode {
         if (!isLatLonKnown()) {
             return null;
         } else {
-            return new LatLon(lat, lon);
+            return new LatLon(lat(), lon());
         }
     }
 
     @Override
     public double lat() {
-        return lat;
+        DetachedCoor detached = detachedCoor;
+        if (detached != null) {
+            return detached.lat;
+        }
+        NodeCoordinateStore store = getCoorStore();
+        return store != null ? store.lat(coorSlot) : Double.NaN;
     }
 
     @Override
     public double lon() {
-        return lon;
+        DetachedCoor detached = detachedCoor;
+        if (detached != null) {
+            return detached.lon;
+        }
+        NodeCoordinateStore store = getCoorStore();
+        return store != null ? store.lon(coorSlot) : Double.NaN;
+    }
+
+    /**
+     * Returns the store holding the coordinates of this node.
+     * @return the store of the data set, or {@code null} if this node is not in a data set or has no known coordinates
+     */
+    private NodeCoordinateStore getCoorStore() {
+        DataSet ds = getDataSet();
+        return ds != null && coorSlot >= 0 ? ds.getNodeCoordinates() : null;
     }
 
     @Override
     public EastNorth getEastNorth(Projecting projection) {
         if (!isLatLonKnown()) return null;
 
-        if (Double.isNaN(east) || Double.isNaN(north) || !Objects.equals(projection.getCacheKey(), eastNorthCacheKey)) {
+        DetachedCoor detached = detachedCoor;
+        NodeCoordinateStore store = getCoorStore();
+        if (detached == null && store != null) {
+            // fills the cache of the projected node coordinates if they haven't been calculated yet
+            return store.getEastNorth(coorSlot, projection, this);
+        } else if (detached == null) {
+            return projection.latlon2eastNorth(this);
+        }
+        if (Double.isNaN(detached.east) || Double.isNaN(detached.north)
+                || !Objects.equals(projection.getCacheKey(), detached.eastNorthCacheKey)) {
             // projected coordinates haven't been calculated yet,
             // so fill the cache of the projected node coordinates
             EastNorth en = projection.latlon2eastNorth(this);
-            this.east = en.east();
-            this.north = en.north();
-            this.eastNorthCacheKey = projection.getCacheKey();
+            detached.east = en.east();
+            detached.north = en.north();
+            detached.eastNorthCacheKey = projection.getCacheKey();
         }
-        return new EastNorth(east, north);
+        return new EastNorth(detached.east, detached.north);
     }
 
     /**
@@ -107,27 +154,48 @@ public final class Node extends OsmPrimitive implements INode {
      * @param eastNorth east/north
      */
     void setCoorInternal(LatLon coor, EastNorth eastNorth) {
-        if (coor != null) {
-            this.lat = coor.lat();
-            this.lon = coor.lon();
-            invalidateEastNorthCache();
-        } else if (eastNorth != null) {
-            LatLon ll = ProjectionRegistry.getProjection().eastNorth2latlon(eastNorth);
-            this.lat = ll.lat();
-            this.lon = ll.lon();
-            this.east = eastNorth.east();
-            this.north = eastNorth.north();
-            this.eastNorthCacheKey = ProjectionRegistry.getProjection().getCacheKey();
+        if (coor != null || eastNorth != null) {
+            LatLon ll = coor != null ? coor : ProjectionRegistry.getProjection().eastNorth2latlon(eastNorth);
+            DataSet ds = getDataSet();
+            if (ds == null) {
+                DetachedCoor detached = new DetachedCoor(ll.lat(), ll.lon());
+                if (coor == null) {
+                    detached.east = eastNorth.east();
+                    detached.north = eastNorth.north();
+                    detached.eastNorthCacheKey = ProjectionRegistry.getProjection().getCacheKey();
+                }
+                detachedCoor = detached;
+            } else {
+                NodeCoordinateStore store = ds.getNodeCoordinates();
+                if (coorSlot < 0) {
+                    coorSlot = store.allocate();
+                }
+                store.setLatLon(coorSlot, ll.lat(), ll.lon());
+                if (coor == null) {
+                    store.cacheEastNorth(coorSlot, ProjectionRegistry.getProjection().getCacheKey(), eastNorth.east(), eastNorth.north());
+                }
+            }
         } else {
-            this.lat = Double.NaN;
-            this.lon = Double.NaN;
-            invalidateEastNorthCache();
+            detachedCoor = null;
+            releaseCoorSlot();
             if (isVisible()) {
                 setIncomplete(true);
             }
         }
     }
 
+    /**
+     * Releases the slot of this node in the store of its data set, if any.
+     */
+    private void releaseCoorSlot() {
+        NodeCoordinateStore store = getCoorStore();
+        if (store != null) {
+            int slot = coorSlot;
+            coorSlot = -1;
+            store.release(slot);
+        }
+    }
+
     Node(long id, boolean allowNegative) {
         super(id, allowNegative);
     }
@@ -200,7 +268,29 @@ public final class Node extends OsmPrimitive implements INode {
 
     @Override
     void setDataset(DataSet dataSet) {
-        super.setDataset(dataSet);
+        DataSet old = getDataSet();
+        if (dataSet == null && old != null) {
+            // the coordinates leave the store of the data set, which reuses the slot
+            if (coorSlot >= 0) {
+                NodeCoordinateStore store = old.getNodeCoordinates();
+                detachedCoor = new DetachedCoor(store.lat(coorSlot), store.lon(coorSlot));
+                releaseCoorSlot();
+            }
+            super.setDataset(null);
+        } else if (dataSet != null && old == null) {
+            DetachedCoor detached = detachedCoor;
+            int slot = -1;
+            if (detached != null) {
+                NodeCoordinateStore store = dataSet.getNodeCoordinates();
+                slot = store.allocate();
+                store.setLatLon(slot, detached.lat, detached.lon);
+            }
+            super.setDataset(dataSet);
+            coorSlot = slot;
+            detachedCoor = null;
+        } else {
+            super.setDataset(dataSet);
+        }
         if (!isIncomplete() && isVisible() && !isLatLonKnown())
             throw new DataIntegrityProblemException("Complete node with null coordinates: " + toString());
     }
@@ -279,7 +369,7 @@ public final class Node extends OsmPrimitive implements INode {
 
     @Override
     public String toString() {
-        String coorDesc = isLatLonKnown() ? "lat="+lat+",lon="+lon : "";
+        String coorDesc = isLatLonKnown() ? "lat="+lat()+",lon="+lon() : "";
         return "{Node id=" + getUniqueId() + " version=" + getVersion() + ' ' + getFlagsAsString() + ' ' + coorDesc+'}';
     }
 
@@ -304,12 +394,12 @@ public final class Node extends OsmPrimitive implements INode {
 
     @Override
     public BBox getBBox() {
-        return new BBox(lon, lat);
+        return new BBox(lon(), lat());
     }
 
     @Override
     protected void addToBBox(BBox box, Set<PrimitiveId> visited) {
-        box.add(lon, lat);
+        box.add(lon(), lat());
     }
 
     @Override
@@ -334,9 +424,16 @@ public final class Node extends OsmPrimitive implements INode {
      * next time.
      */
     public void invalidateEastNorthCache() {
-        this.east = Double.NaN;
-        this.north = Double.NaN;
-        this.eastNorthCacheKey = null;
+        DetachedCoor detached = detachedCoor;
+        if (detached != null) {
+            detached.east = Double.NaN;
+            detached.north = Double.NaN;
+            detached.eastNorthCacheKey = null;
+        }
+        NodeCoordinateStore store = getCoorStore();
+        if (store != null) {
+            store.invalidateEastNorth(coorSlot);
+        }
     }
 
     @Override
@@ -0,0 +1,328 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.ILatLon;
+import org.openstreetmap.josm.data.projection.Projecting;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.data.projection.ProjectionRegistry;
+
+/**
+ * Columnar storage of node coordinates.
+ * <p>
+ * Each {@link DataSet} owns one store, every node of the data set with known coordinates is assigned a dense slot in it.
+ * The slot is released when the node leaves the data set.
+ * Lat/lon are kept as fixed-point integers with the OSM precision of 7 decimals. Coordinates that cannot be
+ * represented exactly that way (e.g. nodes moved in the editor) are kept at full precision in two compact
+ * {@code double} columns, the integer columns of the slot then hold the index of the coordinates in these columns.
+ * The projected east/north coordinates are cached in two {@code double} columns sharing a single cache key.
+ * <p>
+ * Writes are synchronized. Reads of fixed-point coordinates and of the east/north cache are not: columns are only
+ * replaced as a whole, so readers always see a consistent set of columns, but (as for the former per-node fields)
+ * no guarantee is given on the atomicity of a lat/lon pair. Reads of full precision coordinates are synchronized,
+ * as their index may be reused at any time.
+ */
+final class NodeCoordinateStore {
+
+    /** Column value for an unknown coordinate */
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+    /**
+     * Column values from {@code UNKNOWN + 1} to {@code EXACT} are indexes of full precision coordinates,
+     * {@code EXACT} being index 0. Greater values are fixed-point coordinates (up to ±190°).
+     */
+    private static final int EXACT = -1_900_000_000;
+    private static final int MAX_EXACT_COUNT = EXACT - UNKNOWN;
+    private static final double FIXED_POINT_SCALE = 1e7;
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int[] NO_SLOTS = new int[0];
+    private static final double[] NO_COORDINATES = new double[0];
+
+    /**
+     * One consistent set of columns. Replaced as a whole when the store grows or the projection changes.
+     */
+    private static final class Columns {
+        final int[] lat;
+        final int[] lon;
+        final double[] exactLat;
+        final double[] exactLon;
+        final double[] east;
+        final double[] north;
+        final Object eastNorthCacheKey;
+
+        Columns(int[] lat, int[] lon, double[] exactLat, double[] exactLon, double[] east, double[] north, Object eastNorthCacheKey) {
+            this.lat = lat;
+            this.lon = lon;
+            this.exactLat = exactLat;
+            this.exactLon = exactLon;
+            this.east = east;
+            this.north = north;
+            this.eastNorthCacheKey = eastNorthCacheKey;
+        }
+
+        Columns withEastNorth(double[] east, double[] north, Object eastNorthCacheKey) {
+            return new Columns(lat, lon, exactLat, exactLon, east, north, eastNorthCacheKey);
+        }
+    }
+
+    private volatile Columns columns;
+    private int size;
+    private int[] freeSlots = NO_SLOTS;
+    private int freeCount;
+    private int exactSize;
+    private int[] freeExact = NO_SLOTS;
+    private int freeExactCount;
+
+    /**
+     * Constructs a new {@code NodeCoordinateStore} with default capacity.
+     */
+    NodeCoordinateStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new {@code NodeCoordinateStore}.
+     * @param capacity initial number of slots
+     */
+    NodeCoordinateStore(int capacity) {
+        int[] lat = new int[Math.max(1, capacity)];
+        Arrays.fill(lat, UNKNOWN);
+        columns = new Columns(lat, lat.clone(), NO_COORDINATES, NO_COORDINATES, null, null, null);
+    }
+
+    /**
+     * Allocates a new slot. Its coordinates are unknown.
+     * @return the slot
+     */
+    synchronized int allocate() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        Columns c = columns;
+        if (size == c.lat.length) {
+            int capacity = Math.max(size + 1, size + (size >> 1));
+            int[] lat = Arrays.copyOf(c.lat, capacity);
+            int[] lon = Arrays.copyOf(c.lon, capacity);
+            Arrays.fill(lat, size, capacity, UNKNOWN);
+            Arrays.fill(lon, size, capacity, UNKNOWN);
+            columns = new Columns(lat, lon, c.exactLat, c.exactLon, grow(c.east, capacity), grow(c.north, capacity), c.eastNorthCacheKey);
+        }
+        return size++;
+    }
+
+    private static double[] grow(double[] column, int capacity) {
+        if (column == null) {
+            return null;
+        }
+        double[] result = Arrays.copyOf(column, capacity);
+        Arrays.fill(result, column.length, capacity, Double.NaN);
+        return result;
+    }
+
+    /**
+     * Releases the given slot, so that it can be reused by {@link #allocate()}.
+     * @param slot the slot, must not be used anymore by the caller
+     */
+    synchronized void release(int slot) {
+        setLatLon(slot, Double.NaN, Double.NaN);
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, Math.max(16, freeCount * 2));
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * Returns the number of slots currently in use.
+     * @return the number of slots currently in use
+     */
+    synchronized int size() {
+        return size - freeCount;
+    }
+
+    /**
+     * Returns the number of slots currently holding full precision coordinates.
+     * @return the number of slots currently holding full precision coordinates
+     */
+    synchronized int exactSize() {
+        return exactSize - freeExactCount;
+    }
+
+    /**
+     * Sets the coordinates of a slot and invalidates its cached east/north coordinates.
+     * @param slot the slot
+     * @param lat latitude, or {@code NaN}
+     * @param lon longitude, or {@code NaN}
+     */
+    synchronized void setLatLon(int slot, double lat, double lon) {
+        invalidateEastNorth(slot);
+        Columns c = columns;
+        int index = c.lat[slot] > UNKNOWN && c.lat[slot] <= EXACT ? EXACT - c.lat[slot] : -1;
+        int fixedLat = toFixedPoint(lat);
+        int fixedLon = toFixedPoint(lon);
+        if (fixedLat != EXACT && fixedLon != EXACT) {
+            c.lat[slot] = fixedLat;
+            c.lon[slot] = fixedLon;
+            if (index >= 0) {
+                releaseExact(index);
+            }
+        } else {
+            if (index < 0) {
+                index = allocateExact();
+                c = columns;
+            }
+            c.exactLat[index] = lat;
+            c.exactLon[index] = lon;
+            c.lat[slot] = EXACT - index;
+            c.lon[slot] = EXACT - index;
+        }
+    }
+
+    private int allocateExact() {
+        if (freeExactCount > 0) {
+            return freeExact[--freeExactCount];
+        }
+        Columns c = columns;
+        if (exactSize == c.exactLat.length) {
+            if (exactSize == MAX_EXACT_COUNT)
+                throw new IllegalStateException("Too many nodes with full precision coordinates: " + exactSize);
+            int capacity = (int) Math.min(MAX_EXACT_COUNT, Math.max(16L, exactSize + (long) (exactSize >> 1)));
+            columns = new Columns(c.lat, c.lon, Arrays.copyOf(c.exactLat, capacity), Arrays.copyOf(c.exactLon, capacity),
+                    c.east, c.north, c.eastNorthCacheKey);
+        }
+        return exactSize++;
+    }
+
+    private void releaseExact(int index) {
+        if (freeExactCount == freeExact.length) {
+            freeExact = Arrays.copyOf(freeExact, Math.max(16, freeExactCount * 2));
+        }
+        freeExact[freeExactCount++] = index;
+    }
+
+    private static int toFixedPoint(double value) {
+        if (Double.isNaN(value)) {
+            return UNKNOWN;
+        }
+        long fixed = Math.round(value * FIXED_POINT_SCALE);
+        if (fixed > EXACT && fixed <= Integer.MAX_VALUE
+                && Double.doubleToLongBits(fixed / FIXED_POINT_SCALE) == Double.doubleToLongBits(value)) {
+            return (int) fixed;
+        }
+        return EXACT;
+    }
+
+    /**
+     * Returns the latitude of a slot.
+     * @param slot the slot
+     * @return the latitude, or {@code NaN} if unknown
+     */
+    double lat(int slot) {
+        int value = columns.lat[slot];
+        if (value > EXACT) {
+            return value / FIXED_POINT_SCALE;
+        }
+        return value == UNKNOWN ? Double.NaN : getExact(slot, true);
+    }
+
+    /**
+     * Returns the longitude of a slot.
+     * @param slot the slot
+     * @return the longitude, or {@code NaN} if unknown
+     */
+    double lon(int slot) {
+        int value = columns.lon[slot];
+        if (value > EXACT) {
+            return value / FIXED_POINT_SCALE;
+        }
+        return value == UNKNOWN ? Double.NaN : getExact(slot, false);
+    }
+
+    private synchronized double getExact(int slot, boolean lat) {
+        // read again, the coordinates may have been replaced concurrently
+        Columns c = columns;
+        int value = lat ? c.lat[slot] : c.lon[slot];
+        if (value > EXACT) {
+            return value / FIXED_POINT_SCALE;
+        } else if (value == UNKNOWN) {
+            return Double.NaN;
+        }
+        return lat ? c.exactLat[EXACT - value] : c.exactLon[EXACT - value];
+    }
+
+    /**
+     * Returns the projected coordinates of a slot, computing and caching them if necessary.
+     * @param slot the slot
+     * @param projection the projection to use
+     * @param coor the lat/lon coordinates of the slot
+     * @return the east/north coordinates
+     */
+    EastNorth getEastNorth(int slot, Projecting projection, ILatLon coor) {
+        Object cacheKey = projection.getCacheKey();
+        Columns c = columns;
+        if (c.east != null && Objects.equals(cacheKey, c.eastNorthCacheKey)) {
+            double east = c.east[slot];
+            double north = c.north[slot];
+            if (!Double.isNaN(east) && !Double.isNaN(north)) {
+                return new EastNorth(east, north);
+            }
+        }
+        EastNorth en = projection.latlon2eastNorth(coor);
+        cacheEastNorth(slot, cacheKey, en.east(), en.north());
+        return en;
+    }
+
+    /**
+     * Caches the projected coordinates of a slot.
+     * <p>
+     * All slots share the same cache key. Requesting another projection than the cached one only resets the
+     * whole cache if it is the current projection, so that occasional requests for other projections do not
+     * thrash the cache.
+     * @param slot the slot
+     * @param cacheKey the cache key of the projection
+     * @param east east coordinate
+     * @param north north coordinate
+     */
+    synchronized void cacheEastNorth(int slot, Object cacheKey, double east, double north) {
+        Columns c = columns;
+        if (!Objects.equals(cacheKey, c.eastNorthCacheKey)) {
+            if (c.eastNorthCacheKey != null && !isCurrentProjection(cacheKey)) {
+                return;
+            }
+            c = c.withEastNorth(null, null, cacheKey);
+        }
+        if (c.east == null) {
+            double[] eastColumn = new double[c.lat.length];
+            Arrays.fill(eastColumn, Double.NaN);
+            c = c.withEastNorth(eastColumn, eastColumn.clone(), cacheKey);
+        }
+        columns = c;
+        c.east[slot] = east;
+        c.north[slot] = north;
+    }
+
+    private static boolean isCurrentProjection(Object cacheKey) {
+        Projection projection = ProjectionRegistry.getProjection();
+        return projection == null || Objects.equals(projection.getCacheKey(), cacheKey);
+    }
+
+    /**
+     * Invalidates the cached projected coordinates of a slot.
+     * @param slot the slot
+     */
+    synchronized void invalidateEastNorth(int slot) {
+        Columns c = columns;
+        if (c.east != null) {
+            c.east[slot] = Double.NaN;
+            c.north[slot] = Double.NaN;
+        }
+    }
+
+    /**
+     * Invalidates the cached projected coordinates of all slots.
+     */
+    synchronized void invalidateEastNorthCache() {
+        columns = columns.withEastNorth(null, null, null);
+    }
+}
@@ -211,6 +211,7 @@ public abstract class OsmPrimitive extends AbstractPrimitive implements Template
     protected boolean writeLock() {
         if (dataSet != null) {
             dataSet.beginUpdate();
+            dataSet.snapshotPrimitiveChanged(this);
             return true;
         } else
             return false;
@@ -258,6 +259,16 @@ public abstract class OsmPrimitive extends AbstractPrimitive implements Template
         }
     }
 
+    /**
+     * Sets the id and the version of this primitive without reindexing it. Only to be used by
+     * {@link DataSet#setOsmIds}, which rekeys the indexes of the data set itself.
+     * @param id the id. &gt; 0 required
+     * @param version the version &gt; 0 required
+     */
+    void setOsmIdNoReindex(long id, int version) {
+        super.setOsmId(id, version);
+    }
+
     /**
      * Clears the metadata, including id and version known to the OSM API.
      * The id is a new unique id. The version, changeset and timestamp are set to 0.
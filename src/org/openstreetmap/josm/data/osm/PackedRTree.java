@@ -0,0 +1,587 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An R-tree of primitives, packed with the Sort-Tile-Recursive (STR) algorithm.
+ * <p>
+ * Contrary to {@link QuadBuckets}, nodes are not aligned on fixed tiles: every node is as large as the bboxes of its
+ * entries, so that long ways or large relations do not pile up near the root.
+ * <p>
+ * Added primitives are first collected in a pending list, which is searched linearly. The tree is bulk loaded again
+ * from scratch when the pending list grows larger than the tree (e.g. when a file is loaded), otherwise pending
+ * primitives are inserted one by one into the tree when {@link #flush()} is called, at the end of a batch of
+ * modifications. Removing primitives only shrinks the nodes, underfull nodes are not merged.
+ * <p>
+ * Note: bbox of primitives added to this tree has to stay the same. In case of coordinate change, primitive must
+ * be removed and re-added.
+ * <p>
+ * This class is not thread safe.
+ * @param <T> type of primitives
+ */
+public class PackedRTree<T extends IPrimitive> extends AbstractCollection<T> implements SpatialIndex<T> {
+
+    /** Maximum number of entries of a node */
+    static final int MAX_ENTRIES = 16;
+    /** Minimum number of pending primitives to trigger a bulk load */
+    static final int MIN_BULK_LOAD = 256;
+
+    private static final int XMIN = 0;
+    private static final int YMIN = 1;
+    private static final int XMAX = 2;
+    private static final int YMAX = 3;
+
+    /**
+     * A node of the tree. Leaves hold primitives and their bboxes, other nodes hold child nodes.
+     */
+    private static final class RNode {
+        private final boolean leaf;
+        private final Object[] entries = new Object[MAX_ENTRIES + 1];
+        /** bboxes of the entries of a leaf, 4 values per entry */
+        private final double[] boxes;
+        private RNode parent;
+        private int count;
+        private double xmin = Double.POSITIVE_INFINITY;
+        private double ymin = Double.POSITIVE_INFINITY;
+        private double xmax = Double.NEGATIVE_INFINITY;
+        private double ymax = Double.NEGATIVE_INFINITY;
+
+        RNode(boolean leaf) {
+            this.leaf = leaf;
+            this.boxes = leaf ? new double[4 * (MAX_ENTRIES + 1)] : null;
+        }
+
+        double entryXmin(int i) {
+            return leaf ? boxes[4 * i + XMIN] : ((RNode) entries[i]).xmin;
+        }
+
+        double entryYmin(int i) {
+            return leaf ? boxes[4 * i + YMIN] : ((RNode) entries[i]).ymin;
+        }
+
+        double entryXmax(int i) {
+            return leaf ? boxes[4 * i + XMAX] : ((RNode) entries[i]).xmax;
+        }
+
+        double entryYmax(int i) {
+            return leaf ? boxes[4 * i + YMAX] : ((RNode) entries[i]).ymax;
+        }
+
+        void addEntry(Object entry, double exmin, double eymin, double exmax, double eymax) {
+            entries[count] = entry;
+            if (leaf) {
+                boxes[4 * count + XMIN] = exmin;
+                boxes[4 * count + YMIN] = eymin;
+                boxes[4 * count + XMAX] = exmax;
+                boxes[4 * count + YMAX] = eymax;
+            } else {
+                ((RNode) entry).parent = this;
+            }
+            count++;
+            extend(exmin, eymin, exmax, eymax);
+        }
+
+        void addChild(RNode child) {
+            addEntry(child, child.xmin, child.ymin, child.xmax, child.ymax);
+        }
+
+        void removeEntry(int i) {
+            count--;
+            entries[i] = entries[count];
+            entries[count] = null;
+            if (leaf) {
+                System.arraycopy(boxes, 4 * count, boxes, 4 * i, 4);
+            }
+        }
+
+        int indexOf(Object entry) {
+            for (int i = 0; i < count; i++) {
+                if (entries[i] == entry) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void extend(double exmin, double eymin, double exmax, double eymax) {
+            xmin = Math.min(xmin, exmin);
+            ymin = Math.min(ymin, eymin);
+            xmax = Math.max(xmax, exmax);
+            ymax = Math.max(ymax, eymax);
+        }
+
+        void recomputeBounds() {
+            xmin = Double.POSITIVE_INFINITY;
+            ymin = Double.POSITIVE_INFINITY;
+            xmax = Double.NEGATIVE_INFINITY;
+            ymax = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                extend(entryXmin(i), entryYmin(i), entryXmax(i), entryYmax(i));
+            }
+        }
+
+        boolean intersects(BBox b) {
+            return xmin <= b.xmax && xmax >= b.xmin && ymin <= b.ymax && ymax >= b.ymin;
+        }
+
+        boolean bounds(BBox b) {
+            return xmin <= b.xmin && xmax >= b.xmax && ymin <= b.ymin && ymax >= b.ymax;
+        }
+
+        double enlargement(BBox b) {
+            double area = (xmax - xmin) * (ymax - ymin);
+            double enlarged = (Math.max(xmax, b.xmax) - Math.min(xmin, b.xmin)) * (Math.max(ymax, b.ymax) - Math.min(ymin, b.ymin));
+            return enlarged - area;
+        }
+
+        double area() {
+            return (xmax - xmin) * (ymax - ymin);
+        }
+    }
+
+    private RNode root;
+    /** number of primitives in the tree */
+    private int treeSize;
+    private List<T> pending;
+    private Collection<T> invalidBBoxPrimitives;
+
+    /**
+     * Constructs a new {@code PackedRTree}.
+     */
+    public PackedRTree() {
+        clear();
+    }
+
+    @Override
+    public final void clear() {
+        root = new RNode(true);
+        treeSize = 0;
+        pending = new ArrayList<>();
+        invalidBBoxPrimitives = new LinkedHashSet<>();
+    }
+
+    @Override
+    public boolean add(T t) {
+        if (t.getBBox().isValid()) {
+            pending.add(t);
+            if (pending.size() >= MIN_BULK_LOAD && pending.size() >= treeSize) {
+                bulkLoad();
+            }
+        } else {
+            invalidBBoxPrimitives.add(t);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        @SuppressWarnings("unchecked")
+        T t = (T) o;
+        BBox bbox = t.getBBox();
+        if (bbox.isValid()) {
+            RNode leaf = findLeaf(root, t, bbox);
+            if (leaf != null) {
+                leaf.removeEntry(leaf.indexOf(t));
+                treeSize--;
+                condense(leaf);
+                return true;
+            }
+            if (pending.remove(t)) {
+                return true;
+            }
+        }
+        return invalidBBoxPrimitives.remove(t);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        @SuppressWarnings("unchecked")
+        T t = (T) o;
+        BBox bbox = t.getBBox();
+        if (!bbox.isValid()) {
+            return invalidBBoxPrimitives.contains(t);
+        }
+        return findLeaf(root, t, bbox) != null || pending.contains(t);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> objects) {
+        return objects.stream().map(this::remove).reduce(false, (a, b) -> a || b);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> objects) {
+        List<T> toRemove = new ArrayList<>();
+        for (T t : this) {
+            if (!objects.contains(t)) {
+                toRemove.add(t);
+            }
+        }
+        return removeAll(toRemove);
+    }
+
+    @Override
+    public int size() {
+        return treeSize + pending.size() + invalidBBoxPrimitives.size();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new RTreeIterator();
+    }
+
+    @Override
+    public List<T> search(BBox searchBbox) {
+        List<T> result = new ArrayList<>();
+        if (searchBbox == null || !searchBbox.isValid()) {
+            return result;
+        }
+        if (treeSize > 0 && root.intersects(searchBbox)) {
+            search(root, searchBbox, result);
+        }
+        for (T t : pending) {
+            if (t.getBBox().intersects(searchBbox)) {
+                result.add(t);
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void search(RNode node, BBox b, List<T> result) {
+        if (node.leaf) {
+            double[] boxes = node.boxes;
+            for (int i = 0; i < node.count; i++) {
+                int j = 4 * i;
+                if (boxes[j + XMIN] <= b.xmax && boxes[j + XMAX] >= b.xmin && boxes[j + YMIN] <= b.ymax && boxes[j + YMAX] >= b.ymin) {
+                    result.add((T) node.entries[i]);
+                }
+            }
+        } else {
+            for (int i = 0; i < node.count; i++) {
+                RNode child = (RNode) node.entries[i];
+                if (child.intersects(b)) {
+                    search(child, b, result);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (pending.size() >= MIN_BULK_LOAD && pending.size() >= treeSize) {
+            bulkLoad();
+        } else {
+            for (T t : pending) {
+                insert(t, t.getBBox());
+            }
+            pending.clear();
+        }
+    }
+
+    // ---------------- Incremental updates
+
+    private RNode findLeaf(RNode node, T t, BBox bbox) {
+        if (!node.bounds(bbox)) {
+            return null;
+        }
+        if (node.leaf) {
+            return node.indexOf(t) >= 0 ? node : null;
+        }
+        for (int i = 0; i < node.count; i++) {
+            RNode leaf = findLeaf((RNode) node.entries[i], t, bbox);
+            if (leaf != null) {
+                return leaf;
+            }
+        }
+        return null;
+    }
+
+    private void insert(T t, BBox bbox) {
+        RNode node = root;
+        while (!node.leaf) {
+            RNode best = null;
+            double bestEnlargement = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < node.count; i++) {
+                RNode child = (RNode) node.entries[i];
+                double enlargement = child.enlargement(bbox);
+                if (enlargement < bestEnlargement || (enlargement == bestEnlargement && child.area() < best.area())) {
+                    best = child;
+                    bestEnlargement = enlargement;
+                }
+            }
+            node = best;
+        }
+        node.addEntry(t, bbox.xmin, bbox.ymin, bbox.xmax, bbox.ymax);
+        treeSize++;
+        for (RNode n = node.parent; n != null; n = n.parent) {
+            n.extend(bbox.xmin, bbox.ymin, bbox.xmax, bbox.ymax);
+        }
+        while (node != null && node.count > MAX_ENTRIES) {
+            node = split(node);
+        }
+    }
+
+    /**
+     * Splits an overflowing node in two halves along its longest axis.
+     * @param node the node to split
+     * @return the parent of the node, which may overflow in turn
+     */
+    private RNode split(RNode node) {
+        boolean alongX = node.xmax - node.xmin >= node.ymax - node.ymin;
+        long[] order = new long[node.count];
+        for (int i = 0; i < node.count; i++) {
+            double center = alongX ? (node.entryXmin(i) + node.entryXmax(i)) / 2 : (node.entryYmin(i) + node.entryYmax(i)) / 2;
+            order[i] = sortKey(center, i);
+        }
+        Arrays.sort(order);
+        Object[] entries = node.entries.clone();
+        double[] boxes = node.boxes != null ? node.boxes.clone() : null;
+        RNode first = node;
+        RNode second = new RNode(node.leaf);
+        int half = order.length / 2;
+        first.count = 0;
+        Arrays.fill(first.entries, null);
+        first.recomputeBounds();
+        for (int k = 0; k < order.length; k++) {
+            int i = (int) order[k];
+            RNode target = k < half ? first : second;
+            if (node.leaf) {
+                target.addEntry(entries[i], boxes[4 * i + XMIN], boxes[4 * i + YMIN], boxes[4 * i + XMAX], boxes[4 * i + YMAX]);
+            } else {
+                target.addChild((RNode) entries[i]);
+            }
+        }
+        RNode parent = node.parent;
+        if (parent == null) {
+            root = new RNode(false);
+            root.addChild(first);
+            root.addChild(second);
+            return null;
+        }
+        parent.addChild(second);
+        return parent;
+    }
+
+    /**
+     * Removes empty nodes and shrinks the bounds of the ancestors of a node an entry has been removed from.
+     * @param node the node
+     */
+    private void condense(RNode node) {
+        RNode n = node;
+        while (n.parent != null && n.count == 0) {
+            RNode parent = n.parent;
+            parent.removeEntry(parent.indexOf(n));
+            n = parent;
+        }
+        for (; n != null; n = n.parent) {
+            n.recomputeBounds();
+        }
+        while (!root.leaf && root.count == 1) {
+            root = (RNode) root.entries[0];
+            root.parent = null;
+        }
+        if (!root.leaf && root.count == 0) {
+            root = new RNode(true);
+        }
+    }
+
+    // ---------------- Bulk loading
+
+    /**
+     * Builds the tree again from all primitives of the tree and the pending list, using Sort-Tile-Recursive packing.
+     */
+    private void bulkLoad() {
+        int n = treeSize + pending.size();
+        Object[] items = new Object[n];
+        double[] boxes = new double[4 * n];
+        int count = collect(root, items, boxes, 0);
+        for (T t : pending) {
+            BBox b = t.getBBox();
+            items[count] = t;
+            boxes[4 * count + XMIN] = b.xmin;
+            boxes[4 * count + YMIN] = b.ymin;
+            boxes[4 * count + XMAX] = b.xmax;
+            boxes[4 * count + YMAX] = b.ymax;
+            count++;
+        }
+        pending.clear();
+
+        List<RNode> level = new ArrayList<>();
+        int[] order = strOrder(boxes, n);
+        for (int k = 0; k < n; k += MAX_ENTRIES) {
+            RNode leaf = new RNode(true);
+            for (int j = k; j < Math.min(n, k + MAX_ENTRIES); j++) {
+                int i = order[j];
+                leaf.addEntry(items[i], boxes[4 * i + XMIN], boxes[4 * i + YMIN], boxes[4 * i + XMAX], boxes[4 * i + YMAX]);
+            }
+            level.add(leaf);
+        }
+        while (level.size() > 1) {
+            int size = level.size();
+            double[] nodeBoxes = new double[4 * size];
+            for (int i = 0; i < size; i++) {
+                RNode node = level.get(i);
+                nodeBoxes[4 * i + XMIN] = node.xmin;
+                nodeBoxes[4 * i + YMIN] = node.ymin;
+                nodeBoxes[4 * i + XMAX] = node.xmax;
+                nodeBoxes[4 * i + YMAX] = node.ymax;
+            }
+            order = strOrder(nodeBoxes, size);
+            List<RNode> upper = new ArrayList<>();
+            for (int k = 0; k < size; k += MAX_ENTRIES) {
+                RNode node = new RNode(false);
+                for (int j = k; j < Math.min(size, k + MAX_ENTRIES); j++) {
+                    node.addChild(level.get(order[j]));
+                }
+                upper.add(node);
+            }
+            level = upper;
+        }
+        root = level.isEmpty() ? new RNode(true) : level.get(0);
+        root.parent = null;
+        treeSize = n;
+    }
+
+    private static int collect(RNode node, Object[] items, double[] boxes, int offset) {
+        int count = offset;
+        if (node.leaf) {
+            System.arraycopy(node.entries, 0, items, count, node.count);
+            System.arraycopy(node.boxes, 0, boxes, 4 * count, 4 * node.count);
+            count += node.count;
+        } else {
+            for (int i = 0; i < node.count; i++) {
+                count = collect((RNode) node.entries[i], items, boxes, count);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Computes the Sort-Tile-Recursive order of boxes: boxes are sorted by the x coordinate of their center, cut in
+     * vertical slices, and each slice is sorted by the y coordinate of their center.
+     * Consecutive runs of {@link #MAX_ENTRIES} boxes in this order make up the nodes of the next level.
+     * @param boxes the boxes, 4 values per box
+     * @param n number of boxes
+     * @return indexes of the boxes in STR order
+     */
+    private static int[] strOrder(double[] boxes, int n) {
+        int nodeCount = (n + MAX_ENTRIES - 1) / MAX_ENTRIES;
+        int sliceSize = (int) Math.ceil(Math.sqrt(nodeCount)) * MAX_ENTRIES;
+        long[] byX = new long[n];
+        for (int i = 0; i < n; i++) {
+            byX[i] = sortKey((boxes[4 * i + XMIN] + boxes[4 * i + XMAX]) / 2, i);
+        }
+        Arrays.sort(byX);
+        int[] order = new int[n];
+        for (int start = 0; start < n; start += sliceSize) {
+            int end = Math.min(n, start + sliceSize);
+            long[] byY = new long[end - start];
+            for (int k = start; k < end; k++) {
+                int i = (int) byX[k];
+                byY[k - start] = sortKey((boxes[4 * i + YMIN] + boxes[4 * i + YMAX]) / 2, i);
+            }
+            Arrays.sort(byY);
+            for (int k = start; k < end; k++) {
+                order[k] = (int) byY[k - start];
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Packs a coordinate and an index in a long, so that sorting the longs sorts the indexes by coordinate.
+     * The coordinate is reduced to float precision, which is enough to sort.
+     * @param coordinate coordinate
+     * @param index index
+     * @return sort key
+     */
+    private static long sortKey(double coordinate, int index) {
+        int bits = Float.floatToIntBits((float) coordinate);
+        bits ^= (bits >> 31) & 0x7fffffff;
+        return ((long) bits << 32) | (index & 0xffffffffL);
+    }
+
+    // ---------------- Iteration
+
+    private final class RTreeIterator implements Iterator<T> {
+        private final Deque<RNode> stack = new ArrayDeque<>();
+        private final Iterator<T> pendingIterator = pending.iterator();
+        private final Iterator<T> invalidBBoxIterator = invalidBBoxPrimitives.iterator();
+        private RNode leaf;
+        private int index;
+        /** the iterator that returned the last element, or {@code null} if it has been returned from the tree */
+        private Iterator<T> lastIterator;
+        private boolean canRemove;
+
+        RTreeIterator() {
+            if (treeSize > 0) {
+                stack.push(root);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (leaf == null || index >= leaf.count) {
+                if (stack.isEmpty()) {
+                    return pendingIterator.hasNext() || invalidBBoxIterator.hasNext();
+                }
+                RNode node = stack.pop();
+                if (node.leaf) {
+                    leaf = node;
+                    index = 0;
+                } else {
+                    for (int i = node.count - 1; i >= 0; i--) {
+                        stack.push((RNode) node.entries[i]);
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            canRemove = true;
+            if (leaf != null && index < leaf.count) {
+                lastIterator = null;
+                return (T) leaf.entries[index++];
+            }
+            lastIterator = pendingIterator.hasNext() ? pendingIterator : invalidBBoxIterator;
+            return lastIterator.next();
+        }
+
+        @Override
+        public void remove() {
+            if (!canRemove) {
+                throw new IllegalStateException();
+            }
+            canRemove = false;
+            if (lastIterator != null) {
+                lastIterator.remove();
+            } else {
+                // the last entry of the leaf is moved to the removed slot, it has to be returned next
+                index--;
+                leaf.removeEntry(index);
+                treeSize--;
+                condense(leaf);
+            }
+        }
+    }
+}
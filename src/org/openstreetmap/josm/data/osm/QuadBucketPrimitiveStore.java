@@ -24,20 +24,41 @@ public class QuadBucketPrimitiveStore<N extends INode, W extends IWay<N>, R exte
      * All nodes goes here, even when included in other data (ways etc). This enables the instant
      * conversion of the whole DataSet by iterating over this data structure.
      */
-    private final QuadBuckets<N> nodes = new QuadBuckets<>();
+    private final SpatialIndex<N> nodes;
 
     /**
      * All ways (Streets etc.) in the DataSet.
      *
      * The way nodes are stored only in the way list.
      */
-    private final QuadBuckets<W> ways = new QuadBuckets<>();
+    private final SpatialIndex<W> ways;
 
     /**
      * All relations/relationships
      */
     private final Collection<R> relations = new ArrayList<>();
 
+    /**
+     * Constructs a new {@code QuadBucketPrimitiveStore} using {@link QuadBuckets}.
+     */
+    public QuadBucketPrimitiveStore() {
+        this(false);
+    }
+
+    /**
+     * Constructs a new {@code QuadBucketPrimitiveStore}.
+     * @param packedRTree if {@code true}, nodes and ways are indexed in a {@link PackedRTree} instead of {@link QuadBuckets}
+     */
+    public QuadBucketPrimitiveStore(boolean packedRTree) {
+        if (packedRTree) {
+            nodes = new PackedRTree<>();
+            ways = new PackedRTree<>();
+        } else {
+            nodes = new QuadBuckets<>();
+            ways = new QuadBuckets<>();
+        }
+    }
+
     /**
      * Searches for nodes in the given bounding box.
      * @param bbox the bounding box
@@ -189,6 +210,15 @@ public class QuadBucketPrimitiveStore<N extends INode, W extends IWay<N>, R exte
         }
     }
 
+    /**
+     * Notifies the store that a batch of modifications is complete, so that the indexes can reorganize themselves.
+     * @see SpatialIndex#flush()
+     */
+    protected void flush() {
+        nodes.flush();
+        ways.flush();
+    }
+
     /**
      * Removes all primitives from the this store.
      */
@@ -22,7 +22,7 @@ import org.openstreetmap.josm.tools.Logging;
  * @param <T> type of primitives
  * @since 2165
  */
-public class QuadBuckets<T extends IPrimitive> implements Collection<T> {
+public class QuadBuckets<T extends IPrimitive> implements SpatialIndex<T> {
     private static final boolean CONSISTENCY_TESTING = false;
     private static final byte NW_INDEX = 1;
     private static final byte NE_INDEX = 3;
@@ -559,11 +559,7 @@ public class QuadBuckets<T extends IPrimitive> implements Collection<T> {
         return size == 0;
     }
 
-    /**
-     * Search the tree for objects in the bbox (or crossing the bbox if they are ways)
-     * @param searchBbox the bbox
-     * @return List of primitives within the bbox (or crossing the bbox if they are ways). Can be empty, but not null.
-     */
+    @Override
     public List<T> search(BBox searchBbox) {
         List<T> ret = new ArrayList<>();
         if (searchBbox == null || !searchBbox.isValid()) {
@@ -0,0 +1,31 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A collection of primitives that can be searched by bounding box.
+ * <p>
+ * The bbox of a primitive added to the index has to stay the same. In case of coordinate change, the primitive must
+ * be removed and re-added.
+ * @param <T> type of primitives
+ * @see QuadBuckets
+ * @see PackedRTree
+ */
+public interface SpatialIndex<T extends IPrimitive> extends Collection<T> {
+
+    /**
+     * Search the index for objects in the bbox (or crossing the bbox if they are ways)
+     * @param searchBbox the bbox
+     * @return List of primitives within the bbox (or crossing the bbox if they are ways). Can be empty, but not null.
+     */
+    List<T> search(BBox searchBbox);
+
+    /**
+     * Notifies the index that a batch of modifications is complete, so that it can reorganize itself.
+     */
+    default void flush() {
+        // Nothing to do by default
+    }
+}
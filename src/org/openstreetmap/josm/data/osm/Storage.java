@@ -315,7 +315,7 @@ public class Storage<T> extends AbstractSet<T> {
      * @param h hash
      * @return new hash
      */
-    private static int rehash(int h) {
+    static int rehash(int h) {
         return (1_103_515_245*h) >> 2;
     }
 
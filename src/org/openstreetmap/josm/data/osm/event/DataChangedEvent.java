@@ -14,6 +14,7 @@ import org.openstreetmap.josm.data.osm.OsmPrimitive;
 public class DataChangedEvent extends AbstractDatasetChangedEvent {
 
     private final List<AbstractDatasetChangedEvent> events;
+    private final DataSetEventBatch batch;
 
     /**
      * Constructs a new {@code DataChangedEvent}
@@ -23,6 +24,18 @@ public class DataChangedEvent extends AbstractDatasetChangedEvent {
     public DataChangedEvent(DataSet dataSet, List<AbstractDatasetChangedEvent> events) {
         super(dataSet);
         this.events = events;
+        this.batch = null;
+    }
+
+    /**
+     * Constructs a new {@code DataChangedEvent} from merged events.
+     * @param dataSet the dataset from which the event comes from
+     * @param batch the merged change events. Must not be modified afterwards
+     */
+    public DataChangedEvent(DataSet dataSet, DataSetEventBatch batch) {
+        super(dataSet);
+        this.events = batch.isCompleteChange() ? null : Collections.unmodifiableList(batch.toEvents());
+        this.batch = batch;
     }
 
     /**
@@ -30,7 +43,7 @@ public class DataChangedEvent extends AbstractDatasetChangedEvent {
      * @param dataSet data set. Can be null
      */
     public DataChangedEvent(DataSet dataSet) {
-        this(dataSet, null);
+        this(dataSet, (List<AbstractDatasetChangedEvent>) null);
     }
 
     @Override
@@ -55,4 +68,12 @@ public class DataChangedEvent extends AbstractDatasetChangedEvent {
     public List<AbstractDatasetChangedEvent> getEvents() {
         return events;
     }
+
+    /**
+     * Returns the merged events that caused this DataChangedEvent, as sets of added, removed and changed primitives.
+     * @return the merged events that caused this DataChangedEvent. Might be null
+     */
+    public DataSetEventBatch getBatch() {
+        return batch;
+    }
 }
@@ -0,0 +1,230 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent.DatasetEventType;
+
+/**
+ * Merges a sequence of dataset events of a single dataset into deduplicated sets of affected primitives.
+ * <p>
+ * The memory used by a batch only depends on the number of distinct affected primitives, not on the number of events.
+ * Primitives added and then removed within the batch are not reported at all, and changes of primitives that are
+ * added or removed within the batch are only reported as additions or removals. For each other changed primitive,
+ * the batch keeps one event per type, see {@link #toEvents()}.
+ * @see DataChangedEvent#getBatch()
+ */
+public final class DataSetEventBatch {
+
+    private final DataSet dataSet;
+    private boolean completeChange;
+    private int eventCount;
+    private AbstractDatasetChangedEvent firstEvent;
+
+    private final Set<OsmPrimitive> added = new LinkedHashSet<>();
+    private final Set<OsmPrimitive> addedIncomplete = new LinkedHashSet<>();
+    private final Set<OsmPrimitive> removed = new LinkedHashSet<>();
+    private final Set<OsmPrimitive> removedComplete = new LinkedHashSet<>();
+    private final Map<DatasetEventType, Map<OsmPrimitive, AbstractDatasetChangedEvent>> changed = new EnumMap<>(DatasetEventType.class);
+    private boolean filtersChanged;
+    private final List<AbstractDatasetChangedEvent> otherEvents = new ArrayList<>();
+
+    /**
+     * Constructs a new empty {@code DataSetEventBatch}.
+     * @param dataSet the dataset from which the events come from
+     */
+    public DataSetEventBatch(DataSet dataSet) {
+        this.dataSet = dataSet;
+    }
+
+    /**
+     * Merges an event into this batch.
+     * @param event the event, coming from the dataset of this batch
+     */
+    public void add(AbstractDatasetChangedEvent event) {
+        if (eventCount++ == 0) {
+            firstEvent = event;
+        }
+        if (!completeChange) {
+            merge(event);
+        }
+    }
+
+    private void merge(AbstractDatasetChangedEvent event) {
+        switch (event.getType()) {
+        case DATA_CHANGED:
+            DataChangedEvent dataChanged = (DataChangedEvent) event;
+            if (dataChanged.getEvents() != null) {
+                dataChanged.getEvents().forEach(this::merge);
+            } else {
+                setCompleteChange();
+            }
+            break;
+        case PRIMITIVES_ADDED:
+            boolean wasIncomplete = ((PrimitivesAddedEvent) event).wasIncomplete();
+            for (OsmPrimitive p : event.getPrimitives()) {
+                (wasIncomplete ? addedIncomplete : added).add(p);
+            }
+            break;
+        case PRIMITIVES_REMOVED:
+            boolean wasComplete = ((PrimitivesRemovedEvent) event).wasComplete();
+            for (OsmPrimitive p : event.getPrimitives()) {
+                for (Map<OsmPrimitive, AbstractDatasetChangedEvent> map : changed.values()) {
+                    map.remove(p);
+                }
+                if (wasComplete) {
+                    // the primitive stays in the dataset
+                    if (!addedIncomplete.remove(p)) {
+                        removedComplete.add(p);
+                    }
+                } else if (!added.remove(p)) {
+                    removed.add(p);
+                }
+            }
+            break;
+        case FILTERS_CHANGED:
+            filtersChanged = true;
+            break;
+        case CHANGESET_ID_CHANGED:
+            ChangesetIdChangedEvent csEvent = (ChangesetIdChangedEvent) event;
+            Map<OsmPrimitive, AbstractDatasetChangedEvent> csMap = changed.computeIfAbsent(event.getType(), t -> new LinkedHashMap<>());
+            for (OsmPrimitive p : csEvent.getPrimitives()) {
+                if (!added.contains(p)) {
+                    ChangesetIdChangedEvent previous = (ChangesetIdChangedEvent) csMap.get(p);
+                    csMap.put(p, new ChangesetIdChangedEvent(dataSet, Collections.singletonList(p),
+                            previous != null ? previous.getOldChangesetId() : csEvent.getOldChangesetId(), csEvent.getNewChangesetId()));
+                }
+            }
+            break;
+        case NODE_MOVED:
+        case TAGS_CHANGED:
+        case WAY_NODES_CHANGED:
+        case RELATION_MEMBERS_CHANGED:
+        case PRIMITIVE_FLAGS_CHANGED:
+            if (event.getPrimitives().size() == 1) {
+                OsmPrimitive p = event.getPrimitives().iterator().next();
+                if (!added.contains(p)) {
+                    // keep the first event, e.g. for the original keys of a tag change
+                    changed.computeIfAbsent(event.getType(), t -> new LinkedHashMap<>()).putIfAbsent(p, event);
+                }
+                break;
+            }
+            otherEvents.add(event);
+            break;
+        default:
+            otherEvents.add(event);
+        }
+    }
+
+    private void setCompleteChange() {
+        completeChange = true;
+        added.clear();
+        addedIncomplete.clear();
+        removed.clear();
+        removedComplete.clear();
+        changed.clear();
+        otherEvents.clear();
+    }
+
+    /**
+     * Returns the dataset from which the events come from.
+     * @return the dataset from which the events come from
+     */
+    public DataSet getDataset() {
+        return dataSet;
+    }
+
+    /**
+     * Determines if the batch contains an event without details about the affected primitives.
+     * In this case, the whole dataset has to be considered as changed.
+     * @return {@code true} if the whole dataset has to be considered as changed
+     */
+    public boolean isCompleteChange() {
+        return completeChange;
+    }
+
+    /**
+     * Returns the number of events merged into this batch.
+     * @return the number of events merged into this batch
+     */
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Returns the primitives added to the dataset (and not removed afterwards).
+     * @return the added primitives, unmodifiable
+     */
+    public Set<OsmPrimitive> getAddedPrimitives() {
+        return Collections.unmodifiableSet(added);
+    }
+
+    /**
+     * Returns the primitives removed from the dataset, which were not added within the batch.
+     * @return the removed primitives, unmodifiable
+     */
+    public Set<OsmPrimitive> getRemovedPrimitives() {
+        return Collections.unmodifiableSet(removed);
+    }
+
+    /**
+     * Returns the primitives changed by events of the given type, excluding the added and removed primitives.
+     * @param type the event type, e.g. {@link DatasetEventType#TAGS_CHANGED} or {@link DatasetEventType#NODE_MOVED}
+     * @return the changed primitives, unmodifiable
+     */
+    public Set<OsmPrimitive> getChangedPrimitives(DatasetEventType type) {
+        Map<OsmPrimitive, AbstractDatasetChangedEvent> map = changed.get(type);
+        return map == null ? Collections.emptySet() : Collections.unmodifiableSet(map.keySet());
+    }
+
+    /**
+     * Returns the merged events: removals first, then additions, then one event per changed primitive and type.
+     * @return the merged events. Empty if {@link #isCompleteChange()}
+     */
+    public List<AbstractDatasetChangedEvent> toEvents() {
+        List<AbstractDatasetChangedEvent> events = new ArrayList<>();
+        if (!removed.isEmpty()) {
+            events.add(new PrimitivesRemovedEvent(dataSet, removed, false));
+        }
+        if (!removedComplete.isEmpty()) {
+            events.add(new PrimitivesRemovedEvent(dataSet, removedComplete, true));
+        }
+        if (!added.isEmpty()) {
+            events.add(new PrimitivesAddedEvent(dataSet, added, false));
+        }
+        if (!addedIncomplete.isEmpty()) {
+            events.add(new PrimitivesAddedEvent(dataSet, addedIncomplete, true));
+        }
+        for (Map<OsmPrimitive, AbstractDatasetChangedEvent> map : changed.values()) {
+            events.addAll(map.values());
+        }
+        if (filtersChanged) {
+            events.add(new FilterChangedEvent(dataSet));
+        }
+        events.addAll(otherEvents);
+        return events;
+    }
+
+    /**
+     * Returns a single event representing this batch.
+     * @return the only merged event if the batch contains only one event, else a {@link DataChangedEvent}
+     */
+    public AbstractDatasetChangedEvent toEvent() {
+        if (eventCount == 1) {
+            return firstEvent;
+        } else if (completeChange) {
+            return new DataChangedEvent(dataSet);
+        } else {
+            return new DataChangedEvent(dataSet, this);
+        }
+    }
+}
@@ -1,8 +1,6 @@
 // License: GPL. For details, see LICENSE file.
 package org.openstreetmap.josm.data.osm.event;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.Queue;
@@ -35,59 +33,32 @@ public class DatasetEventManager implements ActiveLayerChangeListener, Listener
         @Override
         public void run() {
             while (!eventsInEDT.isEmpty()) {
-                DataSet dataSet = null;
-                AbstractDatasetChangedEvent consolidatedEvent = null;
+                boolean consolidate = inEDTListeners.stream().anyMatch(l -> l.consolidate);
+                DataSetEventBatch batch = null;
                 AbstractDatasetChangedEvent event;
 
                 while ((event = eventsInEDT.poll()) != null) {
                     fireEvents(inEDTListeners, event);
+                    if (!consolidate) {
+                        continue;
+                    }
 
                     // DataSet changed - fire consolidated event early
-                    if (consolidatedEvent != null && dataSet != event.getDataset()) {
-                        fireConsolidatedEvents(inEDTListeners, consolidatedEvent);
-                        consolidatedEvent = null;
+                    if (batch != null && batch.getDataset() != event.getDataset()) {
+                        fireConsolidatedEvents(inEDTListeners, batch.toEvent());
+                        batch = null;
                     }
 
-                    dataSet = event.getDataset();
-
-                    // Build consolidated event
-                    if (event instanceof DataChangedEvent) {
-                        // DataChangeEvent can contains other events, so it gets special handling
-                        DataChangedEvent dataEvent = (DataChangedEvent) event;
-                        if (dataEvent.getEvents() == null) {
-                            consolidatedEvent = dataEvent; // Dataset was completely changed, we can ignore older events
-                        } else {
-                            if (consolidatedEvent == null) {
-                                consolidatedEvent = new DataChangedEvent(dataSet, dataEvent.getEvents());
-                            } else if (consolidatedEvent instanceof DataChangedEvent) {
-                                List<AbstractDatasetChangedEvent> evts = ((DataChangedEvent) consolidatedEvent).getEvents();
-                                if (evts != null) {
-                                    evts.addAll(dataEvent.getEvents());
-                                }
-                            } else {
-                                AbstractDatasetChangedEvent oldConsolidateEvent = consolidatedEvent;
-                                consolidatedEvent = new DataChangedEvent(dataSet, dataEvent.getEvents());
-                                ((DataChangedEvent) consolidatedEvent).getEvents().add(oldConsolidateEvent);
-                            }
-                        }
-                    } else {
-                        // Normal events
-                        if (consolidatedEvent == null) {
-                            consolidatedEvent = event;
-                        } else if (consolidatedEvent instanceof DataChangedEvent) {
-                            List<AbstractDatasetChangedEvent> evs = ((DataChangedEvent) consolidatedEvent).getEvents();
-                            if (evs != null) {
-                                evs.add(event);
-                            }
-                        } else {
-                            consolidatedEvent = new DataChangedEvent(dataSet, new ArrayList<>(Arrays.asList(consolidatedEvent)));
-                        }
+                    // Merge event into the consolidated event
+                    if (batch == null) {
+                        batch = new DataSetEventBatch(event.getDataset());
                     }
+                    batch.add(event);
                 }
 
                 // Fire consolidated event
-                if (consolidatedEvent != null) {
-                    fireConsolidatedEvents(inEDTListeners, consolidatedEvent);
+                if (batch != null) {
+                    fireConsolidatedEvents(inEDTListeners, batch.toEvent());
                 }
             }
         }
@@ -106,7 +77,8 @@ public class DatasetEventManager implements ActiveLayerChangeListener, Listener
          */
         IN_EDT,
         /**
-         * Fire in event dispatch thread. If more than one event arrived when event queue is checked, merged them to one event
+         * Fire in event dispatch thread. If more than one event arrived when event queue is checked, merged them to one event.
+         * The merged event is a {@link DataChangedEvent} with deduplicated sets of primitives, see {@link DataChangedEvent#getBatch()}
          */
         IN_EDT_CONSOLIDATED
     }
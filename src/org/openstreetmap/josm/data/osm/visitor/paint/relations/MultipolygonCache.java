@@ -247,6 +247,18 @@ public final class MultipolygonCache implements DataSetListener, LayerChangeList
 
     @Override
     public void dataChanged(DataChangedEvent event) {
+        if (event.getBatch() != null) {
+            // Merged events: only update the multipolygons referring to the affected primitives
+            for (AbstractDatasetChangedEvent e : event.getEvents()) {
+                if (e instanceof PrimitivesAddedEvent) {
+                    // Incomplete members may have been downloaded (see #7131)
+                    updateMultipolygonsReferringTo(e);
+                } else {
+                    e.fire(this);
+                }
+            }
+            return;
+        }
         // Do not call updateMultipolygonsReferringTo as getPrimitives()
         // can return all the data set primitives for this event
         Collection<Map<Relation, Multipolygon>> maps = null;
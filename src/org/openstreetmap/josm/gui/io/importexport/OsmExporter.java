@@ -17,6 +17,8 @@ import java.text.MessageFormat;
 import javax.swing.JOptionPane;
 
 import org.openstreetmap.josm.actions.ExtensionFileFilter;
+import org.openstreetmap.josm.data.osm.DataSetSnapshot;
+import org.openstreetmap.josm.data.osm.MappedDataStore;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.layer.Layer;
 import org.openstreetmap.josm.gui.layer.OsmDataLayer;
@@ -134,11 +136,17 @@ public class OsmExporter extends FileExporter {
             Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
             OsmWriter w = OsmWriterFactory.createOsmWriter(new PrintWriter(writer), false, layer.data.getVersion())
         ) {
-            layer.data.getReadLock().lock();
+            // write from a snapshot, so that the user can keep editing (e.g. during autosave)
+            DataSetSnapshot snapshot = layer.data.snapshot();
             try {
-                w.write(layer.data);
+                MappedDataStore store = layer.getMappedDataStore();
+                if (store != null) {
+                    w.write(snapshot, store);
+                } else {
+                    w.write(snapshot);
+                }
             } finally {
-                layer.data.getReadLock().unlock();
+                layer.data.releaseSnapshot(snapshot);
             }
         }
     }
@@ -7,19 +7,24 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.util.Arrays;
 
 import javax.swing.JOptionPane;
 
 import org.openstreetmap.josm.actions.ExtensionFileFilter;
 import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.MappedDataStore;
+import org.openstreetmap.josm.data.preferences.IntegerProperty;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.gui.util.GuiHelper;
 import org.openstreetmap.josm.io.Compression;
 import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.io.MappedOsmReader;
 import org.openstreetmap.josm.io.OsmReader;
+import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.tools.Logging;
 
 /**
@@ -56,6 +61,12 @@ public class OsmImporter extends FileImporter {
         }
     }
 
+    /**
+     * Size of the files, in MB, from which the data is kept in a {@link MappedDataStore} instead of the heap.
+     * Negative to always load the data in the heap.
+     */
+    public static final IntegerProperty PROPERTY_MAPPED_STORE_MIN_SIZE = new IntegerProperty("osm.mapped-store.min-file-size", -1);
+
     /**
      * Constructs a new {@code OsmImporter}.
      */
@@ -79,13 +90,62 @@ public class OsmImporter extends FileImporter {
     @Override
     public void importData(File file, ProgressMonitor progressMonitor) throws IOException, IllegalDataException {
         try (InputStream in = Compression.getUncompressedFileInputStream(file)) {
-            importData(in, file, progressMonitor);
+            if (useMappedDataStore(file)) {
+                importMappedData(in, file, progressMonitor);
+            } else {
+                importData(in, file, progressMonitor);
+            }
         } catch (FileNotFoundException e) {
             Logging.error(e);
             throw new IOException(tr("File ''{0}'' does not exist.", file.getName()), e);
         }
     }
 
+    /**
+     * Determines if the given file must be loaded in a {@link MappedDataStore} instead of the heap.
+     * @param file the file to import
+     * @return {@code true} if the size of the file, in MB, is at least {@link #PROPERTY_MAPPED_STORE_MIN_SIZE}
+     */
+    protected boolean useMappedDataStore(File file) {
+        int minSize = PROPERTY_MAPPED_STORE_MIN_SIZE.get();
+        return minSize >= 0 && file.length() >= minSize * 1024L * 1024L;
+    }
+
+    /**
+     * Imports OSM data from stream into a new layer backed by a {@link MappedDataStore}.
+     * The layer only contains the primitives of the viewed areas, see {@link OsmDataLayer#getMappedDataStore()}.
+     * @param in input stream
+     * @param associatedFile file of data
+     * @param pm handler for progress monitoring and canceling
+     * @throws IllegalDataException if an error was found while parsing the OSM data
+     * @throws IOException if the store files cannot be written
+     */
+    protected void importMappedData(InputStream in, final File associatedFile, ProgressMonitor pm) throws IllegalDataException, IOException {
+        File parent = getMappedDataStoresDirectory(true);
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException(tr("Unable to create directory {0}", parent));
+        }
+        MappedDataStore store = MappedOsmReader.parseMappedDataStore(in,
+                Files.createTempDirectory(parent.toPath(), "store").toFile(), pm);
+        OsmDataLayer layer = createLayer(store.createDataSet(), associatedFile, associatedFile.getName());
+        layer.setMappedDataStore(store);
+        GuiHelper.runInEDT(() -> {
+            MainApplication.getLayerManager().addLayer(layer);
+            layer.onPostLoadFromFile();
+        });
+    }
+
+    private static File getMappedDataStoresDirectory(boolean createIfMissing) {
+        return new File(Config.getDirs().getCacheDirectory(createIfMissing), "mapped-osm");
+    }
+
+    /**
+     * Deletes the directories of the {@link MappedDataStore}s left behind by previous sessions, after a crash.
+     */
+    public static void deleteStaleMappedDataStores() {
+        MappedDataStore.deleteStaleDirectories(getMappedDataStoresDirectory(false));
+    }
+
     /**
      * Imports OSM data from stream
      * @param in input stream
@@ -0,0 +1,54 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.io.importexport;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.openstreetmap.josm.actions.ExtensionFileFilter;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DataSetSnapshot;
+import org.openstreetmap.josm.gui.layer.Layer;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.io.OsmPbfWriter;
+
+/**
+ * Exporter to write map data to an OSM PBF file.
+ * <p>
+ * Unlike {@link OsmExporter}, the export does not save the layer: the deleted primitives and the modified flags
+ * cannot be written in this format.
+ */
+public class OsmPbfExporter extends FileExporter {
+
+    /**
+     * Constructs a new {@code OsmPbfExporter}.
+     */
+    public OsmPbfExporter() {
+        super(new ExtensionFileFilter(
+            "osm.pbf", "osm.pbf", tr("OSM PBF Files") + " (*.osm.pbf)"));
+    }
+
+    @Override
+    public boolean acceptFile(File pathname, Layer layer) {
+        return layer instanceof OsmDataLayer && ((OsmDataLayer) layer).getMappedDataStore() == null
+                && super.acceptFile(pathname, layer);
+    }
+
+    @Override
+    public void exportData(File file, Layer layer) throws IOException {
+        if (layer instanceof OsmDataLayer) {
+            DataSet ds = ((OsmDataLayer) layer).data;
+            // write from a snapshot, so that the user can keep editing
+            DataSetSnapshot snapshot = ds.snapshot();
+            try (OsmPbfWriter writer = new OsmPbfWriter(Files.newOutputStream(file.toPath()))) {
+                writer.write(snapshot);
+            } finally {
+                ds.releaseSnapshot(snapshot);
+            }
+        } else {
+            throw new IllegalArgumentException(tr("Layer ''{0}'' not supported", layer.getClass().toString()));
+        }
+    }
+}
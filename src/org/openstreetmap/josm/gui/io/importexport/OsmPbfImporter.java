@@ -0,0 +1,44 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.io.importexport;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.File;
+import java.io.InputStream;
+
+import org.openstreetmap.josm.actions.ExtensionFileFilter;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.io.OsmPbfReader;
+
+/**
+ * File importer that reads OSM PBF files (*.osm.pbf).
+ * @see <a href="https://wiki.openstreetmap.org/wiki/PBF_Format">PBF Format</a>
+ */
+public class OsmPbfImporter extends OsmImporter {
+
+    /**
+     * The OSM PBF file filter (*.osm.pbf and *.pbf files).
+     */
+    public static final ExtensionFileFilter FILE_FILTER = new ExtensionFileFilter(
+            "osm.pbf,pbf", "osm.pbf", tr("OSM PBF Files") + " (*.osm.pbf, *.pbf)");
+
+    /**
+     * Constructs a new {@code OsmPbfImporter}.
+     */
+    public OsmPbfImporter() {
+        super(FILE_FILTER);
+    }
+
+    @Override
+    protected boolean useMappedDataStore(File file) {
+        // the mapped store is only built from OSM XML
+        return false;
+    }
+
+    @Override
+    protected DataSet parseDataSet(InputStream in, ProgressMonitor progressMonitor) throws IllegalDataException {
+        return OsmPbfReader.parseDataSet(in, progressMonitor);
+    }
+}
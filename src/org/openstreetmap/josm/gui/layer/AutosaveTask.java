@@ -6,13 +6,17 @@ import static org.openstreetmap.josm.tools.I18n.tr;
 import static org.openstreetmap.josm.tools.Utils.getSystemProperty;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
 import java.lang.management.ManagementFactory;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -24,18 +28,23 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import org.openstreetmap.josm.actions.OpenFileAction.OpenFileTask;
 import org.openstreetmap.josm.data.Data;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DataSetSnapshot;
 import org.openstreetmap.josm.data.osm.NoteData;
 import org.openstreetmap.josm.data.osm.NoteData.NoteDataUpdateListener;
+import org.openstreetmap.josm.data.osm.PrimitiveData;
+import org.openstreetmap.josm.data.osm.PrimitiveId;
 import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
 import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
 import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter.Listener;
@@ -50,6 +59,11 @@ import org.openstreetmap.josm.gui.layer.LayerManager.LayerChangeListener;
 import org.openstreetmap.josm.gui.layer.LayerManager.LayerOrderChangeEvent;
 import org.openstreetmap.josm.gui.layer.LayerManager.LayerRemoveEvent;
 import org.openstreetmap.josm.gui.util.GuiHelper;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.io.OsmBinaryReader;
+import org.openstreetmap.josm.io.OsmBinaryWriter;
+import org.openstreetmap.josm.io.OsmWriter;
+import org.openstreetmap.josm.io.OsmWriterFactory;
 import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.tools.Logging;
 import org.openstreetmap.josm.tools.Utils;
@@ -103,16 +117,41 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
      * Defines if a notification should be displayed after each autosave
      */
     public static final BooleanProperty PROP_NOTIFICATION = new BooleanProperty("autosave.notification", false);
+    /**
+     * Defines if data layers are saved incrementally: a checkpoint of the whole layer, then a journal of the changed primitives
+     */
+    public static final BooleanProperty PROP_JOURNAL = new BooleanProperty("autosave.journal", false);
+    /**
+     * The number of journal entries appended before a new checkpoint is written
+     */
+    public static final IntegerProperty PROP_JOURNAL_CHECKPOINT_INTERVAL = new IntegerProperty("autosave.journal.checkpoint-interval", 10);
+
+    private static final String CHECKPOINT_EXTENSION = "osmbin";
+    private static final String JOURNAL_EXTENSION = "journal";
 
     protected static final class AutosaveLayerInfo<T extends AbstractModifiableLayer> {
         private final T layer;
         private String layerName;
         private String layerFileName;
         private final Deque<File> backupFiles = new LinkedList<>();
+        /** The snapshot written by the last checkpoint or journal entry, {@code null} if a checkpoint is needed */
+        private DataSetSnapshot journalBase;
+        private int journalEntries;
 
         AutosaveLayerInfo(T layer) {
             this.layer = layer;
         }
+
+        /**
+         * Replaces the journal base, and releases the former one.
+         * @param snapshot the new journal base, can be {@code null}
+         */
+        private void setJournalBase(DataSetSnapshot snapshot) {
+            if (journalBase != null) {
+                ((OsmDataLayer) layer).getDataSet().releaseSnapshot(journalBase);
+            }
+            journalBase = snapshot;
+        }
     }
 
     private final DataSetListenerAdapter datasetAdapter = new DataSetListenerAdapter(this);
@@ -194,10 +233,7 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
         while (true) {
             String filename = String.format(Locale.ENGLISH, "%1$s_%2$tY%2$tm%2$td_%2$tH%2$tM%2$tS%2$tL%3$s",
                     layer.layerFileName, now, index == 0 ? "" : ('_' + Integer.toString(index)));
-            File result = new File(autosaveDir, filename + '.' +
-                    (layer.layer instanceof NoteLayer ?
-                            Config.getPref().get("autosave.notes.extension", "osn") :
-                            Config.getPref().get("autosave.extension", "osm")));
+            File result = new File(autosaveDir, filename + '.' + getExtension(layer));
             try {
                 if (index > PROP_INDEX_LIMIT.get())
                     throw new IOException("index limit exceeded");
@@ -215,6 +251,23 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
         }
     }
 
+    private static String getExtension(AutosaveLayerInfo<?> layer) {
+        if (layer.layer instanceof NoteLayer) {
+            return Config.getPref().get("autosave.notes.extension", "osn");
+        } else if (layer.layer instanceof OsmDataLayer && PROP_JOURNAL.get()) {
+            return CHECKPOINT_EXTENSION;
+        }
+        return Config.getPref().get("autosave.extension", "osm");
+    }
+
+    private static boolean isCheckpoint(File file) {
+        return file.getName().endsWith('.' + CHECKPOINT_EXTENSION);
+    }
+
+    private static File getJournalFile(File checkpoint) {
+        return new File(checkpoint.getParentFile(), checkpoint.getName().replaceFirst("[.][^.]+$", '.' + JOURNAL_EXTENSION));
+    }
+
     private static void createNewPidFile(File autosaveDir, String filename) {
         File pidFile = new File(autosaveDir, filename+".pid");
         try {
@@ -233,10 +286,15 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
         try {
             Data data = info.layer.getData();
             if (data != null && changedData.remove(data)) {
-                File file = getNewLayerFile(info, new Date(), 0);
-                if (file != null) {
-                    info.backupFiles.add(file);
-                    info.layer.autosave(file);
+                if (data instanceof DataSet && PROP_JOURNAL.get()) {
+                    saveIncrementally(info, (DataSet) data);
+                } else {
+                    info.setJournalBase(null);
+                    File file = getNewLayerFile(info, new Date(), 0);
+                    if (file != null) {
+                        info.backupFiles.add(file);
+                        info.layer.autosave(file);
+                    }
                 }
             }
         } catch (IOException e) {
@@ -246,10 +304,94 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
             File oldFile = info.backupFiles.remove();
             if (Utils.deleteFile(oldFile, marktr("Unable to delete old backup file {0}"))) {
                 Utils.deleteFile(getPidFile(oldFile), marktr("Unable to delete old backup file {0}"));
+                deleteJournal(oldFile);
+            }
+        }
+    }
+
+    /**
+     * Appends the primitives changed since the last save to the journal of the last checkpoint, without holding the
+     * read lock of the data set. A new checkpoint is written every {@link #PROP_JOURNAL_CHECKPOINT_INTERVAL} entries.
+     * @param info the layer
+     * @param ds the data set of the layer
+     * @throws IOException if the checkpoint cannot be written
+     */
+    private void saveIncrementally(AutosaveLayerInfo<?> info, DataSet ds) throws IOException {
+        DataSetSnapshot snapshot = ds.snapshot();
+        try {
+            File checkpoint = info.backupFiles.peekLast();
+            if (info.journalBase != null && checkpoint != null && isCheckpoint(checkpoint)
+                    && info.journalEntries < PROP_JOURNAL_CHECKPOINT_INTERVAL.get()) {
+                List<PrimitiveData> changed = new ArrayList<>();
+                List<PrimitiveId> removed = new ArrayList<>();
+                if (snapshot.diff(info.journalBase, changed, removed)) {
+                    try {
+                        OsmBinaryWriter.appendJournalEntry(getJournalFile(checkpoint).toPath(), snapshot, changed, removed);
+                        info.setJournalBase(snapshot);
+                        snapshot = null;
+                        info.journalEntries++;
+                        return;
+                    } catch (IOException e) {
+                        // the journal may end with a partial entry, start a new checkpoint
+                        Logging.error(e);
+                    }
+                }
             }
+            info.setJournalBase(null);
+            File file = getNewLayerFile(info, new Date(), 0);
+            if (file != null) {
+                info.backupFiles.add(file);
+                try (OsmBinaryWriter writer = new OsmBinaryWriter(Files.newOutputStream(file.toPath()))) {
+                    writer.write(snapshot);
+                }
+                info.setJournalBase(snapshot);
+                snapshot = null;
+                info.journalEntries = 0;
+            }
+        } finally {
+            // the snapshot is only kept as the base of the next journal entry
+            if (snapshot != null) {
+                ds.releaseSnapshot(snapshot);
+            }
+        }
+    }
+
+    private static void deleteJournal(File checkpoint) {
+        File journal = getJournalFile(checkpoint);
+        if (isCheckpoint(checkpoint) && journal.exists()) {
+            Utils.deleteFile(journal, marktr("Unable to delete old backup file {0}"));
         }
     }
 
+    /**
+     * Replays the journal of a checkpoint, and writes the result as an OSM file which can be opened as usual.
+     * The checkpoint and its journal are deleted once replayed. An existing OSM file of the same name, left by a replay
+     * interrupted before the checkpoint was deleted, is replaced.
+     * @param checkpoint the checkpoint
+     * @return the OSM file, or {@code null} if the checkpoint could not be replayed
+     */
+    private static File replayJournal(File checkpoint) {
+        File journal = getJournalFile(checkpoint);
+        File osm = new File(checkpoint.getParentFile(), checkpoint.getName().replaceFirst("[.][^.]+$", ".osm"));
+        File tmp = new File(checkpoint.getParentFile(), osm.getName() + ".tmp");
+        try (InputStream in = Files.newInputStream(checkpoint.toPath());
+             InputStream changes = journal.exists() ? Files.newInputStream(journal.toPath()) : new ByteArrayInputStream(new byte[0])) {
+            DataSet ds = OsmBinaryReader.parseDataSet(in, changes, null);
+            try (OsmWriter writer = OsmWriterFactory.createOsmWriter(new PrintWriter(
+                    Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)), false, ds.getVersion())) {
+                writer.write(ds);
+            }
+            Files.move(tmp.toPath(), osm.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | IllegalDataException | RuntimeException e) {
+            Logging.log(Logging.LEVEL_ERROR, tr("Unable to replay the autosave journal of {0}", checkpoint.getName()), e);
+            Utils.deleteFileIfExists(tmp);
+            return null;
+        }
+        Utils.deleteFile(checkpoint, marktr("Unable to delete backup file {0}"));
+        deleteJournal(checkpoint);
+        return osm;
+    }
+
     @Override
     public void run() {
         synchronized (layersLock) {
@@ -335,6 +477,7 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
             if (info.layer == removedLayer) {
 
                 savelayer(info);
+                info.setJournalBase(null);
                 File lastFile = info.backupFiles.pollLast();
                 if (lastFile != null) {
                     moveToDeletedLayersFolder(lastFile);
@@ -342,6 +485,7 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
                 for (File file: info.backupFiles) {
                     if (Utils.deleteFile(file)) {
                         Utils.deleteFile(getPidFile(file));
+                        deleteJournal(file);
                     }
                 }
 
@@ -389,7 +533,7 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
         List<File> result = new ArrayList<>();
         try {
             File[] files = autosaveDir.listFiles((FileFilter)
-                    pathname -> OsmImporter.FILE_FILTER.accept(pathname) || NoteImporter.FILE_FILTER.accept(pathname));
+                    pathname -> OsmImporter.FILE_FILTER.accept(pathname) || NoteImporter.FILE_FILTER.accept(pathname) || isCheckpoint(pathname));
             if (files == null)
                 return result;
             for (File file: files) {
@@ -429,21 +573,22 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
 
     /**
      * Recover the unsaved layers and open them asynchronously.
+     * The journals of the checkpoints are replayed in the worker thread, before the files are opened.
      * @return A future that can be used to wait for the completion of this task.
      */
     public Future<?> recoverUnsavedLayers() {
-        List<File> files = getUnsavedLayersFiles();
-        final OpenFileTask openFileTsk = new OpenFileTask(files, null, tr("Restoring files"));
-        final Future<?> openFilesFuture = MainApplication.worker.submit(openFileTsk);
+        List<File> unsavedLayersFiles = getUnsavedLayersFiles();
         return MainApplication.worker.submit(() -> {
-            try {
-                // Wait for opened tasks to be generated.
-                openFilesFuture.get();
-                for (File f: openFileTsk.getSuccessfullyOpenedFiles()) {
-                    moveToDeletedLayersFolder(f);
-                }
-            } catch (InterruptedException | ExecutionException e) {
-                Logging.error(e);
+            List<File> files = unsavedLayersFiles.stream()
+                    .map(f -> isCheckpoint(f) ? replayJournal(f) : f)
+                    .filter(Objects::nonNull)
+                    // the OSM file left by an interrupted replay is also listed, next to its checkpoint
+                    .distinct()
+                    .collect(Collectors.toList());
+            OpenFileTask openFileTsk = new OpenFileTask(files, null, tr("Restoring files"));
+            openFileTsk.run();
+            for (File f: openFileTsk.getSuccessfullyOpenedFiles()) {
+                moveToDeletedLayersFolder(f);
             }
         });
     }
@@ -457,6 +602,14 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
      * @param f the file, usually from the autosave dir
      */
     private void moveToDeletedLayersFolder(File f) {
+        if (isCheckpoint(f)) {
+            File osm = replayJournal(f);
+            if (osm != null) {
+                f = osm;
+            } else if (getJournalFile(f).exists()) {
+                moveToDeletedLayersFolder(getJournalFile(f));
+            }
+        }
         File backupFile = new File(deletedLayersDir, f.getName());
         File pidFile = getPidFile(f);
 
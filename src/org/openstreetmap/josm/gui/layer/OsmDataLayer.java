@@ -36,6 +36,8 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
@@ -79,6 +81,7 @@ import org.openstreetmap.josm.data.osm.DatasetConsistencyTest;
 import org.openstreetmap.josm.data.osm.DownloadPolicy;
 import org.openstreetmap.josm.data.osm.HighlightUpdateListener;
 import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.MappedDataStore;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.OsmPrimitiveComparator;
@@ -95,6 +98,7 @@ import org.openstreetmap.josm.data.osm.visitor.paint.AbstractMapRenderer;
 import org.openstreetmap.josm.data.osm.visitor.paint.MapRendererFactory;
 import org.openstreetmap.josm.data.osm.visitor.paint.relations.MultipolygonCache;
 import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.data.preferences.DoubleProperty;
 import org.openstreetmap.josm.data.preferences.IntegerProperty;
 import org.openstreetmap.josm.data.preferences.NamedColorProperty;
 import org.openstreetmap.josm.data.preferences.StringProperty;
@@ -135,6 +139,7 @@ import org.openstreetmap.josm.tools.ImageProvider;
 import org.openstreetmap.josm.tools.ImageProvider.ImageSizes;
 import org.openstreetmap.josm.tools.Logging;
 import org.openstreetmap.josm.tools.UncheckedParseException;
+import org.openstreetmap.josm.tools.Utils;
 import org.openstreetmap.josm.tools.date.DateUtils;
 
 /**
@@ -155,6 +160,28 @@ public class OsmDataLayer extends AbstractOsmDataLayer implements Listener, Data
     private boolean requiresUploadToServer;
     /** Flag used to know if the layer is being uploaded */
     private final AtomicBoolean isUploadInProgress = new AtomicBoolean(false);
+    /** Off-heap store of the primitives not materialized in the data set yet, or {@code null} */
+    private volatile MappedDataStore mappedDataStore;
+    /** Flag used to know if primitives of the mapped data store are being materialized */
+    private final AtomicBoolean isMaterializing = new AtomicBoolean(false);
+    /** Thread materializing primitives of the mapped data store, whose data set events do not modify the layer */
+    private volatile Thread materializingThread;
+
+    /**
+     * Largest viewed area in which the primitives of a {@linkplain #getMappedDataStore() mapped data store} are
+     * materialized, in square degrees.
+     */
+    public static final DoubleProperty PROPERTY_MAPPED_STORE_MAX_AREA = new DoubleProperty("osm.mapped-store.max-area", 0.25);
+
+    /**
+     * Maximum number of tiles of a {@linkplain #getMappedDataStore() mapped data store} materialized in the data set.
+     * The least recently viewed tiles are evicted beyond, see {@link MappedDataStore#materialize}.
+     */
+    public static final IntegerProperty PROPERTY_MAPPED_STORE_MAX_TILES = new IntegerProperty("osm.mapped-store.max-tiles", 400);
+
+    /** Executor materializing the mapped data stores, so that reading the store does not delay the other tasks */
+    private static final ExecutorService MATERIALIZER =
+            Executors.newSingleThreadExecutor(Utils.newThreadFactory("mapped-store-materializer-%d", Thread.NORM_PRIORITY));
 
     /**
      * List of validation errors in this layer.
@@ -497,6 +524,7 @@ public class OsmDataLayer extends AbstractOsmDataLayer implements Listener, Data
      * Draw nodes last to overlap the ways they belong to.
      */
     @Override public void paint(final Graphics2D g, final MapView mv, Bounds box) {
+        materializeMappedData(box);
         boolean active = mv.getLayerManager().getActiveLayer() == this;
         boolean inactive = !active && Config.getPref().getBoolean("draw.data.inactive_color", true);
         boolean virtual = !inactive && mv.isVirtualNodesEnabled();
@@ -544,6 +572,48 @@ public class OsmDataLayer extends AbstractOsmDataLayer implements Listener, Data
         MainApplication.getMap().conflictDialog.paintConflicts(g, mv);
     }
 
+    /**
+     * Returns the off-heap store backing this layer, if any.
+     * @return the store of the primitives not materialized in {@link #data} yet, or {@code null}
+     * @see OsmImporter
+     */
+    public MappedDataStore getMappedDataStore() {
+        return mappedDataStore;
+    }
+
+    /**
+     * Sets the off-heap store backing this layer. The primitives of the store are materialized in {@link #data}
+     * when their area is viewed, and the store is closed when the layer is destroyed.
+     * @param mappedDataStore the store of the primitives not in {@link #data}, or {@code null}
+     */
+    public void setMappedDataStore(MappedDataStore mappedDataStore) {
+        this.mappedDataStore = mappedDataStore;
+    }
+
+    /**
+     * Materializes in background the primitives of the mapped data store in the given area, if not too large.
+     * @param box the viewed area
+     */
+    private void materializeMappedData(Bounds box) {
+        MappedDataStore store = mappedDataStore;
+        if (store == null || box == null || box.getArea() > PROPERTY_MAPPED_STORE_MAX_AREA.get() || store.isMaterialized(box)
+                || !isMaterializing.compareAndSet(false, true)) {
+            return;
+        }
+        MATERIALIZER.submit(() -> {
+            materializingThread = Thread.currentThread();
+            try {
+                store.materialize(data, box, PROPERTY_MAPPED_STORE_MAX_TILES.get());
+            } catch (RuntimeException e) {
+                Logging.error(e);
+            } finally {
+                materializingThread = null;
+                isMaterializing.set(false);
+                invalidate();
+            }
+        });
+    }
+
     @Override public String getToolTipText() {
         DataCountVisitor counter = new DataCountVisitor();
         for (final OsmPrimitive osm : data.allPrimitives()) {
@@ -1120,6 +1190,14 @@ public class OsmDataLayer extends AbstractOsmDataLayer implements Listener, Data
         data.removeDataSetListener(MultipolygonCache.getInstance());
         removeClipboardDataFor(this);
         recentRelations.clear();
+        if (mappedDataStore != null) {
+            try {
+                mappedDataStore.close();
+            } catch (IOException e) {
+                Logging.warn(e);
+            }
+            mappedDataStore = null;
+        }
     }
 
     protected static void removeClipboardDataFor(OsmDataLayer osm) {
@@ -1139,7 +1217,10 @@ public class OsmDataLayer extends AbstractOsmDataLayer implements Listener, Data
     @Override
     public void processDatasetEvent(AbstractDatasetChangedEvent event) {
         invalidate();
-        setRequiresSaveToFile(true);
+        // the events are fired by the thread modifying the data set. Materialized primitives are already in the store
+        if (Thread.currentThread() != materializingThread) {
+            setRequiresSaveToFile(true);
+        }
         setRequiresUploadToServer(event.getDataset().requiresUploadToServer());
     }
 
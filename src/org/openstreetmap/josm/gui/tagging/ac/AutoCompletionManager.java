@@ -467,7 +467,16 @@ public class AutoCompletionManager implements DataSetListener {
 
     @Override
     public void dataChanged(DataChangedEvent event) {
-        dirty = true;
+        if (event.getBatch() != null) {
+            // Merged events: replay them, so that a full rebuild is only needed if tags have been removed
+            for (AbstractDatasetChangedEvent e : event.getEvents()) {
+                if (dirty)
+                    return;
+                e.fire(this);
+            }
+        } else {
+            dirty = true;
+        }
     }
 
     private AutoCompletionManager registerListeners() {
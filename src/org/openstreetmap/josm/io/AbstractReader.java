@@ -16,6 +16,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.OptionalLong;
 import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.DataSource;
@@ -99,6 +100,15 @@ public abstract class AbstractReader {
      */
     protected final Map<PrimitiveId, OsmPrimitive> externalIdMap = new HashMap<>();
 
+    /**
+     * Whether all read primitives kept their external id as unique id, so that they can be looked up in the data set,
+     * without allocating a key for {@link #externalIdMap}.
+     */
+    private boolean externalIdsKept = true;
+
+    /** Number of ways or relations from which their references are looked up in parallel */
+    private static final int PARALLEL_THRESHOLD = 1000;
+
     /**
      * Data structure for the remaining way objects
      */
@@ -150,12 +160,25 @@ public abstract class AbstractReader {
      * @throws IllegalDataException if a data integrity problem is detected
      */
     protected void processWaysAfterParsing() throws IllegalDataException {
-        for (Entry<Long, Collection<Long>> entry : ways.entrySet()) {
-            Long externalWayId = entry.getKey();
+        List<Entry<Long, Collection<Long>>> entries = new ArrayList<>(ways.entrySet());
+        // the lookups do not modify the data set, they are done in parallel before linking the ways to their nodes
+        Node[][] resolved = new Node[entries.size()][];
+        parallelRange(entries.size()).forEach(i -> {
+            Collection<Long> nodeIds = entries.get(i).getValue();
+            Node[] nodes = new Node[nodeIds.size()];
+            int j = 0;
+            for (long id : nodeIds) {
+                nodes[j++] = (Node) getReadPrimitive(id, OsmPrimitiveType.NODE);
+            }
+            resolved[i] = nodes;
+        });
+        for (int i = 0; i < entries.size(); i++) {
+            Long externalWayId = entries.get(i).getKey();
             Way w = (Way) externalIdMap.get(new SimplePrimitiveId(externalWayId, OsmPrimitiveType.WAY));
-            List<Node> wayNodes = new ArrayList<>();
-            for (long id : entry.getValue()) {
-                Node n = (Node) externalIdMap.get(new SimplePrimitiveId(id, OsmPrimitiveType.NODE));
+            List<Node> wayNodes = new ArrayList<>(resolved[i].length);
+            int j = 0;
+            for (long id : entries.get(i).getValue()) {
+                Node n = resolved[i][j++];
                 if (n == null) {
                     if (id <= 0)
                         throw new IllegalDataException(
@@ -200,15 +223,27 @@ public abstract class AbstractReader {
             ds.addPrimitive(relation);
         }
 
-        for (Entry<Long, Collection<RelationMemberData>> entry : relations.entrySet()) {
-            Long externalRelationId = entry.getKey();
+        List<Entry<Long, Collection<RelationMemberData>>> entries = new ArrayList<>(relations.entrySet());
+        // lookup the members from the map of already created primitives, in parallel as for the way nodes
+        OsmPrimitive[][] resolved = new OsmPrimitive[entries.size()][];
+        parallelRange(entries.size()).forEach(i -> {
+            Collection<RelationMemberData> members = entries.get(i).getValue();
+            OsmPrimitive[] primitives = new OsmPrimitive[members.size()];
+            int j = 0;
+            for (RelationMemberData rm : members) {
+                primitives[j++] = getReadPrimitive(rm.getMemberId(), rm.getMemberType());
+            }
+            resolved[i] = primitives;
+        });
+        for (int i = 0; i < entries.size(); i++) {
+            Long externalRelationId = entries.get(i).getKey();
             Relation relation = (Relation) externalIdMap.get(
                     new SimplePrimitiveId(externalRelationId, OsmPrimitiveType.RELATION)
             );
-            List<RelationMember> relationMembers = new ArrayList<>();
-            for (RelationMemberData rm : entry.getValue()) {
-                // lookup the member from the map of already created primitives
-                OsmPrimitive primitive = externalIdMap.get(new SimplePrimitiveId(rm.getMemberId(), rm.getMemberType()));
+            List<RelationMember> relationMembers = new ArrayList<>(resolved[i].length);
+            int j = 0;
+            for (RelationMemberData rm : entries.get(i).getValue()) {
+                OsmPrimitive primitive = resolved[i][j++];
 
                 if (primitive == null) {
                     if (rm.getMemberId() <= 0)
@@ -237,7 +272,9 @@ public abstract class AbstractReader {
                         }
 
                         ds.addPrimitive(primitive);
-                        externalIdMap.put(new SimplePrimitiveId(rm.getMemberId(), rm.getMemberType()), primitive);
+                        if (!externalIdsKept) {
+                            externalIdMap.put(new SimplePrimitiveId(rm.getMemberId(), rm.getMemberType()), primitive);
+                        }
                     }
                 }
                 if (primitive.isDeleted()) {
@@ -251,6 +288,24 @@ public abstract class AbstractReader {
         }
     }
 
+    private static IntStream parallelRange(int size) {
+        IntStream range = IntStream.range(0, size);
+        return size >= PARALLEL_THRESHOLD ? range.parallel() : range;
+    }
+
+    /**
+     * Returns a read primitive, by its external id.
+     * <p>
+     * This is called from several threads while {@link #prepareDataSet()} holds the update lock of the data set,
+     * so it only reads the map of the read primitives, which is not modified anymore, and never the data set.
+     * @param id the external id
+     * @param type the primitive type
+     * @return the primitive, or {@code null}
+     */
+    private OsmPrimitive getReadPrimitive(long id, OsmPrimitiveType type) {
+        return externalIdMap.get(new SimplePrimitiveId(id, type));
+    }
+
     protected void processChangesetAfterParsing() {
         if (uploadChangeset != null) {
             for (Map.Entry<String, String> e : uploadChangeset.getKeys().entrySet()) {
@@ -284,8 +339,28 @@ public abstract class AbstractReader {
         void accept(InputStreamReader ir) throws IllegalDataException, IOException;
     }
 
+    @FunctionalInterface
+    protected interface BinaryParserWorker {
+        /**
+         * Effectively parses the file, for binary formats (PBF, etc.)
+         * @param in input stream
+         * @throws IllegalDataException in case of invalid data
+         * @throws IOException in case of I/O error
+         */
+        void accept(InputStream in) throws IllegalDataException, IOException;
+    }
+
     protected final DataSet doParseDataSet(InputStream source, ProgressMonitor progressMonitor, ParserWorker parserWorker)
             throws IllegalDataException {
+        return doParseBinaryDataSet(source, progressMonitor, in -> {
+            try (InputStreamReader ir = UTFInputStreamReader.create(in)) {
+                parserWorker.accept(ir);
+            }
+        });
+    }
+
+    protected final DataSet doParseBinaryDataSet(InputStream source, ProgressMonitor progressMonitor, BinaryParserWorker parserWorker)
+            throws IllegalDataException {
         if (progressMonitor == null) {
             progressMonitor = NullProgressMonitor.INSTANCE;
         }
@@ -296,9 +371,7 @@ public abstract class AbstractReader {
             progressMonitor.beginTask(tr("Prepare OSM data..."), 4); // read, prepare, post-process, render
             progressMonitor.indeterminateSubTask(tr("Parsing OSM data..."));
 
-            try (InputStreamReader ir = UTFInputStreamReader.create(source)) {
-                parserWorker.accept(ir);
-            }
+            parserWorker.accept(source);
             progressMonitor.worked(1);
 
             boolean readOnly = getDataSet().isLocked();
@@ -423,14 +496,15 @@ public abstract class AbstractReader {
         }
     }
 
-    private final Map<String, Integer> timestampCache = new LruCache<>(30);
+    /** Cache of the last parsed timestamps, per thread, as the primitives may be built in parallel */
+    private final ThreadLocal<Map<String, Integer>> timestampCache = ThreadLocal.withInitial(() -> new LruCache<>(30));
 
     protected final void parseTimestamp(PrimitiveData current, String time) {
         if (time == null || time.isEmpty()) {
             return;
         }
         try {
-            int timestamp = timestampCache.computeIfAbsent(time, t -> (int) (DateUtils.tsFromString(t) / 1000));
+            int timestamp = timestampCache.get().computeIfAbsent(time, t -> (int) (DateUtils.tsFromString(t) / 1000));
             current.setRawTimestamp(timestamp);
         } catch (UncheckedParseException | DateTimeException e) {
             Logging.error(e);
@@ -638,6 +712,9 @@ public abstract class AbstractReader {
         p.setVisible(pd.isVisible());
         p.load(pd);
         externalIdMap.put(pd.getPrimitiveId(), p);
+        if (p.getUniqueId() != pd.getUniqueId()) {
+            externalIdsKept = false;
+        }
         return p;
     }
 
@@ -669,6 +746,19 @@ public abstract class AbstractReader {
 
     protected final Node parseNode(String lat, String lon, CommonReader commonReader, NodeReader nodeReader)
             throws IllegalDataException {
+        return addNode(parseNodeData(lat, lon, commonReader), nodeReader);
+    }
+
+    /**
+     * Reads a node, without building it. Unlike {@link #parseNode(String, String, CommonReader, NodeReader)},
+     * this method can be called in parallel.
+     * @param lat the latitude
+     * @param lon the longitude
+     * @param commonReader reader of the common attributes
+     * @return the node data
+     * @throws IllegalDataException in case of invalid data
+     */
+    protected final NodeData parseNodeData(String lat, String lon, CommonReader commonReader) throws IllegalDataException {
         NodeData nd = new NodeData(0);
         LatLon ll = null;
         if (areLatLonDefined(lat, lon)) {
@@ -684,7 +774,7 @@ public abstract class AbstractReader {
             throw new IllegalDataException(tr("Illegal value for attributes ''lat'', ''lon'' on node with ID {0}. Got ''{1}'', ''{2}''.",
                     Long.toString(nd.getId()), lat, lon));
         }
-        return addNode(nd, nodeReader);
+        return nd;
     }
 
     protected final Way parseWay(CommonReader commonReader, WayReader wayReader) throws IllegalDataException {
@@ -694,12 +784,16 @@ public abstract class AbstractReader {
 
         Collection<Long> nodeIds = new ArrayList<>();
         wayReader.accept(w, nodeIds);
+        putWayNodes(w, wd, nodeIds);
+        return w;
+    }
+
+    private void putWayNodes(Way w, WayData wd, Collection<Long> nodeIds) {
         if (w.isDeleted() && !nodeIds.isEmpty()) {
             Logging.info(tr("Deleted way {0} contains nodes", Long.toString(w.getUniqueId())));
             nodeIds = new ArrayList<>();
         }
         ways.put(wd.getUniqueId(), nodeIds);
-        return w;
     }
 
     protected final Relation parseRelation(CommonReader commonReader, RelationReader relationReader) throws IllegalDataException {
@@ -709,40 +803,71 @@ public abstract class AbstractReader {
 
         Collection<RelationMemberData> members = new ArrayList<>();
         relationReader.accept(r, members);
+        putRelationMembers(r, rd, members);
+        return r;
+    }
+
+    private void putRelationMembers(Relation r, RelationData rd, Collection<RelationMemberData> members) {
         if (r.isDeleted() && !members.isEmpty()) {
             Logging.info(tr("Deleted relation {0} contains members", Long.toString(r.getUniqueId())));
             members = new ArrayList<>();
         }
         relations.put(rd.getUniqueId(), members);
-        return r;
+    }
+
+    /**
+     * Builds the primitives read in parallel, in their order.
+     * @param block the primitives read, with their way nodes and relation members
+     */
+    final void addPrimitives(PrimitiveBlock block) {
+        int way = 0;
+        int relation = 0;
+        for (PrimitiveData pd : block.primitives) {
+            OsmPrimitive p = buildPrimitive(pd);
+            if (pd instanceof WayData) {
+                putWayNodes((Way) p, (WayData) pd, block.wayNodes.get(way++));
+            } else if (pd instanceof RelationData) {
+                putRelationMembers((Relation) p, (RelationData) pd, block.relationMembers.get(relation++));
+            }
+        }
     }
 
     protected final RelationMemberData parseRelationMember(Relation r, String ref, String type, String role) throws IllegalDataException {
+        return parseRelationMember(r.getUniqueId(), ref, type, role);
+    }
+
+    protected final RelationMemberData parseRelationMember(long relationId, String ref, String type, String role)
+            throws IllegalDataException {
         if (ref == null) {
             throw new IllegalDataException(tr("Missing attribute ''ref'' on member in relation {0}.",
-                    Long.toString(r.getUniqueId())));
+                    Long.toString(relationId)));
         }
         try {
-            return parseRelationMember(r, Long.parseLong(ref), type, role);
+            return parseRelationMember(relationId, Long.parseLong(ref), type, role);
         } catch (NumberFormatException e) {
             throw new IllegalDataException(tr("Illegal value for attribute ''ref'' on member in relation {0}. Got {1}",
-                    Long.toString(r.getUniqueId()), ref), e);
+                    Long.toString(relationId), ref), e);
         }
     }
 
     protected final RelationMemberData parseRelationMember(Relation r, long id, String type, String role) throws IllegalDataException {
+        return parseRelationMember(r.getUniqueId(), id, type, role);
+    }
+
+    protected final RelationMemberData parseRelationMember(long relationId, long id, String type, String role)
+            throws IllegalDataException {
         if (id == 0) {
             throw new IllegalDataException(tr("Incomplete <member> specification with ref=0"));
         }
         if (type == null) {
             throw new IllegalDataException(tr("Missing attribute ''type'' on member {0} in relation {1}.",
-                    Long.toString(id), Long.toString(r.getUniqueId())));
+                    Long.toString(id), Long.toString(relationId)));
         }
         try {
             return new RelationMemberData(role, OsmPrimitiveType.fromApiTypeName(type), id);
         } catch (IllegalArgumentException e) {
             throw new IllegalDataException(tr("Illegal value for attribute ''type'' on member {0} in relation {1}. Got {2}.",
-                    Long.toString(id), Long.toString(r.getUniqueId()), type), e);
+                    Long.toString(id), Long.toString(relationId), type), e);
         }
     }
 }
@@ -0,0 +1,96 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Input of the compact binary formats of {@link OsmBinaryReader} and {@link GpxBinaryReader}.
+ * @see BinaryOutput
+ */
+final class BinaryInput {
+
+    private final DataInputStream in;
+    private final List<String> strings = new ArrayList<>();
+
+    /**
+     * Constructs a new {@code BinaryInput}.
+     * @param in the input stream
+     */
+    BinaryInput(InputStream in) {
+        this.in = new DataInputStream(new BufferedInputStream(in, 65536));
+    }
+
+    int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    long readVarint() throws IOException, IllegalDataException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalDataException(tr("Invalid variable length integer"));
+    }
+
+    /**
+     * Reads a length or a count, which must fit in an int.
+     * @return the length
+     * @throws IOException in case of I/O error
+     * @throws IllegalDataException if the length is negative or too large
+     */
+    int readLength() throws IOException, IllegalDataException {
+        long length = readVarint();
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IllegalDataException(tr("Invalid length: {0}", length));
+        }
+        return (int) length;
+    }
+
+    long readSignedVarint() throws IOException, IllegalDataException {
+        long v = readVarint();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    double readDouble() throws IOException {
+        return in.readDouble();
+    }
+
+    String readString() throws IOException, IllegalDataException {
+        long index = readVarint();
+        if (index == 0) {
+            return null;
+        } else if (index == 1) {
+            byte[] bytes = new byte[readLength()];
+            in.readFully(bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            if (strings.size() < BinaryOutput.MAX_STRINGS) {
+                strings.add(value);
+            }
+            return value;
+        } else if (index - 2 < strings.size()) {
+            return strings.get((int) (index - 2));
+        }
+        throw new IllegalDataException(tr("Invalid string reference: {0}", index));
+    }
+}
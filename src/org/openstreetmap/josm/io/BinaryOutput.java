@@ -0,0 +1,96 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Output of the compact binary formats of {@link OsmBinaryWriter} and {@link GpxBinaryWriter}: variable length
+ * integers, and strings written once then referred to by their index in a string table.
+ * @see BinaryInput
+ */
+final class BinaryOutput implements Closeable {
+
+    /** Maximum number of strings of the table, to bound the memory used by the reader and the writer */
+    static final int MAX_STRINGS = 1 << 16;
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    /**
+     * Constructs a new {@code BinaryOutput}.
+     * @param out the output stream, closed with this output
+     */
+    BinaryOutput(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 65536));
+    }
+
+    void writeByte(int value) throws IOException {
+        out.write(value);
+    }
+
+    void writeBoolean(boolean value) throws IOException {
+        out.write(value ? 1 : 0);
+    }
+
+    void writeVarint(long value) throws IOException {
+        long v = value;
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    /**
+     * Writes a signed value, zigzag encoded so that small negative values are short too.
+     * @param value the value
+     * @throws IOException in case of I/O error
+     */
+    void writeSignedVarint(long value) throws IOException {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    void writeDouble(double value) throws IOException {
+        out.writeDouble(value);
+    }
+
+    /**
+     * Writes a string, or {@code null}. A string already written is replaced by its index in the string table.
+     * @param value the string, can be {@code null}
+     * @throws IOException in case of I/O error
+     */
+    void writeString(String value) throws IOException {
+        if (value == null) {
+            writeVarint(0);
+            return;
+        }
+        Integer index = strings.get(value);
+        if (index != null) {
+            writeVarint(index + 2L);
+            return;
+        }
+        writeVarint(1);
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        out.write(bytes);
+        if (strings.size() < MAX_STRINGS) {
+            strings.put(value, strings.size());
+        }
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -3,20 +3,27 @@ package org.openstreetmap.josm.io;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.SocketException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.DataSource;
 import org.openstreetmap.josm.data.gpx.GpxData;
 import org.openstreetmap.josm.data.notes.Note;
 import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DataSetMerger;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.tools.CheckParameterUtil;
 import org.openstreetmap.josm.tools.JosmRuntimeException;
 import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
 import org.xml.sax.SAXException;
 
 /**
@@ -34,6 +41,9 @@ public class BoundingBoxDownloader extends OsmServerReader {
     protected final double lon2;
     protected final boolean crosses180th;
 
+    private OsmMapTileCache tileCache;
+    private boolean defaultTileCache = true;
+
     /**
      * Constructs a new {@code BoundingBoxDownloader}.
      * @param downloadArea The area to download
@@ -47,6 +57,29 @@ public class BoundingBoxDownloader extends OsmServerReader {
         this.crosses180th = downloadArea.crosses180thMeridian();
     }
 
+    /**
+     * Sets the on-disk cache of map data tiles. By default, {@link OsmMapTileCache#getDefault} is used.
+     * @param tileCache the cache, or {@code null} to download the whole area from the server
+     * @return {@code this}
+     */
+    public BoundingBoxDownloader setTileCache(OsmMapTileCache tileCache) {
+        this.tileCache = tileCache;
+        this.defaultTileCache = false;
+        return this;
+    }
+
+    /**
+     * Returns the cache of map data tiles the download is assembled from.
+     * @return the cache, or {@code null} if the whole area is downloaded from the server
+     */
+    protected OsmMapTileCache getTileCache() {
+        if (defaultTileCache) {
+            tileCache = OsmMapTileCache.getDefault(getBaseUrl());
+            defaultTileCache = false;
+        }
+        return tileCache != null && tileCache.isEnabled() ? tileCache : null;
+    }
+
     private GpxData downloadRawGps(Bounds b, ProgressMonitor progressMonitor) throws IOException, OsmTransferException, SAXException {
         boolean done = false;
         GpxData result = null;
@@ -162,8 +195,76 @@ public class BoundingBoxDownloader extends OsmServerReader {
         return OsmReader.parseDataSet(source, progressMonitor);
     }
 
+    /**
+     * Assembles the data of the given tiles from the cache, and downloads the missing or stale ones in one request,
+     * for their bounding rectangle.
+     * @param cache the cache
+     * @param tiles the tiles covering the download area
+     * @param progressMonitor progress monitor
+     * @return the data of the tiles, or {@code null} if canceled
+     * @throws OsmTransferException if an error occurs
+     */
+    private DataSet parseOsmTiles(OsmMapTileCache cache, List<OsmMapTileCache.Tile> tiles, ProgressMonitor progressMonitor)
+            throws OsmTransferException {
+        Map<OsmMapTileCache.Tile, File> files = new LinkedHashMap<>();
+        List<OsmMapTileCache.Tile> missing = new ArrayList<>();
+        for (OsmMapTileCache.Tile tile : tiles) {
+            File file = cache.getFreshFile(tile);
+            if (file != null) {
+                files.put(tile, file);
+            } else {
+                missing.add(tile);
+            }
+        }
+        // the missing tiles are downloaded at once, refreshing the cached tiles between them
+        List<OsmMapTileCache.Tile> downloaded = missing.isEmpty() ? missing : OsmMapTileCache.getTilesInside(tiles, missing);
+        files.keySet().removeAll(downloaded);
+        progressMonitor.beginTask(getTaskName(), files.size() + (downloaded.isEmpty() ? 0 : 1));
+        try {
+            DataSet ds = new DataSet();
+            if (!downloaded.isEmpty()) {
+                Bounds b = OsmMapTileCache.getBounds(downloaded);
+                try (InputStream in = getInputStream(getRequestForBbox(b.getMinLon(), b.getMinLat(), b.getMaxLon(), b.getMaxLat()),
+                        progressMonitor.createSubTaskMonitor(0, false))) {
+                    if (in == null)
+                        return null;
+                    ds = parseDataSet(in, progressMonitor.createSubTaskMonitor(1, false));
+                }
+                for (OsmMapTileCache.Tile tile : downloaded) {
+                    cache.store(tile, ds);
+                }
+            }
+            for (Map.Entry<OsmMapTileCache.Tile, File> e : files.entrySet()) {
+                if (isCanceled())
+                    return null;
+                Logging.debug("Reusing cached tile {0}", e.getKey());
+                DataSet tileData;
+                try (InputStream in = Files.newInputStream(e.getValue().toPath())) {
+                    tileData = parseDataSet(in, progressMonitor.createSubTaskMonitor(1, false));
+                } catch (IllegalDataException ex) {
+                    Utils.deleteFile(e.getValue());
+                    throw ex;
+                }
+                new DataSetMerger(ds, tileData).merge(null, true);
+            }
+            return ds;
+        } catch (IllegalDataException | IOException e) {
+            throw new OsmTransferException(e);
+        } finally {
+            progressMonitor.finishTask();
+            activeConnection = null;
+        }
+    }
+
     @Override
     public DataSet parseOsm(ProgressMonitor progressMonitor) throws OsmTransferException {
+        OsmMapTileCache cache = crosses180th ? null : getTileCache();
+        if (cache != null) {
+            List<OsmMapTileCache.Tile> tiles = cache.getTiles(new Bounds(lat1, lon1, lat2, lon2));
+            if (!tiles.isEmpty() && tiles.size() <= OsmMapTileCache.MAX_TILES.get()) {
+                return parseOsmTiles(cache, tiles, progressMonitor);
+            }
+        }
         progressMonitor.beginTask(getTaskName(), 10);
         try {
             DataSet ds = null;
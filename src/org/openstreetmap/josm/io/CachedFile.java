@@ -8,6 +8,7 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.math.BigInteger;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
@@ -20,16 +21,26 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.data.preferences.ListProperty;
 import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.tools.HttpClient;
 import org.openstreetmap.josm.tools.Logging;
@@ -50,6 +61,11 @@ import org.openstreetmap.josm.tools.Utils;
  * <p>
  * The file content is normally accessed with {@link #getInputStream()}, but
  * you can also get the mirrored copy with {@link #getFile()}.
+ * <p>
+ * When the server replied an {@code ETag}, a stale copy is revalidated with a
+ * {@code If-None-Match} request, and only downloaded again if it changed.
+ * Concurrent requests of the same URL to the same cache directory, even by
+ * different instances, share one download.
  */
 public class CachedFile implements Closeable {
 
@@ -86,6 +102,29 @@ public class CachedFile implements Closeable {
     public static final long DEFAULT_MAXTIME = -1L;
     public static final long DAYS = TimeUnit.DAYS.toSeconds(1); // factor to get caching time in days
 
+    /**
+     * URLs of resources to download in parallel during startup, see {@link #prefetchStartupResources()}.
+     */
+    public static final ListProperty PREFETCH_URLS = new ListProperty("mirror.prefetch", Collections.emptyList());
+
+    /**
+     * The downloads in progress, by URL and cache directory.
+     */
+    private static final Map<String, Download> DOWNLOADS = new ConcurrentHashMap<>();
+
+    /**
+     * A download in progress, shared with the instances requesting the same file with the same settings.
+     */
+    private static final class Download {
+        /** The settings changing the request or the reuse of the cached file, see {@link CachedFile#getSettings()} */
+        final String settings;
+        final CompletableFuture<File> file = new CompletableFuture<>();
+
+        Download(String settings) {
+            this.settings = settings;
+        }
+    }
+
     private final Map<String, String> httpHeaders = new ConcurrentHashMap<>();
 
     /**
@@ -394,7 +433,7 @@ public class CachedFile implements Closeable {
             if (!"file".equals(url.getProtocol())) {
                 String prefKey = getPrefKey(url, destDir);
                 List<String> localPath = new ArrayList<>(Config.getPref().getList(prefKey));
-                if (localPath.size() == 2) {
+                if (localPath.size() >= 2) {
                     File lfile = new File(localPath.get(1));
                     if (lfile.exists()) {
                         Utils.deleteFile(lfile);
@@ -424,18 +463,109 @@ public class CachedFile implements Closeable {
         return prefKey.toString().replace("=", "_");
     }
 
+    /**
+     * Downloads the given files in parallel, unless their cached copy is recent enough. Failures are logged.
+     * <p>
+     * The files requested meanwhile by other instances, with the same URL and destination directory, are not
+     * downloaded again but wait for these downloads.
+     * @param files the files to download
+     */
+    public static void prefetch(Collection<? extends CachedFile> files) {
+        if (files.isEmpty())
+            return;
+        int threads = Math.max(1, Math.min(files.size(), Config.getPref().getInt("mirror.prefetch.threads", 4)));
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                Utils.newThreadFactory("cached-file-prefetch-%d", Thread.NORM_PRIORITY));
+        try {
+            List<Pair<CachedFile, Future<File>>> downloads = new ArrayList<>(files.size());
+            for (CachedFile file : files) {
+                downloads.add(Pair.create(file, executor.submit(file::getFile)));
+            }
+            for (Pair<CachedFile, Future<File>> download : downloads) {
+                try {
+                    download.b.get();
+                } catch (ExecutionException e) {
+                    Logging.warn(tr("Failed to prefetch {0}: {1}", download.a, e.getCause()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Logging.warn(e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Downloads the resources of {@link #PREFETCH_URLS} in parallel, so that they are ready when needed.
+     */
+    public static void prefetchStartupResources() {
+        prefetch(PREFETCH_URLS.get().stream().map(CachedFile::new).collect(Collectors.toList()));
+    }
+
     private File checkLocal(URL url) throws IOException {
-        String prefKey = getPrefKey(url, destDir);
         String urlStr = url.toExternalForm();
         if (parameter != null)
             urlStr = urlStr.replaceAll("%<(.*)>", "");
+        String key = (destDir != null ? destDir : Config.getDirs().getCacheDirectory(false).getPath()) + File.separator + urlStr;
+        Download download = new Download(getSettings());
+        Download running;
+        while ((running = DOWNLOADS.putIfAbsent(key, download)) != null) {
+            if (running.settings.equals(download.settings)) {
+                Logging.debug("Waiting for download in progress ({0})", urlStr);
+                return waitFor(running.file);
+            }
+            // the same file is downloaded with other settings, its result cannot be used but the file is written
+            Logging.debug("Waiting for download in progress with other settings ({0})", urlStr);
+            try {
+                waitFor(running.file);
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                Logging.trace(e);
+            }
+        }
+        try {
+            File file = checkLocal(url, urlStr);
+            download.file.complete(file);
+            return file;
+        } catch (IOException | RuntimeException e) {
+            download.file.completeExceptionally(e);
+            throw e;
+        } finally {
+            DOWNLOADS.remove(key, download);
+        }
+    }
+
+    /**
+     * Returns the settings of this instance which change the request, or whether the cached file is reused.
+     * @return the maximum age, caching strategy, accepted MIME types and HTTP headers
+     */
+    private String getSettings() {
+        return maxAge + "|" + cachingStrategy + '|' + httpAccept + '|' + new TreeMap<>(httpHeaders);
+    }
+
+    private static File waitFor(Future<File> download) throws IOException {
+        try {
+            return download.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private File checkLocal(URL url, String urlStr) throws IOException {
+        String prefKey = getPrefKey(url, destDir);
         long age = 0L;
         long maxAgeMillis = TimeUnit.SECONDS.toMillis(maxAge);
         Long ifModifiedSince = null;
+        String etag = null;
         File localFile = null;
         List<String> localPathEntry = new ArrayList<>(Config.getPref().getList(prefKey));
         boolean offline = NetworkManager.isOffline(urlStr);
-        if (localPathEntry.size() == 2) {
+        if (localPathEntry.size() >= 2) {
             localFile = new File(localPathEntry.get(1));
             if (!localFile.exists()) {
                 localFile = null;
@@ -455,6 +585,9 @@ public class CachedFile implements Closeable {
                 if (cachingStrategy == CachingStrategy.IfModifiedSince) {
                     ifModifiedSince = Long.valueOf(localPathEntry.get(0));
                 }
+                if (localPathEntry.size() > 2) {
+                    etag = localPathEntry.get(2);
+                }
             }
         }
         if (destDir == null) {
@@ -492,14 +625,17 @@ public class CachedFile implements Closeable {
                     .setAccept(httpAccept)
                     .setIfModifiedSince(ifModifiedSince == null ? 0L : ifModifiedSince)
                     .setHeaders(httpHeaders);
+            if (etag != null) {
+                activeConnection.setHeader("If-None-Match", etag);
+            }
             if (fastFail) {
                 activeConnection.setReadTimeout(1000);
             }
             final HttpClient.Response con = activeConnection.connect();
-            if (ifModifiedSince != null && con.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            if ((ifModifiedSince != null || etag != null) && con.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
                 Logging.debug("304 Not Modified ({0})", urlStr);
-                Config.getPref().putList(prefKey,
-                        Arrays.asList(Long.toString(System.currentTimeMillis()), localPathEntry.get(1)));
+                localPathEntry.set(0, Long.toString(System.currentTimeMillis()));
+                Config.getPref().putList(prefKey, localPathEntry);
                 return localFile;
             } else if (con.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
                 throw new IOException(tr("The requested URL {0} was not found", urlStr));
@@ -510,8 +646,9 @@ public class CachedFile implements Closeable {
             activeConnection = null;
             localFile = new File(destDir, localPath);
             if (PlatformManager.getPlatform().rename(destDirFile, localFile)) {
-                Config.getPref().putList(prefKey,
-                        Arrays.asList(Long.toString(System.currentTimeMillis()), localFile.toString()));
+                List<String> entry = new ArrayList<>(Arrays.asList(Long.toString(System.currentTimeMillis()), localFile.toString()));
+                Optional.ofNullable(con.getHeaderField("ETag")).ifPresent(entry::add);
+                Config.getPref().putList(prefKey, entry);
             } else {
                 Logging.warn(tr("Failed to rename file {0} to {1}.",
                 destDirFile.getPath(), localFile.getPath()));
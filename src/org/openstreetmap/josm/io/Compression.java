@@ -9,6 +9,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
@@ -19,6 +20,7 @@ import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
 import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
 import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
 import org.openstreetmap.josm.tools.Logging;
 import org.openstreetmap.josm.tools.Utils;
 
@@ -47,6 +49,35 @@ public enum Compression {
      */
     XZ;
 
+    /**
+     * Whether {@link #getCompressedOutputStream} compresses blocks in parallel, for the gzip, bzip2 and xz compressions.
+     */
+    public static final BooleanProperty PROP_PARALLEL = new BooleanProperty("compression.parallel", true);
+
+    /**
+     * Whether {@link #getUncompressedFileInputStream} decompresses the gzip, bzip2 and xz files ahead of the reader,
+     * in parallel for the multi-stream bzip2 files and the multi-block xz files.
+     */
+    public static final BooleanProperty PROP_READ_AHEAD = new BooleanProperty("compression.read-ahead", true);
+
+    /** Size of the blocks compressed in parallel, as a complete gzip member */
+    private static final int PARALLEL_GZIP_BLOCK_SIZE = 1 << 20;
+    /** Size of the blocks compressed in parallel as a complete bzip2 stream, the maximum size of a single bzip2 block */
+    private static final int PARALLEL_BZIP2_BLOCK_SIZE = 900_000;
+    /** Size of the blocks compressed in parallel as a complete xz stream, matching the dictionary of the default preset */
+    private static final int PARALLEL_XZ_BLOCK_SIZE = 8 << 20;
+    /** Maximum number of xz blocks compressed at the same time */
+    private static final int PARALLEL_XZ_MAX_PENDING = 4;
+    /** Memory needed by an xz encoder with the default preset */
+    private static final long XZ_ENCODER_MEMORY = 100L << 20;
+
+    /**
+     * Thread pool shared by the streams compressing or decompressing blocks in parallel, created when first needed.
+     */
+    private static final class ThreadPoolHolder {
+        static final ForkJoinPool POOL = Utils.newForkJoinPool("compression.threads", "compression-%d", Thread.NORM_PRIORITY);
+    }
+
     /**
      * Determines the compression type depending on the suffix of {@code name}.
      * @param name File name including extension
@@ -191,9 +222,13 @@ public enum Compression {
      * @since 16816
      */
     public static InputStream getUncompressedFileInputStream(Path path) throws IOException {
+        Compression compression = byExtension(path.getFileName().toString());
+        if (PROP_READ_AHEAD.get() && (compression == BZIP2 || compression == GZIP || compression == XZ)) {
+            return new ReadAheadDecompressorInputStream(path, compression);
+        }
         InputStream in = Files.newInputStream(path); // NOPMD
         try {
-            return byExtension(path.getFileName().toString()).getUncompressedInputStream(in);
+            return compression.getUncompressedInputStream(in);
         } catch (IOException e) {
             Utils.close(in);
             throw e;
@@ -202,12 +237,57 @@ public enum Compression {
 
     /**
      * Returns a compressing {@link OutputStream} for {@code out}.
+     * <p>
+     * If {@link #PROP_PARALLEL} is enabled, the gzip, bzip2 and xz compressions use all the processors,
+     * see {@link #getParallelCompressedOutputStream}.
      * @param out raw output stream
      * @return compressing output stream
      *
      * @throws IOException if any I/O error occurs
      */
     public OutputStream getCompressedOutputStream(OutputStream out) throws IOException {
+        return PROP_PARALLEL.get() ? getParallelCompressedOutputStream(out) : getSerialCompressedOutputStream(out);
+    }
+
+    /**
+     * Returns a compressing {@link OutputStream} for {@code out}, compressing blocks in parallel.
+     * <p>
+     * The output is a sequence of gzip members, bzip2 streams or xz streams, one per block of uncompressed data.
+     * It is read as a single stream by {@link #getUncompressedInputStream} and by the usual command line tools.
+     * The zip compression is not done in parallel. The xz compression is only done in parallel if at most an eighth
+     * of the maximum heap size is needed by the encoders.
+     * @param out raw output stream
+     * @return compressing output stream
+     *
+     * @throws IOException if any I/O error occurs
+     */
+    public OutputStream getParallelCompressedOutputStream(OutputStream out) throws IOException {
+        switch (this) {
+            case BZIP2:
+                return new ParallelCompressorOutputStream(out, this, PARALLEL_BZIP2_BLOCK_SIZE, Integer.MAX_VALUE);
+            case GZIP:
+                return new ParallelCompressorOutputStream(out, this, PARALLEL_GZIP_BLOCK_SIZE, Integer.MAX_VALUE);
+            case XZ:
+                int maxPending = (int) Math.min(PARALLEL_XZ_MAX_PENDING, Runtime.getRuntime().maxMemory() / 8 / XZ_ENCODER_MEMORY);
+                return maxPending >= 2
+                        ? new ParallelCompressorOutputStream(out, this, PARALLEL_XZ_BLOCK_SIZE, maxPending)
+                        : getSerialCompressedOutputStream(out);
+            case ZIP:
+            case NONE:
+            default:
+                return getSerialCompressedOutputStream(out);
+        }
+    }
+
+    /**
+     * Returns the thread pool of the streams compressing or decompressing blocks in parallel.
+     * @return the thread pool, sized by the {@code compression.threads} preference
+     */
+    static ForkJoinPool getThreadPool() {
+        return ThreadPoolHolder.POOL;
+    }
+
+    OutputStream getSerialCompressedOutputStream(OutputStream out) throws IOException {
         switch (this) {
             case BZIP2:
                 return new BZip2CompressorOutputStream(out);
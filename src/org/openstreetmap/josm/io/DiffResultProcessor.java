@@ -3,18 +3,22 @@ package org.openstreetmap.josm.io;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
-import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.openstreetmap.josm.data.osm.Changeset;
 import org.openstreetmap.josm.data.osm.DataSet;
@@ -28,11 +32,6 @@ import org.openstreetmap.josm.tools.CheckParameterUtil;
 import org.openstreetmap.josm.tools.Utils;
 import org.openstreetmap.josm.tools.XmlParsingException;
 import org.openstreetmap.josm.tools.XmlUtils;
-import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
-import org.xml.sax.Locator;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
 
 /**
  * Helper class to process the OSM API server response to a "diff" upload.
@@ -85,18 +84,72 @@ public class DiffResultProcessor {
      *
      */
     public void parse(String diffUploadResponse, ProgressMonitor progressMonitor) throws XmlParsingException {
+        CheckParameterUtil.ensureParameterNotNull(diffUploadResponse, "diffUploadResponse");
+        try {
+            parse(XmlUtils.newSafeXMLInputFactory().createXMLStreamReader(new StringReader(diffUploadResponse)), progressMonitor);
+        } catch (XMLStreamException e) {
+            throw new XmlParsingException(e).rememberLocation(e.getLocation());
+        }
+    }
+
+    /**
+     * Parse the response from a diff upload to the OSM API, while it is read from the server.
+     *
+     * @param diffUploadResponse the response stream. Must not be null.
+     * @param progressMonitor a progress monitor. Defaults to {@link NullProgressMonitor#INSTANCE} if null
+     * @throws IllegalArgumentException if diffUploadResponse is null
+     * @throws XmlParsingException if the response can't be parsed successfully
+     */
+    public void parse(InputStream diffUploadResponse, ProgressMonitor progressMonitor) throws XmlParsingException {
+        CheckParameterUtil.ensureParameterNotNull(diffUploadResponse, "diffUploadResponse");
+        try {
+            parse(XmlUtils.newSafeXMLInputFactory().createXMLStreamReader(diffUploadResponse), progressMonitor);
+        } catch (XMLStreamException e) {
+            throw new XmlParsingException(e).rememberLocation(e.getLocation());
+        }
+    }
+
+    private void parse(XMLStreamReader parser, ProgressMonitor progressMonitor) throws XmlParsingException {
         if (progressMonitor == null) {
             progressMonitor = NullProgressMonitor.INSTANCE;
         }
-        CheckParameterUtil.ensureParameterNotNull(diffUploadResponse, "diffUploadResponse");
         try {
             progressMonitor.beginTask(tr("Parsing response from server..."));
-            InputSource inputSource = new InputSource(new StringReader(diffUploadResponse));
-            XmlUtils.parseSafeSAX(inputSource, new Parser());
-        } catch (XmlParsingException e) {
-            throw e;
-        } catch (IOException | ParserConfigurationException | SAXException e) {
-            throw new XmlParsingException(e);
+            while (parser.hasNext()) {
+                if (parser.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String name = parser.getLocalName();
+                switch (name) {
+                case "diffResult":
+                    // the root element, ignore
+                    break;
+                case "node":
+                case "way":
+                case "relation":
+                    PrimitiveId id = new SimplePrimitiveId(
+                            Long.parseLong(parser.getAttributeValue(null, "old_id")),
+                            OsmPrimitiveType.fromApiTypeName(name)
+                    );
+                    DiffResultEntry entry = new DiffResultEntry();
+                    String newId = parser.getAttributeValue(null, "new_id");
+                    if (newId != null) {
+                        entry.newId = Long.parseLong(newId);
+                    }
+                    String newVersion = parser.getAttributeValue(null, "new_version");
+                    if (newVersion != null) {
+                        entry.newVersion = Integer.parseInt(newVersion);
+                    }
+                    diffResults.put(id, entry);
+                    break;
+                default:
+                    throw new XmlParsingException(tr("Unexpected XML element with name ''{0}''", name)).rememberLocation(parser.getLocation());
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new XmlParsingException(e).rememberLocation(e.getLocation());
+        } catch (NumberFormatException e) {
+            throw new XmlParsingException(e).rememberLocation(parser.getLocation());
         } finally {
             progressMonitor.finishTask();
         }
@@ -108,6 +161,9 @@ public class DiffResultProcessor {
      * Uploaded objects are assigned their new id (if they got assigned a new
      * id by the server), their new version (if the version was incremented),
      * and the id of the changeset to which they were uploaded.
+     * <p>
+     * The ids of the primitives of the data set are updated in one pass by {@link DataSet#setOsmIds}, which fires
+     * a single event instead of removing and adding each primitive again.
      *
      * @param cs the current changeset. Ignored if null.
      * @param monitor the progress monitor. Set to {@link NullProgressMonitor#INSTANCE} if null
@@ -131,27 +187,46 @@ public class DiffResultProcessor {
         }
         try {
             monitor.beginTask("Postprocessing uploaded data ...");
-            monitor.setTicksCount(primitives.size());
-            monitor.setTicks(0);
+            List<OsmPrimitive> uploaded = new ArrayList<>();
+            List<OsmPrimitive> remapped = new ArrayList<>();
+            List<DiffResultEntry> entries = new ArrayList<>();
             for (OsmPrimitive p : primitives) {
-                monitor.worked(1);
                 DiffResultEntry entry = diffResults.get(p.getPrimitiveId());
                 if (entry == null) {
                     continue;
                 }
-                processed.add(p);
-                if (!p.isDeleted()) {
-                    p.setOsmId(entry.newId, entry.newVersion);
-                    p.setVisible(true);
+                uploaded.add(p);
+                if (p.isDeleted()) {
+                    continue;
+                } else if (ds != null && p.getDataSet() == ds) {
+                    remapped.add(p);
+                    entries.add(entry);
                 } else {
-                    p.setVisible(false);
+                    p.setOsmId(entry.newId, entry.newVersion);
                 }
-                if (cs != null && !cs.isNew()) {
+            }
+            if (!remapped.isEmpty()) {
+                long[] ids = new long[remapped.size()];
+                int[] versions = new int[remapped.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = entries.get(i).newId;
+                    versions[i] = entries.get(i).newVersion;
+                }
+                ds.setOsmIds(remapped, ids, versions);
+            }
+            monitor.setTicksCount(uploaded.size());
+            monitor.setTicks(0);
+            Date timestamp = cs != null && !cs.isNew() ? Utils.firstNonNull(cs.getClosedAt(), new Date()) : null;
+            for (OsmPrimitive p : uploaded) {
+                monitor.worked(1);
+                p.setVisible(!p.isDeleted());
+                if (timestamp != null) {
                     p.setChangesetId(cs.getId());
                     p.setUser(cs.getUser());
                     // TODO is there a way to obtain the timestamp for non-closed changesets?
-                    p.setTimestamp(Utils.firstNonNull(cs.getClosedAt(), new Date()));
+                    p.setTimestamp(timestamp);
                 }
+                processed.add(p);
             }
             return processed;
         } finally {
@@ -165,50 +240,6 @@ public class DiffResultProcessor {
         }
     }
 
-    private class Parser extends DefaultHandler {
-        private Locator locator;
-
-        @Override
-        public void setDocumentLocator(Locator locator) {
-            this.locator = locator;
-        }
-
-        protected void throwException(String msg) throws XmlParsingException {
-            throw new XmlParsingException(msg).rememberLocation(locator);
-        }
-
-        @Override
-        public void startElement(String namespaceURI, String localName, String qName, Attributes atts) throws SAXException {
-            try {
-                switch (qName) {
-                case "diffResult":
-                    // the root element, ignore
-                    break;
-                case "node":
-                case "way":
-                case "relation":
-                    PrimitiveId id = new SimplePrimitiveId(
-                            Long.parseLong(atts.getValue("old_id")),
-                            OsmPrimitiveType.fromApiTypeName(qName)
-                    );
-                    DiffResultEntry entry = new DiffResultEntry();
-                    if (atts.getValue("new_id") != null) {
-                        entry.newId = Long.parseLong(atts.getValue("new_id"));
-                    }
-                    if (atts.getValue("new_version") != null) {
-                        entry.newVersion = Integer.parseInt(atts.getValue("new_version"));
-                    }
-                    diffResults.put(id, entry);
-                    break;
-                default:
-                    throwException(tr("Unexpected XML element with name ''{0}''", qName));
-                }
-            } catch (NumberFormatException e) {
-                throw new XmlParsingException(e).rememberLocation(locator);
-            }
-        }
-    }
-
     final Map<PrimitiveId, DiffResultEntry> getDiffResults() {
         return new HashMap<>(diffResults);
     }
@@ -22,6 +22,7 @@ import javax.json.Json;
 import javax.json.JsonArray;
 import javax.json.JsonNumber;
 import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
 import javax.json.JsonString;
 import javax.json.JsonValue;
 import javax.json.stream.JsonParser;
@@ -49,6 +50,9 @@ import org.openstreetmap.josm.tools.Utils;
 
 /**
  * Reader that reads GeoJSON files. See <a href="https://tools.ietf.org/html/rfc7946">RFC7946</a> for more information.
+ * <p>
+ * The features of a FeatureCollection are streamed: each feature is converted to primitives as soon as it is read,
+ * so that the memory used by the parser is bounded by the size of one feature.
  * @since 15424
  */
 public class GeoJSONReader extends AbstractReader {
@@ -73,12 +77,62 @@ public class GeoJSONReader extends AbstractReader {
         while (parser.hasNext()) {
             Event event = parser.next();
             if (event == Event.START_OBJECT) {
-                parseRoot(parser.getObject());
+                parseRoot(parser);
             }
         }
         parser.close();
     }
 
+    /**
+     * Parses the root object, with the parser positioned at its start. The features array is streamed,
+     * the other members are read as a whole.
+     * @param parser the JSON parser
+     * @throws IllegalDataException in case of error
+     */
+    private void parseRoot(final JsonParser parser) throws IllegalDataException {
+        JsonObjectBuilder members = Json.createObjectBuilder();
+        boolean featuresRead = false;
+        while (parser.hasNext() && parser.next() == Event.KEY_NAME) {
+            String key = parser.getString();
+            Event event = parser.next();
+            if (FEATURES.equals(key) && event == Event.START_ARRAY) {
+                parseFeatures(parser);
+                featuresRead = true;
+            } else if (CRS.equals(key) && event == Event.START_OBJECT) {
+                Projection previous = projection;
+                parseCrs(parser.getObject());
+                if (featuresRead && previous != projection) {
+                    // the crs member follows the features, which were read with the default projection
+                    reprojectNodes(previous);
+                }
+            } else {
+                members.add(key, parser.getValue());
+            }
+        }
+        if (!featuresRead) {
+            parseRoot(members.build());
+        }
+    }
+
+    private void parseFeatures(final JsonParser parser) {
+        while (parser.hasNext()) {
+            Event event = parser.next();
+            if (event == Event.START_OBJECT) {
+                parseFeature(parser.getObject());
+            } else if (event == Event.START_ARRAY) {
+                parser.skipArray();
+            } else if (event == Event.END_ARRAY) {
+                return;
+            }
+        }
+    }
+
+    private void reprojectNodes(final Projection previous) {
+        for (Node node : getDataSet().getNodes()) {
+            node.setCoor(projection.eastNorth2latlon(previous.latlon2eastNorth(node.getCoor())));
+        }
+    }
+
     private void parseRoot(final JsonObject object) throws IllegalDataException {
         parseCrs(object.getJsonObject(CRS));
         switch (Optional.ofNullable(object.getJsonString(TYPE))
@@ -3,6 +3,7 @@ package org.openstreetmap.josm.io;
 
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.Collection;
@@ -13,6 +14,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import javax.json.Json;
@@ -20,7 +22,6 @@ import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonValue;
-import javax.json.JsonWriter;
 import javax.json.stream.JsonGenerator;
 import javax.json.stream.JsonParser;
 import javax.json.stream.JsonParsingException;
@@ -46,6 +47,8 @@ import org.openstreetmap.josm.tools.Pair;
 /**
  * Writes OSM data as a GeoJSON string, using JSR 353: Java API for JSON Processing (JSON-P).
  * <p>
+ * The features are streamed to the output one at a time, see {@link #write(boolean, Writer)}.
+ * <p>
  * See <a href="https://tools.ietf.org/html/rfc7946">RFC7946: The GeoJSON Format</a>
  */
 public class GeoJSONWriter {
@@ -95,15 +98,44 @@ public class GeoJSONWriter {
      */
     public String write(boolean pretty) {
         StringWriter stringWriter = new StringWriter();
+        write(pretty, stringWriter);
+        return stringWriter.toString();
+    }
+
+    /**
+     * Writes OSM data as GeoJSON (prettified or not) to a writer, under the read lock of the data set.
+     * <p>
+     * Unlike {@link #write(boolean)}, the features are written one at a time, without building the whole JSON document
+     * in memory.
+     * @param pretty {@code true} to have pretty output, {@code false} otherwise
+     * @param writer the writer, flushed but not closed
+     */
+    public void write(boolean pretty, Writer writer) {
         Map<String, Object> config = Collections.singletonMap(JsonGenerator.PRETTY_PRINTING, pretty);
-        try (JsonWriter writer = Json.createWriterFactory(config).createWriter(stringWriter)) {
-            JsonObjectBuilder object = Json.createObjectBuilder()
-                    .add("type", "FeatureCollection")
-                    .add("generator", "JOSM");
-            appendLayerBounds(data, object);
-            appendLayerFeatures(data, object);
-            writer.writeObject(object.build());
-            return stringWriter.toString();
+        JsonGenerator generator = Json.createGeneratorFactory(config).createGenerator(writer);
+        if (data != null) {
+            data.getReadLock().lock();
+        }
+        try {
+            generator.writeStartObject()
+                    .write("type", "FeatureCollection")
+                    .write("generator", "JOSM");
+            JsonObjectBuilder bounds = Json.createObjectBuilder();
+            appendLayerBounds(data, bounds);
+            bounds.build().forEach(generator::write);
+            generator.writeStartArray("features");
+            forEachPrimitive(data, p -> {
+                JsonArrayBuilder feature = Json.createArrayBuilder();
+                appendPrimitive(p, feature);
+                feature.build().forEach(generator::write);
+            });
+            generator.writeEnd();
+            generator.writeEnd();
+            generator.flush();
+        } finally {
+            if (data != null) {
+                data.getReadLock().unlock();
+            }
         }
     }
 
@@ -253,20 +285,24 @@ public class GeoJSONWriter {
 
     protected void appendLayerFeatures(DataSet ds, JsonObjectBuilder object) {
         JsonArrayBuilder array = Json.createArrayBuilder();
+        forEachPrimitive(ds, p -> appendPrimitive(p, array));
+        object.add("features", array);
+    }
+
+    private static void forEachPrimitive(DataSet ds, Consumer<OsmPrimitive> consumer) {
         if (ds != null) {
             processedMultipolygonWays.clear();
             Collection<OsmPrimitive> primitives = ds.allNonDeletedPrimitives();
             // Relations first
             for (OsmPrimitive p : primitives) {
                 if (p instanceof Relation)
-                    appendPrimitive(p, array);
+                    consumer.accept(p);
             }
             for (OsmPrimitive p : primitives) {
                 if (!(p instanceof Relation))
-                    appendPrimitive(p, array);
+                    consumer.accept(p);
             }
             processedMultipolygonWays.clear();
         }
-        object.add("features", array);
     }
 }
@@ -0,0 +1,242 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.gpx.GpxConstants;
+import org.openstreetmap.josm.data.gpx.GpxData;
+import org.openstreetmap.josm.data.gpx.GpxData.XMLNamespace;
+import org.openstreetmap.josm.data.gpx.GpxExtension;
+import org.openstreetmap.josm.data.gpx.GpxExtensionCollection;
+import org.openstreetmap.josm.data.gpx.GpxLink;
+import org.openstreetmap.josm.data.gpx.GpxRoute;
+import org.openstreetmap.josm.data.gpx.GpxTrack;
+import org.openstreetmap.josm.data.gpx.GpxTrackPoints;
+import org.openstreetmap.josm.data.gpx.GpxTrackSegment;
+import org.openstreetmap.josm.data.gpx.IGpxTrackSegment;
+import org.openstreetmap.josm.data.gpx.WayPoint;
+import org.openstreetmap.josm.data.gpx.WithAttributes;
+import org.openstreetmap.josm.tools.Logging;
+import org.xml.sax.SAXException;
+
+/**
+ * Reader of the compact binary format written by {@link GpxBinaryWriter}.
+ * <p>
+ * As with {@link GpxReader}, the track points without extensions are stored in {@link GpxTrackPoints}.
+ */
+public class GpxBinaryReader implements IGpxReader {
+
+    private final BinaryInput in;
+    private GpxData data;
+    private long previousTime;
+    private long previousLat;
+    private long previousLon;
+
+    /**
+     * Constructs a new {@code GpxBinaryReader}, which can later parse the input stream.
+     * @param source the source input stream
+     */
+    public GpxBinaryReader(InputStream source) {
+        this.in = new BinaryInput(source);
+    }
+
+    @Override
+    public boolean parse(boolean tryToFinish) throws SAXException, IOException {
+        data = new GpxData(true);
+        try {
+            doParse();
+            return true;
+        } catch (IllegalDataException | EOFException e) {
+            if (!tryToFinish) {
+                throw new SAXException(e.getMessage(), e);
+            }
+            Logging.warn(e);
+            return false;
+        } finally {
+            GpxReader.readJosmExtensions(data);
+            data.endUpdate();
+        }
+    }
+
+    @Override
+    public GpxData getGpxData() {
+        return data;
+    }
+
+    private void doParse() throws IOException, IllegalDataException {
+        for (byte b : GpxBinaryWriter.MAGIC) {
+            if (in.readByte() != b) {
+                throw new IllegalDataException(tr("Not a binary GPX data file"));
+            }
+        }
+        long formatVersion = in.readVarint();
+        if (formatVersion != GpxBinaryWriter.FORMAT_VERSION) {
+            throw new IllegalDataException(tr("Unsupported version of binary GPX data: {0}", formatVersion));
+        }
+        data.creator = in.readString();
+        int namespaces = in.readLength();
+        for (int i = 0; i < namespaces; i++) {
+            data.getNamespaces().add(new XMLNamespace(in.readString(), in.readString(), in.readString()));
+        }
+        readAttributesAndExtensions(data);
+        int waypoints = in.readLength();
+        for (int i = 0; i < waypoints; i++) {
+            data.waypoints.add(readPoint());
+        }
+        int routes = in.readLength();
+        for (int i = 0; i < routes; i++) {
+            GpxRoute rte = new GpxRoute();
+            readAttributesAndExtensions(rte);
+            int points = in.readLength();
+            for (int j = 0; j < points; j++) {
+                rte.routePoints.add(readPoint());
+            }
+            data.routes.add(rte);
+        }
+        int tracks = in.readLength();
+        for (int i = 0; i < tracks; i++) {
+            Map<String, Object> trackAttr = readAttributes();
+            GpxExtensionCollection trackExtensions = new GpxExtensionCollection();
+            readExtensions(trackExtensions);
+            int segments = in.readLength();
+            List<IGpxTrackSegment> trackSegs = new ArrayList<>(segments);
+            for (int j = 0; j < segments; j++) {
+                Map<String, Object> segmentAttr = readAttributes();
+                GpxExtensionCollection segmentExtensions = new GpxExtensionCollection();
+                readExtensions(segmentExtensions);
+                GpxTrackSegment seg = new GpxTrackSegment(in.readBoolean() ? readWayPoints() : readTrackPoints());
+                seg.attr.putAll(segmentAttr);
+                seg.getExtensions().addAll(segmentExtensions);
+                trackSegs.add(seg);
+            }
+            GpxTrack trk = new GpxTrack(trackSegs, trackAttr);
+            trk.getExtensions().addAll(trackExtensions);
+            data.addTrack(trk);
+        }
+    }
+
+    private List<WayPoint> readWayPoints() throws IOException, IllegalDataException {
+        int count = in.readLength();
+        List<WayPoint> points = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            points.add(readPoint());
+        }
+        return points;
+    }
+
+    private GpxTrackPoints readTrackPoints() throws IOException, IllegalDataException {
+        int count = in.readLength();
+        GpxTrackPoints points = new GpxTrackPoints();
+        for (int i = 0; i < count; i++) {
+            LatLon coor = readCoordinates();
+            points.addPoint(coor.lat(), coor.lon());
+            int attributes = in.readLength();
+            for (int j = 0; j < attributes; j++) {
+                String key = in.readString();
+                Object value = readValue();
+                if (GpxConstants.PT_ELE.equals(key) && value instanceof String) {
+                    points.setElevation((String) value);
+                } else if (GpxConstants.PT_TIME.equals(key) && value instanceof Date) {
+                    points.setTimeInMillis(((Date) value).getTime());
+                } else {
+                    points.getOrCreateAttributes().put(key, value);
+                }
+            }
+            if (in.readLength() != 0) {
+                throw new IllegalDataException(tr("Unexpected extensions of a track point"));
+            }
+        }
+        points.trimToSize();
+        return points;
+    }
+
+    private WayPoint readPoint() throws IOException, IllegalDataException {
+        WayPoint p = new WayPoint(readCoordinates());
+        readAttributesAndExtensions(p);
+        return p;
+    }
+
+    private LatLon readCoordinates() throws IOException, IllegalDataException {
+        if ((in.readByte() & GpxBinaryWriter.POINT_SCALED) != 0) {
+            previousLat += in.readSignedVarint();
+            previousLon += in.readSignedVarint();
+            return new LatLon(previousLat / GpxBinaryWriter.COORDINATES_SCALE, previousLon / GpxBinaryWriter.COORDINATES_SCALE);
+        }
+        return new LatLon(in.readDouble(), in.readDouble());
+    }
+
+    private void readAttributesAndExtensions(WithAttributes element) throws IOException, IllegalDataException {
+        element.attr.putAll(readAttributes());
+        readExtensions(element.getExtensions());
+    }
+
+    private Map<String, Object> readAttributes() throws IOException, IllegalDataException {
+        int count = in.readLength();
+        Map<String, Object> attr = new HashMap<>(count);
+        for (int i = 0; i < count; i++) {
+            attr.put(in.readString(), readValue());
+        }
+        return attr;
+    }
+
+    private Object readValue() throws IOException, IllegalDataException {
+        int type = in.readByte();
+        switch (type) {
+        case GpxBinaryWriter.TYPE_STRING:
+            return in.readString();
+        case GpxBinaryWriter.TYPE_FLOAT:
+            return (float) in.readDouble();
+        case GpxBinaryWriter.TYPE_DOUBLE:
+            return in.readDouble();
+        case GpxBinaryWriter.TYPE_INTEGER:
+            return (int) in.readSignedVarint();
+        case GpxBinaryWriter.TYPE_LONG:
+            return in.readSignedVarint();
+        case GpxBinaryWriter.TYPE_DATE:
+            previousTime += in.readSignedVarint();
+            return new Date(previousTime);
+        case GpxBinaryWriter.TYPE_BOUNDS:
+            return new Bounds(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+        case GpxBinaryWriter.TYPE_LINK:
+            return readLink();
+        case GpxBinaryWriter.TYPE_LINKS:
+            int count = in.readLength();
+            List<GpxLink> links = new LinkedList<>();
+            for (int i = 0; i < count; i++) {
+                links.add(readLink());
+            }
+            return links;
+        default:
+            throw new IllegalDataException(tr("Unknown attribute type: {0}", type));
+        }
+    }
+
+    private GpxLink readLink() throws IOException, IllegalDataException {
+        GpxLink link = new GpxLink(in.readString());
+        link.text = in.readString();
+        link.type = in.readString();
+        return link;
+    }
+
+    private void readExtensions(GpxExtensionCollection extensions) throws IOException, IllegalDataException {
+        int count = in.readLength();
+        for (int i = 0; i < count; i++) {
+            GpxExtension ext = new GpxExtension(in.readString(), in.readString(), in.readString());
+            ext.attr.putAll(readAttributes());
+            readExtensions(ext.getExtensions());
+            extensions.add(ext);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.gpx.GpxConstants.ColorFormat;
+import org.openstreetmap.josm.data.gpx.GpxData;
+import org.openstreetmap.josm.data.gpx.GpxData.XMLNamespace;
+import org.openstreetmap.josm.data.gpx.GpxExtension;
+import org.openstreetmap.josm.data.gpx.GpxLink;
+import org.openstreetmap.josm.data.gpx.GpxRoute;
+import org.openstreetmap.josm.data.gpx.IGpxTrack;
+import org.openstreetmap.josm.data.gpx.IGpxTrackSegment;
+import org.openstreetmap.josm.data.gpx.IWithAttributes;
+import org.openstreetmap.josm.data.gpx.WayPoint;
+
+/**
+ * Writer of GPX data in a compact binary format, used to save and restore sessions quickly.
+ * <p>
+ * The same data as the GPX written by {@link GpxWriter} is kept, including the JOSM extensions. The coordinates
+ * are delta coded as variable length integers when no precision is lost, the attribute keys and extensions are
+ * written once, then referred to by their index.
+ * @see GpxBinaryReader
+ */
+public class GpxBinaryWriter implements Closeable {
+
+    /** Magic bytes at the beginning of the files */
+    static final byte[] MAGIC = "JOSM-GPX".getBytes(StandardCharsets.US_ASCII);
+    /** Version of the format */
+    static final int FORMAT_VERSION = 1;
+    /** Coordinates precision of the delta coded points */
+    static final double COORDINATES_SCALE = 1e9;
+
+    static final int POINT_SCALED = 1;
+
+    static final int TYPE_STRING = 0;
+    static final int TYPE_FLOAT = 1;
+    static final int TYPE_DOUBLE = 2;
+    static final int TYPE_INTEGER = 3;
+    static final int TYPE_LONG = 4;
+    static final int TYPE_DATE = 5;
+    static final int TYPE_BOUNDS = 6;
+    static final int TYPE_LINK = 7;
+    static final int TYPE_LINKS = 8;
+
+    private final BinaryOutput out;
+    private long previousTime;
+    private long previousLat;
+    private long previousLon;
+
+    /**
+     * Constructs a new {@code GpxBinaryWriter}.
+     * @param out the output stream, closed with this writer
+     */
+    public GpxBinaryWriter(OutputStream out) {
+        this.out = new BinaryOutput(out);
+    }
+
+    /**
+     * Writes the given GPX data, with the layer preferences.
+     * @param data The data to write
+     * @throws IOException in case of I/O error
+     */
+    public void write(GpxData data) throws IOException {
+        synchronized (data) {
+            GpxWriter.prepareExtensions(data, ColorFormat.GPXD, true);
+            for (byte b : MAGIC) {
+                out.writeByte(b);
+            }
+            out.writeVarint(FORMAT_VERSION);
+            out.writeString(data.creator);
+            List<XMLNamespace> namespaces = data.getNamespaces();
+            out.writeVarint(namespaces.size());
+            for (XMLNamespace n : namespaces) {
+                out.writeString(n.getPrefix());
+                out.writeString(n.getURI());
+                out.writeString(n.getLocation());
+            }
+            writeAttributesAndExtensions(data);
+            Collection<WayPoint> waypoints = data.getWaypoints();
+            out.writeVarint(waypoints.size());
+            for (WayPoint wpt : waypoints) {
+                writePoint(wpt);
+            }
+            Collection<GpxRoute> routes = data.getRoutes();
+            out.writeVarint(routes.size());
+            for (GpxRoute rte : routes) {
+                writeAttributesAndExtensions(rte);
+                writePoints(rte.routePoints);
+            }
+            Collection<IGpxTrack> tracks = data.getTracks();
+            out.writeVarint(tracks.size());
+            for (IGpxTrack trk : tracks) {
+                writeAttributesAndExtensions(trk);
+                Collection<IGpxTrackSegment> segments = trk.getSegments();
+                out.writeVarint(segments.size());
+                for (IGpxTrackSegment seg : segments) {
+                    writeAttributesAndExtensions(seg);
+                    Collection<WayPoint> points = seg.getWayPoints();
+                    // the reader stores the points without extensions in columns
+                    out.writeBoolean(points.stream().anyMatch(p -> p.getExtensions().isVisible()));
+                    writePoints(points);
+                }
+            }
+            out.flush();
+        }
+    }
+
+    private void writePoints(Collection<WayPoint> points) throws IOException {
+        out.writeVarint(points.size());
+        for (WayPoint p : points) {
+            writePoint(p);
+        }
+    }
+
+    private void writePoint(WayPoint p) throws IOException {
+        double lat = p.lat();
+        double lon = p.lon();
+        long scaledLat = Math.round(lat * COORDINATES_SCALE);
+        long scaledLon = Math.round(lon * COORDINATES_SCALE);
+        if (scaledLat / COORDINATES_SCALE == lat && scaledLon / COORDINATES_SCALE == lon) {
+            out.writeByte(POINT_SCALED);
+            out.writeSignedVarint(scaledLat - previousLat);
+            out.writeSignedVarint(scaledLon - previousLon);
+            previousLat = scaledLat;
+            previousLon = scaledLon;
+        } else {
+            out.writeByte(0);
+            out.writeDouble(lat);
+            out.writeDouble(lon);
+        }
+        writeAttributesAndExtensions(p);
+    }
+
+    private void writeAttributesAndExtensions(IWithAttributes element) throws IOException {
+        writeAttributes(element.getAttributes());
+        writeExtensions(element);
+    }
+
+    private void writeAttributes(Map<String, Object> attr) throws IOException {
+        out.writeVarint(attr.size());
+        for (Map.Entry<String, Object> e : attr.entrySet()) {
+            out.writeString(e.getKey());
+            writeValue(e.getValue());
+        }
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value instanceof Float) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeDouble((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeSignedVarint((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeSignedVarint((Long) value);
+        } else if (value instanceof Date) {
+            long time = ((Date) value).getTime();
+            out.writeByte(TYPE_DATE);
+            out.writeSignedVarint(time - previousTime);
+            previousTime = time;
+        } else if (value instanceof Bounds) {
+            Bounds b = (Bounds) value;
+            out.writeByte(TYPE_BOUNDS);
+            out.writeDouble(b.getMinLat());
+            out.writeDouble(b.getMinLon());
+            out.writeDouble(b.getMaxLat());
+            out.writeDouble(b.getMaxLon());
+        } else if (value instanceof GpxLink) {
+            out.writeByte(TYPE_LINK);
+            writeLink((GpxLink) value);
+        } else if (value instanceof Collection && ((Collection<?>) value).stream().allMatch(GpxLink.class::isInstance)) {
+            Collection<?> links = (Collection<?>) value;
+            out.writeByte(TYPE_LINKS);
+            out.writeVarint(links.size());
+            for (Object link : links) {
+                writeLink((GpxLink) link);
+            }
+        } else {
+            out.writeByte(TYPE_STRING);
+            out.writeString(value != null ? value.toString() : null);
+        }
+    }
+
+    private void writeLink(GpxLink link) throws IOException {
+        out.writeString(link.uri);
+        out.writeString(link.text);
+        out.writeString(link.type);
+    }
+
+    private void writeExtensions(IWithAttributes element) throws IOException {
+        // as with GpxWriter, the hidden extensions are not written
+        List<GpxExtension> extensions = element.getExtensions().stream()
+                .filter(GpxExtension::isVisible)
+                .collect(Collectors.toList());
+        out.writeVarint(extensions.size());
+        for (GpxExtension ext : extensions) {
+            out.writeString(ext.getPrefix());
+            out.writeString(ext.getKey());
+            out.writeString(ext.getValue());
+            writeAttributes(ext.getAttributes());
+            writeExtensions(ext);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
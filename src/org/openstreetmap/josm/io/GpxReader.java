@@ -26,6 +26,7 @@ import org.openstreetmap.josm.data.gpx.GpxExtensionCollection;
 import org.openstreetmap.josm.data.gpx.GpxLink;
 import org.openstreetmap.josm.data.gpx.GpxRoute;
 import org.openstreetmap.josm.data.gpx.GpxTrack;
+import org.openstreetmap.josm.data.gpx.GpxTrackPoints;
 import org.openstreetmap.josm.data.gpx.GpxTrackSegment;
 import org.openstreetmap.josm.data.gpx.IGpxTrackSegment;
 import org.openstreetmap.josm.data.gpx.WayPoint;
@@ -43,7 +44,8 @@ import org.xml.sax.helpers.DefaultHandler;
  * Read a gpx file.
  *
  * Bounds are read, even if we calculate them, see {@link GpxData#recalculateBounds}.<br>
- * Both GPX version 1.0 and 1.1 are supported.
+ * Both GPX version 1.0 and 1.1 are supported.<br>
+ * The track points are stored in {@link GpxTrackPoints}, their way points are only created when accessed.
  *
  * @author imi, ramack
  */
@@ -73,9 +75,11 @@ public class GpxReader implements GpxConstants, IGpxReader {
         private GpxData data;
         private Collection<IGpxTrackSegment> currentTrack;
         private Map<String, Object> currentTrackAttr;
-        private Collection<WayPoint> currentTrackSeg;
+        private GpxTrackPoints currentTrackSeg;
         private GpxRoute currentRoute;
         private WayPoint currentWayPoint;
+        /** Whether the current point is a track point, stored in {@link #currentTrackSeg} instead of {@link #currentWayPoint} */
+        private boolean inTrackPoint;
 
         private State currentState = State.INIT;
 
@@ -239,7 +243,7 @@ public class GpxReader implements GpxConstants, IGpxReader {
                 case "trkseg":
                     states.push(currentState);
                     currentState = State.TRKSEG;
-                    currentTrackSeg = new ArrayList<>();
+                    currentTrackSeg = new GpxTrackPoints();
                     break;
                 case "link":
                     states.push(currentState);
@@ -258,7 +262,8 @@ public class GpxReader implements GpxConstants, IGpxReader {
                 case "trkpt":
                     states.push(currentState);
                     currentState = State.WPT;
-                    currentWayPoint = new WayPoint(parseLatLon(atts));
+                    inTrackPoint = true;
+                    currentTrackSeg.addPoint(parseCoord(atts, "lat"), parseCoord(atts, "lon"));
                     break;
                 case "extensions":
                     states.push(currentState);
@@ -335,7 +340,7 @@ public class GpxReader implements GpxConstants, IGpxReader {
             switch (currentState) {
             case RTE: return currentRoute.attr;
             case METADATA: return data.attr;
-            case WPT: return currentWayPoint.attr;
+            case WPT: return inTrackPoint ? currentTrackSeg.getOrCreateAttributes() : currentWayPoint.attr;
             case TRK: return currentTrackAttr;
             default: return null;
             }
@@ -453,6 +458,12 @@ public class GpxReader implements GpxConstants, IGpxReader {
             case WPT:
                 switch (localName) {
                 case "ele":
+                    if (inTrackPoint) {
+                        currentTrackSeg.setElevation(accumulator.toString());
+                    } else {
+                        currentWayPoint.put(localName, accumulator.toString());
+                    }
+                    break;
                 case "magvar":
                 case "name":
                 case "src":
@@ -463,20 +474,25 @@ public class GpxReader implements GpxConstants, IGpxReader {
                 case "urlname":
                 case "cmt":
                 case "desc":
-                    currentWayPoint.put(localName, accumulator.toString());
+                    putPointAttr(localName, accumulator.toString());
                     break;
                 case "hdop":
                 case "vdop":
                 case "pdop":
                     try {
-                        currentWayPoint.put(localName, Float.valueOf(accumulator.toString()));
+                        putPointAttr(localName, Float.valueOf(accumulator.toString()));
                     } catch (NumberFormatException e) {
-                        currentWayPoint.put(localName, 0f);
+                        putPointAttr(localName, 0f);
                     }
                     break;
                 case PT_TIME:
                     try {
-                        currentWayPoint.setTimeInMillis(DateUtils.tsFromString(accumulator.toString()));
+                        long time = DateUtils.tsFromString(accumulator.toString());
+                        if (inTrackPoint) {
+                            currentTrackSeg.setTimeInMillis(time);
+                        } else {
+                            currentWayPoint.setTimeInMillis(time);
+                        }
                     } catch (UncheckedParseException | DateTimeException e) {
                         Logging.error(e);
                     }
@@ -488,8 +504,11 @@ public class GpxReader implements GpxConstants, IGpxReader {
                     break;
                 case "trkpt":
                     currentState = states.pop();
-                    convertUrlToLink(currentWayPoint.attr);
-                    currentTrackSeg.add(currentWayPoint);
+                    inTrackPoint = false;
+                    Map<String, Object> attr = currentTrackSeg.getAttributes();
+                    if (attr != null) {
+                        convertUrlToLink(attr);
+                    }
                     break;
                 case "wpt":
                     currentState = states.pop();
@@ -505,6 +524,7 @@ public class GpxReader implements GpxConstants, IGpxReader {
                 if ("trkseg".equals(localName)) {
                     currentState = states.pop();
                     if (!currentTrackSeg.isEmpty()) {
+                        currentTrackSeg.trimToSize();
                         GpxTrackSegment seg = new GpxTrackSegment(currentTrackSeg);
                         seg.getExtensions().addAll(currentExtensionCollection);
                         currentTrack.add(seg);
@@ -568,23 +588,19 @@ public class GpxReader implements GpxConstants, IGpxReader {
             if (!states.empty())
                 throw new SAXException(tr("Parse error: invalid document structure for GPX document."));
 
-            data.getExtensions().stream("josm", "from-server").findAny().ifPresent(ext -> {
-                data.fromServer = "true".equals(ext.getValue());
-            });
-
-            data.getExtensions().stream("josm", "layerPreferences").forEach(prefs -> {
-                prefs.getExtensions().stream("josm", "entry").forEach(prefEntry -> {
-                    Object key = prefEntry.get("key");
-                    Object val = prefEntry.get("value");
-                    if (key != null && val != null) {
-                        data.getLayerPrefs().put(key.toString(), val.toString());
-                    }
-                });
-            });
+            readJosmExtensions(data);
             data.endUpdate();
             gpxData = data;
         }
 
+        private void putPointAttr(String key, Object value) {
+            if (inTrackPoint) {
+                currentTrackSeg.getOrCreateAttributes().put(key, value);
+            } else {
+                currentWayPoint.put(key, value);
+            }
+        }
+
         /**
          * convert url/urlname to link element (GPX 1.0 -&gt; GPX 1.1).
          * @param attr attributes
@@ -613,6 +629,27 @@ public class GpxReader implements GpxConstants, IGpxReader {
         }
     }
 
+    /**
+     * Applies the JOSM specific extensions of the data: the server origin and the layer preferences.
+     * @param data the GPX data
+     * @see GpxWriter#prepareExtensions
+     */
+    static void readJosmExtensions(GpxData data) {
+        data.getExtensions().stream("josm", "from-server").findAny().ifPresent(ext -> {
+            data.fromServer = "true".equals(ext.getValue());
+        });
+
+        data.getExtensions().stream("josm", "layerPreferences").forEach(prefs -> {
+            prefs.getExtensions().stream("josm", "entry").forEach(prefEntry -> {
+                Object key = prefEntry.get("key");
+                Object val = prefEntry.get("value");
+                if (key != null && val != null) {
+                    data.getLayerPrefs().put(key.toString(), val.toString());
+                }
+            });
+        });
+    }
+
     /**
      * Constructs a new {@code GpxReader}, which can later parse the input stream
      * and store the result in trackData and markerData
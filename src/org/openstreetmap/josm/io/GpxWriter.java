@@ -15,7 +15,9 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.xml.XMLConstants;
 
@@ -61,6 +63,13 @@ public class GpxWriter extends XmlWriter implements GpxConstants {
     private GpxData data;
     private String indent = "";
     private List<String> validprefixes;
+    private List<XMLNamespace> namespaces;
+    private Bounds bounds;
+    private List<WayPoint> waypoints;
+    private List<GpxRoute> routes;
+    private List<List<WayPoint>> routePoints;
+    private List<IGpxTrack> tracks;
+    private List<List<IGpxTrackSegment>> trackSegments;
 
     private static final int WAY_POINT = 0;
     private static final int ROUTE_POINT = 1;
@@ -76,6 +85,9 @@ public class GpxWriter extends XmlWriter implements GpxConstants {
 
     /**
      * Writes the given GPX data.
+     * <p>
+     * The data is only locked while the references to its waypoints, routes, tracks and segments are copied,
+     * the points are then written without holding the lock, so that the data can still be painted meanwhile.
      *
      * @param data The data to write
      * @param colorFormat determines if colors are saved and which extension is to be used
@@ -83,9 +95,24 @@ public class GpxWriter extends XmlWriter implements GpxConstants {
      */
     public void write(GpxData data, ColorFormat colorFormat, boolean savePrefs) {
         this.data = data;
+        prepareExtensions(data, colorFormat, savePrefs);
+        synchronized (data) {
+            copyReferences();
+        }
+        doWrite();
+    }
 
-        //Prepare extensions for writing
+    /**
+     * Prepares the extensions of the data for writing: the track colors, the server origin and the layer preferences
+     * are stored as extensions.
+     * @param data The data to write
+     * @param colorFormat determines if colors are saved and which extension is to be used
+     * @param savePrefs whether layer specific preferences are saved
+     * @see GpxReader#readJosmExtensions
+     */
+    static void prepareExtensions(GpxData data, ColorFormat colorFormat, boolean savePrefs) {
         data.beginUpdate();
+
         data.getTracks().stream()
         .filter(GpxTrack.class::isInstance).map(GpxTrack.class::cast)
         .forEach(trk -> trk.convertColor(colorFormat));
@@ -105,17 +132,35 @@ public class GpxWriter extends XmlWriter implements GpxConstants {
             });
         }
         data.endUpdate();
+    }
 
-        Collection<IWithAttributes> all = new ArrayList<>();
+    /**
+     * Copies the references to the content of the data, and computes what depends on the whole data.
+     * The caller must hold the lock of the data.
+     */
+    private void copyReferences() {
+        waypoints = new ArrayList<>(data.getWaypoints());
+        routes = new ArrayList<>(data.getRoutes());
+        routePoints = new ArrayList<>(routes.size());
+        for (GpxRoute rte : routes) {
+            routePoints.add(new ArrayList<>(rte.routePoints));
+        }
+        tracks = new ArrayList<>(data.getTracks());
+        trackSegments = new ArrayList<>(tracks.size());
+        for (IGpxTrack trk : tracks) {
+            trackSegments.add(new ArrayList<>(trk.getSegments()));
+        }
+        bounds = data.recalculateBounds();
 
-        all.add(data);
-        all.addAll(data.getWaypoints());
-        all.addAll(data.getRoutes());
-        all.addAll(data.getTracks());
-        all.addAll(data.getTrackSegmentsStream().collect(Collectors.toList()));
+        Stream<IWithAttributes> all = Stream.of(
+                Stream.<IWithAttributes>of(data),
+                waypoints.stream(),
+                routes.stream(),
+                tracks.stream(),
+                trackSegments.stream().flatMap(List::stream))
+                .flatMap(Function.identity());
 
-        List<XMLNamespace> namespaces = all
-                .stream()
+        namespaces = all
                 .flatMap(w -> w.getExtensions().getPrefixesStream())
                 .distinct()
                 .map(p -> data.getNamespaces()
@@ -127,7 +172,9 @@ public class GpxWriter extends XmlWriter implements GpxConstants {
                 .collect(Collectors.toList());
 
         validprefixes = namespaces.stream().map(n -> n.getPrefix()).collect(Collectors.toList());
+    }
 
+    private void doWrite() {
         out.println("<?xml version='1.0' encoding='UTF-8'?>");
         out.println("<gpx version=\"1.1\" creator=\"JOSM GPX export\" xmlns=\"http://www.topografix.com/GPX/1/1\"");
 
@@ -232,7 +279,6 @@ public class GpxWriter extends XmlWriter implements GpxConstants {
             simpleTag("keywords", data.getString(META_KEYWORDS));
         }
 
-        Bounds bounds = data.recalculateBounds();
         if (bounds != null) {
             String b = "minlat=\"" + bounds.getMinLat() + "\" minlon=\"" + bounds.getMinLon() +
             "\" maxlat=\"" + bounds.getMaxLat() + "\" maxlon=\"" + bounds.getMaxLon() + '\"';
@@ -244,17 +290,18 @@ public class GpxWriter extends XmlWriter implements GpxConstants {
     }
 
     private void writeWayPoints() {
-        for (WayPoint pnt : data.getWaypoints()) {
+        for (WayPoint pnt : waypoints) {
             wayPoint(pnt, WAY_POINT);
         }
     }
 
     private void writeRoutes() {
-        for (GpxRoute rte : data.getRoutes()) {
+        for (int i = 0; i < routes.size(); i++) {
+            GpxRoute rte = routes.get(i);
             openln("rte");
             writeAttr(rte, RTE_TRK_KEYS);
             gpxExtensions(rte.getExtensions());
-            for (WayPoint pnt : rte.routePoints) {
+            for (WayPoint pnt : routePoints.get(i)) {
                 wayPoint(pnt, ROUTE_POINT);
             }
             closeln("rte");
@@ -262,11 +309,12 @@ public class GpxWriter extends XmlWriter implements GpxConstants {
     }
 
     private void writeTracks() {
-        for (IGpxTrack trk : data.getTracks()) {
+        for (int i = 0; i < tracks.size(); i++) {
+            IGpxTrack trk = tracks.get(i);
             openln("trk");
             writeAttr(trk, RTE_TRK_KEYS);
             gpxExtensions(trk.getExtensions());
-            for (IGpxTrackSegment seg : trk.getSegments()) {
+            for (IGpxTrackSegment seg : trackSegments.get(i)) {
                 openln("trkseg");
                 gpxExtensions(seg.getExtensions());
                 for (WayPoint pnt : seg.getWayPoints()) {
@@ -370,12 +418,20 @@ public class GpxWriter extends XmlWriter implements GpxConstants {
             throw new JosmRuntimeException(tr("Unknown mode {0}.", mode));
         }
         if (pnt != null) {
+            // written piecewise, as there are millions of points in large tracks
             LatLon c = pnt.getCoor();
-            String coordAttr = "lat=\"" + c.lat() + "\" lon=\"" + c.lon() + '\"';
+            out.print(indent);
+            out.print('<');
+            out.print(type);
+            out.print(" lat=\"");
+            out.print(c.lat());
+            out.print("\" lon=\"");
+            out.print(c.lon());
             if (pnt.attr.isEmpty() && pnt.getExtensions().isEmpty()) {
-                inline(type, coordAttr);
+                out.println("\"/>");
             } else {
-                openln(type, coordAttr);
+                out.println("\">");
+                indent += "  ";
                 writeAttr(pnt, WPT_KEYS);
                 gpxExtensions(pnt.getExtensions());
                 closeln(type);
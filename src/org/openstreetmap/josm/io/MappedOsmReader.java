@@ -0,0 +1,227 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.MappedDataStore;
+import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.PrimitiveData;
+import org.openstreetmap.josm.data.osm.RelationData;
+import org.openstreetmap.josm.data.osm.RelationMemberData;
+import org.openstreetmap.josm.data.osm.WayData;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.tools.UncheckedParseException;
+import org.openstreetmap.josm.tools.XmlUtils;
+
+/**
+ * Parser for OSM XML files too large for the Java heap. The primitives are written to a {@link MappedDataStore}
+ * instead of a data set. The primitives of each type must be sorted by ascending positive ids, as in the files
+ * produced by the OSM API, planet extracts and Osmosis.
+ */
+public final class MappedOsmReader extends AbstractReader {
+
+    private final MappedDataStore.Builder builder;
+    private XMLStreamReader parser;
+
+    private MappedOsmReader(MappedDataStore.Builder builder) {
+        this.builder = builder;
+    }
+
+    /**
+     * Parses the given input source into a new store.
+     * @param source the source input stream. Must not be null.
+     * @param directory the directory of the store files, see {@link MappedDataStore.Builder#Builder(File)}
+     * @param progressMonitor the progress monitor. If null, {@link org.openstreetmap.josm.gui.progress.NullProgressMonitor#INSTANCE}
+     * is assumed
+     * @return the store with the parsed data. {@link MappedDataStore#createDataSet()} returns the metadata of the file
+     * @throws IllegalDataException if an error was found while parsing the data from the source
+     * @throws IOException if the store files cannot be written
+     */
+    public static MappedDataStore parseMappedDataStore(InputStream source, File directory, ProgressMonitor progressMonitor)
+            throws IllegalDataException, IOException {
+        MappedDataStore.Builder builder = new MappedDataStore.Builder(directory);
+        boolean built = false;
+        try {
+            MappedOsmReader reader = new MappedOsmReader(builder);
+            MappedDataStore store = builder.build(reader.doParseDataSet(source, progressMonitor));
+            built = true;
+            return store;
+        } finally {
+            if (!built) {
+                builder.cancel();
+            }
+        }
+    }
+
+    @Override
+    protected DataSet doParseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
+        return doParseDataSet(source, progressMonitor, ir -> {
+            try {
+                parser = XmlUtils.newSafeXMLInputFactory().createXMLStreamReader(ir);
+                parse();
+            } catch (XMLStreamException | UncheckedParseException e) {
+                if (e instanceof XMLStreamException && ((XMLStreamException) e).getLocation() != null) {
+                    throw new IllegalDataException(tr("Line {0} column {1}: ", ((XMLStreamException) e).getLocation().getLineNumber(),
+                            ((XMLStreamException) e).getLocation().getColumnNumber()) + e.getMessage(), e);
+                }
+                throw new IllegalDataException(e.getMessage(), e);
+            } catch (IllegalArgumentException e) {
+                // primitives not sorted by id
+                throw new IllegalDataException(e.getMessage(), e);
+            }
+        });
+    }
+
+    private void parse() throws XMLStreamException, IllegalDataException, IOException {
+        while (parser.hasNext()) {
+            if (parser.next() == XMLStreamConstants.START_ELEMENT) {
+                if ("osm".equals(parser.getLocalName())) {
+                    parseOsm();
+                } else {
+                    jumpToEnd();
+                }
+            }
+        }
+        parser.close();
+    }
+
+    private void parseOsm() throws XMLStreamException, IllegalDataException, IOException {
+        parseVersion(parser.getAttributeValue(null, "version"));
+        parseDownloadPolicy("download", parser.getAttributeValue(null, "download"));
+        parseUploadPolicy("upload", parser.getAttributeValue(null, "upload"));
+        parseLocked(parser.getAttributeValue(null, "locked"));
+        String generator = parser.getAttributeValue(null, "generator");
+        while (parser.hasNext()) {
+            int event = parser.next();
+            if (cancel) {
+                throw new IllegalDataException(tr("Reading was canceled"));
+            }
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                switch (parser.getLocalName()) {
+                case "bounds":
+                    parseBounds(generator, parser.getAttributeValue(null, "minlon"), parser.getAttributeValue(null, "minlat"),
+                            parser.getAttributeValue(null, "maxlon"), parser.getAttributeValue(null, "maxlat"),
+                            parser.getAttributeValue(null, "origin"));
+                    jumpToEnd();
+                    break;
+                case "node":
+                    builder.addNode(parseNode());
+                    break;
+                case "way":
+                    builder.addWay(parseWay());
+                    break;
+                case "relation":
+                    builder.addRelation(parseRelation());
+                    break;
+                default:
+                    jumpToEnd();
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return;
+            }
+        }
+    }
+
+    private NodeData parseNode() throws XMLStreamException, IllegalDataException {
+        NodeData nd = new NodeData(0);
+        String lat = parser.getAttributeValue(null, "lat");
+        String lon = parser.getAttributeValue(null, "lon");
+        readCommon(nd);
+        if (lat != null && lon != null) {
+            try {
+                nd.setCoor(new LatLon(Double.parseDouble(lat), Double.parseDouble(lon)));
+            } catch (NumberFormatException e) {
+                throw new IllegalDataException(tr("Illegal value for attributes ''lat'', ''lon'' on node with ID {0}. Got ''{1}'', ''{2}''.",
+                        Long.toString(nd.getId()), lat, lon), e);
+            }
+        }
+        parseChildren(nd);
+        return nd;
+    }
+
+    private WayData parseWay() throws XMLStreamException, IllegalDataException {
+        WayData wd = new WayData(0);
+        readCommon(wd);
+        parseChildren(wd);
+        return wd;
+    }
+
+    private RelationData parseRelation() throws XMLStreamException, IllegalDataException {
+        RelationData rd = new RelationData(0);
+        readCommon(rd);
+        parseChildren(rd);
+        return rd;
+    }
+
+    private void parseChildren(PrimitiveData current) throws XMLStreamException, IllegalDataException {
+        while (parser.hasNext()) {
+            int event = parser.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                switch (parser.getLocalName()) {
+                case "tag":
+                    parseTag(current, parser.getAttributeValue(null, "k"), parser.getAttributeValue(null, "v"));
+                    break;
+                case "nd":
+                    if (current instanceof WayData) {
+                        ((WayData) current).getNodeIds().add(getLong("ref", parser.getAttributeValue(null, "ref")));
+                    }
+                    break;
+                case "member":
+                    if (current instanceof RelationData) {
+                        ((RelationData) current).getMembers().add(parseMember());
+                    }
+                    break;
+                default:
+                    // skip
+                }
+                jumpToEnd();
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return;
+            }
+        }
+    }
+
+    private RelationMemberData parseMember() throws IllegalDataException {
+        long id = getLong("ref", parser.getAttributeValue(null, "ref"));
+        String type = parser.getAttributeValue(null, "type");
+        String role = parser.getAttributeValue(null, "role");
+        try {
+            return new RelationMemberData(role == null ? "" : role, OsmPrimitiveType.fromApiTypeName(type), id);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalDataException(tr("Illegal value for attribute ''type'' on member {0}. Got {1}.", Long.toString(id), type), e);
+        }
+    }
+
+    private void readCommon(PrimitiveData current) throws IllegalDataException {
+        parseId(current, getLong("id", parser.getAttributeValue(null, "id")));
+        parseTimestamp(current, parser.getAttributeValue(null, "timestamp"));
+        parseUser(current, parser.getAttributeValue(null, "user"), parser.getAttributeValue(null, "uid"));
+        parseVisible(current, parser.getAttributeValue(null, "visible"));
+        parseVersion(current, parser.getAttributeValue(null, "version"));
+        parseAction(current, parser.getAttributeValue(null, "action"));
+        parseChangeset(current, parser.getAttributeValue(null, "changeset"));
+    }
+
+    private void jumpToEnd() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = parser.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+}
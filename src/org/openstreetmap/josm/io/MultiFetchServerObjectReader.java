@@ -70,6 +70,11 @@ public class MultiFetchServerObjectReader extends OsmServerReader {
      */
     private static final int MAX_IDS_PER_REQUEST = 170;
 
+    /**
+     * The max. length of a Multi Get request URL, see {@link #MAX_IDS_PER_REQUEST}.
+     */
+    static final int MAX_URL_LENGTH = 2000;
+
     private final Set<Long> nodes;
     private final Set<Long> ways;
     private final Set<Long> relations;
@@ -259,6 +264,30 @@ public class MultiFetchServerObjectReader extends OsmServerReader {
         return pkg;
     }
 
+    /**
+     * extracts the next package of ids from <code>ids</code>, removing it from <code>ids</code>. The package holds at most
+     * <code>maxIds</code> ids, and as many as fit in a request URL of {@link #MAX_URL_LENGTH} characters.
+     *
+     * @param ids a set of ids
+     * @param type the type of the primitives
+     * @param maxIds the max. number of ids of the package
+     * @return the package of ids, at least one id if <code>ids</code> is not empty
+     */
+    Set<Long> extractIdPackage(Set<Long> ids, OsmPrimitiveType type, int maxIds) {
+        Set<Long> pkg = new HashSet<>();
+        int length = getBaseUrl().length() + buildRequestString(type, Collections.emptySet()).length();
+        for (Iterator<Long> it = ids.iterator(); it.hasNext() && pkg.size() < maxIds;) {
+            Long id = it.next();
+            length += id.toString().length() + (pkg.isEmpty() ? 0 : 1);
+            if (length > MAX_URL_LENGTH && !pkg.isEmpty()) {
+                break;
+            }
+            pkg.add(id);
+            it.remove();
+        }
+        return pkg;
+    }
+
     /**
      * builds the Multi Get request string for a set of ids and a given {@link OsmPrimitiveType}.
      *
@@ -281,6 +310,13 @@ public class MultiFetchServerObjectReader extends OsmServerReader {
         }
     }
 
+    private static void skipRemaining(InputStream in) throws IOException {
+        byte[] buffer = new byte[4096];
+        while (in.read(buffer) >= 0) {
+            // discard the trailing whitespace of the document
+        }
+    }
+
     /**
      * merges the dataset <code>from</code> to {@link #outputDataSet}.
      *
@@ -314,28 +350,36 @@ public class MultiFetchServerObjectReader extends OsmServerReader {
         progressMonitor.setTicksCount(ids.size());
         progressMonitor.setTicks(0);
         // The complete set containing all primitives to fetch
-        Set<Long> toFetch = new HashSet<>(ids);
-        // Build a list of fetchers that will  download smaller sets containing only MAX_IDS_PER_REQUEST (200) primitives each.
-        // we will run up to MAX_DOWNLOAD_THREADS concurrent fetchers.
+        Set<Long> toFetch = new LinkedHashSet<>(ids);
+        // Keep up to MAX_DOWNLOAD_THREADS fetchers busy. Each package is built when a fetcher becomes free, so that its size
+        // follows the latency of the previous responses, and each response is merged as soon as it is parsed.
         int threadsNumber = Config.getPref().getInt("osm.download.threads", OsmApi.MAX_DOWNLOAD_THREADS);
         threadsNumber = Utils.clamp(threadsNumber, 1, OsmApi.MAX_DOWNLOAD_THREADS);
         final ExecutorService exec = Executors.newFixedThreadPool(
                 threadsNumber, Utils.newThreadFactory(getClass() + "-%d", Thread.NORM_PRIORITY));
         CompletionService<FetchResult> ecs = new ExecutorCompletionService<>(exec);
         List<Future<FetchResult>> jobs = new ArrayList<>();
-        while (!toFetch.isEmpty()) {
-            jobs.add(ecs.submit(new Fetcher(type, extractIdPackage(toFetch), progressMonitor)));
+        PackageSizer sizer = new PackageSizer(MAX_IDS_PER_REQUEST,
+                Config.getPref().getInt("osm.download.target-latency", PackageSizer.DEFAULT_TARGET_LATENCY));
+        int running = 0;
+        while (running < threadsNumber && !toFetch.isEmpty()) {
+            jobs.add(ecs.submit(new Fetcher(type, extractIdPackage(toFetch, type, sizer.getSize()), progressMonitor)));
+            running++;
         }
         // Run the fetchers
-        for (int i = 0; i < jobs.size() && !isCanceled(); i++) {
+        while (running > 0 && !isCanceled()) {
             progressMonitor.subTask(msg + "... " + progressMonitor.getTicks() + '/' + progressMonitor.getTicksCount());
             try {
                 FetchResult result = ecs.take().get();
+                running--;
                 if (result.rc404 != null) {
                     List<Long> toSplit = new ArrayList<>(result.rc404);
                     int n = toSplit.size() / 2;
                     jobs.add(ecs.submit(new Fetcher(type, new HashSet<>(toSplit.subList(0, n)), progressMonitor)));
                     jobs.add(ecs.submit(new Fetcher(type, new HashSet<>(toSplit.subList(n, toSplit.size())), progressMonitor)));
+                    running += 2;
+                } else if (result.requested > 0) {
+                    sizer.onResponse(result.requested, result.millis);
                 }
                 if (result.missingPrimitives != null) {
                     missingPrimitives.addAll(result.missingPrimitives);
@@ -344,8 +388,18 @@ public class MultiFetchServerObjectReader extends OsmServerReader {
                     rememberNodesOfIncompleteWaysToLoad(result.dataSet);
                     merge(result.dataSet);
                 }
-            } catch (InterruptedException | ExecutionException e) {
+            } catch (InterruptedException e) {
                 Logging.error(e);
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                Logging.error(e);
+                running--;
+                sizer.onFailure();
+            }
+            while (running < threadsNumber && !toFetch.isEmpty() && !isCanceled()) {
+                jobs.add(ecs.submit(new Fetcher(type, extractIdPackage(toFetch, type, sizer.getSize()), progressMonitor)));
+                running++;
             }
         }
         exec.shutdown();
@@ -512,6 +566,10 @@ public class MultiFetchServerObjectReader extends OsmServerReader {
         public final Set<PrimitiveId> missingPrimitives;
 
         private Set<Long> rc404;
+        /** number of ids of the Multi Get request, 0 if several requests were needed */
+        private int requested;
+        /** duration of the Multi Get request */
+        private long millis;
 
         /**
          * Constructs a {@code FetchResult}
@@ -524,6 +582,42 @@ public class MultiFetchServerObjectReader extends OsmServerReader {
         }
     }
 
+    /**
+     * Adapts the number of ids per Multi Get request to the response time of the server: packages grow while the
+     * responses are fast, and shrink when they get slow or fail. The URL length still bounds each package,
+     * see {@link MultiFetchServerObjectReader#extractIdPackage(Set, OsmPrimitiveType, int)}.
+     */
+    static final class PackageSizer {
+        /** default response time in milliseconds above which packages shrink */
+        static final int DEFAULT_TARGET_LATENCY = 5000;
+        private static final int MIN_SIZE = 10;
+        private static final int MAX_SIZE = 1000;
+
+        private final int targetLatency;
+        private int size;
+
+        PackageSizer(int initialSize, int targetLatency) {
+            this.size = initialSize;
+            this.targetLatency = targetLatency;
+        }
+
+        int getSize() {
+            return size;
+        }
+
+        void onResponse(int requested, long millis) {
+            if (millis > targetLatency) {
+                size = Math.max(MIN_SIZE, Math.min(size, requested) / 2);
+            } else if (millis < targetLatency / 2 && requested >= size) {
+                size = Math.min(MAX_SIZE, size + size / 2);
+            }
+        }
+
+        void onFailure() {
+            size = Math.max(MIN_SIZE, size / 2);
+        }
+    }
+
     /**
      * The class that actually download data from OSM API.
      * Several instances of this class are used by {@link MultiFetchServerObjectReader} (one per set of primitives to fetch).
@@ -569,7 +663,13 @@ public class MultiFetchServerObjectReader extends OsmServerReader {
          */
         protected FetchResult fetch(ProgressMonitor progressMonitor) throws OsmTransferException {
             try {
-                return multiGetIdPackage(type, pkg, progressMonitor);
+                long start = System.currentTimeMillis();
+                FetchResult result = multiGetIdPackage(type, pkg, progressMonitor);
+                if (result != null) {
+                    result.requested = pkg.size();
+                    result.millis = System.currentTimeMillis() - start;
+                }
+                return result;
             } catch (OsmApiException e) {
                 if (e.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
                     if (pkg.size() > 4) {
@@ -619,6 +719,8 @@ public class MultiFetchServerObjectReader extends OsmServerReader {
                 } catch (IllegalDataException e) {
                     throw new OsmTransferException(e);
                 }
+                // read the end of the response, so that the connection can be reused for the next package
+                skipRemaining(in);
             } catch (IOException ex) {
                 Logging.warn(ex);
                 throw new OsmTransferException(ex);
@@ -4,7 +4,10 @@ package org.openstreetmap.josm.io;
 import static org.openstreetmap.josm.tools.I18n.tr;
 import static org.openstreetmap.josm.tools.I18n.trn;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
@@ -550,6 +553,21 @@ public class OsmApi extends OsmConnection {
      */
     public Collection<OsmPrimitive> uploadDiff(Collection<? extends OsmPrimitive> list, ProgressMonitor monitor)
             throws OsmTransferException {
+        return uploadDiff(list, null, monitor);
+    }
+
+    /**
+     * Uploads a list of changes in "diff" form to the server.
+     *
+     * @param list the list of changed OSM Primitives
+     * @param diffUploadRequest the OsmChange document of {@code list}, as built by {@link #createDiffUploadRequest}.
+     * If null, the document is built by this method.
+     * @param  monitor the progress monitor
+     * @return list of processed primitives
+     * @throws OsmTransferException if something is wrong
+     */
+    public Collection<OsmPrimitive> uploadDiff(Collection<? extends OsmPrimitive> list, byte[] diffUploadRequest, ProgressMonitor monitor)
+            throws OsmTransferException {
         try {
             monitor.beginTask("", list.size() * 2);
             if (changeset == null)
@@ -559,36 +577,54 @@ public class OsmApi extends OsmConnection {
 
             // prepare upload request
             //
-            OsmChangeBuilder changeBuilder = new OsmChangeBuilder(changeset);
-            monitor.subTask(tr("Preparing upload request..."));
-            changeBuilder.start();
-            changeBuilder.append(list);
-            changeBuilder.finish();
-            String diffUploadRequest = changeBuilder.getDocument();
-
-            // Upload to the server
+            byte[] request = diffUploadRequest;
+            if (request == null) {
+                monitor.subTask(tr("Preparing upload request..."));
+                request = createDiffUploadRequest(changeset, list);
+            }
+
+            // Upload to the server, and parse its response while it is received
             //
             monitor.indeterminateSubTask(
                     trn("Uploading {0} object...", "Uploading {0} objects...", list.size(), list.size()));
-            String diffUploadResponse = sendRequest("POST", "changeset/" + changeset.getId() + "/upload", diffUploadRequest, monitor);
+            DiffResultProcessor reader = new DiffResultProcessor(list);
+            sendRawRequest("POST", "changeset/" + changeset.getId() + "/upload", request, monitor, true, false, response -> {
+                try (InputStream in = response.getContent()) {
+                    reader.parse(in, monitor.createSubTaskMonitor(ProgressMonitor.ALL_TICKS, false));
+                }
+                return null;
+            });
 
             // Process the response from the server
             //
-            DiffResultProcessor reader = new DiffResultProcessor(list);
-            reader.parse(diffUploadResponse, monitor.createSubTaskMonitor(ProgressMonitor.ALL_TICKS, false));
             return reader.postProcess(
                     getChangeset(),
                     monitor.createSubTaskMonitor(ProgressMonitor.ALL_TICKS, false)
             );
-        } catch (OsmTransferException e) {
-            throw e;
-        } catch (XmlParsingException e) {
-            throw new OsmTransferException(e);
         } finally {
             monitor.finishTask();
         }
     }
 
+    /**
+     * Builds the OsmChange document of a diff upload, encoded in UTF-8.
+     * <p>
+     * The document is written straight to bytes, without an intermediate string. This method only reads the primitives,
+     * so that the document of the next chunk can be built while the previous chunk is uploaded.
+     *
+     * @param changeset the changeset the primitives are uploaded to
+     * @param list the list of changed OSM Primitives
+     * @return the OsmChange document
+     */
+    public static byte[] createDiffUploadRequest(Changeset changeset, Collection<? extends IPrimitive> list) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OsmChangeBuilder changeBuilder = new OsmChangeBuilder(changeset, null, new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        changeBuilder.start();
+        changeBuilder.append(list);
+        changeBuilder.finish();
+        return out.toByteArray();
+    }
+
     private void sleepAndListen(int retry, ProgressMonitor monitor) throws OsmTransferCanceledException {
         Logging.info(tr("Waiting 10 seconds ... "));
         for (int i = 0; i < 10; i++) {
@@ -660,6 +696,21 @@ public class OsmApi extends OsmConnection {
      */
     protected final String sendRequest(String requestMethod, String urlSuffix, String requestBody, ProgressMonitor monitor,
             boolean doAuthenticate, boolean fastFail) throws OsmTransferException {
+        return sendRawRequest(requestMethod, urlSuffix, (requestBody != null ? requestBody : "").getBytes(StandardCharsets.UTF_8),
+                monitor, doAuthenticate, fastFail, HttpClient.Response::fetchContent);
+    }
+
+    /**
+     * Reads the body of a "200 OK" response, while it is received from the server.
+     * @param <T> the type of the result
+     */
+    @FunctionalInterface
+    private interface ResponseHandler<T> {
+        T handle(HttpClient.Response response) throws IOException, XmlParsingException;
+    }
+
+    private <T> T sendRawRequest(String requestMethod, String urlSuffix, byte[] requestBody, ProgressMonitor monitor,
+            boolean doAuthenticate, boolean fastFail, ResponseHandler<T> handler) throws OsmTransferException {
         int retries = fastFail ? 0 : getMaxRetries();
 
         while (true) { // the retry loop
@@ -688,7 +739,7 @@ public class OsmApi extends OsmConnection {
                     // Since Java will not generate a Content-length header unless
                     // we use the output stream, we create an output stream for PUT/POST
                     // even if there is no payload.
-                    client.setRequestBody((requestBody != null ? requestBody : "").getBytes(StandardCharsets.UTF_8));
+                    client.setRequestBody(requestBody);
                 }
 
                 final HttpClient.Response response = client.connect();
@@ -701,6 +752,17 @@ public class OsmApi extends OsmConnection {
                     continue;
                 }
 
+                if (retCode == HttpURLConnection.HTTP_OK) {
+                    if (response.getHeaderField("Error") != null) {
+                        Logging.error("Error header: " + response.getHeaderField("Error"));
+                    }
+                    try {
+                        return handler.handle(response);
+                    } finally {
+                        activeConnection.disconnect();
+                    }
+                }
+
                 final String responseBody = response.fetchContent();
 
                 String errorHeader = null;
@@ -708,7 +770,7 @@ public class OsmApi extends OsmConnection {
                 if (response.getHeaderField("Error") != null) {
                     errorHeader = response.getHeaderField("Error");
                     Logging.error("Error header: " + errorHeader);
-                } else if (retCode != HttpURLConnection.HTTP_OK && responseBody.length() > 0) {
+                } else if (responseBody.length() > 0) {
                     Logging.error("Error body: " + responseBody);
                 }
                 activeConnection.disconnect();
@@ -716,8 +778,6 @@ public class OsmApi extends OsmConnection {
                 errorHeader = errorHeader == null ? null : errorHeader.trim();
                 String errorBody = responseBody.length() == 0 ? null : responseBody.trim();
                 switch(retCode) {
-                case HttpURLConnection.HTTP_OK:
-                    return responseBody;
                 case HttpURLConnection.HTTP_GONE:
                     throw new OsmApiPrimitiveGoneException(errorHeader, errorBody);
                 case HttpURLConnection.HTTP_CONFLICT:
@@ -738,7 +798,7 @@ public class OsmApi extends OsmConnection {
                     continue;
                 }
                 throw new OsmTransferException(e);
-            } catch (IOException e) {
+            } catch (IOException | XmlParsingException e) {
                 throw new OsmTransferException(e);
             } catch (OsmTransferException e) {
                 throw e;
@@ -0,0 +1,342 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DownloadPolicy;
+import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.PrimitiveData;
+import org.openstreetmap.josm.data.osm.PrimitiveId;
+import org.openstreetmap.josm.data.osm.RelationData;
+import org.openstreetmap.josm.data.osm.RelationMemberData;
+import org.openstreetmap.josm.data.osm.SimplePrimitiveId;
+import org.openstreetmap.josm.data.osm.UploadPolicy;
+import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.WayData;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.tools.Logging;
+
+/**
+ * Reader of the compact binary format written by {@link OsmBinaryWriter}.
+ * <p>
+ * The primitives are built in batches, then the way nodes and relation members are resolved as done by
+ * {@link OsmReader}. When a journal of changes is given, the primitives are only built once all changes are replayed.
+ */
+public final class OsmBinaryReader extends AbstractReader {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final List<User> users = new ArrayList<>();
+    private final List<DataSource> dataSources = new ArrayList<>();
+    private long previousId;
+    private long previousTimestamp;
+    private long previousLat;
+    private long previousLon;
+
+    private OsmBinaryReader() {
+        // Restricts visibility
+    }
+
+    /**
+     * Parse the given input source and return the dataset.
+     *
+     * @param source the source input stream. Must not be null.
+     * @param progressMonitor the progress monitor. If null, {@link org.openstreetmap.josm.gui.progress.NullProgressMonitor#INSTANCE}
+     * is assumed
+     * @return the dataset with the parsed data
+     * @throws IllegalDataException if an error was found while parsing the data from the source
+     * @throws IllegalArgumentException if source is null
+     */
+    public static DataSet parseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
+        return new OsmBinaryReader().doParseDataSet(source, progressMonitor);
+    }
+
+    /**
+     * Parse the given input source, replay the changes of the given journal, and return the dataset.
+     * <p>
+     * An entry of the journal truncated by a crash, at its end, is ignored.
+     *
+     * @param source the source input stream. Must not be null.
+     * @param journal the journal, written by {@link OsmBinaryWriter#appendJournalEntry}. Must not be null.
+     * @param progressMonitor the progress monitor. If null, {@link org.openstreetmap.josm.gui.progress.NullProgressMonitor#INSTANCE}
+     * is assumed
+     * @return the dataset with the parsed data
+     * @throws IllegalDataException if an error was found while parsing the data from the source
+     * @throws IllegalArgumentException if source is null
+     */
+    public static DataSet parseDataSet(InputStream source, InputStream journal, ProgressMonitor progressMonitor)
+            throws IllegalDataException {
+        OsmBinaryReader reader = new OsmBinaryReader();
+        return reader.doParseBinaryDataSet(source, progressMonitor, in -> reader.parse(in, journal));
+    }
+
+    @Override
+    protected DataSet doParseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
+        return doParseBinaryDataSet(source, progressMonitor, this::parse);
+    }
+
+    private void parse(InputStream source) throws IllegalDataException, IOException {
+        BlockBuilder blocks = new BlockBuilder();
+        parseDocument(new BinaryInput(source), blocks, id -> {
+            throw new IllegalDataException(tr("Unexpected removed primitive {0}", id));
+        });
+        blocks.flush();
+        ds.addDataSources(dataSources);
+    }
+
+    private void parse(InputStream source, InputStream journal) throws IllegalDataException, IOException {
+        JournalReplay replay = new JournalReplay();
+        parseDocument(new BinaryInput(source), replay, replay::remove);
+        DataInputStream entries = new DataInputStream(journal);
+        while (true) {
+            int length;
+            try {
+                length = entries.readInt();
+            } catch (EOFException e) {
+                Logging.trace(e);
+                break;
+            }
+            if (length < 0) {
+                throw new IllegalDataException(tr("Invalid length: {0}", length));
+            }
+            byte[] entry = new byte[length];
+            try {
+                entries.readFully(entry);
+            } catch (EOFException e) {
+                Logging.warn(tr("Ignoring the truncated last entry of the journal"));
+                Logging.trace(e);
+                break;
+            }
+            parseDocument(new BinaryInput(new ByteArrayInputStream(entry)), replay, replay::remove);
+        }
+        replay.flush();
+        ds.addDataSources(dataSources);
+    }
+
+    private void parseDocument(BinaryInput in, PrimitiveConsumer consumer, RemovedConsumer removed)
+            throws IllegalDataException, IOException {
+        for (byte b : OsmBinaryWriter.MAGIC) {
+            if (in.readByte() != b) {
+                throw new IllegalDataException(tr("Not a binary OSM data file"));
+            }
+        }
+        long formatVersion = in.readVarint();
+        if (formatVersion != OsmBinaryWriter.FORMAT_VERSION) {
+            throw new IllegalDataException(tr("Unsupported version of binary OSM data: {0}", formatVersion));
+        }
+        // the attributes of the last document replace the previous ones
+        if (ds.isLocked()) {
+            ds.unlock();
+        }
+        ds.setDownloadPolicy(DownloadPolicy.NORMAL);
+        ds.setUploadPolicy(UploadPolicy.NORMAL);
+        users.clear();
+        dataSources.clear();
+        previousTimestamp = 0;
+        previousLat = 0;
+        previousLon = 0;
+        parseVersion(in.readString());
+        parseDownloadPolicy("download", in.readString());
+        parseUploadPolicy("upload", in.readString());
+        parseLocked(Boolean.toString(in.readBoolean()));
+        int sources = in.readLength();
+        for (int i = 0; i < sources; i++) {
+            Bounds bounds = new Bounds(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+            dataSources.add(new DataSource(bounds, in.readString()));
+        }
+        parsePrimitives(in, NodeData::new, consumer);
+        parsePrimitives(in, WayData::new, consumer);
+        parsePrimitives(in, RelationData::new, consumer);
+        int count = in.readLength();
+        for (int i = 0; i < count; i++) {
+            int type = in.readByte();
+            long id = in.readSignedVarint();
+            if (type >= OsmPbfReader.MEMBER_TYPES.length) {
+                throw new IllegalDataException(tr("Illegal type {0} of removed primitive {1}", type, Long.toString(id)));
+            }
+            removed.accept(new SimplePrimitiveId(id, OsmPbfReader.MEMBER_TYPES[type]));
+        }
+    }
+
+    @FunctionalInterface
+    private interface PrimitiveDataFactory {
+        PrimitiveData create();
+    }
+
+    @FunctionalInterface
+    private interface PrimitiveConsumer {
+        void accept(PrimitiveData pd, List<Long> nodeIds, List<RelationMemberData> members) throws IllegalDataException;
+    }
+
+    @FunctionalInterface
+    private interface RemovedConsumer {
+        void accept(PrimitiveId id) throws IllegalDataException;
+    }
+
+    /**
+     * Adds the primitives to the data set in batches, as they are read.
+     */
+    private class BlockBuilder implements PrimitiveConsumer {
+        private PrimitiveBlock block = new PrimitiveBlock();
+
+        @Override
+        public void accept(PrimitiveData pd, List<Long> nodeIds, List<RelationMemberData> members) throws IllegalDataException {
+            if (pd instanceof NodeData) {
+                block.addNode((NodeData) pd);
+            } else if (pd instanceof WayData) {
+                block.addWay((WayData) pd, nodeIds);
+            } else {
+                block.addRelation((RelationData) pd, members);
+            }
+            if (block.primitives.size() == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() throws IllegalDataException {
+            if (cancel) {
+                throw new IllegalDataException(tr("Reading was canceled"));
+            }
+            addPrimitives(block);
+            block = new PrimitiveBlock();
+        }
+    }
+
+    /**
+     * Keeps the last version of each primitive read from the documents, until all of them are read.
+     */
+    private class JournalReplay implements PrimitiveConsumer {
+        private final Map<PrimitiveId, PrimitiveData> primitives = new LinkedHashMap<>();
+        private final Map<Long, List<Long>> wayNodes = new HashMap<>();
+        private final Map<Long, List<RelationMemberData>> relationMembers = new HashMap<>();
+
+        @Override
+        public void accept(PrimitiveData pd, List<Long> nodeIds, List<RelationMemberData> members) {
+            primitives.put(new SimplePrimitiveId(pd.getUniqueId(), pd.getType()), pd);
+            if (nodeIds != null) {
+                wayNodes.put(pd.getUniqueId(), nodeIds);
+            } else if (members != null) {
+                relationMembers.put(pd.getUniqueId(), members);
+            }
+        }
+
+        void remove(PrimitiveId id) {
+            primitives.remove(id);
+        }
+
+        void flush() throws IllegalDataException {
+            BlockBuilder blocks = new BlockBuilder();
+            // the way nodes and relation members are resolved once all primitives are known, in any order
+            for (PrimitiveData pd : primitives.values()) {
+                blocks.accept(pd, wayNodes.get(pd.getUniqueId()), relationMembers.get(pd.getUniqueId()));
+            }
+            blocks.flush();
+        }
+    }
+
+    private void parsePrimitives(BinaryInput in, PrimitiveDataFactory factory, PrimitiveConsumer consumer)
+            throws IllegalDataException, IOException {
+        int count = in.readLength();
+        previousId = 0;
+        for (int i = 0; i < count; i++) {
+            PrimitiveData pd = factory.create();
+            int flags = parseCommon(in, pd);
+            if (pd instanceof NodeData) {
+                if ((flags & OsmBinaryWriter.FLAG_COORDINATES) != 0) {
+                    previousLat += in.readSignedVarint();
+                    previousLon += in.readSignedVarint();
+                    ((NodeData) pd).setCoor(new LatLon(
+                            previousLat / OsmBinaryWriter.COORDINATES_SCALE, previousLon / OsmBinaryWriter.COORDINATES_SCALE));
+                }
+                consumer.accept(pd, null, null);
+            } else if (pd instanceof WayData) {
+                consumer.accept(pd, parseWayNodes(in), null);
+            } else {
+                consumer.accept(pd, null, parseRelationMembers(in, pd.getUniqueId()));
+            }
+        }
+    }
+
+    private int parseCommon(BinaryInput in, PrimitiveData pd) throws IllegalDataException, IOException {
+        previousId += in.readSignedVarint();
+        parseId(pd, previousId);
+        int flags = (int) in.readVarint();
+        boolean visible = (flags & OsmBinaryWriter.FLAG_VISIBLE) != 0;
+        if (!visible && pd.isNew()) {
+            throw new IllegalDataException(tr("Invisible new primitive {0}", Long.toString(previousId)));
+        }
+        // in this order, as setDeleted changes the modified flag
+        pd.setVisible(visible);
+        pd.setDeleted((flags & OsmBinaryWriter.FLAG_DELETED) != 0);
+        pd.setModified((flags & OsmBinaryWriter.FLAG_MODIFIED) != 0);
+        parseVersion(pd, (int) in.readVarint());
+        parseChangeset(pd, (int) in.readVarint());
+        previousTimestamp += in.readSignedVarint();
+        pd.setRawTimestamp((int) previousTimestamp);
+        pd.setUser(parseUser(in));
+        int tags = in.readLength();
+        for (int i = 0; i < tags; i++) {
+            parseTag(pd, in.readString(), in.readString());
+        }
+        return flags;
+    }
+
+    private User parseUser(BinaryInput in) throws IllegalDataException, IOException {
+        long index = in.readVarint();
+        if (index == 0) {
+            return null;
+        } else if (index == 1) {
+            boolean osmUser = in.readBoolean();
+            long uid = osmUser ? in.readVarint() : 0;
+            String name = in.readString();
+            User user = osmUser ? User.createOsmUser(uid, name) : User.createLocalUser(name);
+            users.add(user);
+            return user;
+        } else if (index - 2 < users.size()) {
+            return users.get((int) (index - 2));
+        }
+        throw new IllegalDataException(tr("Invalid user reference: {0}", index));
+    }
+
+    private static List<Long> parseWayNodes(BinaryInput in) throws IllegalDataException, IOException {
+        int count = in.readLength();
+        List<Long> nodeIds = new ArrayList<>(count);
+        long id = 0;
+        for (int i = 0; i < count; i++) {
+            id += in.readSignedVarint();
+            nodeIds.add(id);
+        }
+        return nodeIds;
+    }
+
+    private List<RelationMemberData> parseRelationMembers(BinaryInput in, long relationId) throws IllegalDataException, IOException {
+        int count = in.readLength();
+        List<RelationMemberData> members = new ArrayList<>(count);
+        long id = 0;
+        for (int i = 0; i < count; i++) {
+            int type = in.readByte();
+            id += in.readSignedVarint();
+            String role = in.readString();
+            if (type >= OsmPbfReader.MEMBER_TYPES.length) {
+                throw new IllegalDataException(tr("Illegal member type {0} in relation {1}", type, Long.toString(relationId)));
+            }
+            members.add(parseRelationMember(relationId, id, OsmPbfReader.MEMBER_TYPES[type].getAPIName(), role));
+        }
+        return members;
+    }
+}
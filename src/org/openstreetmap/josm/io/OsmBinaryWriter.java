@@ -0,0 +1,268 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.osm.DataSetSnapshot;
+import org.openstreetmap.josm.data.osm.DownloadPolicy;
+import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.PrimitiveData;
+import org.openstreetmap.josm.data.osm.PrimitiveId;
+import org.openstreetmap.josm.data.osm.RelationData;
+import org.openstreetmap.josm.data.osm.RelationMemberData;
+import org.openstreetmap.josm.data.osm.UploadPolicy;
+import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.WayData;
+
+/**
+ * Writer of OSM data in a compact binary format, used to save and restore sessions quickly.
+ * <p>
+ * Unlike the OSM PBF format, the JOSM specific state of the primitives is kept: new, modified and deleted primitives
+ * are restored as they were, as with the OSM XML written by {@link OsmWriter}. The undo history is not kept.
+ * <p>
+ * The primitives are sorted by id and their ids, coordinates, timestamps and way nodes are delta coded as variable
+ * length integers. The tags, roles and user names are written once, then referred to by their index.
+ * The coordinates are written with the precision of the OSM XML written by {@link OsmWriter}.
+ * <p>
+ * The changes between two snapshots can be appended to a journal, replayed over the first snapshot when reading.
+ * @see OsmBinaryReader
+ */
+public class OsmBinaryWriter implements Closeable {
+
+    /** Magic bytes at the beginning of the files */
+    static final byte[] MAGIC = "JOSM-OSM".getBytes(StandardCharsets.US_ASCII);
+    /** Version of the format */
+    static final int FORMAT_VERSION = 1;
+    /** Coordinates precision, as the 11 decimals of the OSM XML */
+    static final double COORDINATES_SCALE = 1e11;
+
+    static final int FLAG_MODIFIED = 1;
+    static final int FLAG_DELETED = 2;
+    static final int FLAG_VISIBLE = 4;
+    static final int FLAG_COORDINATES = 8;
+
+    private static final Comparator<PrimitiveData> BY_ID = Comparator.comparingLong(PrimitiveData::getUniqueId);
+
+    private final BinaryOutput out;
+    private final Map<User, Integer> users = new HashMap<>();
+    private long previousId;
+    private long previousTimestamp;
+    private long previousLat;
+    private long previousLon;
+
+    /**
+     * Constructs a new {@code OsmBinaryWriter}.
+     * @param out the output stream, closed with this writer
+     */
+    public OsmBinaryWriter(OutputStream out) {
+        this.out = new BinaryOutput(out);
+    }
+
+    /**
+     * Writes the given data set snapshot.
+     * @param snapshot OSM data set snapshot
+     * @throws IOException in case of I/O error
+     */
+    public void write(DataSetSnapshot snapshot) throws IOException {
+        writeHeader(snapshot);
+        writePrimitives(snapshot.getNodes());
+        writePrimitives(snapshot.getWays());
+        writePrimitives(snapshot.getRelations());
+        out.writeVarint(0);
+        out.flush();
+    }
+
+    /**
+     * Writes the primitives changed and removed since a previous snapshot, with the data set attributes of the given
+     * snapshot. Replaying such changes over the previous snapshot gives the given one, see {@link OsmBinaryReader}.
+     * @param snapshot OSM data set snapshot
+     * @param changed the primitives added or changed since the previous snapshot
+     * @param removed the ids of the primitives removed since the previous snapshot
+     * @throws IOException in case of I/O error
+     * @see DataSetSnapshot#diff
+     */
+    public void writeChanges(DataSetSnapshot snapshot, Collection<PrimitiveData> changed, Collection<PrimitiveId> removed)
+            throws IOException {
+        writeHeader(snapshot);
+        List<PrimitiveId> allRemoved = new ArrayList<>(removed);
+        for (OsmPrimitiveType type : OsmPrimitiveType.dataValues()) {
+            List<PrimitiveData> primitives = changed.stream().filter(p -> p.getType() == type).collect(Collectors.toList());
+            // the primitives which are not written are removed when reading
+            primitives.stream().filter(OsmBinaryWriter::isSkipped).map(PrimitiveData::getPrimitiveId).forEach(allRemoved::add);
+            writePrimitives(primitives);
+        }
+        out.writeVarint(allRemoved.size());
+        for (PrimitiveId id : allRemoved) {
+            out.writeByte(id.getType().ordinal());
+            out.writeSignedVarint(id.getUniqueId());
+        }
+        out.flush();
+    }
+
+    /**
+     * Appends the primitives changed and removed since a previous snapshot to a journal file, as a new entry.
+     * @param journal the journal file, created if needed
+     * @param snapshot OSM data set snapshot
+     * @param changed the primitives added or changed since the previous snapshot
+     * @param removed the ids of the primitives removed since the previous snapshot
+     * @throws IOException in case of I/O error
+     * @see #writeChanges
+     */
+    public static void appendJournalEntry(Path journal, DataSetSnapshot snapshot, Collection<PrimitiveData> changed,
+            Collection<PrimitiveId> removed) throws IOException {
+        ByteArrayOutputStream entry = new ByteArrayOutputStream();
+        try (OsmBinaryWriter writer = new OsmBinaryWriter(entry)) {
+            writer.writeChanges(snapshot, changed, removed);
+        }
+        // the entry is written at once, with its length, so that an entry truncated by a crash can be detected
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(journal,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE))) {
+            out.writeInt(entry.size());
+            entry.writeTo(out);
+        }
+    }
+
+    private void writeHeader(DataSetSnapshot snapshot) throws IOException {
+        for (byte b : MAGIC) {
+            out.writeByte(b);
+        }
+        out.writeVarint(FORMAT_VERSION);
+        out.writeString(snapshot.getVersion() != null ? snapshot.getVersion() : OsmWriter.DEFAULT_API_VERSION);
+        DownloadPolicy download = snapshot.getDownloadPolicy();
+        out.writeString(download != null && download != DownloadPolicy.NORMAL ? download.getXmlFlag() : null);
+        UploadPolicy upload = snapshot.getUploadPolicy();
+        out.writeString(upload != null && upload != UploadPolicy.NORMAL ? upload.getXmlFlag() : null);
+        out.writeBoolean(snapshot.isLocked());
+        List<DataSource> dataSources = snapshot.getDataSources();
+        out.writeVarint(dataSources.size());
+        for (DataSource source : dataSources) {
+            out.writeDouble(source.bounds.getMinLat());
+            out.writeDouble(source.bounds.getMinLon());
+            out.writeDouble(source.bounds.getMaxLat());
+            out.writeDouble(source.bounds.getMaxLon());
+            out.writeString(source.origin);
+        }
+        previousTimestamp = 0;
+        previousLat = 0;
+        previousLon = 0;
+    }
+
+    private static boolean isSkipped(PrimitiveData p) {
+        // incomplete primitives are created again from the references, as when reading the OSM XML
+        return p.isIncomplete() || (p.isNewOrUndeleted() && p.isDeleted());
+    }
+
+    private void writePrimitives(List<? extends PrimitiveData> primitives) throws IOException {
+        primitives.removeIf(OsmBinaryWriter::isSkipped);
+        primitives.sort(BY_ID);
+        out.writeVarint(primitives.size());
+        previousId = 0;
+        for (PrimitiveData p : primitives) {
+            if (p instanceof NodeData) {
+                writeNode((NodeData) p);
+            } else if (p instanceof WayData) {
+                writeWay((WayData) p);
+            } else {
+                writeRelation((RelationData) p);
+            }
+        }
+    }
+
+    private void writeCommon(PrimitiveData p, int flags) throws IOException {
+        out.writeSignedVarint(p.getUniqueId() - previousId);
+        previousId = p.getUniqueId();
+        out.writeVarint(flags
+                | (p.isModified() ? FLAG_MODIFIED : 0)
+                | (p.isDeleted() ? FLAG_DELETED : 0)
+                | (p.isVisible() ? FLAG_VISIBLE : 0));
+        out.writeVarint(p.getVersion());
+        out.writeVarint(Math.max(0, p.getChangesetId()));
+        out.writeSignedVarint(p.getRawTimestamp() - previousTimestamp);
+        previousTimestamp = p.getRawTimestamp();
+        writeUser(p.getUser());
+        Map<String, String> tags = p.getKeys();
+        out.writeVarint(tags.size());
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            out.writeString(tag.getKey());
+            out.writeString(tag.getValue());
+        }
+    }
+
+    private void writeUser(User user) throws IOException {
+        if (user == null) {
+            out.writeVarint(0);
+            return;
+        }
+        Integer index = users.get(user);
+        if (index != null) {
+            out.writeVarint(index + 2L);
+        } else {
+            out.writeVarint(1);
+            out.writeBoolean(user.isOsmUser());
+            if (user.isOsmUser()) {
+                out.writeVarint(user.getId());
+            }
+            out.writeString(user.getName());
+            users.put(user, users.size());
+        }
+    }
+
+    private void writeNode(NodeData n) throws IOException {
+        boolean hasCoordinates = n.isLatLonKnown();
+        writeCommon(n, hasCoordinates ? FLAG_COORDINATES : 0);
+        if (hasCoordinates) {
+            long lat = Math.round(n.lat() * COORDINATES_SCALE);
+            long lon = Math.round(n.lon() * COORDINATES_SCALE);
+            out.writeSignedVarint(lat - previousLat);
+            out.writeSignedVarint(lon - previousLon);
+            previousLat = lat;
+            previousLon = lon;
+        }
+    }
+
+    private void writeWay(WayData w) throws IOException {
+        writeCommon(w, 0);
+        List<Long> nodeIds = w.getNodeIds();
+        out.writeVarint(nodeIds.size());
+        long previous = 0;
+        for (long id : nodeIds) {
+            out.writeSignedVarint(id - previous);
+            previous = id;
+        }
+    }
+
+    private void writeRelation(RelationData r) throws IOException {
+        writeCommon(r, 0);
+        List<RelationMemberData> members = r.getMembers();
+        out.writeVarint(members.size());
+        long previous = 0;
+        for (RelationMemberData member : members) {
+            out.writeByte(member.getMemberType().ordinal());
+            out.writeSignedVarint(member.getMemberId() - previous);
+            previous = member.getMemberId();
+            out.writeString(member.getRole());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -5,6 +5,7 @@ import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Collection;
 
 import org.openstreetmap.josm.data.osm.Changeset;
@@ -40,9 +41,20 @@ public class OsmChangeBuilder {
      * @param apiVersion OSM API version
      */
     public OsmChangeBuilder(Changeset changeset, String apiVersion) {
+        this(changeset, apiVersion, new StringWriter());
+    }
+
+    /**
+     * Constructs a new {@code OsmChangeBuilder} which writes the document to the given writer instead of keeping it in memory.
+     * The writer is flushed by {@link #finish()}, but not closed.
+     * @param changeset changeset
+     * @param apiVersion OSM API version
+     * @param out the writer receiving the document
+     */
+    public OsmChangeBuilder(Changeset changeset, String apiVersion, Writer out) {
         this.apiVersion = apiVersion == null ? DEFAULT_API_VERSION : apiVersion;
-        swriter = new StringWriter();
-        writer = new PrintWriter(swriter);
+        swriter = out instanceof StringWriter ? (StringWriter) out : null;
+        writer = new PrintWriter(out);
         osmwriter = OsmWriterFactory.createOsmWriter(writer, false, apiVersion);
         osmwriter.setChangeset(changeset);
         osmwriter.setIsOsmChange(true);
@@ -140,13 +152,17 @@ public class OsmChangeBuilder {
             writer.println(">");
         }
         writer.println("</osmChange>");
+        writer.flush();
     }
 
     /**
      * Returns XML document.
      * @return XML document
+     * @throws IllegalStateException if the document was written to another writer
      */
     public String getDocument() {
+        if (swriter == null)
+            throw new IllegalStateException(tr("OsmChange document was not built in memory."));
         return swriter.toString();
     }
 }
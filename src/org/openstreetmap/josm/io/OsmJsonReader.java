@@ -129,7 +129,7 @@ public class OsmJsonReader extends AbstractReader {
         JsonObject tags = item.getJsonObject("tags");
         if (tags != null) {
             for (Entry<String, JsonValue> entry : tags.entrySet()) {
-                t.put(entry.getKey(), ((JsonString) entry.getValue()).getString());
+                t.put(entry.getKey().intern(), ((JsonString) entry.getValue()).getString().intern());
             }
         }
     }
@@ -0,0 +1,264 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.preferences.IntegerProperty;
+import org.openstreetmap.josm.data.preferences.LongProperty;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * On-disk cache of the map data replied by the OSM API, by tile of a fixed zoom level of the slippy map grid.
+ * <p>
+ * A download is assembled from the cached tiles downloaded less than {@link #TTL} seconds ago, and the other tiles
+ * are downloaded from the server at once, see {@link BoundingBoxDownloader#parseOsm}. Each tile stores what the server
+ * replies for the area of the tile, extracted from the response, and the time of the download of each tile is the
+ * modification time of its file.
+ * <p>
+ * The tiles of a download may thus have been downloaded at different times, up to {@link #TTL} seconds apart. They
+ * are merged as they are: the most recent version of a primitive wins, but a primitive deleted on the server between
+ * the downloads is still present in the older tiles, and is therefore part of the download.
+ */
+public final class OsmMapTileCache {
+
+    /**
+     * Property for the number of seconds a tile is reused. 0 (default) disables the cache.
+     */
+    public static final LongProperty TTL = new LongProperty("osm-server.tile-cache.ttl", 0);
+    /**
+     * Property for the zoom level of the tiles.
+     */
+    public static final IntegerProperty ZOOM = new IntegerProperty("osm-server.tile-cache.zoom", 16);
+    /**
+     * Property for the maximum number of tiles of a download. Larger areas are downloaded at once, without the cache.
+     */
+    public static final IntegerProperty MAX_TILES = new IntegerProperty("osm-server.tile-cache.max-tiles", 64);
+
+    /** Latitude limit of the slippy map grid */
+    private static final double MAX_LAT = 85.05112877980659;
+
+    private final File directory;
+    private final int zoom;
+    private final long ttl;
+
+    /**
+     * A tile of the slippy map grid.
+     */
+    public static final class Tile {
+        private final int zoom;
+        private final int x;
+        private final int y;
+
+        Tile(int zoom, int x, int y) {
+            this.zoom = zoom;
+            this.x = x;
+            this.y = y;
+        }
+
+        /**
+         * Returns the area of the tile.
+         * @return the area of the tile
+         */
+        public Bounds getBounds() {
+            return new Bounds(lat(y + 1), lon(x), lat(y), lon(x + 1));
+        }
+
+        private double lon(int tileX) {
+            return tileX * 360.0 / (1 << zoom) - 180;
+        }
+
+        private double lat(int tileY) {
+            return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2.0 * tileY / (1 << zoom)))));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null || getClass() != obj.getClass())
+                return false;
+            Tile other = (Tile) obj;
+            return zoom == other.zoom && x == other.x && y == other.y;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(zoom, x, y);
+        }
+
+        @Override
+        public String toString() {
+            return zoom + "/" + x + '/' + y;
+        }
+    }
+
+    /**
+     * Constructs a new {@code OsmMapTileCache}.
+     * @param directory the directory where the tiles are stored
+     * @param zoom the zoom level of the tiles
+     * @param ttl the number of milliseconds a tile is reused. 0 disables the cache
+     */
+    public OsmMapTileCache(File directory, int zoom, long ttl) {
+        this.directory = directory;
+        this.zoom = Utils.clamp(zoom, 1, 20);
+        this.ttl = ttl;
+    }
+
+    /**
+     * Returns the cache configured in the preferences, for the given server.
+     * @param server the base URL of the OSM API
+     * @return the cache configured in the preferences, in the {@code osm-tiles} folder of the cache directory
+     */
+    public static OsmMapTileCache getDefault(String server) {
+        File dir = new File(new File(Config.getDirs().getCacheDirectory(false), "osm-tiles"), server.replaceAll("[^A-Za-z0-9_.-]", "_"));
+        return new OsmMapTileCache(dir, ZOOM.get(), TimeUnit.SECONDS.toMillis(TTL.get()));
+    }
+
+    /**
+     * Determines if the cache is enabled.
+     * @return {@code true} if tiles are reused
+     */
+    public boolean isEnabled() {
+        return ttl > 0;
+    }
+
+    /**
+     * Returns the tiles covering the given area.
+     * @param bounds the area, not crossing the 180th meridian
+     * @return the tiles, row by row. Empty if the area is beyond the latitude limits of the grid
+     */
+    public List<Tile> getTiles(Bounds bounds) {
+        if (bounds.getMaxLat() > MAX_LAT || bounds.getMinLat() < -MAX_LAT)
+            return Collections.emptyList();
+        int n = 1 << zoom;
+        int minX = tileX(bounds.getMinLon(), n);
+        int maxX = tileX(bounds.getMaxLon(), n);
+        int minY = tileY(bounds.getMaxLat(), n);
+        int maxY = tileY(bounds.getMinLat(), n);
+        List<Tile> tiles = new ArrayList<>((maxX - minX + 1) * (maxY - minY + 1));
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                tiles.add(new Tile(zoom, x, y));
+            }
+        }
+        return tiles;
+    }
+
+    private static int tileX(double lon, int n) {
+        return Utils.clamp((int) Math.floor((lon + 180) / 360 * n), 0, n - 1);
+    }
+
+    private static int tileY(double lat, int n) {
+        double rad = Math.toRadians(lat);
+        return Utils.clamp((int) Math.floor((1 - Math.log(Math.tan(rad) + 1 / Math.cos(rad)) / Math.PI) / 2 * n), 0, n - 1);
+    }
+
+    private File getFile(Tile tile) {
+        return new File(directory, tile.zoom + File.separator + tile.x + File.separator + tile.y + ".osm");
+    }
+
+    /**
+     * Returns the cached data of the given tile, if it was downloaded recently enough.
+     * @param tile the tile
+     * @return the file of the tile, or {@code null} if it is missing or stale
+     */
+    public File getFreshFile(Tile tile) {
+        File file = getFile(tile);
+        return file.isFile() && System.currentTimeMillis() - file.lastModified() < ttl ? file : null;
+    }
+
+    /**
+     * Returns the bounding rectangle of the given tiles.
+     * @param tiles the tiles, not empty
+     * @return the smallest area containing all tiles
+     */
+    public static Bounds getBounds(Collection<Tile> tiles) {
+        Bounds bounds = null;
+        for (Tile tile : tiles) {
+            if (bounds == null) {
+                bounds = tile.getBounds();
+            } else {
+                bounds.extend(tile.getBounds());
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Returns the tiles inside the bounding rectangle of some of them.
+     * @param tiles the tiles
+     * @param inner some of {@code tiles}, not empty
+     * @return the tiles of {@code tiles} inside the bounding rectangle of {@code inner}, in the same order
+     */
+    public static List<Tile> getTilesInside(List<Tile> tiles, Collection<Tile> inner) {
+        int minX = inner.stream().mapToInt(t -> t.x).min().getAsInt();
+        int maxX = inner.stream().mapToInt(t -> t.x).max().getAsInt();
+        int minY = inner.stream().mapToInt(t -> t.y).min().getAsInt();
+        int maxY = inner.stream().mapToInt(t -> t.y).max().getAsInt();
+        return tiles.stream().filter(t -> t.x >= minX && t.x <= maxX && t.y >= minY && t.y <= maxY).collect(Collectors.toList());
+    }
+
+    /**
+     * Stores the data of the given tile, extracted from the response of the server for a larger area.
+     * <p>
+     * The tile contains what the server replies for the area of the tile alone: the nodes of the tile, the ways using
+     * them with all their nodes, the relations using these nodes and ways, and the relations using these relations.
+     * @param tile the tile
+     * @param data the response of the server, for an area containing the tile
+     * @return the file of the tile
+     * @throws IOException if an I/O error occurs
+     */
+    public File store(Tile tile, DataSet data) throws IOException {
+        Bounds bounds = tile.getBounds();
+        Set<Node> nodes = new HashSet<>(data.searchNodes(bounds.toBBox()));
+        Set<Way> ways = nodes.stream().flatMap(n -> n.referrers(Way.class)).collect(Collectors.toSet());
+        ways.forEach(w -> nodes.addAll(w.getNodes()));
+        Set<Relation> relations = Stream.concat(nodes.stream(), ways.stream()).flatMap(p -> p.referrers(Relation.class))
+                .collect(Collectors.toSet());
+        relations.addAll(relations.stream().flatMap(r -> r.referrers(Relation.class)).collect(Collectors.toList()));
+        String origin = data.getDataSources().stream().map(s -> s.origin).filter(Objects::nonNull).findFirst().orElse("OpenStreetMap server");
+
+        File file = getFile(tile);
+        File dir = file.getParentFile();
+        Utils.mkDirs(dir);
+        File tmp = File.createTempFile("tile", ".tmp", dir);
+        try {
+            try (OsmWriter writer = OsmWriterFactory.createOsmWriter(new PrintWriter(new OutputStreamWriter(
+                    Files.newOutputStream(tmp.toPath()), StandardCharsets.UTF_8)), false, OsmWriter.DEFAULT_API_VERSION)) {
+                writer.header();
+                writer.writeDataSources(Collections.singleton(new DataSource(bounds, origin)));
+                writer.writeNodes(nodes);
+                writer.writeWays(ways);
+                writer.writeRelations(relations);
+                writer.footer();
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Utils.deleteFileIfExists(tmp);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,634 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.PrimitiveData;
+import org.openstreetmap.josm.data.osm.RelationData;
+import org.openstreetmap.josm.data.osm.RelationMemberData;
+import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.WayData;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Parser for the <a href="https://wiki.openstreetmap.org/wiki/PBF_Format">OSM PBF format</a>.
+ * <p>
+ * The file blocks are read sequentially, then inflated and decoded in parallel. The decoded primitives are added to
+ * the data set in the order of the file, as done by {@link OsmReader}.
+ * @see OsmPbfWriter
+ */
+public final class OsmPbfReader extends AbstractReader {
+
+    /** Maximum size of a blob header, as defined by the format */
+    static final int MAX_HEADER_SIZE = 64 * 1024;
+    /** Maximum size of a blob, as defined by the format */
+    static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+    private static final Set<String> SUPPORTED_FEATURES = new HashSet<>(
+            Arrays.asList("OsmSchema-V0.6", "DenseNodes", "HistoricalInformation"));
+
+    /** Member types, indexed by their PBF value */
+    static final OsmPrimitiveType[] MEMBER_TYPES = {OsmPrimitiveType.NODE, OsmPrimitiveType.WAY, OsmPrimitiveType.RELATION};
+
+    private boolean headerRead;
+
+    /**
+     * Decoding context of a data block.
+     */
+    private static final class BlockContext {
+        String[] strings = new String[0];
+        long granularity = 100;
+        long latOffset;
+        long lonOffset;
+        long dateGranularity = 1000;
+        final Map<Long, User> users = new HashMap<>();
+    }
+
+    private OsmPbfReader() {
+        // Restricts visibility
+    }
+
+    /**
+     * Parse the given input source and return the dataset.
+     *
+     * @param source the source input stream. Must not be null.
+     * @param progressMonitor the progress monitor. If null, {@link org.openstreetmap.josm.gui.progress.NullProgressMonitor#INSTANCE}
+     * is assumed
+     * @return the dataset with the parsed data
+     * @throws IllegalDataException if an error was found while parsing the data from the source
+     * @throws IllegalArgumentException if source is null
+     */
+    public static DataSet parseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
+        return new OsmPbfReader().doParseDataSet(source, progressMonitor);
+    }
+
+    @Override
+    protected DataSet doParseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
+        return doParseBinaryDataSet(source, progressMonitor, this::parse);
+    }
+
+    private void parse(InputStream source) throws IllegalDataException, IOException {
+        DataInputStream in = new DataInputStream(source);
+        ForkJoinPool pool = Utils.newForkJoinPool("osm.pbf.reader.threads", "pbf-reader-%d", Thread.NORM_PRIORITY);
+        // the decoded blocks are kept in the file order, and their number is bounded to limit the memory used
+        Deque<Future<PrimitiveBlock>> pending = new ArrayDeque<>();
+        int maxPending = 2 * pool.getParallelism();
+        try {
+            byte[] header;
+            while ((header = readBlobHeader(in)) != null) {
+                if (cancel) {
+                    throw new IllegalDataException(tr("Reading was canceled"));
+                }
+                String type = null;
+                int dataSize = -1;
+                ProtobufInput blobHeader = new ProtobufInput(header);
+                while (blobHeader.next()) {
+                    if (blobHeader.field() == 1) {
+                        type = blobHeader.readString();
+                    } else if (blobHeader.field() == 3) {
+                        dataSize = (int) blobHeader.readVarint();
+                    } else {
+                        blobHeader.skip();
+                    }
+                }
+                if (dataSize < 0 || dataSize > MAX_BLOB_SIZE) {
+                    throw new IllegalDataException(tr("Invalid PBF blob size: {0}", dataSize));
+                }
+                byte[] blob = new byte[dataSize];
+                in.readFully(blob);
+                if ("OSMHeader".equals(type)) {
+                    parseHeaderBlock(inflate(blob));
+                } else if ("OSMData".equals(type)) {
+                    if (!headerRead) {
+                        throw new IllegalDataException(tr("Missing PBF header block"));
+                    }
+                    pending.add(pool.submit(() -> decodeBlock(inflate(blob))));
+                    if (pending.size() >= maxPending) {
+                        addBlock(pending.poll());
+                    }
+                }
+                // other blob types must be skipped, as defined by the format
+            }
+            while (!pending.isEmpty()) {
+                addBlock(pending.poll());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static byte[] readBlobHeader(DataInputStream in) throws IOException, IllegalDataException {
+        int first = in.read();
+        if (first < 0) {
+            return null;
+        }
+        int length = (first << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+        if (length < 0 || length > MAX_HEADER_SIZE) {
+            throw new IllegalDataException(tr("Invalid PBF blob header size: {0}", length));
+        }
+        byte[] header = new byte[length];
+        in.readFully(header);
+        return header;
+    }
+
+    private static byte[] inflate(byte[] blob) throws IllegalDataException {
+        byte[] raw = null;
+        byte[] zlib = null;
+        int rawSize = -1;
+        ProtobufInput in = new ProtobufInput(blob);
+        while (in.next()) {
+            switch (in.field()) {
+            case 1:
+                raw = in.readBytes();
+                break;
+            case 2:
+                rawSize = (int) in.readVarint();
+                break;
+            case 3:
+                zlib = in.readBytes();
+                break;
+            case 4:
+            case 5:
+            case 6:
+            case 7:
+                throw new IllegalDataException(tr("Unsupported PBF compression"));
+            default:
+                in.skip();
+            }
+        }
+        if (raw != null) {
+            return raw;
+        } else if (zlib == null || rawSize < 0 || rawSize > MAX_BLOB_SIZE) {
+            throw new IllegalDataException(tr("Invalid PBF blob"));
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(zlib);
+            byte[] result = new byte[rawSize];
+            int n = 0;
+            while (n < rawSize && !inflater.finished()) {
+                int read = inflater.inflate(result, n, rawSize - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != rawSize) {
+                throw new IllegalDataException(tr("Invalid PBF blob"));
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IllegalDataException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private void parseHeaderBlock(byte[] data) throws IllegalDataException {
+        ProtobufInput in = new ProtobufInput(data);
+        ProtobufInput bbox = null;
+        String writingProgram = null;
+        String source = null;
+        while (in.next()) {
+            switch (in.field()) {
+            case 1:
+                bbox = in.readMessage();
+                break;
+            case 4:
+                String feature = in.readString();
+                if (!SUPPORTED_FEATURES.contains(feature)) {
+                    throw new IllegalDataException(tr("Unsupported PBF feature: {0}", feature));
+                }
+                break;
+            case 16:
+                writingProgram = in.readString();
+                break;
+            case 17:
+                source = in.readString();
+                break;
+            default:
+                in.skip();
+            }
+        }
+        parseVersion(OsmWriter.DEFAULT_API_VERSION);
+        if (bbox != null) {
+            long[] values = new long[4];
+            while (bbox.next()) {
+                if (bbox.field() >= 1 && bbox.field() <= 4) {
+                    values[bbox.field() - 1] = bbox.readSint64();
+                } else {
+                    bbox.skip();
+                }
+            }
+            // left, right, top, bottom in nanodegrees
+            parseBounds(writingProgram, Double.toString(1e-9 * values[0]), Double.toString(1e-9 * values[3]),
+                    Double.toString(1e-9 * values[1]), Double.toString(1e-9 * values[2]), source);
+        }
+        headerRead = true;
+    }
+
+    private void addBlock(Future<PrimitiveBlock> future) throws IllegalDataException {
+        try {
+            addPrimitives(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalDataException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalDataException) {
+                throw (IllegalDataException) e.getCause();
+            }
+            throw new IllegalDataException(e.getCause());
+        }
+    }
+
+    private PrimitiveBlock decodeBlock(byte[] data) throws IllegalDataException {
+        BlockContext context = new BlockContext();
+        List<ProtobufInput> groups = new ArrayList<>();
+        ProtobufInput in = new ProtobufInput(data);
+        while (in.next()) {
+            switch (in.field()) {
+            case 1:
+                context.strings = readStringTable(in.readMessage());
+                break;
+            case 2:
+                groups.add(in.readMessage());
+                break;
+            case 17:
+                context.granularity = in.readVarint();
+                break;
+            case 18:
+                context.dateGranularity = in.readVarint();
+                break;
+            case 19:
+                context.latOffset = in.readVarint();
+                break;
+            case 20:
+                context.lonOffset = in.readVarint();
+                break;
+            default:
+                in.skip();
+            }
+        }
+        PrimitiveBlock block = new PrimitiveBlock();
+        for (ProtobufInput group : groups) {
+            while (group.next()) {
+                switch (group.field()) {
+                case 1:
+                    decodeNode(group.readMessage(), context, block);
+                    break;
+                case 2:
+                    decodeDenseNodes(group.readMessage(), context, block);
+                    break;
+                case 3:
+                    decodeWay(group.readMessage(), context, block);
+                    break;
+                case 4:
+                    decodeRelation(group.readMessage(), context, block);
+                    break;
+                default:
+                    group.skip();
+                }
+            }
+        }
+        return block;
+    }
+
+    private static String[] readStringTable(ProtobufInput in) throws IllegalDataException {
+        List<String> strings = new ArrayList<>();
+        while (in.next()) {
+            if (in.field() == 1) {
+                strings.add(in.readString());
+            } else {
+                in.skip();
+            }
+        }
+        return strings.toArray(new String[0]);
+    }
+
+    private static String getString(BlockContext context, long index) throws IllegalDataException {
+        if (index < 0 || index >= context.strings.length) {
+            throw new IllegalDataException(tr("Invalid PBF string index: {0}", index));
+        }
+        return context.strings[(int) index];
+    }
+
+    private void decodeNode(ProtobufInput in, BlockContext context, PrimitiveBlock block) throws IllegalDataException {
+        NodeData nd = new NodeData(0);
+        long[] keys = null;
+        long[] values = null;
+        long lat = 0;
+        long lon = 0;
+        ProtobufInput info = null;
+        while (in.next()) {
+            switch (in.field()) {
+            case 1:
+                parseId(nd, in.readSint64());
+                break;
+            case 2:
+                keys = in.readPacked(false, false);
+                break;
+            case 3:
+                values = in.readPacked(false, false);
+                break;
+            case 4:
+                info = in.readMessage();
+                break;
+            case 8:
+                lat = in.readSint64();
+                break;
+            case 9:
+                lon = in.readSint64();
+                break;
+            default:
+                in.skip();
+            }
+        }
+        readInfo(nd, info, context);
+        setCoor(nd, lat, lon, context);
+        readTags(nd, keys, values, context);
+        block.addNode(nd);
+    }
+
+    private void decodeDenseNodes(ProtobufInput in, BlockContext context, PrimitiveBlock block) throws IllegalDataException {
+        long[] ids = new long[0];
+        long[] lats = null;
+        long[] lons = null;
+        long[] keysVals = null;
+        ProtobufInput denseInfo = null;
+        while (in.next()) {
+            switch (in.field()) {
+            case 1:
+                ids = in.readPacked(true, true);
+                break;
+            case 5:
+                denseInfo = in.readMessage();
+                break;
+            case 8:
+                lats = in.readPacked(true, true);
+                break;
+            case 9:
+                lons = in.readPacked(true, true);
+                break;
+            case 10:
+                keysVals = in.readPacked(false, false);
+                break;
+            default:
+                in.skip();
+            }
+        }
+        if (lats == null || lons == null || lats.length != ids.length || lons.length != ids.length) {
+            throw new IllegalDataException(tr("Invalid PBF dense nodes"));
+        }
+        long[][] info = readDenseInfo(denseInfo, ids.length);
+        int kv = 0;
+        for (int i = 0; i < ids.length; i++) {
+            NodeData nd = new NodeData(0);
+            parseId(nd, ids[i]);
+            // without metadata (e.g. osmium --omit-metadata), the version is left to 0
+            if (info != null) {
+                readInfo(nd, (int) info[0][i], info[1][i], info[2][i], info[3][i], info[4][i], info[5] == null || info[5][i] != 0, context);
+            }
+            setCoor(nd, lats[i], lons[i], context);
+            // keys and values of the node, followed by 0
+            while (keysVals != null && kv < keysVals.length && keysVals[kv] != 0) {
+                if (kv + 1 >= keysVals.length) {
+                    throw new IllegalDataException(tr("Invalid PBF dense nodes"));
+                }
+                parseTag(nd, getString(context, keysVals[kv]), getString(context, keysVals[kv + 1]));
+                kv += 2;
+            }
+            kv++;
+            block.addNode(nd);
+        }
+    }
+
+    /**
+     * Reads the dense info of dense nodes.
+     * @return the columns version, timestamp, changeset, uid, user_sid, visible; or {@code null} without info
+     */
+    private static long[][] readDenseInfo(ProtobufInput in, int count) throws IllegalDataException {
+        if (in == null) {
+            return null;
+        }
+        long[][] columns = new long[6][];
+        while (in.next()) {
+            int field = in.field();
+            if (field >= 1 && field <= 6) {
+                // version and visible are not delta coded, uid and user_sid are sint32
+                columns[field - 1] = in.readPacked(field >= 2 && field <= 5, field >= 2 && field <= 5);
+            } else {
+                in.skip();
+            }
+        }
+        for (int i = 0; i < 5; i++) {
+            if (columns[i] == null || columns[i].length != count) {
+                // the columns are all present or all absent, except visible
+                return null;
+            }
+        }
+        if (columns[5] != null && columns[5].length != count) {
+            throw new IllegalDataException(tr("Invalid PBF dense nodes"));
+        }
+        return columns;
+    }
+
+    private static void setCoor(NodeData nd, long lat, long lon, BlockContext context) throws IllegalDataException {
+        double dlat = 1e-9 * (context.latOffset + context.granularity * lat);
+        double dlon = 1e-9 * (context.lonOffset + context.granularity * lon);
+        LatLon ll = new LatLon(dlat, dlon);
+        if (!ll.isValid()) {
+            throw new IllegalDataException(tr("Illegal value for attributes ''lat'', ''lon'' on node with ID {0}. Got ''{1}'', ''{2}''.",
+                    Long.toString(nd.getId()), dlat, dlon));
+        }
+        nd.setCoor(ll);
+    }
+
+    private void decodeWay(ProtobufInput in, BlockContext context, PrimitiveBlock block) throws IllegalDataException {
+        WayData wd = new WayData(0);
+        long[] keys = null;
+        long[] values = null;
+        long[] refs = new long[0];
+        ProtobufInput info = null;
+        while (in.next()) {
+            switch (in.field()) {
+            case 1:
+                parseId(wd, in.readVarint());
+                break;
+            case 2:
+                keys = in.readPacked(false, false);
+                break;
+            case 3:
+                values = in.readPacked(false, false);
+                break;
+            case 4:
+                info = in.readMessage();
+                break;
+            case 8:
+                refs = in.readPacked(true, true);
+                break;
+            default:
+                in.skip();
+            }
+        }
+        readInfo(wd, info, context);
+        readTags(wd, keys, values, context);
+        Collection<Long> nodeIds = new ArrayList<>(refs.length);
+        for (long ref : refs) {
+            nodeIds.add(ref);
+        }
+        block.addWay(wd, nodeIds);
+    }
+
+    private void decodeRelation(ProtobufInput in, BlockContext context, PrimitiveBlock block) throws IllegalDataException {
+        RelationData rd = new RelationData(0);
+        long[] keys = null;
+        long[] values = null;
+        long[] roles = new long[0];
+        long[] memberIds = new long[0];
+        long[] types = new long[0];
+        ProtobufInput info = null;
+        while (in.next()) {
+            switch (in.field()) {
+            case 1:
+                parseId(rd, in.readVarint());
+                break;
+            case 2:
+                keys = in.readPacked(false, false);
+                break;
+            case 3:
+                values = in.readPacked(false, false);
+                break;
+            case 4:
+                info = in.readMessage();
+                break;
+            case 8:
+                roles = in.readPacked(false, false);
+                break;
+            case 9:
+                memberIds = in.readPacked(true, true);
+                break;
+            case 10:
+                types = in.readPacked(false, false);
+                break;
+            default:
+                in.skip();
+            }
+        }
+        readInfo(rd, info, context);
+        readTags(rd, keys, values, context);
+        if (roles.length != memberIds.length || types.length != memberIds.length) {
+            throw new IllegalDataException(tr("Invalid PBF relation {0}", Long.toString(rd.getUniqueId())));
+        }
+        Collection<RelationMemberData> members = new ArrayList<>(memberIds.length);
+        for (int i = 0; i < memberIds.length; i++) {
+            if (memberIds[i] == 0) {
+                throw new IllegalDataException(tr("Incomplete <member> specification with ref=0"));
+            } else if (types[i] < 0 || types[i] >= MEMBER_TYPES.length) {
+                throw new IllegalDataException(tr("Illegal value for attribute ''type'' on member {0} in relation {1}. Got {2}.",
+                        Long.toString(memberIds[i]), Long.toString(rd.getUniqueId()), types[i]));
+            }
+            members.add(new RelationMemberData(getString(context, roles[i]), MEMBER_TYPES[(int) types[i]],
+                    memberIds[i]));
+        }
+        block.addRelation(rd, members);
+    }
+
+    private void readTags(PrimitiveData pd, long[] keys, long[] values, BlockContext context) throws IllegalDataException {
+        if (keys == null && values == null) {
+            return;
+        } else if (keys == null || values == null || keys.length != values.length) {
+            throw new IllegalDataException(tr("Missing key or value attribute in tag."));
+        }
+        for (int i = 0; i < keys.length; i++) {
+            parseTag(pd, getString(context, keys[i]), getString(context, values[i]));
+        }
+    }
+
+    private void readInfo(PrimitiveData pd, ProtobufInput info, BlockContext context) throws IllegalDataException {
+        if (info == null) {
+            // without metadata (e.g. osmium --omit-metadata), the version is left to 0
+            return;
+        }
+        int version = -1;
+        long timestamp = 0;
+        long changeset = 0;
+        long uid = 0;
+        long userSid = 0;
+        boolean visible = true;
+        while (info.next()) {
+            switch (info.field()) {
+            case 1:
+                version = (int) info.readVarint();
+                break;
+            case 2:
+                timestamp = info.readVarint();
+                break;
+            case 3:
+                changeset = info.readVarint();
+                break;
+            case 4:
+                uid = (int) info.readVarint();
+                break;
+            case 5:
+                userSid = info.readVarint();
+                break;
+            case 6:
+                visible = info.readBool();
+                break;
+            default:
+                info.skip();
+            }
+        }
+        readInfo(pd, version, timestamp, changeset, uid, userSid, visible, context);
+    }
+
+    private void readInfo(PrimitiveData pd, int version, long timestamp, long changeset, long uid, long userSid, boolean visible,
+            BlockContext context) throws IllegalDataException {
+        if (version != -1) {
+            parseVersion(pd, version);
+        }
+        if (timestamp != 0) {
+            pd.setRawTimestamp((int) (timestamp * context.dateGranularity / 1000));
+        }
+        if (changeset != 0) {
+            parseChangeset(pd, (int) changeset);
+        }
+        String name = userSid != 0 ? getString(context, userSid) : null;
+        if (uid > 0) {
+            // User creation is synchronized, cache the users of the block
+            User user = context.users.get(uid);
+            if (user == null || (name != null && !user.hasName(name))) {
+                user = User.createOsmUser(uid, name);
+                context.users.put(uid, user);
+            }
+            pd.setUser(user);
+        } else if (name != null && !name.isEmpty()) {
+            pd.setUser(User.createLocalUser(name));
+        }
+        pd.setVisible(visible);
+    }
+}
@@ -0,0 +1,296 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.osm.DataSetSnapshot;
+import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.PrimitiveData;
+import org.openstreetmap.josm.data.osm.RelationData;
+import org.openstreetmap.josm.data.osm.RelationMemberData;
+import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.WayData;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Writer for the <a href="https://wiki.openstreetmap.org/wiki/PBF_Format">OSM PBF format</a>, with dense nodes.
+ * <p>
+ * The format cannot represent the JOSM specific state of the primitives: deleted primitives are not written, and
+ * modified primitives are written as they are, without their modified flag. Incomplete primitives are only written as
+ * way nodes or relation members, as in the extracts of the OSM database.
+ * @see OsmPbfReader
+ */
+public class OsmPbfWriter implements Closeable {
+
+    /** Number of primitives of a data block, as recommended by the format */
+    private static final int BLOCK_SIZE = 8000;
+    /** Coordinates precision, in nanodegrees */
+    private static final int GRANULARITY = 100;
+
+    private static final Comparator<PrimitiveData> BY_ID = Comparator.comparingLong(PrimitiveData::getUniqueId);
+
+    private final DataOutputStream out;
+    private final Deflater deflater = new Deflater();
+
+    /**
+     * Constructs a new {@code OsmPbfWriter}.
+     * @param out the output stream, closed with this writer
+     */
+    public OsmPbfWriter(OutputStream out) {
+        this.out = new DataOutputStream(out);
+    }
+
+    /**
+     * Writes the full PBF file for the given data set snapshot (header, then nodes, ways and relations sorted by id).
+     * @param snapshot OSM data set snapshot
+     * @throws IOException in case of I/O error
+     */
+    public void write(DataSetSnapshot snapshot) throws IOException {
+        writeHeader(snapshot.getDataSources());
+        writeBlocks(snapshot.getNodes());
+        writeBlocks(snapshot.getWays());
+        writeBlocks(snapshot.getRelations());
+        out.flush();
+    }
+
+    private void writeHeader(List<DataSource> dataSources) throws IOException {
+        ProtobufOutput header = new ProtobufOutput();
+        Bounds bounds = null;
+        for (DataSource ds : dataSources) {
+            if (bounds == null) {
+                bounds = new Bounds(ds.bounds);
+            } else {
+                bounds.extend(ds.bounds);
+            }
+        }
+        if (bounds != null) {
+            ProtobufOutput bbox = new ProtobufOutput();
+            bbox.writeSint64(1, Math.round(bounds.getMinLon() * 1e9));
+            bbox.writeSint64(2, Math.round(bounds.getMaxLon() * 1e9));
+            bbox.writeSint64(3, Math.round(bounds.getMaxLat() * 1e9));
+            bbox.writeSint64(4, Math.round(bounds.getMinLat() * 1e9));
+            header.writeMessage(1, bbox, false);
+        }
+        header.writeString(4, "OsmSchema-V0.6");
+        header.writeString(4, "DenseNodes");
+        header.writeString(5, "Sort.Type_then_ID");
+        header.writeString(16, "JOSM");
+        if (!dataSources.isEmpty() && !Utils.isStripEmpty(dataSources.get(0).origin)) {
+            header.writeString(17, dataSources.get(0).origin);
+        }
+        writeBlob("OSMHeader", header);
+    }
+
+    private void writeBlocks(List<? extends PrimitiveData> primitives) throws IOException {
+        primitives.removeIf(p -> p.isDeleted() || p.isIncomplete());
+        primitives.sort(BY_ID);
+        for (int i = 0; i < primitives.size(); i += BLOCK_SIZE) {
+            writeBlock(primitives.subList(i, Math.min(primitives.size(), i + BLOCK_SIZE)));
+        }
+    }
+
+    private void writeBlock(List<? extends PrimitiveData> primitives) throws IOException {
+        StringTable strings = new StringTable();
+        ProtobufOutput group = new ProtobufOutput();
+        if (primitives.get(0) instanceof NodeData) {
+            group.writeMessage(2, encodeDenseNodes(primitives, strings), false);
+        } else {
+            for (PrimitiveData p : primitives) {
+                if (p instanceof WayData) {
+                    group.writeMessage(3, encodeWay((WayData) p, strings), false);
+                } else {
+                    group.writeMessage(4, encodeRelation((RelationData) p, strings), false);
+                }
+            }
+        }
+        ProtobufOutput block = new ProtobufOutput();
+        block.writeMessage(1, strings.encode(), false);
+        block.writeMessage(2, group, false);
+        block.writeVarint(17, GRANULARITY);
+        writeBlob("OSMData", block);
+    }
+
+    private static ProtobufOutput encodeDenseNodes(List<? extends PrimitiveData> nodes, StringTable strings) {
+        ProtobufOutput ids = new ProtobufOutput();
+        ProtobufOutput lats = new ProtobufOutput();
+        ProtobufOutput lons = new ProtobufOutput();
+        ProtobufOutput keysVals = new ProtobufOutput();
+        ProtobufOutput versions = new ProtobufOutput();
+        ProtobufOutput timestamps = new ProtobufOutput();
+        ProtobufOutput changesets = new ProtobufOutput();
+        ProtobufOutput uids = new ProtobufOutput();
+        ProtobufOutput userSids = new ProtobufOutput();
+        boolean hasTags = false;
+        long[] previous = new long[7];
+        for (PrimitiveData p : nodes) {
+            NodeData n = (NodeData) p;
+            long lat = n.getCoor() != null ? Math.round(n.getCoor().lat() * 1e9 / GRANULARITY) : 0;
+            long lon = n.getCoor() != null ? Math.round(n.getCoor().lon() * 1e9 / GRANULARITY) : 0;
+            long[] values = {n.getUniqueId(), lat, lon, n.getRawTimestamp(), n.getChangesetId(), getUid(n), strings.get(getUserName(n))};
+            ProtobufOutput[] columns = {ids, lats, lons, timestamps, changesets, uids, userSids};
+            // all the columns are delta coded, except the versions
+            for (int i = 0; i < values.length; i++) {
+                columns[i].writeRawSint64(values[i] - previous[i]);
+                previous[i] = values[i];
+            }
+            versions.writeRawVarint(n.getVersion());
+            for (Map.Entry<String, String> tag : n.getKeys().entrySet()) {
+                keysVals.writeRawVarint(strings.get(tag.getKey()));
+                keysVals.writeRawVarint(strings.get(tag.getValue()));
+                hasTags = true;
+            }
+            keysVals.writeRawVarint(0);
+        }
+        ProtobufOutput denseInfo = new ProtobufOutput();
+        denseInfo.writeMessage(1, versions, true);
+        denseInfo.writeMessage(2, timestamps, true);
+        denseInfo.writeMessage(3, changesets, true);
+        denseInfo.writeMessage(4, uids, true);
+        denseInfo.writeMessage(5, userSids, true);
+        ProtobufOutput dense = new ProtobufOutput();
+        dense.writeMessage(1, ids, true);
+        dense.writeMessage(5, denseInfo, true);
+        dense.writeMessage(8, lats, true);
+        dense.writeMessage(9, lons, true);
+        if (hasTags) {
+            dense.writeMessage(10, keysVals, true);
+        }
+        return dense;
+    }
+
+    private static ProtobufOutput encodeWay(WayData w, StringTable strings) {
+        ProtobufOutput way = new ProtobufOutput();
+        way.writeVarint(1, w.getUniqueId());
+        encodeTagsAndInfo(way, w, strings);
+        ProtobufOutput refs = new ProtobufOutput();
+        long previous = 0;
+        for (long id : w.getNodeIds()) {
+            refs.writeRawSint64(id - previous);
+            previous = id;
+        }
+        way.writeMessage(8, refs, true);
+        return way;
+    }
+
+    private static ProtobufOutput encodeRelation(RelationData r, StringTable strings) {
+        ProtobufOutput relation = new ProtobufOutput();
+        relation.writeVarint(1, r.getUniqueId());
+        encodeTagsAndInfo(relation, r, strings);
+        ProtobufOutput roles = new ProtobufOutput();
+        ProtobufOutput memberIds = new ProtobufOutput();
+        ProtobufOutput types = new ProtobufOutput();
+        long previous = 0;
+        for (RelationMemberData member : r.getMembers()) {
+            roles.writeRawVarint(strings.get(member.getRole()));
+            memberIds.writeRawSint64(member.getMemberId() - previous);
+            previous = member.getMemberId();
+            // node, way and relation are 0, 1 and 2 in both enumerations
+            types.writeRawVarint(member.getMemberType().ordinal());
+        }
+        relation.writeMessage(8, roles, true);
+        relation.writeMessage(9, memberIds, true);
+        relation.writeMessage(10, types, true);
+        return relation;
+    }
+
+    private static void encodeTagsAndInfo(ProtobufOutput out, PrimitiveData p, StringTable strings) {
+        ProtobufOutput keys = new ProtobufOutput();
+        ProtobufOutput values = new ProtobufOutput();
+        for (Map.Entry<String, String> tag : p.getKeys().entrySet()) {
+            keys.writeRawVarint(strings.get(tag.getKey()));
+            values.writeRawVarint(strings.get(tag.getValue()));
+        }
+        out.writeMessage(2, keys, true);
+        out.writeMessage(3, values, true);
+        ProtobufOutput info = new ProtobufOutput();
+        info.writeVarint(1, p.getVersion());
+        if (!p.isTimestampEmpty()) {
+            info.writeVarint(2, p.getRawTimestamp());
+        }
+        if (p.getChangesetId() > 0) {
+            info.writeVarint(3, p.getChangesetId());
+        }
+        if (p.getUser() != null) {
+            info.writeVarint(4, getUid(p));
+            info.writeVarint(5, strings.get(getUserName(p)));
+        }
+        out.writeMessage(4, info, false);
+    }
+
+    private static long getUid(PrimitiveData p) {
+        User user = p.getUser();
+        return user != null && user.isOsmUser() ? user.getId() : 0;
+    }
+
+    private static String getUserName(PrimitiveData p) {
+        User user = p.getUser();
+        return user != null && user.getName() != null ? user.getName() : "";
+    }
+
+    private void writeBlob(String type, ProtobufOutput data) throws IOException {
+        byte[] raw = data.toByteArray();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ProtobufOutput compressed = new ProtobufOutput();
+        byte[] buffer = new byte[65536];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            compressed.write(buffer, 0, n);
+        }
+        ProtobufOutput blob = new ProtobufOutput();
+        blob.writeVarint(2, raw.length);
+        blob.writeMessage(3, compressed, false);
+
+        ProtobufOutput header = new ProtobufOutput();
+        header.writeString(1, type);
+        header.writeVarint(3, blob.size());
+        out.writeInt(header.size());
+        header.writeTo(out);
+        blob.writeTo(out);
+    }
+
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        out.close();
+    }
+
+    /**
+     * String table of a block. Index 0 is reserved, as it ends the tags of dense nodes.
+     */
+    private static final class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        StringTable() {
+            strings.add("");
+        }
+
+        int get(String s) {
+            return indexes.computeIfAbsent(s, k -> {
+                strings.add(k);
+                return strings.size() - 1;
+            });
+        }
+
+        ProtobufOutput encode() {
+            ProtobufOutput table = new ProtobufOutput();
+            for (String s : strings) {
+                table.writeString(1, s);
+            }
+            return table;
+        }
+    }
+}
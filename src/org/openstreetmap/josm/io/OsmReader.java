@@ -4,12 +4,19 @@ package org.openstreetmap.josm.io;
 import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -21,15 +28,20 @@ import javax.xml.stream.XMLStreamReader;
 import org.openstreetmap.josm.data.osm.Changeset;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.NodeData;
 import org.openstreetmap.josm.data.osm.PrimitiveData;
 import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationData;
 import org.openstreetmap.josm.data.osm.RelationMemberData;
 import org.openstreetmap.josm.data.osm.Tagged;
 import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.WayData;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
 import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.tools.Logging;
 import org.openstreetmap.josm.tools.UncheckedParseException;
+import org.openstreetmap.josm.tools.Utils;
 import org.openstreetmap.josm.tools.XmlUtils;
 
 /**
@@ -38,6 +50,9 @@ import org.openstreetmap.josm.tools.XmlUtils;
  * For each xml element, there is a dedicated method.
  * The XMLStreamReader cursor points to the start of the element, when the method is
  * entered, and it must point to the end of the same element, when it is exited.
+ * <p>
+ * If {@link #PROPERTY_PIPELINE} is enabled, {@link #parseDataSet} only reads the nodes, ways and relations elements
+ * on the calling thread. Their primitives are built by batches in a thread pool, then added in the file order.
  */
 public class OsmReader extends AbstractReader {
 
@@ -57,6 +72,15 @@ public class OsmReader extends AbstractReader {
         SAVE_ORIGINAL_ID
     }
 
+    /**
+     * Whether {@link #parseDataSet} builds the primitives in a thread pool. It is disabled by default, as the errors found
+     * while building a primitive are then located at the start of its element, instead of the faulty attribute.
+     */
+    public static final BooleanProperty PROPERTY_PIPELINE = new BooleanProperty("osm.reader.pipeline", false);
+
+    /** Number of elements built by each task of the pipeline */
+    private static final int PIPELINE_BATCH_SIZE = 2000;
+
     protected XMLStreamReader parser;
 
     /** The {@link OsmReader.Options} to use when parsing the xml data */
@@ -77,6 +101,33 @@ public class OsmReader extends AbstractReader {
         COMMON_XML_ATTRIBUTES.add("lon");
     }
 
+    private final ElementAttributes parserAttributes = new ElementAttributes() {
+        @Override
+        public String get(String name) {
+            return parser.getAttributeValue(null, name);
+        }
+
+        @Override
+        public int size() {
+            return parser.getAttributeCount();
+        }
+
+        @Override
+        public String getName(int index) {
+            return parser.getAttributeLocalName(index);
+        }
+
+        @Override
+        public String getValue(int index) {
+            return parser.getAttributeValue(index);
+        }
+    };
+
+    private boolean pipelined;
+    private ForkJoinPool pool;
+    private final Deque<Future<PrimitiveBlock>> pendingBlocks = new ArrayDeque<>();
+    private List<RawPrimitive> batch = new ArrayList<>();
+
     /**
      * constructor (for private and subclasses use only)
      *
@@ -166,13 +217,25 @@ public class OsmReader extends AbstractReader {
                     parseBounds(generator);
                     break;
                 case "node":
-                    parseNode();
+                    if (pipelined) {
+                        readRawPrimitive();
+                    } else {
+                        parseNode();
+                    }
                     break;
                 case "way":
-                    parseWay();
+                    if (pipelined) {
+                        readRawPrimitive();
+                    } else {
+                        parseWay();
+                    }
                     break;
                 case "relation":
-                    parseRelation();
+                    if (pipelined) {
+                        readRawPrimitive();
+                    } else {
+                        parseRelation();
+                    }
                     break;
                 case "changeset":
                     parseChangeset(uploadChangesetId);
@@ -184,11 +247,147 @@ public class OsmReader extends AbstractReader {
                     parseUnknown();
                 }
             } else if (event == XMLStreamConstants.END_ELEMENT) {
-                return;
+                break;
+            }
+        }
+        if (pipelined) {
+            flushPipeline();
+        }
+    }
+
+    /**
+     * Reads a node, way or relation element, with the attributes of its tags, way nodes and members, to build it later
+     * in the thread pool.
+     * @throws XMLStreamException if there is an error processing the underlying XML source
+     */
+    private void readRawPrimitive() throws XMLStreamException {
+        RawPrimitive raw = new RawPrimitive(parser);
+        while (parser.hasNext()) {
+            int event = parser.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String child = parser.getLocalName();
+                if ("tag".equals(child)) {
+                    raw.addChild(child, parser.getAttributeValue(null, "k"), parser.getAttributeValue(null, "v"), null);
+                } else if ("nd".equals(child) && "way".equals(raw.element)) {
+                    raw.addChild(child, parser.getAttributeValue(null, "ref"), null, null);
+                } else if ("member".equals(child) && "relation".equals(raw.element)) {
+                    raw.addChild(child, parser.getAttributeValue(null, "ref"), parser.getAttributeValue(null, "type"),
+                            parser.getAttributeValue(null, "role"));
+                } else {
+                    parseUnknown();
+                    continue;
+                }
+                jumpToEnd();
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+        }
+        batch.add(raw);
+        if (batch.size() >= PIPELINE_BATCH_SIZE) {
+            submitBatch();
+        }
+    }
+
+    private void submitBatch() throws XMLStreamException {
+        if (pool == null) {
+            pool = Utils.newForkJoinPool("osm.reader.threads", "osm-reader-%d", Thread.NORM_PRIORITY);
+        }
+        List<RawPrimitive> primitives = batch;
+        batch = new ArrayList<>();
+        pendingBlocks.add(pool.submit(() -> buildBlock(primitives)));
+        // the built blocks are kept in the file order, and their number is bounded to limit the memory used
+        if (pendingBlocks.size() >= 2 * pool.getParallelism()) {
+            addBlock(pendingBlocks.poll());
+        }
+    }
+
+    private void flushPipeline() throws XMLStreamException {
+        if (!batch.isEmpty()) {
+            submitBatch();
+        }
+        while (!pendingBlocks.isEmpty()) {
+            addBlock(pendingBlocks.poll());
+        }
+    }
+
+    private void addBlock(Future<PrimitiveBlock> future) throws XMLStreamException {
+        try {
+            addPrimitives(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throwException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof XMLStreamException) {
+                throw (XMLStreamException) e.getCause();
             }
+            throwException(e.getCause());
         }
     }
 
+    /**
+     * Builds the primitives of a batch. Called in the thread pool.
+     * @param primitives the elements read
+     * @return the primitives, with their way nodes and relation members
+     * @throws XMLStreamException if an element is invalid, located at the start of the element
+     */
+    private PrimitiveBlock buildBlock(List<RawPrimitive> primitives) throws XMLStreamException {
+        PrimitiveBlock block = new PrimitiveBlock();
+        for (RawPrimitive raw : primitives) {
+            try {
+                switch (raw.element) {
+                case "node":
+                    buildNode(raw, block);
+                    break;
+                case "way":
+                    buildWay(raw, block);
+                    break;
+                default:
+                    buildRelation(raw, block);
+                }
+            } catch (IllegalDataException | UncheckedParseException e) {
+                throw new XmlStreamParsingException(e.getMessage(), raw.location, e);
+            }
+        }
+        return block;
+    }
+
+    private void buildNode(RawPrimitive raw, PrimitiveBlock block) throws IllegalDataException {
+        NodeData nd = parseNodeData(raw.get("lat"), raw.get("lon"), pd -> readCommon(pd, raw));
+        for (int i = 0; i < raw.children.size(); i += 4) {
+            parseTag(nd, raw.children.get(i + 1), raw.children.get(i + 2));
+        }
+        block.addNode(nd);
+    }
+
+    private void buildWay(RawPrimitive raw, PrimitiveBlock block) throws IllegalDataException {
+        WayData wd = new WayData(0);
+        readCommon(wd, raw);
+        List<Long> nodeIds = new ArrayList<>();
+        for (int i = 0; i < raw.children.size(); i += 4) {
+            if ("tag".equals(raw.children.get(i))) {
+                parseTag(wd, raw.children.get(i + 1), raw.children.get(i + 2));
+            } else {
+                nodeIds.add(parseWayNode(wd.getUniqueId(), raw.children.get(i + 1)));
+            }
+        }
+        block.addWay(wd, nodeIds);
+    }
+
+    private void buildRelation(RawPrimitive raw, PrimitiveBlock block) throws IllegalDataException {
+        RelationData rd = new RelationData(0);
+        readCommon(rd, raw);
+        List<RelationMemberData> members = new ArrayList<>();
+        for (int i = 0; i < raw.children.size(); i += 4) {
+            if ("tag".equals(raw.children.get(i))) {
+                parseTag(rd, raw.children.get(i + 1), raw.children.get(i + 2));
+            } else {
+                members.add(parseRelationMember(rd.getUniqueId(), raw.children.get(i + 1), raw.children.get(i + 2),
+                        raw.children.get(i + 3)));
+            }
+        }
+        block.addRelation(rd, members);
+    }
+
     private void handleIllegalDataException(IllegalDataException e) throws XMLStreamException {
         Throwable cause = e.getCause();
         if (cause instanceof XMLStreamException) {
@@ -287,18 +486,28 @@ public class OsmReader extends AbstractReader {
     }
 
     private long parseWayNode(Way w) throws XMLStreamException {
-        if (parser.getAttributeValue(null, "ref") == null) {
-            throwException(
-                    tr("Missing mandatory attribute ''{0}'' on <nd> of way {1}.", "ref", Long.toString(w.getUniqueId()))
+        long id = 0;
+        try {
+            id = parseWayNode(w.getUniqueId(), parser.getAttributeValue(null, "ref"));
+        } catch (IllegalDataException e) {
+            throwException(e);
+        }
+        jumpToEnd();
+        return id;
+    }
+
+    private long parseWayNode(long wayId, String ref) throws IllegalDataException {
+        if (ref == null) {
+            throw new IllegalDataException(
+                    tr("Missing mandatory attribute ''{0}'' on <nd> of way {1}.", "ref", Long.toString(wayId))
             );
         }
-        long id = getLong("ref");
+        long id = getLong("ref", ref);
         if (id == 0) {
-            throwException(
+            throw new IllegalDataException(
                     tr("Illegal value of attribute ''ref'' of element <nd>. Got {0}.", Long.toString(id))
             );
         }
-        jumpToEnd();
         return id;
     }
 
@@ -435,26 +644,37 @@ public class OsmReader extends AbstractReader {
      * @throws IllegalDataException if there is an error processing the underlying XML source
      */
     private void readCommon(PrimitiveData current) throws IllegalDataException {
+        readCommon(current, parserAttributes);
+    }
+
+    /**
+     * Read out the common attributes and put them into current OsmPrimitive.
+     * @param current primitive to update
+     * @param attributes the attributes of the element
+     * @throws IllegalDataException if there is an error processing the underlying XML source
+     */
+    private void readCommon(PrimitiveData current, ElementAttributes attributes) throws IllegalDataException {
         try {
-            parseId(current, getLong("id"));
-            parseTimestamp(current, parser.getAttributeValue(null, "timestamp"));
-            parseUser(current, parser.getAttributeValue(null, "user"), parser.getAttributeValue(null, "uid"));
-            parseVisible(current, parser.getAttributeValue(null, "visible"));
-            parseVersion(current, parser.getAttributeValue(null, "version"));
-            parseAction(current, parser.getAttributeValue(null, "action"));
-            parseChangeset(current, parser.getAttributeValue(null, "changeset"));
+            long id = getLong("id", attributes.get("id"));
+            parseId(current, id);
+            parseTimestamp(current, attributes.get("timestamp"));
+            parseUser(current, attributes.get("user"), attributes.get("uid"));
+            parseVisible(current, attributes.get("visible"));
+            parseVersion(current, attributes.get("version"));
+            parseAction(current, attributes.get("action"));
+            parseChangeset(current, attributes.get("changeset"));
 
             if (options.contains(Options.SAVE_ORIGINAL_ID)) {
-                parseTag(current, "current_id", Long.toString(getLong("id")));
+                parseTag(current, "current_id", Long.toString(id));
             }
             if (options.contains(Options.CONVERT_UNKNOWN_TO_TAGS)) {
-                for (int i = 0; i < parser.getAttributeCount(); i++) {
-                    if (!COMMON_XML_ATTRIBUTES.contains(parser.getAttributeLocalName(i))) {
-                        parseTag(current, parser.getAttributeLocalName(i), parser.getAttributeValue(i));
+                for (int i = 0; i < attributes.size(); i++) {
+                    if (!COMMON_XML_ATTRIBUTES.contains(attributes.getName(i))) {
+                        parseTag(current, attributes.getName(i), attributes.getValue(i));
                     }
                 }
             }
-        } catch (UncheckedParseException | XMLStreamException e) {
+        } catch (UncheckedParseException e) {
             throw new IllegalDataException(e);
         }
     }
@@ -469,6 +689,73 @@ public class OsmReader extends AbstractReader {
         return 0; // should not happen
     }
 
+    /**
+     * The attributes of an element, read from the parser or from a {@link RawPrimitive}.
+     */
+    private interface ElementAttributes {
+        String get(String name);
+
+        int size();
+
+        String getName(int index);
+
+        String getValue(int index);
+    }
+
+    /**
+     * A node, way or relation element read by the pipeline, before it is built.
+     */
+    private static final class RawPrimitive implements ElementAttributes {
+        final String element;
+        final Location location;
+        /** The attributes, as name/value pairs */
+        private final String[] attributes;
+        /** The tag, nd and member elements, as quadruples of the element name and its attributes */
+        final List<String> children = new ArrayList<>();
+
+        RawPrimitive(XMLStreamReader parser) {
+            element = parser.getLocalName();
+            location = parser.getLocation();
+            attributes = new String[2 * parser.getAttributeCount()];
+            for (int i = 0; i < parser.getAttributeCount(); i++) {
+                attributes[2 * i] = parser.getAttributeLocalName(i);
+                attributes[2 * i + 1] = parser.getAttributeValue(i);
+            }
+        }
+
+        void addChild(String name, String a, String b, String c) {
+            children.add(name);
+            children.add(a);
+            children.add(b);
+            children.add(c);
+        }
+
+        @Override
+        public String get(String name) {
+            for (int i = 0; i < attributes.length; i += 2) {
+                if (name.equals(attributes[i])) {
+                    return attributes[i + 1];
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public int size() {
+            return attributes.length / 2;
+        }
+
+        @Override
+        public String getName(int index) {
+            return attributes[2 * index];
+        }
+
+        @Override
+        public String getValue(int index) {
+            return attributes[2 * index + 1];
+        }
+    }
+
     /**
      * Exception thrown after user cancelation.
      */
@@ -503,6 +790,11 @@ public class OsmReader extends AbstractReader {
                             e.getLocation().getLineNumber(), e.getLocation().getColumnNumber()) + msg, e);
                 else
                     throw new IllegalDataException(msg, e);
+            } finally {
+                if (pool != null) {
+                    pool.shutdownNow();
+                    pool = null;
+                }
             }
         });
     }
@@ -535,6 +827,8 @@ public class OsmReader extends AbstractReader {
      */
     public static DataSet parseDataSet(InputStream source, ProgressMonitor progressMonitor, Options... options)
             throws IllegalDataException {
-        return new OsmReader(options).doParseDataSet(source, progressMonitor);
+        OsmReader reader = new OsmReader(options);
+        reader.pipelined = PROPERTY_PIPELINE.get();
+        return reader.doParseDataSet(source, progressMonitor);
     }
 }
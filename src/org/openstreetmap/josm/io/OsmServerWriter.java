@@ -7,18 +7,26 @@ import static org.openstreetmap.josm.tools.I18n.trn;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import org.openstreetmap.josm.data.UserIdentityManager;
 import org.openstreetmap.josm.data.osm.Changeset;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.tools.CheckParameterUtil;
+import org.openstreetmap.josm.tools.Utils;
 
 /**
  * Class that uploads all changes to the osm server.
@@ -140,6 +148,9 @@ public class OsmServerWriter {
 
     /**
      * Upload all changes in one diff upload
+     * <p>
+     * The OsmChange document of the next chunk is built in the background while the previous chunk is uploaded,
+     * unless it refers to new primitives of the previous chunk: their ids are only known once its upload completed.
      *
      * @param primitives the collection of primitives to upload
      * @param progressMonitor  the progress monitor
@@ -151,33 +162,73 @@ public class OsmServerWriter {
             throws OsmTransferException {
         if (chunkSize <= 0)
             throw new IllegalArgumentException(tr("Value >0 expected for parameter ''{0}'', got {1}", "chunkSize", chunkSize));
+        ExecutorService serializer = Executors.newSingleThreadExecutor(
+                Utils.newThreadFactory("upload-serializer-%d", Thread.NORM_PRIORITY));
         try {
             progressMonitor.beginTask(tr("Starting to upload in chunks..."));
-            List<OsmPrimitive> chunk = new ArrayList<>(chunkSize);
-            Iterator<? extends OsmPrimitive> it = primitives.iterator();
-            int numChunks = (int) Math.ceil((double) primitives.size() / (double) chunkSize);
-            int i = 0;
-            while (it.hasNext()) {
-                i++;
+            List<List<OsmPrimitive>> chunks = new ArrayList<>();
+            List<OsmPrimitive> chunk = null;
+            for (OsmPrimitive p : primitives) {
+                if (chunk == null || chunk.size() == chunkSize) {
+                    chunk = new ArrayList<>(chunkSize);
+                    chunks.add(chunk);
+                }
+                chunk.add(p);
+            }
+            Changeset changeset = api.getChangeset();
+            Future<byte[]> nextRequest = null;
+            for (int i = 0; i < chunks.size(); i++) {
                 if (canceled) return;
-                int j = 0;
-                chunk.clear();
-                while (it.hasNext() && j < chunkSize) {
-                    if (canceled) return;
-                    j++;
-                    chunk.add(it.next());
+                chunk = chunks.get(i);
+                byte[] request = nextRequest != null ? getRequest(nextRequest) : OsmApi.createDiffUploadRequest(changeset, chunk);
+                nextRequest = null;
+                if (i + 1 < chunks.size() && !refersToNewPrimitives(chunks.get(i + 1), chunk)) {
+                    List<OsmPrimitive> next = chunks.get(i + 1);
+                    nextRequest = serializer.submit(() -> OsmApi.createDiffUploadRequest(changeset, next));
                 }
                 progressMonitor.setCustomText(
                         trn("({0}/{1}) Uploading {2} object...",
                                 "({0}/{1}) Uploading {2} objects...",
-                                chunk.size(), i, numChunks, chunk.size()));
-                processed.addAll(api.uploadDiff(chunk, progressMonitor.createSubTaskMonitor(ProgressMonitor.ALL_TICKS, false)));
+                                chunk.size(), i + 1, chunks.size(), chunk.size()));
+                processed.addAll(api.uploadDiff(chunk, request, progressMonitor.createSubTaskMonitor(ProgressMonitor.ALL_TICKS, false)));
             }
         } finally {
+            serializer.shutdownNow();
             progressMonitor.finishTask();
         }
     }
 
+    private static byte[] getRequest(Future<byte[]> request) throws OsmTransferException {
+        try {
+            return request.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OsmTransferCanceledException(e);
+        } catch (ExecutionException e) {
+            throw new OsmTransferException(e.getCause());
+        }
+    }
+
+    /**
+     * Determines if a chunk refers to the new primitives of another chunk.
+     * @param chunk the chunk
+     * @param previous the previous chunk
+     * @return {@code true} if a way or relation of {@code chunk} refers to a new primitive of {@code previous}
+     */
+    static boolean refersToNewPrimitives(Collection<? extends OsmPrimitive> chunk, Collection<? extends OsmPrimitive> previous) {
+        Set<OsmPrimitive> created = previous.stream().filter(OsmPrimitive::isNew).collect(Collectors.toSet());
+        if (created.isEmpty())
+            return false;
+        for (OsmPrimitive p : chunk) {
+            if (p instanceof Way && ((Way) p).getNodes().stream().anyMatch(created::contains)) {
+                return true;
+            } else if (p instanceof Relation && ((Relation) p).getMemberPrimitivesList().stream().anyMatch(created::contains)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Send the dataset to the server.
      *
@@ -10,6 +10,8 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.openstreetmap.josm.data.DataSource;
 import org.openstreetmap.josm.data.coor.LatLon;
@@ -17,13 +19,17 @@ import org.openstreetmap.josm.data.coor.conversion.DecimalDegreesCoordinateForma
 import org.openstreetmap.josm.data.osm.AbstractPrimitive;
 import org.openstreetmap.josm.data.osm.Changeset;
 import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DataSetSnapshot;
 import org.openstreetmap.josm.data.osm.DownloadPolicy;
 import org.openstreetmap.josm.data.osm.INode;
 import org.openstreetmap.josm.data.osm.IPrimitive;
 import org.openstreetmap.josm.data.osm.IRelation;
 import org.openstreetmap.josm.data.osm.IWay;
+import org.openstreetmap.josm.data.osm.MappedDataStore;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.PrimitiveData;
 import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.Tagged;
 import org.openstreetmap.josm.data.osm.UploadPolicy;
@@ -175,6 +181,81 @@ public class OsmWriter extends XmlWriter implements PrimitiveVisitor {
         writeRelations(ds.getRelations());
     }
 
+    /**
+     * Writes the full OSM file for the given data set snapshot (header, data sources, osm data, footer).
+     * Unlike {@link #write(DataSet)}, the data set can be modified while writing.
+     * @param snapshot OSM data set snapshot
+     * @see DataSet#snapshot()
+     */
+    public void write(DataSetSnapshot snapshot) {
+        header(snapshot.getDownloadPolicy(), snapshot.getUploadPolicy(), snapshot.isLocked());
+        writeDataSources(snapshot.getDataSources());
+        writeContent(snapshot);
+        footer();
+    }
+
+    /**
+     * Writes the contents of the given data set snapshot (nodes, then ways, then relations)
+     * @param snapshot The data set snapshot to write
+     */
+    public void writeContent(DataSetSnapshot snapshot) {
+        setWithVisible(UploadPolicy.NORMAL == snapshot.getUploadPolicy());
+        writePrimitiveData(snapshot.getNodes());
+        writePrimitiveData(snapshot.getWays());
+        writePrimitiveData(snapshot.getRelations());
+    }
+
+    private void writePrimitiveData(List<? extends PrimitiveData> primitives) {
+        primitives.sort(byIdComparator);
+        for (PrimitiveData data : primitives) {
+            writePrimitiveData(data);
+        }
+    }
+
+    private void writePrimitiveData(PrimitiveData data) {
+        if (!data.isNewOrUndeleted() || !data.isDeleted()) {
+            data.accept(this);
+        }
+    }
+
+    /**
+     * Writes the full OSM file for the given data set snapshot and the off-heap store backing the data set.
+     * The primitives of the snapshot replace the stored ones with the same id, the other stored primitives are
+     * written as they are.
+     * @param snapshot OSM data set snapshot
+     * @param store the store of the primitives not materialized in the data set
+     * @see org.openstreetmap.josm.gui.layer.OsmDataLayer#getMappedDataStore()
+     */
+    public void write(DataSetSnapshot snapshot, MappedDataStore store) {
+        header(snapshot.getDownloadPolicy(), snapshot.getUploadPolicy(), snapshot.isLocked());
+        writeDataSources(snapshot.getDataSources());
+        setWithVisible(UploadPolicy.NORMAL == snapshot.getUploadPolicy());
+        writePrimitiveData(snapshot.getNodes(), store, OsmPrimitiveType.NODE);
+        writePrimitiveData(snapshot.getWays(), store, OsmPrimitiveType.WAY);
+        writePrimitiveData(snapshot.getRelations(), store, OsmPrimitiveType.RELATION);
+        footer();
+    }
+
+    private void writePrimitiveData(List<? extends PrimitiveData> primitives, MappedDataStore store, OsmPrimitiveType type) {
+        // incomplete primitives are placeholders of stored ones
+        primitives.removeIf(PrimitiveData::isIncomplete);
+        primitives.sort(byIdComparator);
+        Set<Long> ids = primitives.stream().map(PrimitiveData::getUniqueId).collect(Collectors.toSet());
+        int[] next = {0};
+        store.forEachPrimitive(type, stored -> {
+            // merge both lists sorted by id
+            while (next[0] < primitives.size() && byIdComparator.compare(primitives.get(next[0]), stored) < 0) {
+                writePrimitiveData(primitives.get(next[0]++));
+            }
+            if (!ids.contains(stored.getUniqueId())) {
+                writePrimitiveData(stored);
+            }
+        });
+        for (PrimitiveData data : primitives.subList(next[0], primitives.size())) {
+            writePrimitiveData(data);
+        }
+    }
+
     /**
      * Writes the given nodes sorted by id
      * @param nodes The nodes to write
@@ -223,7 +304,15 @@ public class OsmWriter extends XmlWriter implements PrimitiveVisitor {
      * @param ds data set
      */
     public void writeDataSources(DataSet ds) {
-        for (DataSource s : ds.getDataSources()) {
+        writeDataSources(ds.getDataSources());
+    }
+
+    /**
+     * Writes the given data sources with their respective bounds.
+     * @param dataSources data sources
+     */
+    public void writeDataSources(Collection<DataSource> dataSources) {
+        for (DataSource s : dataSources) {
             out.println("  <bounds minlat='"
                     + DecimalDegreesCoordinateFormat.INSTANCE.latToString(s.bounds.getMin())
                     +"' minlon='"
@@ -143,6 +143,8 @@ public class OverpassDownloadReader extends BoundingBoxDownloader {
 
     final String overpassServer;
     final String overpassQuery;
+    private OverpassResultCache resultCache;
+    private boolean defaultResultCache = true;
 
     /**
      * Constructs a new {@code OverpassDownloadReader}.
@@ -158,6 +160,44 @@ public class OverpassDownloadReader extends BoundingBoxDownloader {
         this.overpassQuery = overpassQuery.trim();
     }
 
+    /**
+     * Sets the cache of the responses to queries on a bounding box. By default, {@link OverpassResultCache#getDefault()} is used.
+     * @param resultCache the cache, or {@code null} to always contact the server
+     * @return {@code this}
+     */
+    public OverpassDownloadReader setResultCache(OverpassResultCache resultCache) {
+        this.resultCache = resultCache;
+        this.defaultResultCache = false;
+        return this;
+    }
+
+    private OverpassResultCache getResultCache() {
+        if (defaultResultCache) {
+            resultCache = OverpassResultCache.getDefault();
+            defaultResultCache = false;
+        }
+        return resultCache;
+    }
+
+    @Override
+    protected OsmMapTileCache getTileCache() {
+        // Overpass responses depend on the query, they are cached by the OverpassResultCache
+        return null;
+    }
+
+    /**
+     * Determines if the response can be cached and reused for the bounding boxes it contains.
+     * @return {@code true} if the query is run on the bounding box, does not depend on its center, and is in the form
+     * produced by {@link #fixQuery}
+     */
+    private boolean isCacheable() {
+        if (crosses180th || !overpassQuery.contains("{{bbox}}") || overpassQuery.contains("{{center}}")
+                || !overpassQuery.equals(fixQuery(overpassQuery)))
+            return false;
+        OverpassResultCache cache = getResultCache();
+        return cache != null && cache.isEnabled();
+    }
+
     /**
      * Registers an OSM reader for the given Overpass output format.
      * @param format Overpass output format
@@ -365,6 +405,31 @@ public class OverpassDownloadReader extends BoundingBoxDownloader {
 
     @Override
     protected DataSet parseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
+        OverpassResultCache.Recorder recorder = null;
+        if (isCacheable()) {
+            try {
+                recorder = getResultCache().record(overpassServer, overpassQuery, new Bounds(lat1, lon1, lat2, lon2), source);
+            } catch (IOException e) {
+                Logging.log(Logging.LEVEL_WARN, "Unable to cache Overpass response", e);
+            }
+        }
+        if (recorder == null) {
+            return parseResponse(source, progressMonitor);
+        }
+        try {
+            DataSet ds = parseResponse(recorder, progressMonitor);
+            try {
+                recorder.commit();
+            } catch (IOException e) {
+                Logging.log(Logging.LEVEL_WARN, "Unable to cache Overpass response", e);
+            }
+            return ds;
+        } finally {
+            recorder.discard();
+        }
+    }
+
+    private DataSet parseResponse(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
         AbstractReader reader = null;
         Matcher m = OUTPUT_FORMAT_STATEMENT.matcher(overpassQuery);
         if (m.matches()) {
@@ -383,10 +448,46 @@ public class OverpassDownloadReader extends BoundingBoxDownloader {
         return reader.doParseDataSet(source, progressMonitor);
     }
 
+    /**
+     * Reads a cached response.
+     * @param entry the cached response to the query, on the requested bounding box or on a bounding box containing it
+     * @param progressMonitor the progress monitor
+     * @return the data of the requested bounding box, or {@code null} if the response cannot be read
+     */
+    private DataSet parseCached(OverpassResultCache.Entry entry, ProgressMonitor progressMonitor) {
+        Bounds bounds = new Bounds(lat1, lon1, lat2, lon2);
+        Logging.info("Reusing the Overpass response for {0} cached for {1}", bounds, entry.getBounds());
+        try (InputStream in = entry.open()) {
+            DataSet ds = parseResponse(in, progressMonitor);
+            if (!entry.getBounds().equals(bounds)) {
+                OverpassResultCache.filter(ds, bounds);
+            }
+            return ds;
+        } catch (IOException | IllegalDataException e) {
+            Logging.log(Logging.LEVEL_WARN, "Unable to read cached Overpass response", e);
+            return null;
+        }
+    }
+
     @Override
     public DataSet parseOsm(ProgressMonitor progressMonitor) throws OsmTransferException {
 
-        DataSet ds = super.parseOsm(progressMonitor);
+        OverpassResultCache.Entry entry = isCacheable()
+                ? getResultCache().find(overpassServer, overpassQuery, new Bounds(lat1, lon1, lat2, lon2)) : null;
+        DataSet ds;
+        if (entry == null) {
+            ds = super.parseOsm(progressMonitor);
+        } else {
+            progressMonitor.beginTask(tr("Reading cached Overpass response..."), 2);
+            try {
+                ds = parseCached(entry, progressMonitor.createSubTaskMonitor(1, false));
+                if (ds == null) {
+                    ds = super.parseOsm(progressMonitor.createSubTaskMonitor(1, false));
+                }
+            } finally {
+                progressMonitor.finishTask();
+            }
+        }
         if (!considerAsFullDownload()) {
             DataSet noBounds = new DataSet();
             DataSetMerger dsm = new DataSetMerger(noBounds, ds);
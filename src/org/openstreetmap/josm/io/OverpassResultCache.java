@@ -0,0 +1,296 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.preferences.LongProperty;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.tools.JosmRuntimeException;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * On-disk cache of the responses of the Overpass API to queries on a bounding box. Disabled by default, see {@link #TTL}.
+ * <p>
+ * The responses are stored as received, by server, query (with its <code>{{bbox}}</code> placeholder) and bounding
+ * box. A response is reused for the same query on the same bounding box until it expires. The response to a query
+ * which only selects nodes, see {@link #isFilterable}, is also reused for the bounding boxes it contains, see {@link #filter}.
+ * The responses to other queries cannot be filtered reliably, e.g. as ways crossing a bounding box are selected by the
+ * server even without a node in it.
+ */
+public final class OverpassResultCache {
+
+    /**
+     * Property for the number of seconds a response is reused. 0 (default) disables the cache.
+     */
+    public static final LongProperty TTL = new LongProperty("download.overpass.cache.ttl", 0);
+
+    private static final String EXTENSION = ".response";
+
+    /**
+     * Queries selecting nodes in the bounding box, with tag filters only, in the form produced by
+     * {@link OverpassDownloadReader#fixQuery}: optional settings, node statements (possibly in a union),
+     * an optional recursion down (which adds nothing to nodes), and the output of the selected nodes.
+     */
+    private static final Pattern FILTERABLE_QUERY = Pattern.compile(
+            "(\\[[^\\]]*\\])*;?\\s*(\\(\\s*)?(node(\\[[^\\]]*\\])*\\(\\{\\{bbox\\}\\}\\);\\s*)+(\\);\\s*)?"
+            + "(\\(\\._;>;\\);\\s*)?out meta( qt)?;\\s*");
+
+    private final File directory;
+    private final long ttl;
+
+    /**
+     * A cached response.
+     */
+    public static final class Entry {
+        private final File file;
+        private final Bounds bounds;
+
+        private Entry(File file, Bounds bounds) {
+            this.file = file;
+            this.bounds = bounds;
+        }
+
+        /**
+         * Returns the bounding box the response was received for.
+         * @return the bounding box
+         */
+        public Bounds getBounds() {
+            return bounds;
+        }
+
+        /**
+         * Opens the response.
+         * @return the response, as received from the server
+         * @throws IOException if an I/O error occurs
+         */
+        public InputStream open() throws IOException {
+            return Files.newInputStream(file.toPath());
+        }
+    }
+
+    /**
+     * A stream copying the bytes read from a response into the cache. The response is only stored by {@link #commit()},
+     * once it has been parsed successfully. Closing this stream does not close the response, which is left to its owner.
+     */
+    public static final class Recorder extends FilterInputStream {
+        private final File tmp;
+        private final File target;
+        private final OutputStream out;
+        private boolean done;
+
+        private Recorder(InputStream in, File tmp, File target) throws IOException {
+            super(in);
+            this.tmp = tmp;
+            this.target = target;
+            this.out = Files.newOutputStream(tmp.toPath());
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                out.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                out.write(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            int read;
+            while (skipped < n && (read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped))) > 0) {
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // the parsers close their input, but the rest of the response is still to be read by commit()
+        }
+
+        /**
+         * Reads the rest of the response, and stores it in the cache.
+         * @throws IOException if an I/O error occurs
+         */
+        public void commit() throws IOException {
+            byte[] buffer = new byte[8192];
+            while (read(buffer, 0, buffer.length) >= 0) {
+                // read the trailing bytes ignored by the parser
+            }
+            out.close();
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            done = true;
+        }
+
+        /**
+         * Discards the response, unless it has been {@link #commit() committed}.
+         */
+        public void discard() {
+            if (!done) {
+                done = true;
+                Utils.close(out);
+                Utils.deleteFile(tmp);
+            }
+        }
+    }
+
+    /**
+     * Constructs a new {@code OverpassResultCache}.
+     * @param directory the directory where the responses are stored
+     * @param ttl the number of milliseconds a response is reused. 0 disables the cache
+     */
+    public OverpassResultCache(File directory, long ttl) {
+        this.directory = directory;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Returns the cache configured in the preferences, in the {@code overpass} folder of the cache directory.
+     * @return the cache configured in the preferences
+     */
+    public static OverpassResultCache getDefault() {
+        return new OverpassResultCache(new File(Config.getDirs().getCacheDirectory(false), "overpass"),
+                TimeUnit.SECONDS.toMillis(TTL.get()));
+    }
+
+    /**
+     * Determines if the cache is enabled.
+     * @return {@code true} if responses are reused
+     */
+    public boolean isEnabled() {
+        return ttl > 0;
+    }
+
+    private static String key(String server, String query) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update((server + '\n' + OverpassDownloadReader.fixQuery(query)).getBytes(StandardCharsets.UTF_8));
+            return String.format("%064x", new BigInteger(1, md.digest()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new JosmRuntimeException(e);
+        }
+    }
+
+    private static Bounds parseBounds(String fileName, String prefix) {
+        String[] coordinates = fileName.substring(prefix.length(), fileName.length() - EXTENSION.length()).split("_", -1);
+        try {
+            return coordinates.length != 4 ? null : new Bounds(Double.parseDouble(coordinates[0]), Double.parseDouble(coordinates[1]),
+                    Double.parseDouble(coordinates[2]), Double.parseDouble(coordinates[3]));
+        } catch (NumberFormatException e) {
+            Logging.trace(e);
+            return null;
+        }
+    }
+
+    /**
+     * Determines if the response to the given query on a bounding box can be filtered to any bounding box it contains,
+     * that is if the query only selects the nodes in the bounding box, with tag filters.
+     * @param query the query, with its <code>{{bbox}}</code> placeholder
+     * @return {@code true} if the response can be reused for the bounding boxes it contains
+     */
+    public static boolean isFilterable(String query) {
+        return query != null && FILTERABLE_QUERY.matcher(query.trim()).matches();
+    }
+
+    private static boolean contains(Bounds outer, Bounds inner) {
+        return outer.getMinLat() <= inner.getMinLat() && outer.getMinLon() <= inner.getMinLon()
+                && outer.getMaxLat() >= inner.getMaxLat() && outer.getMaxLon() >= inner.getMaxLon();
+    }
+
+    /**
+     * Finds the response to the query on the given bounding box, or, if the query is {@link #isFilterable filterable},
+     * the smallest response to the query on a bounding box containing the given one. Expired responses are deleted.
+     * @param server the Overpass server
+     * @param query the query, with its <code>{{bbox}}</code> placeholder
+     * @param bounds the bounding box of the request
+     * @return the cached response, or {@code null}
+     */
+    public Entry find(String server, String query, Bounds bounds) {
+        if (!isEnabled())
+            return null;
+        String prefix = key(server, query) + '_';
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(EXTENSION));
+        if (files == null)
+            return null;
+        boolean filterable = isFilterable(query);
+        long now = System.currentTimeMillis();
+        Entry result = null;
+        for (File file : files) {
+            Bounds b = parseBounds(file.getName(), prefix);
+            if (now - file.lastModified() >= ttl) {
+                Utils.deleteFile(file);
+            } else if (b != null && (filterable ? contains(b, bounds) : b.equals(bounds))
+                    && (result == null || b.getArea() < result.bounds.getArea())) {
+                result = new Entry(file, b);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Wraps a response being received from the server, to store it in the cache once parsed.
+     * @param server the Overpass server
+     * @param query the query, with its <code>{{bbox}}</code> placeholder
+     * @param bounds the bounding box of the request
+     * @param in the response
+     * @return the stream to parse the response from, to be {@link Recorder#commit() committed} or {@link Recorder#discard() discarded}
+     * @throws IOException if the cache directory cannot be written
+     */
+    public Recorder record(String server, String query, Bounds bounds, InputStream in) throws IOException {
+        Utils.mkDirs(directory);
+        String name = key(server, query) + '_'
+                + bounds.getMinLat() + '_' + bounds.getMinLon() + '_' + bounds.getMaxLat() + '_' + bounds.getMaxLon() + EXTENSION;
+        return new Recorder(in, File.createTempFile("overpass", ".tmp", directory), new File(directory, name));
+    }
+
+    /**
+     * Removes from a response received for a larger bounding box the primitives a query on the given bounding box
+     * would not have returned.
+     * <p>
+     * Only the nodes inside the bounding box are kept. This is only valid for the responses to
+     * {@link #isFilterable filterable} queries, which only contain nodes.
+     * @param ds the data parsed from the cached response
+     * @param bounds the bounding box of the request
+     */
+    public static void filter(DataSet ds, Bounds bounds) {
+        List<OsmPrimitive> removed = new ArrayList<>();
+        ds.getRelations().forEach(removed::add);
+        ds.getWays().forEach(removed::add);
+        ds.getNodes().stream().filter(n -> !n.isLatLonKnown() || !bounds.contains(n.getCoor())).forEach(removed::add);
+        ds.update(() -> removed.forEach(p -> ds.removePrimitive(p.getPrimitiveId())));
+    }
+}
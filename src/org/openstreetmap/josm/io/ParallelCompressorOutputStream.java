@@ -0,0 +1,154 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * An output stream compressing fixed size blocks in parallel.
+ * <p>
+ * Each block is compressed as a complete stream of the given {@link Compression}, and the compressed blocks are written
+ * in order: the result is a sequence of concatenated gzip members, bzip2 streams or xz streams, which are read as a
+ * single stream by {@link Compression#getUncompressedInputStream} and by the usual command line tools.
+ * <p>
+ * {@link #flush()} does not end the current block, to avoid writing many small blocks for writers flushing often.
+ * The last block is only written by {@link #close()}.
+ * <p>
+ * The blocks are compressed in the thread pool shared by all the streams, see {@link Compression#getThreadPool()}.
+ */
+final class ParallelCompressorOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final Compression compression;
+    private final ForkJoinPool pool;
+    /** The compressed blocks, in the write order */
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final int maxPending;
+    private final int blockSize;
+    private byte[] block;
+    private int count;
+    private boolean blockWritten;
+    private boolean closed;
+
+    /**
+     * Constructs a new {@code ParallelCompressorOutputStream}.
+     * @param out the raw output stream, closed with this stream
+     * @param compression the compression of each block, must not be {@link Compression#NONE} or {@link Compression#ZIP}
+     * @param blockSize the size of the uncompressed blocks
+     * @param maxPending the maximum number of blocks compressed at the same time, to limit the memory used
+     */
+    ParallelCompressorOutputStream(OutputStream out, Compression compression, int blockSize, int maxPending) {
+        this.out = out;
+        this.compression = compression;
+        this.pool = Compression.getThreadPool();
+        this.maxPending = Math.max(1, Math.min(maxPending, 2 * pool.getParallelism()));
+        this.blockSize = blockSize;
+        this.block = new byte[blockSize];
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (count == blockSize) {
+            submitBlock();
+        }
+        block[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        int offset = off;
+        int remaining = len;
+        while (remaining > 0) {
+            if (count == blockSize) {
+                submitBlock();
+            }
+            int n = Math.min(remaining, blockSize - count);
+            System.arraycopy(b, offset, block, count, n);
+            count += n;
+            offset += n;
+            remaining -= n;
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        byte[] data = block;
+        int length = count;
+        block = new byte[blockSize];
+        count = 0;
+        blockWritten = true;
+        pending.add(pool.submit(() -> compress(data, length)));
+        while (pending.size() >= maxPending) {
+            writeBlock(pending.poll());
+        }
+    }
+
+    private byte[] compress(byte[] data, int length) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(length / 4 + 64);
+        try (OutputStream compressor = compression.getSerialCompressedOutputStream(bytes)) {
+            compressor.write(data, 0, length);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void writeBlock(Future<byte[]> future) throws IOException {
+        try {
+            out.write(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw (InterruptedIOException) new InterruptedIOException(e.getMessage()).initCause(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Writes the blocks already compressed and flushes the raw output stream. The current block is not ended.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+            writeBlock(pending.poll());
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try (OutputStream o = out) {
+            // an empty stream is still written as a valid compressed stream
+            if (count > 0 || !blockWritten) {
+                submitBlock();
+            }
+            while (!pending.isEmpty()) {
+                writeBlock(pending.poll());
+            }
+        } finally {
+            // the blocks still compressing after an error are not needed anymore
+            pending.forEach(f -> f.cancel(true));
+            pending.clear();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.PrimitiveData;
+import org.openstreetmap.josm.data.osm.RelationData;
+import org.openstreetmap.josm.data.osm.RelationMemberData;
+import org.openstreetmap.josm.data.osm.WayData;
+
+/**
+ * Primitives read in parallel by a reader, to be built in order by {@link AbstractReader#addPrimitives}.
+ * The way nodes and relation members are kept apart, as they are only resolved when all the primitives are built.
+ */
+final class PrimitiveBlock {
+
+    final List<PrimitiveData> primitives = new ArrayList<>();
+    final List<Collection<Long>> wayNodes = new ArrayList<>();
+    final List<Collection<RelationMemberData>> relationMembers = new ArrayList<>();
+
+    void addNode(NodeData nd) {
+        primitives.add(nd);
+    }
+
+    void addWay(WayData wd, Collection<Long> nodeIds) {
+        primitives.add(wd);
+        wayNodes.add(nodeIds);
+    }
+
+    void addRelation(RelationData rd, Collection<RelationMemberData> members) {
+        primitives.add(rd);
+        relationMembers.add(members);
+    }
+}
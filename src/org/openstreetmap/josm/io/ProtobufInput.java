@@ -0,0 +1,191 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Minimal decoder of <a href="https://developers.google.com/protocol-buffers/docs/encoding">Protocol Buffers</a> messages,
+ * as needed by {@link OsmPbfReader}. A message is read field by field from a byte array, without any generated class.
+ */
+final class ProtobufInput {
+
+    static final int VARINT = 0;
+    static final int FIXED64 = 1;
+    static final int LENGTH_DELIMITED = 2;
+    static final int FIXED32 = 5;
+
+    private final byte[] buf;
+    private final int end;
+    private int pos;
+    private int tag;
+
+    /**
+     * Constructs a new {@code ProtobufInput} reading a whole array.
+     * @param buf the encoded message
+     */
+    ProtobufInput(byte[] buf) {
+        this(buf, 0, buf.length);
+    }
+
+    private ProtobufInput(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.end = offset + length;
+    }
+
+    /**
+     * Reads the key of the next field.
+     * @return {@code true} if a field was read, {@code false} at the end of the message
+     * @throws IllegalDataException if the message is truncated
+     */
+    boolean next() throws IllegalDataException {
+        if (pos >= end) {
+            return false;
+        }
+        tag = (int) readVarint();
+        return true;
+    }
+
+    /**
+     * Returns the number of the current field.
+     * @return the number of the current field
+     */
+    int field() {
+        return tag >>> 3;
+    }
+
+    /**
+     * Returns the wire type of the current field.
+     * @return the wire type of the current field
+     */
+    int wireType() {
+        return tag & 7;
+    }
+
+    /**
+     * Determines if there are remaining bytes, when reading the values of a packed field.
+     * @return {@code true} if there are remaining bytes
+     */
+    boolean hasRemaining() {
+        return pos < end;
+    }
+
+    long readVarint() throws IllegalDataException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos >= end) {
+                throw truncated();
+            }
+            byte b = buf[pos++];
+            result |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new IllegalDataException(tr("Malformed varint in protocol buffer"));
+    }
+
+    long readSint64() throws IllegalDataException {
+        long n = readVarint();
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    boolean readBool() throws IllegalDataException {
+        return readVarint() != 0;
+    }
+
+    private int readLength() throws IllegalDataException {
+        long length = readVarint();
+        if (length < 0 || length > end - pos) {
+            throw truncated();
+        }
+        return (int) length;
+    }
+
+    /**
+     * Reads the current length-delimited field as an embedded message, or as packed values.
+     * @return the embedded message
+     * @throws IllegalDataException if the message is truncated
+     */
+    ProtobufInput readMessage() throws IllegalDataException {
+        int length = readLength();
+        ProtobufInput message = new ProtobufInput(buf, pos, length);
+        pos += length;
+        return message;
+    }
+
+    byte[] readBytes() throws IllegalDataException {
+        int length = readLength();
+        byte[] result = Arrays.copyOfRange(buf, pos, pos + length);
+        pos += length;
+        return result;
+    }
+
+    String readString() throws IllegalDataException {
+        int length = readLength();
+        String result = new String(buf, pos, length, StandardCharsets.UTF_8);
+        pos += length;
+        return result;
+    }
+
+    /**
+     * Reads the current packed field of varints.
+     * @param zigzag {@code true} for {@code sint32}/{@code sint64} values
+     * @param delta {@code true} if each value is the difference with the previous one
+     * @return the values
+     * @throws IllegalDataException if the message is truncated
+     */
+    long[] readPacked(boolean zigzag, boolean delta) throws IllegalDataException {
+        ProtobufInput packed = readMessage();
+        // each varint takes at least one byte
+        long[] result = new long[packed.end - packed.pos];
+        int n = 0;
+        long previous = 0;
+        while (packed.hasRemaining()) {
+            long value = zigzag ? packed.readSint64() : packed.readVarint();
+            if (delta) {
+                value += previous;
+                previous = value;
+            }
+            result[n++] = value;
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Skips the value of the current field.
+     * @throws IllegalDataException if the wire type is not supported or if the message is truncated
+     */
+    void skip() throws IllegalDataException {
+        switch (wireType()) {
+        case VARINT:
+            readVarint();
+            break;
+        case FIXED64:
+            skip(8);
+            break;
+        case LENGTH_DELIMITED:
+            skip(readLength());
+            break;
+        case FIXED32:
+            skip(4);
+            break;
+        default:
+            throw new IllegalDataException(tr("Unsupported wire type {0} in protocol buffer", wireType()));
+        }
+    }
+
+    private void skip(int length) throws IllegalDataException {
+        if (length > end - pos) {
+            throw truncated();
+        }
+        pos += length;
+    }
+
+    private static IllegalDataException truncated() {
+        return new IllegalDataException(tr("Truncated protocol buffer message"));
+    }
+}
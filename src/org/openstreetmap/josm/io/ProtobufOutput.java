@@ -0,0 +1,75 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal encoder of <a href="https://developers.google.com/protocol-buffers/docs/encoding">Protocol Buffers</a> messages,
+ * as needed by {@link OsmPbfWriter}. Fields are appended in memory; an embedded message or a packed field is built in
+ * its own {@code ProtobufOutput}, then appended with {@link #writeMessage}.
+ */
+final class ProtobufOutput extends ByteArrayOutputStream {
+
+    ProtobufOutput() {
+        super(256);
+    }
+
+    private void writeKey(int field, int wireType) {
+        writeRawVarint((field << 3) | wireType);
+    }
+
+    /**
+     * Appends a varint without field key, as a value of a packed field.
+     * @param value the value
+     */
+    void writeRawVarint(long value) {
+        long v = value;
+        while ((v & ~0x7fL) != 0) {
+            write((int) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        write((int) v);
+    }
+
+    /**
+     * Appends a zigzag-encoded varint without field key, as a value of a packed {@code sint32}/{@code sint64} field.
+     * @param value the value
+     */
+    void writeRawSint64(long value) {
+        writeRawVarint((value << 1) ^ (value >> 63));
+    }
+
+    void writeVarint(int field, long value) {
+        writeKey(field, ProtobufInput.VARINT);
+        writeRawVarint(value);
+    }
+
+    void writeSint64(int field, long value) {
+        writeKey(field, ProtobufInput.VARINT);
+        writeRawSint64(value);
+    }
+
+    void writeBytes(int field, byte[] value, int length) {
+        writeKey(field, ProtobufInput.LENGTH_DELIMITED);
+        writeRawVarint(length);
+        write(value, 0, length);
+    }
+
+    void writeString(int field, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeBytes(field, bytes, bytes.length);
+    }
+
+    /**
+     * Appends an embedded message, or the values of a packed field. Empty packed fields are omitted.
+     * @param field the field number
+     * @param message the message
+     * @param omitEmpty {@code true} to omit the field if the message is empty
+     */
+    void writeMessage(int field, ProtobufOutput message, boolean omitEmpty) {
+        if (!omitEmpty || message.count > 0) {
+            writeBytes(field, message.buf, message.count);
+        }
+    }
+}
@@ -0,0 +1,452 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.openstreetmap.josm.tools.Logging;
+import org.tukaani.xz.SeekableFileInputStream;
+import org.tukaani.xz.SeekableXZInputStream;
+
+/**
+ * An input stream decompressing a file ahead of the reader, in the thread pool shared by all the compression streams,
+ * see {@link Compression#getThreadPool()}.
+ * <p>
+ * The file is split in segments which can be decompressed independently: the bzip2 streams, found by their header,
+ * and the xz blocks, found in the xz index. The segments are decompressed in parallel, and their data is read in order,
+ * with a bounded amount of data decompressed ahead. Files which cannot be split, such as gzip files or large
+ * single stream bzip2 files, are decompressed sequentially by one worker, through a bounded queue of buffers.
+ */
+final class ReadAheadDecompressorInputStream extends InputStream {
+
+    /** Size of the buffers of the sequential decompression */
+    private static final int CHUNK_SIZE = 1 << 18;
+    /** Number of buffers of the sequential decompression decompressed ahead */
+    private static final int QUEUE_SIZE = 16;
+    /** Maximum compressed size of a bzip2 segment, larger streams are decompressed sequentially */
+    private static final int MAX_BZIP2_SEGMENT_SIZE = 4 << 20;
+    /** Maximum uncompressed size of a xz segment, files with larger blocks are decompressed sequentially */
+    private static final long MAX_XZ_SEGMENT_SIZE = 64 << 20;
+    /** Maximum uncompressed size of the segments decompressed ahead, before the memory limit */
+    private static final long MAX_PENDING_SIZE = 128 << 20;
+    /** Estimated compression ratio of bzip2, to bound the uncompressed size of the bzip2 segments decompressed ahead */
+    private static final int BZIP2_RATIO = 8;
+    /** Header of a bzip2 stream: "BZh", the block size from 1 to 9, then the magic number of the first block */
+    private static final byte[] BZIP2_HEADER = {'B', 'Z', 'h', 0, 0x31, 0x41, 0x59, 0x26, 0x53, 0x59};
+    private static final byte[] END = new byte[0];
+
+    private final Path path;
+    private final Compression compression;
+    private final FileChannel channel;
+    private final ForkJoinPool pool;
+    private final long maxPendingSize;
+    private final Deque<Segment> pending = new ArrayDeque<>();
+    /** Estimated uncompressed size of the pending segments */
+    private long pendingSize;
+
+    /** Start of the next bzip2 segment, or -1 */
+    private long nextOffset = -1;
+    /** Uncompressed sizes of the xz blocks */
+    private long[] xzBlockSizes;
+    /** Next xz block */
+    private int nextBlock;
+    /** Start of the sequential decompression, once the pending segments are read, or -1 */
+    private long sequentialOffset = -1;
+
+    private BlockingQueue<byte[]> sequential;
+    private volatile Throwable sequentialError;
+    private volatile boolean closed;
+
+    private byte[] buffer = END;
+    private int position;
+
+    /**
+     * A part of the file decompressed independently.
+     */
+    private static final class Segment {
+        /** The position of a bzip2 segment, or the number of a xz block */
+        final long offset;
+        /** The uncompressed size of the segment, estimated for bzip2 */
+        final long size;
+        final Future<byte[]> data;
+
+        Segment(long offset, long size, Future<byte[]> data) {
+            this.offset = offset;
+            this.size = size;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Thrown when a bzip2 segment does not end at the start of the next one, as a header was found inside compressed data.
+     */
+    private static final class InvalidSegmentException extends IOException {
+        InvalidSegmentException(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Constructs a new {@code ReadAheadDecompressorInputStream}.
+     * @param path the compressed file
+     * @param compression the compression of the file, must not be {@link Compression#NONE} or {@link Compression#ZIP}
+     * @throws IOException if the file cannot be opened
+     */
+    ReadAheadDecompressorInputStream(Path path, Compression compression) throws IOException {
+        this.path = path;
+        this.compression = compression;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.pool = Compression.getThreadPool();
+        this.maxPendingSize = Math.min(MAX_PENDING_SIZE, Runtime.getRuntime().maxMemory() / 8);
+        if (compression == Compression.BZIP2 && findBZip2Header(0, BZIP2_HEADER.length) == 0) {
+            nextOffset = 0;
+        } else if (compression == Compression.XZ) {
+            xzBlockSizes = readXZBlockSizes(path);
+        }
+        if (nextOffset < 0 && xzBlockSizes == null) {
+            sequentialOffset = 0;
+        }
+    }
+
+    private static long[] readXZBlockSizes(Path path) {
+        try (SeekableXZInputStream xz = new SeekableXZInputStream(new SeekableFileInputStream(path.toFile()))) {
+            long[] sizes = new long[xz.getBlockCount()];
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = xz.getBlockSize(i);
+                if (sizes[i] > MAX_XZ_SEGMENT_SIZE) {
+                    return null;
+                }
+            }
+            return sizes.length > 1 ? sizes : null;
+        } catch (IOException e) {
+            // not a seekable xz file, for instance if the index is missing
+            Logging.trace(e);
+            return null;
+        }
+    }
+
+    /**
+     * Finds the next bzip2 stream header.
+     * @param from the position to start from
+     * @param limit the maximum number of bytes to search
+     * @return the position of the header, or -1 if there is no header within the limit
+     * @throws IOException if an I/O error occurs
+     */
+    private long findBZip2Header(long from, int limit) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(65536);
+        long start = from;
+        long end = Math.min(channel.size(), from + limit);
+        while (end - start >= BZIP2_HEADER.length) {
+            bytes.clear();
+            bytes.limit((int) Math.min(bytes.capacity(), end - start));
+            while (bytes.hasRemaining() && channel.read(bytes, start + bytes.position()) > 0) {
+                // read as much as possible
+            }
+            byte[] b = bytes.array();
+            int n = bytes.position();
+            for (int i = 0; i + BZIP2_HEADER.length <= n; i++) {
+                if (isBZip2Header(b, i)) {
+                    return start + i;
+                }
+            }
+            if (n < BZIP2_HEADER.length) {
+                break;
+            }
+            // the header may span two reads
+            start += n - BZIP2_HEADER.length + 1;
+        }
+        return -1;
+    }
+
+    private static boolean isBZip2Header(byte[] b, int i) {
+        for (int j = 0; j < BZIP2_HEADER.length; j++) {
+            if (j == 3 ? b[i + j] < '1' || b[i + j] > '9' : b[i + j] != BZIP2_HEADER[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Submits the next segments, up to the maximum uncompressed size of the pending segments.
+     * At least one segment is submitted, whatever its size.
+     * @throws IOException if an I/O error occurs
+     */
+    private void submitSegments() throws IOException {
+        while ((pending.isEmpty() || pendingSize < maxPendingSize) && sequential == null) {
+            if (nextOffset >= 0 && nextOffset < channel.size()) {
+                long start = nextOffset;
+                long next = findBZip2Header(start + 1, MAX_BZIP2_SEGMENT_SIZE);
+                if (next < 0 && channel.size() - start > MAX_BZIP2_SEGMENT_SIZE) {
+                    // a large stream, decompressed sequentially once the previous segments are read
+                    sequentialOffset = start;
+                    nextOffset = -1;
+                    return;
+                }
+                long end = next < 0 ? channel.size() : next;
+                nextOffset = end;
+                addPending(new Segment(start, BZIP2_RATIO * (end - start), pool.submit(() -> decompressBZip2(start, end))));
+            } else if (xzBlockSizes != null && nextBlock < xzBlockSizes.length) {
+                int block = nextBlock++;
+                addPending(new Segment(block, xzBlockSizes[block], pool.submit(() -> decompressXZ(block))));
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void addPending(Segment segment) {
+        pending.add(segment);
+        pendingSize += segment.size;
+    }
+
+    private Segment pollPending() {
+        Segment segment = pending.poll();
+        if (segment != null) {
+            pendingSize -= segment.size;
+        }
+        return segment;
+    }
+
+    private byte[] decompressBZip2(long start, long end) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate((int) (end - start));
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, start + bytes.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        ByteArrayInputStream compressed = new ByteArrayInputStream(bytes.array());
+        try (InputStream in = new BZip2CompressorInputStream(compressed, true)) {
+            byte[] data = readAll(in, BZIP2_RATIO * bytes.capacity());
+            if (compressed.available() > 0) {
+                throw new InvalidSegmentException(null);
+            }
+            return data;
+        } catch (InvalidSegmentException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new InvalidSegmentException(e);
+        }
+    }
+
+    private byte[] decompressXZ(int block) throws IOException {
+        try (SeekableXZInputStream xz = new SeekableXZInputStream(new SeekableFileInputStream(path.toFile()))) {
+            xz.seekToBlock(block);
+            byte[] data = new byte[(int) xzBlockSizes[block]];
+            int n = 0;
+            while (n < data.length) {
+                int read = xz.read(data, n, data.length - n);
+                if (read < 0) {
+                    throw new EOFException();
+                }
+                n += read;
+            }
+            return data;
+        }
+    }
+
+    private static byte[] readAll(InputStream in, int sizeHint) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(sizeHint);
+        byte[] b = new byte[65536];
+        int n;
+        while ((n = in.read(b)) != -1) {
+            out.write(b, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private void startSequential(long offset) {
+        sequential = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        pool.submit(() -> {
+            try (InputStream raw = Files.newInputStream(path)) {
+                long skipped = 0;
+                while (skipped < offset) {
+                    long n = raw.skip(offset - skipped);
+                    if (n <= 0) {
+                        throw new EOFException();
+                    }
+                    skipped += n;
+                }
+                try (InputStream in = compression.getUncompressedInputStream(raw)) {
+                    byte[] chunk = new byte[CHUNK_SIZE];
+                    int n = 0;
+                    int read;
+                    while (!closed && (read = in.read(chunk, n, chunk.length - n)) != -1) {
+                        n += read;
+                        if (n == chunk.length) {
+                            put(chunk);
+                            chunk = new byte[CHUNK_SIZE];
+                            n = 0;
+                        }
+                    }
+                    if (n > 0) {
+                        put(Arrays.copyOf(chunk, n));
+                    }
+                }
+            } catch (InterruptedException e) {
+                sequentialError = e;
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) { // NOPMD
+                // any failure is passed to the reader, which would otherwise wait forever for the end of the data
+                sequentialError = t;
+            } finally {
+                try {
+                    put(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+    }
+
+    private void put(byte[] chunk) throws InterruptedException {
+        // wait until the reader catches up, or closes the stream. The pool may start another thread meanwhile
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            @Override
+            public boolean block() throws InterruptedException {
+                return closed || sequential.offer(chunk, 100, TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return closed || sequential.offer(chunk);
+            }
+        });
+    }
+
+    /**
+     * Reads the next decompressed buffer.
+     * @return {@code false} at the end of the file
+     * @throws IOException if an I/O error occurs
+     */
+    private boolean nextBuffer() throws IOException {
+        try {
+            while (true) {
+                if (sequential != null) {
+                    byte[] chunk = sequential.take();
+                    if (chunk == END) {
+                        sequential.add(END);
+                        Throwable error = sequentialError;
+                        if (error instanceof IOException) {
+                            throw (IOException) error;
+                        } else if (error != null) {
+                            throw new IOException(error);
+                        }
+                        return false;
+                    }
+                    setBuffer(chunk);
+                    return true;
+                }
+                submitSegments();
+                Segment segment = pollPending();
+                if (segment == null) {
+                    if (sequentialOffset < 0) {
+                        return false;
+                    }
+                    startSequential(sequentialOffset);
+                    sequentialOffset = -1;
+                    continue;
+                }
+                try {
+                    setBuffer(segment.data.get());
+                    return true;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof InvalidSegmentException) {
+                        Logging.debug("Invalid bzip2 segment at {0}, decompressing the rest sequentially", segment.offset);
+                        cancelPending();
+                        startSequential(segment.offset);
+                    } else if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    } else {
+                        throw new IOException(e.getCause());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw (InterruptedIOException) new InterruptedIOException(e.getMessage()).initCause(e);
+        }
+    }
+
+    private void setBuffer(byte[] b) {
+        buffer = b;
+        position = 0;
+    }
+
+    private void cancelPending() {
+        for (Segment segment : pending) {
+            segment.data.cancel(true);
+        }
+        pending.clear();
+        pendingSize = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        ensureOpen();
+        while (position == buffer.length) {
+            if (!nextBuffer()) {
+                return -1;
+            }
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len == 0) {
+            return 0;
+        }
+        while (position == buffer.length) {
+            if (!nextBuffer()) {
+                return -1;
+            }
+        }
+        int n = Math.min(len, buffer.length - position);
+        System.arraycopy(buffer, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return buffer.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            // the pool is shared, only the work of this stream is stopped. The sequential worker stops once closed is set
+            cancelPending();
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io.session;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.openstreetmap.josm.gui.layer.GpxLayer;
+import org.openstreetmap.josm.io.GpxBinaryWriter;
+
+/**
+ * Session exporter for {@link GpxLayer}, in the compact binary format of {@link GpxBinaryWriter}.
+ * <p>
+ * Used instead of {@link GpxTracksSessionExporter} when {@link SessionWriter#BINARY_LAYERS} is enabled.
+ */
+public class GpxTracksBinarySessionExporter extends GenericSessionExporter<GpxLayer> {
+
+    /**
+     * Constructs a new {@code GpxTracksBinarySessionExporter}.
+     * @param layer GPX layer to export
+     */
+    public GpxTracksBinarySessionExporter(GpxLayer layer) { // NO_UCD (test only)
+        super(layer, "tracks-binary", "0.1", GpxTracksSessionImporter.BINARY_EXTENSION);
+    }
+
+    @Override
+    @SuppressWarnings("resource")
+    protected void addDataFile(OutputStream out) throws IOException {
+        // not closed, as it would close the zip stream
+        new GpxBinaryWriter(out).write(layer.data);
+    }
+}
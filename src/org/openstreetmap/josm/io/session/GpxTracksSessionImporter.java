@@ -3,6 +3,7 @@ package org.openstreetmap.josm.io.session;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -18,8 +19,11 @@ import org.openstreetmap.josm.gui.io.importexport.RtkLibImporter;
 import org.openstreetmap.josm.gui.layer.GpxLayer;
 import org.openstreetmap.josm.gui.layer.Layer;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.io.GpxBinaryReader;
 import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.tools.Logging;
 import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
 
 /**
  * Session exporter for {@link GpxLayer}.
@@ -27,6 +31,9 @@ import org.w3c.dom.Element;
  */
 public class GpxTracksSessionImporter implements SessionLayerImporter {
 
+    /** Extension of the data files written by {@link GpxTracksBinarySessionExporter} */
+    static final String BINARY_EXTENSION = "gpxbin";
+
     @Override
     public Layer load(Element elem, SessionReader.ImportSupport support, ProgressMonitor progressMonitor)
             throws IOException, IllegalDataException {
@@ -46,7 +53,9 @@ public class GpxTracksSessionImporter implements SessionLayerImporter {
             try (InputStream in = support.getInputStream(fileStr)) {
                 GpxImporter.GpxImporterData importData;
 
-                if (NMEAImporter.FILE_FILTER.acceptName(fileStr)) {
+                if (fileStr.endsWith('.' + BINARY_EXTENSION)) {
+                    importData = loadBinaryLayers(in, support.getFile(fileStr), support.getLayerName());
+                } else if (NMEAImporter.FILE_FILTER.acceptName(fileStr)) {
                     importData = NMEAImporter.loadLayers(in, support.getFile(fileStr), support.getLayerName());
                 } else if (RtkLibImporter.FILE_FILTER.acceptName(fileStr)) {
                     importData = RtkLibImporter.loadLayers(in, support.getFile(fileStr), support.getLayerName());
@@ -63,6 +72,19 @@ public class GpxTracksSessionImporter implements SessionLayerImporter {
         }
     }
 
+    private static GpxImporter.GpxImporterData loadBinaryLayers(InputStream in, File associatedFile, String gpxLayerName)
+            throws IOException {
+        try {
+            GpxBinaryReader r = new GpxBinaryReader(in);
+            boolean parsedProperly = r.parse(true);
+            r.getGpxData().storageFile = associatedFile;
+            return GpxImporter.loadLayers(r.getGpxData(), parsedProperly, gpxLayerName);
+        } catch (SAXException e) {
+            Logging.error(e);
+            throw new IOException(tr("Parsing data for layer ''{0}'' failed", gpxLayerName), e);
+        }
+    }
+
     protected Layer getLayer(GpxImporter.GpxImporterData importData) {
         return importData.getGpxLayer();
     }
@@ -0,0 +1,38 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io.session;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.openstreetmap.josm.data.osm.DataSetSnapshot;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.io.OsmBinaryWriter;
+
+/**
+ * Session exporter for {@link OsmDataLayer}, in the compact binary format of {@link OsmBinaryWriter}.
+ * <p>
+ * Used instead of {@link OsmDataSessionExporter} when {@link SessionWriter#BINARY_LAYERS} is enabled.
+ * Such sessions are faster to restore, but can only be read by a JOSM version supporting the format.
+ */
+public class OsmDataBinarySessionExporter extends GenericSessionExporter<OsmDataLayer> {
+
+    /**
+     * Constructs a new {@code OsmDataBinarySessionExporter}.
+     * @param layer Data layer to export
+     */
+    public OsmDataBinarySessionExporter(OsmDataLayer layer) { // NO_UCD (test only)
+        super(layer, "osm-data-binary", "0.1", OsmDataSessionImporter.BINARY_EXTENSION);
+    }
+
+    @Override
+    @SuppressWarnings("resource")
+    protected void addDataFile(OutputStream out) throws IOException {
+        DataSetSnapshot snapshot = layer.data.snapshot();
+        try {
+            // not closed, as it would close the zip stream
+            new OsmBinaryWriter(out).write(snapshot);
+        } finally {
+            layer.data.releaseSnapshot(snapshot);
+        }
+    }
+}
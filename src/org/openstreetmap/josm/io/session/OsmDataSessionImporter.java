@@ -12,11 +12,13 @@ import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
+import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.gui.io.importexport.OsmImporter;
 import org.openstreetmap.josm.gui.layer.Layer;
 import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.io.OsmBinaryReader;
 import org.openstreetmap.josm.io.session.SessionReader.ImportSupport;
 import org.w3c.dom.Element;
 
@@ -26,10 +28,22 @@ import org.w3c.dom.Element;
  */
 public class OsmDataSessionImporter implements SessionLayerImporter {
 
+    /** Extension of the data files written by {@link OsmDataBinarySessionExporter} */
+    static final String BINARY_EXTENSION = "osmbin";
+
     @Override
     public Layer load(Element elem, ImportSupport support, ProgressMonitor progressMonitor) throws IOException, IllegalDataException {
         checkMetaVersion(elem);
         String fileStr = extractFileName(elem, support);
+        if (fileStr.endsWith('.' + BINARY_EXTENSION)) {
+            return importData(new OsmImporter() {
+                @Override
+                protected DataSet parseDataSet(InputStream in, ProgressMonitor pm) throws IllegalDataException {
+                    return OsmBinaryReader.parseDataSet(in, pm);
+                }
+            }, support, fileStr, progressMonitor);
+        }
+        // the binary exporter links the original file of the layer, if any, as the XML one does
         return importData(new OsmImporter(), support, fileStr, progressMonitor);
     }
 
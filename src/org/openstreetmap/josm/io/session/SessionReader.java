@@ -169,6 +169,8 @@ public class SessionReader {
         registerSessionLayerImporter("geoimage", GeoImageSessionImporter.class);
         registerSessionLayerImporter("markers", MarkerSessionImporter.class);
         registerSessionLayerImporter("osm-notes", NoteSessionImporter.class);
+        registerSessionLayerImporter("osm-data-binary", OsmDataSessionImporter.class);
+        registerSessionLayerImporter("tracks-binary", GpxTracksSessionImporter.class);
     }
 
     /**
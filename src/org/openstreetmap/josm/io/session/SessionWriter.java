@@ -28,6 +28,7 @@ import javax.xml.transform.stream.StreamResult;
 
 import org.openstreetmap.josm.data.coor.EastNorth;
 import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
 import org.openstreetmap.josm.data.projection.ProjectionRegistry;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.MapView;
@@ -57,7 +58,14 @@ import org.w3c.dom.Text;
  */
 public class SessionWriter {
 
+    /**
+     * Whether the layers having a binary exporter are saved in a compact binary format, faster to restore than XML.
+     * Such sessions can only be read by a JOSM version supporting the binary formats.
+     */
+    public static final BooleanProperty BINARY_LAYERS = new BooleanProperty("session.binary-layers", false);
+
     private static final Map<Class<? extends Layer>, Class<? extends SessionLayerExporter>> sessionLayerExporters = new HashMap<>();
+    private static final Map<Class<? extends Layer>, Class<? extends SessionLayerExporter>> sessionLayerBinaryExporters = new HashMap<>();
 
     private final List<Layer> layers;
     private final int active;
@@ -77,6 +85,8 @@ public class SessionWriter {
         registerSessionLayerExporter(GeoImageLayer.class, GeoImageSessionExporter.class);
         registerSessionLayerExporter(MarkerLayer.class, MarkerSessionExporter.class);
         registerSessionLayerExporter(NoteLayer.class, NoteSessionExporter.class);
+        registerSessionLayerBinaryExporter(OsmDataLayer.class, OsmDataBinarySessionExporter.class);
+        registerSessionLayerBinaryExporter(GpxLayer.class, GpxTracksBinarySessionExporter.class);
     }
 
     /**
@@ -90,6 +100,18 @@ public class SessionWriter {
         sessionLayerExporters.put(layerClass, exporter);
     }
 
+    /**
+     * Register a session layer exporter writing a binary format, used instead of the one registered with
+     * {@link #registerSessionLayerExporter} when {@link #BINARY_LAYERS} is enabled.
+     *
+     * The exporter class must have a one-argument constructor with layerClass as formal parameter type.
+     * @param layerClass layer class
+     * @param exporter binary exporter for this layer class
+     */
+    public static void registerSessionLayerBinaryExporter(Class<? extends Layer> layerClass, Class<? extends SessionLayerExporter> exporter) {
+        sessionLayerBinaryExporters.put(layerClass, exporter);
+    }
+
     /**
      * Returns the session layer exporter for the given layer.
      * @param layer layer to export
@@ -97,7 +119,13 @@ public class SessionWriter {
      */
     public static SessionLayerExporter getSessionLayerExporter(Layer layer) {
         Class<? extends Layer> layerClass = layer.getClass();
-        Class<? extends SessionLayerExporter> exporterClass = sessionLayerExporters.get(layerClass);
+        Class<? extends SessionLayerExporter> exporterClass = null;
+        if (BINARY_LAYERS.get()) {
+            exporterClass = sessionLayerBinaryExporters.get(layerClass);
+        }
+        if (exporterClass == null) {
+            exporterClass = sessionLayerExporters.get(layerClass);
+        }
         if (exporterClass == null)
             return null;
         try {
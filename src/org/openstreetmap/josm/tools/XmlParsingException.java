@@ -3,6 +3,8 @@ package org.openstreetmap.josm.tools;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
+import javax.xml.stream.Location;
+
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 
@@ -52,6 +54,19 @@ public class XmlParsingException extends SAXException {
         return this;
     }
 
+    /**
+     * Sets the location (line/column) where the exception occurred.
+     * @param location the location (line/column) of a streaming parser where the exception occurred
+     * @return {@code this}
+     */
+    public XmlParsingException rememberLocation(Location location) {
+        if (location != null) {
+            this.columnNumber = location.getColumnNumber();
+            this.lineNumber = location.getLineNumber();
+        }
+        return this;
+    }
+
     @Override
     public String getMessage() {
         String msg = super.getMessage();
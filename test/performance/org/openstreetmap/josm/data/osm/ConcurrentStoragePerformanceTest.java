@@ -0,0 +1,96 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import org.openstreetmap.josm.PerformanceTestUtils;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * This test measures the lookup throughput by id of {@link Storage} and {@link ConcurrentStorage} with several readers.
+ */
+public class ConcurrentStoragePerformanceTest {
+    private static final int PRIMITIVE_COUNT = 1_000_000;
+    private static final long DURATION_MS = 5_000;
+
+    /**
+     * Global timeout applied to all test methods.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public Timeout globalTimeout = Timeout.seconds(15*60);
+
+    /**
+     * Prepare the test.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules();
+
+    /**
+     * Lookups in a {@link Storage}.
+     * @throws InterruptedException if interrupted
+     */
+    @Test
+    public void testStorage() throws InterruptedException {
+        Storage<OsmPrimitive> storage = new Storage<>(new Storage.PrimitiveIdHash(), true);
+        runTest("Storage", storage, storage.foreignKey(new Storage.PrimitiveIdHash()));
+    }
+
+    /**
+     * Lookups in a {@link ConcurrentStorage}.
+     * @throws InterruptedException if interrupted
+     */
+    @Test
+    public void testConcurrentStorage() throws InterruptedException {
+        ConcurrentStorage<OsmPrimitive> storage = new ConcurrentStorage<>(new Storage.PrimitiveIdHash(), true);
+        runTest("ConcurrentStorage", storage, storage.foreignKey(new Storage.PrimitiveIdHash()));
+    }
+
+    private static void runTest(String name, Set<OsmPrimitive> storage, Map<PrimitiveId, OsmPrimitive> map)
+            throws InterruptedException {
+        for (int i = 1; i <= PRIMITIVE_COUNT; i++) {
+            storage.add(new Node(i));
+        }
+        int readerCount = Runtime.getRuntime().availableProcessors();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong lookups = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < readerCount; i++) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                while (running.get()) {
+                    for (int j = 0; j < 1000; j++) {
+                        map.get(new SimplePrimitiveId(random.nextInt(1, PRIMITIVE_COUNT + 1), OsmPrimitiveType.NODE));
+                    }
+                    count += 1000;
+                }
+                lookups.addAndGet(count);
+            }));
+        }
+        threads.forEach(Thread::start);
+        TimeUnit.MILLISECONDS.sleep(DURATION_MS);
+        running.set(false);
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(PRIMITIVE_COUNT, storage.size());
+        PerformanceTestUtils.measurementPlotsPluginOutput(name + " lookups with " + readerCount + " readers (lookups/s)",
+                lookups.get() * 1000d / DURATION_MS);
+    }
+}
@@ -0,0 +1,104 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import org.openstreetmap.josm.PerformanceTestUtils;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * This test measures the memory footprint and access time of node coordinates held in {@link NodeCoordinateStore}.
+ */
+public class NodeCoordinateStorePerformanceTest {
+    private static final int NODE_COUNT = 1_000_000;
+
+    /**
+     * Global timeout applied to all test methods.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public Timeout globalTimeout = Timeout.seconds(15*60);
+
+    /**
+     * Prepare the test.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules().projection();
+
+    /**
+     * Measures the heap used per node (node object and coordinates) of a generated data set.
+     * Coordinates are rounded to OSM precision, as for data read from a file.
+     */
+    @Test
+    public void testMemoryPerNode() {
+        measureMemoryPerNode("heap per node (bytes)", true);
+    }
+
+    /**
+     * Measures the heap used per node (node object and coordinates) of a generated data set.
+     * Coordinates are kept at full precision, as for nodes moved in the editor.
+     */
+    @Test
+    public void testMemoryPerMovedNode() {
+        measureMemoryPerNode("heap per moved node (bytes)", false);
+    }
+
+    private static void measureMemoryPerNode(String name, boolean rounded) {
+        long before = usedMemory();
+        DataSet ds = OsmDataGenerator.getNodes(NODE_COUNT).generateDataSet();
+        if (rounded) {
+            ds.update(() -> ds.getNodes().forEach(n -> n.setCoor(n.getCoor().getRoundedToOsmPrecision())));
+        } else {
+            ds.update(() -> ds.getNodes().forEach(n -> n.setCoor(new LatLon(n.lat() + 1e-9, n.lon() + 1e-9))));
+        }
+        long after = usedMemory();
+        PerformanceTestUtils.measurementPlotsPluginOutput(name, (after - before) / (double) NODE_COUNT);
+        assertEquals(NODE_COUNT, ds.getNodeCoordinates().size());
+        assertEquals(rounded ? 0 : NODE_COUNT, ds.getNodeCoordinates().exactSize());
+    }
+
+    /**
+     * Measures the time needed to access the lat/lon and east/north coordinates of all nodes.
+     */
+    @Test
+    public void testCoordinateAccess() {
+        DataSet ds = OsmDataGenerator.getNodes(NODE_COUNT).generateDataSet();
+        double[] sum = new double[1];
+        PerformanceTestUtils.runPerformanceTest("lat/lon of " + NODE_COUNT + " nodes", () -> {
+            for (Node n : ds.getNodes()) {
+                sum[0] += n.lat() + n.lon();
+            }
+        });
+        PerformanceTestUtils.runPerformanceTest("east/north of " + NODE_COUNT + " nodes", () -> {
+            for (Node n : ds.getNodes()) {
+                EastNorth en = n.getEastNorth();
+                sum[0] += en.east() + en.north();
+            }
+        });
+        PerformanceTestUtils.runPerformanceTest("east/north of " + NODE_COUNT + " nodes after projection change", () -> {
+            ds.invalidateEastNorthCache();
+            for (Node n : ds.getNodes()) {
+                EastNorth en = n.getEastNorth();
+                sum[0] += en.east() + en.north();
+            }
+        });
+        System.out.println(sum[0]);
+    }
+
+    @SuppressFBWarnings(value = "DM_GC", justification = "Performance test code")
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -272,6 +272,15 @@ public final class OsmDataGenerator {
      * @return The generator
      */
     public static DataGenerator getNodes() {
-        return new NodeDataGenerator("nodes", DEFAULT_NODE_COUNT);
+        return getNodes(DEFAULT_NODE_COUNT);
+    }
+
+    /**
+     * Create a generator that generates a bunch of nodes.
+     * @param nodeCount The number of nodes the dataset should contain.
+     * @return The generator
+     */
+    public static DataGenerator getNodes(int nodeCount) {
+        return new NodeDataGenerator("nodes", nodeCount);
     }
 }
@@ -0,0 +1,97 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import org.openstreetmap.josm.PerformanceTestUtils;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * This test compares {@link QuadBuckets} and {@link PackedRTree} for the viewport queries issued by the map renderer.
+ */
+public class SpatialIndexPerformanceTest {
+    private static final int WAY_COUNT = 200_000;
+    private static final int QUERY_COUNT = 1_000;
+    /** Viewport sizes in degrees, from a street level view to a region overview */
+    private static final double[] VIEWPORT_SIZES = {0.005, 0.05, 0.5};
+
+    private static List<Way> ways;
+
+    /**
+     * Global timeout applied to all test methods.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public Timeout globalTimeout = Timeout.seconds(15*60);
+
+    /**
+     * Prepare the test.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules();
+
+    /**
+     * Generates short ways in a 1x1 degree area, and a few long ways crossing large parts of it.
+     */
+    @BeforeClass
+    public static void generateWays() {
+        Random random = new Random(42);
+        ways = new ArrayList<>(WAY_COUNT);
+        for (int i = 0; i < WAY_COUNT; i++) {
+            double lat = random.nextDouble();
+            double lon = random.nextDouble();
+            double size = i % 1000 == 0 ? 0.5 : 0.001;
+            Way w = new Way(i + 1);
+            w.setNodes(Arrays.asList(new Node(new LatLon(lat, lon)),
+                    new Node(new LatLon(lat + random.nextDouble() * size, lon + random.nextDouble() * size))));
+            ways.add(w);
+        }
+    }
+
+    /**
+     * Measures bulk loading and viewport queries of {@link QuadBuckets}.
+     */
+    @Test
+    public void testQuadBuckets() {
+        runTest("QuadBuckets", new QuadBuckets<>());
+    }
+
+    /**
+     * Measures bulk loading and viewport queries of {@link PackedRTree}.
+     */
+    @Test
+    public void testPackedRTree() {
+        runTest("PackedRTree", new PackedRTree<>());
+    }
+
+    private static void runTest(String name, SpatialIndex<Way> index) {
+        PerformanceTestUtils.runPerformanceTest(name + " loading " + WAY_COUNT + " ways", () -> {
+            index.clear();
+            index.addAll(ways);
+            index.flush();
+        });
+        for (double size : VIEWPORT_SIZES) {
+            int[] found = new int[1];
+            PerformanceTestUtils.runPerformanceTest(name + " " + QUERY_COUNT + " viewport queries of " + size + " degrees", () -> {
+                Random random = new Random(1);
+                for (int i = 0; i < QUERY_COUNT; i++) {
+                    double lat = random.nextDouble();
+                    double lon = random.nextDouble();
+                    found[0] += index.search(new BBox(lon, lat, lon + size, lat + size)).size();
+                }
+            });
+            System.out.println(found[0]);
+        }
+    }
+}
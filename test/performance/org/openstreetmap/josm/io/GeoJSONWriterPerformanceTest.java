@@ -0,0 +1,103 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.PerformanceTestUtils;
+import org.openstreetmap.josm.PerformanceTestUtils.PerformanceTestTimer;
+import org.openstreetmap.josm.data.osm.DataSet;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * This test compares the time and the peak heap usage of a GeoJSON export written as a string and streamed to a file.
+ */
+public class GeoJSONWriterPerformanceTest {
+    private static final String DATA_FILE = "nodist/data/neubrandenburg.osm.bz2";
+
+    private static DataSet data;
+
+    /**
+     * Global timeout applied to all test methods.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public Timeout globalTimeout = Timeout.seconds(15*60);
+
+    /**
+     * Temporary folder for the exported files
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Prepare the test.
+     * @throws Exception if the data cannot be read
+     */
+    @BeforeClass
+    public static void createJOSMFixture() throws Exception {
+        JOSMFixture.createPerformanceTestFixture().init(true);
+        try (InputStream in = Compression.getUncompressedFileInputStream(new File(DATA_FILE))) {
+            data = OsmReader.parseDataSet(in, null);
+        }
+    }
+
+    /**
+     * Writes the whole GeoJSON document to a string, then to a file.
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    public void testWriteString() throws IOException {
+        File file = folder.newFile("string.geojson");
+        runTest("GeoJSON string", () -> Files.write(file.toPath(), new GeoJSONWriter(data).write(true).getBytes(StandardCharsets.UTF_8)));
+        assertTrue(file.length() > 0);
+    }
+
+    /**
+     * Streams the GeoJSON document to a file.
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    public void testWriteStreamed() throws IOException {
+        File file = folder.newFile("streamed.geojson");
+        runTest("GeoJSON streamed", () -> {
+            try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                new GeoJSONWriter(data).write(true, out);
+            }
+        });
+        assertTrue(file.length() > 0);
+    }
+
+    @FunctionalInterface
+    private interface Export {
+        void run() throws IOException;
+    }
+
+    private static void runTest(String what, Export export) throws IOException {
+        PerformanceTestTimer timer = PerformanceTestUtils.startTimer("write " + what);
+        ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+        export.run();
+        timer.done();
+        long peak = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                .sum();
+        PerformanceTestUtils.measurementPlotsPluginOutput("write " + what + " peak heap (MB)", peak / (1024.0 * 1024.0));
+    }
+}
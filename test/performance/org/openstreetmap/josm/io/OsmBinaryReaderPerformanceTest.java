@@ -0,0 +1,115 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.PerformanceTestUtils;
+import org.openstreetmap.josm.PerformanceTestUtils.PerformanceTestTimer;
+import org.openstreetmap.josm.data.osm.DataSet;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * This test compares the size and the restore time of the OSM XML and of the binary format used by sessions.
+ * <p>
+ * The data of the neubrandenburg-file is written in both formats to memory, then read back. We ignore disk access times.
+ */
+public class OsmBinaryReaderPerformanceTest {
+    private static final int TIMES = 4;
+    private static final String DATA_FILE = "nodist/data/neubrandenburg.osm.bz2";
+
+    private static DataSet data;
+    private static byte[] xml;
+    private static byte[] binary;
+
+    /**
+     * Global timeout applied to all test methods.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public Timeout globalTimeout = Timeout.seconds(15*60);
+
+    /**
+     * Prepare the test.
+     * @throws Exception if the data cannot be read or written
+     */
+    @BeforeClass
+    public static void createJOSMFixture() throws Exception {
+        JOSMFixture.createPerformanceTestFixture().init(true);
+        try (InputStream in = Compression.getUncompressedFileInputStream(new File(DATA_FILE))) {
+            data = OsmReader.parseDataSet(in, null);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OsmWriter w = OsmWriterFactory.createOsmWriter(new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)),
+                false, data.getVersion())) {
+            w.write(data);
+        }
+        xml = out.toByteArray();
+        out = new ByteArrayOutputStream();
+        try (OsmBinaryWriter w = new OsmBinaryWriter(out)) {
+            w.write(data.snapshot());
+        }
+        binary = out.toByteArray();
+        PerformanceTestUtils.measurementPlotsPluginOutput("session OSM XML size (kB)", xml.length / 1024.0);
+        PerformanceTestUtils.measurementPlotsPluginOutput("session OSM binary size (kB)", binary.length / 1024.0);
+    }
+
+    /**
+     * Restores the OSM XML.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testXml() throws Exception {
+        PerformanceTestTimer timer = PerformanceTestUtils.startTimer("restore OSM XML " + TIMES + " times");
+        DataSet ds = null;
+        for (int i = 0; i < TIMES; i++) {
+            ds = OsmReader.parseDataSet(new ByteArrayInputStream(xml), null);
+        }
+        timer.done();
+        assertEquals(data.allPrimitives().size(), ds.allPrimitives().size());
+    }
+
+    /**
+     * Restores the binary format.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testBinary() throws Exception {
+        PerformanceTestTimer timer = PerformanceTestUtils.startTimer("restore OSM binary " + TIMES + " times");
+        DataSet ds = null;
+        for (int i = 0; i < TIMES; i++) {
+            ds = OsmBinaryReader.parseDataSet(new ByteArrayInputStream(binary), null);
+        }
+        timer.done();
+        assertEquals(data.allPrimitives().size(), ds.allPrimitives().size());
+    }
+
+    /**
+     * Writes the binary format.
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    public void testWriteBinary() throws IOException {
+        PerformanceTestTimer timer = PerformanceTestUtils.startTimer("save OSM binary " + TIMES + " times");
+        for (int i = 0; i < TIMES; i++) {
+            try (OsmBinaryWriter w = new OsmBinaryWriter(new ByteArrayOutputStream())) {
+                w.write(data.snapshot());
+            }
+        }
+        timer.done();
+    }
+}
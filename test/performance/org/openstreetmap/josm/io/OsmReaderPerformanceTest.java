@@ -65,6 +65,33 @@ public class OsmReaderPerformanceTest {
         runTest(".osm-file", true);
     }
 
+    /**
+     * Simulates a plain read of a .osm.bz2 file (from memory), with the primitives built by the pipeline
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testCompressedPipelined() throws Exception {
+        runPipelinedTest("compressed (.osm.bz2), pipelined", false);
+    }
+
+    /**
+     * Simulates a plain read of a .osm file (from memory), with the primitives built by the pipeline
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testPlainPipelined() throws Exception {
+        runPipelinedTest(".osm-file, pipelined", true);
+    }
+
+    private void runPipelinedTest(String what, boolean decompressBeforeRead) throws IllegalDataException, IOException {
+        OsmReader.PROPERTY_PIPELINE.put(true);
+        try {
+            runTest(what, decompressBeforeRead);
+        } finally {
+            OsmReader.PROPERTY_PIPELINE.put(false);
+        }
+    }
+
     private void runTest(String what, boolean decompressBeforeRead) throws IllegalDataException, IOException {
         InputStream is = loadFile(decompressBeforeRead);
         PerformanceTestTimer timer = PerformanceTestUtils.startTimer("load " + what + " " + TIMES + " times");
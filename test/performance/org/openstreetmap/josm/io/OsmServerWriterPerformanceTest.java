@@ -0,0 +1,84 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.put;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.PerformanceTestUtils;
+import org.openstreetmap.josm.PerformanceTestUtils.PerformanceTestTimer;
+import org.openstreetmap.josm.TestUtils;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.testutils.FakeDiffUploadTransformer;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * This test measures the upload in chunks of about 100k new primitives to a mocked API server.
+ */
+public class OsmServerWriterPerformanceTest {
+    private static final int WAYS = 33_000;
+    private static final int CHUNK_SIZE = 5000;
+
+    /**
+     * Global timeout applied to all test methods.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public Timeout globalTimeout = Timeout.seconds(15*60);
+
+    /**
+     * HTTP mock.
+     */
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(options().dynamicPort().disableRequestJournal()
+            .usingFilesUnderDirectory(TestUtils.getTestDataRoot()).extensions(new FakeDiffUploadTransformer()));
+
+    /**
+     * Prepare the test.
+     */
+    @BeforeClass
+    public static void createJOSMFixture() {
+        JOSMFixture.createPerformanceTestFixture().init(true);
+    }
+
+    /**
+     * Setup the mocked API.
+     */
+    @Before
+    public void setUp() {
+        Config.getPref().put("osm-server.url", wireMockRule.url("/__files/api"));
+        Config.getPref().put("osm-server.auth-method", "basic");
+        Config.getPref().put("osm-server.username", "josm");
+        Config.getPref().put("osm-server.password", "josm");
+        wireMockRule.stubFor(put(urlEqualTo("/__files/api/0.6/changeset/1")).willReturn(aResponse().withStatus(200)));
+        wireMockRule.stubFor(post(urlEqualTo("/__files/api/0.6/changeset/1/upload"))
+                .willReturn(aResponse().withTransformers(FakeDiffUploadTransformer.NAME)));
+    }
+
+    /**
+     * Uploads about 100k new primitives in chunks.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testUploadInChunks() throws Exception {
+        List<OsmPrimitive> primitives = OsmServerWriterTest.createPrimitives(new DataSet(), WAYS);
+        PerformanceTestTimer timer = PerformanceTestUtils.startTimer("upload " + primitives.size() + " primitives in chunks of " + CHUNK_SIZE);
+        OsmServerWriterTest.uploadInChunks(primitives, CHUNK_SIZE);
+        timer.done();
+    }
+}
@@ -0,0 +1,91 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.gpx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests for class {@link GpxTrackPoints}.
+ */
+public class GpxTrackPointsTest {
+
+    /**
+     * Setup test.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules();
+
+    private static GpxTrackPoints createPoints() {
+        GpxTrackPoints points = new GpxTrackPoints();
+        for (int i = 0; i < 100; i++) {
+            points.addPoint(50 + i / 1000.0, 8 + i / 1000.0);
+        }
+        points.setElevation("123.5");
+        points.setTimeInMillis(1_500_000_000_000L);
+        points.addPoint(51, 9);
+        points.setElevation("42");
+        points.addPoint(52, 10);
+        points.setElevation("42.50");
+        points.getOrCreateAttributes().put(GpxConstants.GPX_NAME, "last");
+        points.trimToSize();
+        return points;
+    }
+
+    /**
+     * Test that the way points created from the columns have the attributes as read.
+     */
+    @Test
+    public void testWayPoints() {
+        GpxTrackPoints points = createPoints();
+        assertEquals(102, points.size());
+        WayPoint first = points.get(0);
+        assertEquals(new LatLon(50, 8), first.getCoor());
+        assertTrue(first.attr.isEmpty());
+        WayPoint withTime = points.get(99);
+        assertEquals("123.5", withTime.get(GpxConstants.PT_ELE));
+        assertEquals(1_500_000_000_000L, withTime.getTimeInMillis());
+        assertEquals("42", points.get(100).get(GpxConstants.PT_ELE));
+        assertFalse(points.get(100).hasDate());
+        WayPoint last = points.get(101);
+        assertEquals("42.50", last.get(GpxConstants.PT_ELE));
+        assertEquals("last", last.get(GpxConstants.GPX_NAME));
+        // the way points are only created once
+        assertSame(first, points.get(0));
+    }
+
+    /**
+     * Test that a segment of track points has the same bounds, length and way points as a segment of way points.
+     */
+    @Test
+    public void testSegment() {
+        GpxTrackSegment compact = new GpxTrackSegment(createPoints());
+        GpxTrackSegment expected = new GpxTrackSegment(Arrays.asList(createPoints().toArray(new WayPoint[0])));
+        assertEquals(expected.getBounds(), compact.getBounds());
+        assertEquals(expected.length(), compact.length(), 1e-9);
+        assertEquals(expected, compact);
+        assertNull(new GpxTrackSegment(new GpxTrackPoints()).getBounds());
+    }
+
+    /**
+     * Test that no point can be added once the way points are created.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testAddAfterAccess() {
+        GpxTrackPoints points = createPoints();
+        points.get(0);
+        points.addPoint(0, 0);
+    }
+}
@@ -0,0 +1,206 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests for class {@link ConcurrentStorage}.
+ */
+public class ConcurrentStorageTest {
+
+    /**
+     * Setup test.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules();
+
+    /**
+     * Unit test of add, lookup and removal, including growth of the table.
+     */
+    @Test
+    public void testAddGetRemove() {
+        ConcurrentStorage<OsmPrimitive> storage = new ConcurrentStorage<>(new Storage.PrimitiveIdHash(), false);
+        Map<PrimitiveId, OsmPrimitive> map = storage.foreignKey(new Storage.PrimitiveIdHash());
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            Node n = new Node(i);
+            nodes.add(n);
+            assertTrue(storage.add(n));
+        }
+        assertFalse(storage.add(new Node(1)));
+        assertEquals(1000, storage.size());
+        for (Node n : nodes) {
+            assertSame(n, storage.get(new Node(n.getUniqueId())));
+            assertSame(n, map.get(new SimplePrimitiveId(n.getUniqueId(), OsmPrimitiveType.NODE)));
+        }
+        assertNull(map.get(new SimplePrimitiveId(1, OsmPrimitiveType.WAY)));
+
+        for (int i = 0; i < nodes.size(); i += 2) {
+            assertTrue(storage.remove(nodes.get(i)));
+        }
+        assertEquals(500, storage.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            assertEquals(i % 2 == 1, storage.contains(nodes.get(i)));
+        }
+        // slots of removed entries are reused
+        for (int i = 0; i < nodes.size(); i += 2) {
+            assertTrue(storage.add(nodes.get(i)));
+        }
+        assertEquals(1000, storage.size());
+
+        Node replacement = new Node(1);
+        assertSame(nodes.get(0), storage.put(replacement));
+        assertSame(replacement, map.get(replacement.getPrimitiveId()));
+
+        storage.clear();
+        assertTrue(storage.isEmpty());
+        assertFalse(storage.contains(replacement));
+    }
+
+    /**
+     * Unit test of the safe and unsafe iterators.
+     */
+    @Test
+    public void testIterator() {
+        ConcurrentStorage<OsmPrimitive> safe = new ConcurrentStorage<>(new Storage.PrimitiveIdHash(), true);
+        ConcurrentStorage<OsmPrimitive> unsafe = new ConcurrentStorage<>(new Storage.PrimitiveIdHash(), false);
+        for (int i = 1; i <= 100; i++) {
+            safe.add(new Node(i));
+            unsafe.add(new Node(i));
+        }
+        // the safe iterator is not affected by modifications
+        int count = 0;
+        for (OsmPrimitive p : safe) {
+            safe.remove(p);
+            safe.add(new Way(p.getUniqueId()));
+            count++;
+        }
+        assertEquals(100, count);
+        assertEquals(100, safe.size());
+        assertTrue(safe.stream().allMatch(p -> p instanceof Way));
+
+        Iterator<OsmPrimitive> it = unsafe.iterator();
+        while (it.hasNext()) {
+            if (it.next().getUniqueId() % 2 == 0) {
+                it.remove();
+            }
+        }
+        assertEquals(50, unsafe.size());
+    }
+
+    /**
+     * Checks that concurrent readers always find the entries that are not modified.
+     * @throws InterruptedException if interrupted
+     */
+    @Test
+    public void testConcurrentReaders() throws InterruptedException {
+        ConcurrentStorage<OsmPrimitive> storage = new ConcurrentStorage<>(new Storage.PrimitiveIdHash(), true);
+        Map<PrimitiveId, OsmPrimitive> map = storage.foreignKey(new Storage.PrimitiveIdHash());
+        for (int i = 1; i <= 1000; i++) {
+            storage.add(new Node(i));
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger misses = new AtomicInteger();
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            readers.add(new Thread(() -> {
+                while (running.get()) {
+                    for (int i = 1; i <= 1000; i++) {
+                        if (map.get(new SimplePrimitiveId(i, OsmPrimitiveType.NODE)) == null) {
+                            misses.incrementAndGet();
+                        }
+                    }
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+        // grow, shrink and rebuild the table while readers are running
+        for (int round = 0; round < 20; round++) {
+            for (int i = 1; i <= 5000; i++) {
+                storage.add(new Way(i));
+            }
+            for (int i = 1; i <= 5000; i++) {
+                storage.remove(new Way(i));
+            }
+        }
+        running.set(false);
+        for (Thread t : readers) {
+            t.join();
+        }
+        assertEquals(0, misses.get());
+        assertEquals(1000, storage.size());
+    }
+
+    /**
+     * Checks that a {@link DataSet} can use a {@link ConcurrentStorage}.
+     */
+    @Test
+    public void testDataSet() {
+        DataSet ds = new DataSet(true);
+        Node n = new Node(1);
+        ds.addPrimitive(n);
+        assertSame(n, ds.getPrimitiveById(1, OsmPrimitiveType.NODE));
+        assertTrue(ds.containsNode(n));
+        ds.removePrimitive(n);
+        assertNull(ds.getPrimitiveById(1, OsmPrimitiveType.NODE));
+        assertTrue(ds.isEmpty());
+    }
+
+    /**
+     * Checks that the lookups by id of a {@link DataSet} using a {@link ConcurrentStorage} are served by it while another
+     * thread adds and removes primitives.
+     * @throws InterruptedException if interrupted
+     */
+    @Test
+    public void testDataSetConcurrentLookup() throws InterruptedException {
+        DataSet ds = new DataSet(true);
+        Node[] nodes = new Node[5000];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new Node(i + 1);
+        }
+        ds.addPrimitive(nodes[0]);
+        AtomicBoolean failed = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            for (int round = 0; round < 100_000; round++) {
+                int i = round % nodes.length;
+                OsmPrimitive p = ds.getPrimitiveById(i + 1, OsmPrimitiveType.NODE);
+                if ((i == 0 && p != nodes[0]) || (p != null && p != nodes[i])) {
+                    failed.set(true);
+                }
+            }
+        });
+        reader.start();
+        while (reader.isAlive()) {
+            ds.update(() -> {
+                for (int i = 1; i < nodes.length; i++) {
+                    ds.addPrimitive(nodes[i]);
+                }
+            });
+            ds.update(() -> {
+                for (int i = 1; i < nodes.length; i++) {
+                    ds.removePrimitive(nodes[i]);
+                }
+            });
+        }
+        reader.join();
+        assertFalse(failed.get());
+    }
+}
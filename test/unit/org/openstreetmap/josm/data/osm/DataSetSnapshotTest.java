@@ -0,0 +1,164 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of {@link DataSetSnapshot}.
+ */
+public class DataSetSnapshotTest {
+
+    /**
+     * Setup test.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules();
+
+    private static DataSet createDataSet(List<Node> nodes, List<Way> ways) {
+        DataSet ds = new DataSet();
+        for (int i = 0; i < 5000; i++) {
+            Node n = new Node(new LatLon(i * 0.001, i * 0.002));
+            n.put("ref", Integer.toString(i));
+            ds.addPrimitive(n);
+            nodes.add(n);
+            if (i % 2 == 1) {
+                Way w = new Way();
+                w.setNodes(Arrays.asList(nodes.get(i - 1), n));
+                ds.addPrimitive(w);
+                ways.add(w);
+            }
+        }
+        return ds;
+    }
+
+    /**
+     * Checks that a snapshot is not affected by later changes, and that unchanged primitives are shared.
+     */
+    @Test
+    public void testSnapshot() {
+        List<Node> nodes = new ArrayList<>();
+        List<Way> ways = new ArrayList<>();
+        DataSet ds = createDataSet(nodes, ways);
+        Relation r = new Relation();
+        r.addMember(new RelationMember("outer", ways.get(0)));
+        ds.addPrimitive(r);
+
+        DataSetSnapshot s1 = ds.snapshot();
+        assertEquals(ds.allPrimitives().size(), s1.size());
+        assertEquals(5000, s1.getNodes().size());
+        assertEquals(2500, s1.getWays().size());
+        assertEquals(1, s1.getRelations().size());
+        assertSame(s1, ds.snapshot());
+
+        Node moved = nodes.get(10);
+        Node removed = nodes.get(4999);
+        Way way = ways.get(0);
+        moved.setCoor(new LatLon(50, 50));
+        moved.put("ref", "moved");
+        ds.removePrimitive(ways.get(ways.size() - 1));
+        ds.removePrimitive(removed);
+        way.addNode(nodes.get(2));
+        r.setMembers(null);
+        Node added = new Node(new LatLon(1, 1));
+        ds.addPrimitive(added);
+
+        DataSetSnapshot s2 = ds.snapshot();
+        assertEquals(ds.allPrimitives().size(), s2.size());
+        assertEquals(s2.size(), s2.getPrimitives().size());
+
+        // first snapshot unchanged
+        NodeData n1 = (NodeData) s1.getPrimitiveById(moved);
+        assertEquals("10", n1.get("ref"));
+        assertEquals(new LatLon(0.01, 0.02), n1.getCoor());
+        assertEquals(2, ((WayData) s1.getPrimitiveById(way)).getNodesCount());
+        assertEquals(1, ((RelationData) s1.getPrimitiveById(r)).getMembersCount());
+        assertTrue(s1.getPrimitiveById(removed) != null);
+        assertNull(s1.getPrimitiveById(added));
+
+        // second snapshot up to date
+        NodeData n2 = (NodeData) s2.getPrimitiveById(moved);
+        assertEquals("moved", n2.get("ref"));
+        assertEquals(new LatLon(50, 50), n2.getCoor());
+        assertEquals(3, ((WayData) s2.getPrimitiveById(way)).getNodesCount());
+        assertEquals(0, ((RelationData) s2.getPrimitiveById(r)).getMembersCount());
+        assertNull(s2.getPrimitiveById(removed));
+        assertTrue(s2.getPrimitiveById(added) != null);
+
+        // unchanged primitives are shared
+        assertSame(s1.getPrimitiveById(nodes.get(100)), s2.getPrimitiveById(nodes.get(100)));
+        assertTrue(s1.isUnchangedIn(nodes.get(100), s2));
+        assertFalse(s1.isUnchangedIn(moved, s2));
+        assertFalse(s1.isUnchangedIn(removed, s2));
+    }
+
+    /**
+     * Checks that id changes and {@link DataSet#clear()} are taken into account.
+     */
+    @Test
+    public void testIdChangeAndClear() {
+        DataSet ds = createDataSet(new ArrayList<>(), new ArrayList<>());
+        Node n = new Node(LatLon.ZERO);
+        ds.addPrimitive(n);
+        PrimitiveId newId = n.getPrimitiveId();
+        DataSetSnapshot s1 = ds.snapshot();
+        n.setOsmId(1234, 1);
+        DataSetSnapshot s2 = ds.snapshot();
+        assertTrue(s1.getPrimitiveById(newId) != null);
+        assertNull(s2.getPrimitiveById(newId));
+        assertEquals(1, s2.getPrimitiveById(n).getVersion());
+        assertEquals(s1.size(), s2.size());
+
+        ds.clear();
+        assertEquals(0, ds.snapshot().size());
+        assertEquals(s1.size(), s1.getPrimitives().size());
+    }
+
+    /**
+     * Checks that the data set forgets its last snapshot once all snapshots are released.
+     */
+    @Test
+    public void testRelease() {
+        DataSet ds = createDataSet(new ArrayList<>(), new ArrayList<>());
+        DataSetSnapshot s1 = ds.snapshot();
+        DataSetSnapshot s2 = ds.snapshot();
+        assertSame(s1, s2);
+        ds.releaseSnapshot(s1);
+        assertSame(s1, ds.snapshot());
+        ds.releaseSnapshot(s1);
+        ds.releaseSnapshot(s2);
+        DataSetSnapshot s3 = ds.snapshot();
+        assertNotSame(s1, s3);
+        assertEquals(s1.size(), s3.size());
+        ds.releaseSnapshot(s3);
+    }
+
+    /**
+     * Checks that the data set metadata are taken into account.
+     */
+    @Test
+    public void testMetadata() {
+        DataSet ds = new DataSet();
+        DataSetSnapshot s1 = ds.snapshot();
+        ds.setUploadPolicy(UploadPolicy.BLOCKED);
+        DataSetSnapshot s2 = ds.snapshot();
+        assertEquals(UploadPolicy.NORMAL, s1.getUploadPolicy());
+        assertEquals(UploadPolicy.BLOCKED, s2.getUploadPolicy());
+    }
+}
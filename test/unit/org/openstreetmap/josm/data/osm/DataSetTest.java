@@ -3,12 +3,16 @@ package org.openstreetmap.josm.data.osm;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Assert;
 import org.junit.Rule;
@@ -17,6 +21,11 @@ import org.openstreetmap.josm.TestUtils;
 import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.DataSource;
 import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent.DatasetEventType;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetEventBatch;
+import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
 import org.openstreetmap.josm.data.osm.event.DataSourceAddedEvent;
 import org.openstreetmap.josm.data.osm.event.DataSourceRemovedEvent;
 import org.openstreetmap.josm.testutils.JOSMTestRules;
@@ -358,4 +367,171 @@ public class DataSetTest {
         assertEquals(4, copy.allPrimitives().size());
         assertTrue(copy.isLocked());
     }
+
+    /**
+     * Unit test of {@link DataSet#setOsmIds}.
+     */
+    @Test
+    public void testSetOsmIds() {
+        DataSet ds = new DataSet();
+        Node n1 = new Node(new LatLon(0, 0));
+        Node n2 = new Node(new LatLon(0, 0.01));
+        Way w = TestUtils.newWay("", n1, n2);
+        ds.update(() -> {
+            ds.addPrimitive(n1);
+            ds.addPrimitive(n2);
+            ds.addPrimitive(w);
+        });
+        ds.setSelected(n1, w);
+        long oldId = n1.getUniqueId();
+        List<AbstractDatasetChangedEvent> events = new ArrayList<>();
+        ds.addDataSetListener(new DataSetListenerAdapter(events::add));
+
+        ds.setOsmIds(Arrays.asList(n1, n2, w), new long[] {10, 11, 12}, new int[] {1, 1, 1});
+        assertEquals(1, events.size());
+        assertEquals(DatasetEventType.DATA_CHANGED, events.get(0).getType());
+        DataSetEventBatch batch = ((DataChangedEvent) events.get(0)).getBatch();
+        assertNotNull(batch);
+        assertFalse(batch.isCompleteChange());
+        assertEquals(new HashSet<>(Arrays.asList(n1, n2, w)), batch.getChangedPrimitives(DatasetEventType.PRIMITIVE_FLAGS_CHANGED));
+        assertEquals(n1, ds.getPrimitiveById(10, OsmPrimitiveType.NODE));
+        assertEquals(w, ds.getPrimitiveById(12, OsmPrimitiveType.WAY));
+        assertNull(ds.getPrimitiveById(oldId, OsmPrimitiveType.NODE));
+        assertEquals(3, ds.allPrimitives().size());
+        assertEquals(1, n1.getVersion());
+        assertTrue(ds.getSelected().isEmpty());
+        assertEquals(Arrays.asList(n1), ds.searchNodes(new BBox(-0.001, -0.001, 0.001, 0.001)));
+
+        // same ids, new versions: nothing to rekey
+        ds.setOsmIds(Arrays.asList(n1), new long[] {10}, new int[] {2});
+        assertEquals(2, n1.getVersion());
+        assertEquals(n1, ds.getPrimitiveById(10, OsmPrimitiveType.NODE));
+    }
+
+    /**
+     * Unit test of {@link DataSet#setOsmIds} with an id which is already used.
+     */
+    @Test(expected = DataIntegrityProblemException.class)
+    public void testSetOsmIdsConflict() {
+        DataSet ds = new DataSet();
+        Node n1 = new Node(new LatLon(0, 0));
+        Node n2 = new Node(5, 1);
+        ds.addPrimitive(n1);
+        ds.addPrimitive(n2);
+        ds.setOsmIds(Arrays.asList(n1), new long[] {5}, new int[] {1});
+    }
+
+    /**
+     * Unit test of {@link DataSet#setOsmIds} with an id which is already used: nothing is changed.
+     */
+    @Test
+    public void testSetOsmIdsConflictUnchanged() {
+        DataSet ds = new DataSet();
+        Node n1 = new Node(new LatLon(0, 0));
+        Node n2 = new Node(5, 1);
+        Node n3 = new Node(new LatLon(0, 0.01));
+        ds.update(() -> {
+            ds.addPrimitive(n1);
+            ds.addPrimitive(n2);
+            ds.addPrimitive(n3);
+        });
+        long oldId = n1.getUniqueId();
+        try {
+            ds.setOsmIds(Arrays.asList(n1, n3), new long[] {7, 5}, new int[] {1, 1});
+            Assert.fail("DataIntegrityProblemException expected");
+        } catch (DataIntegrityProblemException e) {
+            // expected
+        }
+        assertEquals(oldId, n1.getUniqueId());
+        assertEquals(n1, ds.getPrimitiveById(oldId, OsmPrimitiveType.NODE));
+        assertEquals(n3, ds.getPrimitiveById(n3.getUniqueId(), OsmPrimitiveType.NODE));
+        assertEquals(n2, ds.getPrimitiveById(5, OsmPrimitiveType.NODE));
+        assertNull(ds.getPrimitiveById(7, OsmPrimitiveType.NODE));
+        assertEquals(3, ds.allPrimitives().size());
+    }
+
+    /**
+     * Checks the lookups by id of a {@link DataSet}, including after an id change.
+     */
+    @Test
+    public void testDataSetLookup() {
+        DataSet ds = new DataSet();
+        Node n = new Node(1);
+        Way w = new Way(1);
+        Relation r = new Relation(1);
+        Node newNode = new Node();
+        ds.addPrimitive(n);
+        ds.addPrimitive(w);
+        ds.addPrimitive(r);
+        ds.addPrimitive(newNode);
+        assertSame(n, ds.getNode(1));
+        assertSame(w, ds.getWay(1));
+        assertSame(r, ds.getRelation(1));
+        assertSame(newNode, ds.getNode(newNode.getUniqueId()));
+        assertSame(w, ds.getPrimitiveById(new SimplePrimitiveId(1, OsmPrimitiveType.WAY)));
+        assertNull(ds.getNode(2));
+
+        newNode.setOsmId(2, 1);
+        assertSame(newNode, ds.getNode(2));
+        ds.removePrimitive(n);
+        assertNull(ds.getNode(1));
+        ds.clear();
+        assertNull(ds.getWay(1));
+    }
+
+    /**
+     * Checks that lookups done while another thread adds and removes primitives always return the right primitive.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testDataSetConcurrentLookup() throws Exception {
+        DataSet ds = new DataSet();
+        Node[] nodes = new Node[10000];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new Node(i + 1);
+        }
+        ds.addPrimitive(nodes[0]);
+        Thread writer = new Thread(() -> {
+            // the index is resized and entries are shifted back by the removals
+            for (int round = 0; round < 20; round++) {
+                for (int i = 1; i < nodes.length; i++) {
+                    ds.addPrimitive(nodes[i]);
+                }
+                for (int i = 1; i < nodes.length; i++) {
+                    ds.removePrimitive(nodes[i]);
+                }
+            }
+        });
+        writer.start();
+        Random random = new Random(42);
+        while (writer.isAlive()) {
+            assertSame(nodes[0], ds.getNode(1));
+            int i = random.nextInt(nodes.length);
+            Node n = ds.getNode(i + 1);
+            assertTrue(n == null || n == nodes[i]);
+        }
+        writer.join();
+        assertEquals(1, ds.getNodes().size());
+    }
+
+    /**
+     * Checks that lookups by id from another thread do not wait for the end of an update.
+     * @throws Exception if an error occurs
+     */
+    @Test(timeout = 10_000)
+    public void testLookupDuringUpdate() throws Exception {
+        DataSet ds = new DataSet();
+        Node n = new Node(1);
+        ds.addPrimitive(n);
+        ds.beginUpdate();
+        try {
+            Node[] found = new Node[1];
+            Thread reader = new Thread(() -> found[0] = ds.getNode(1));
+            reader.start();
+            reader.join();
+            assertSame(n, found[0]);
+        } finally {
+            ds.endUpdate();
+        }
+    }
 }
@@ -0,0 +1,284 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openstreetmap.josm.command.ChangePropertyCommand;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.UndoRedoHandler;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.io.MappedOsmReader;
+import org.openstreetmap.josm.io.OsmReader;
+import org.openstreetmap.josm.io.OsmWriter;
+import org.openstreetmap.josm.io.OsmWriterFactory;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of {@link MappedDataStore}.
+ */
+public class MappedDataStoreTest {
+
+    /**
+     * Setup test.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules().commands();
+
+    /**
+     * Temporary folder of the stores.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String OSM = "<?xml version='1.0' encoding='UTF-8'?>\n" +
+            "<osm version='0.6' generator='test'>\n" +
+            "  <bounds minlat='0' minlon='0' maxlat='1' maxlon='1' origin='test'/>\n" +
+            "  <node id='1' version='1' changeset='10' uid='7' user='u' timestamp='2020-01-01T00:00:00Z' lat='0.1' lon='0.1'>\n" +
+            "    <tag k='amenity' v='cafe'/>\n" +
+            "  </node>\n" +
+            "  <node id='2' version='2' lat='0.12' lon='0.12'/>\n" +
+            "  <node id='3' version='1' lat='0.9' lon='0.9'>\n" +
+            "    <tag k='amenity' v='cafe'/>\n" +
+            "    <tag k='name' v='Café &amp; Co'/>\n" +
+            "  </node>\n" +
+            "  <node id='4' version='1' lat='0.5' lon='0.5'/>\n" +
+            "  <way id='10' version='1'>\n" +
+            "    <nd ref='1'/><nd ref='2'/>\n" +
+            "    <tag k='highway' v='service'/>\n" +
+            "  </way>\n" +
+            "  <way id='11' version='3'>\n" +
+            "    <nd ref='2'/><nd ref='3'/><nd ref='99'/>\n" +
+            "  </way>\n" +
+            "  <relation id='20' version='1'>\n" +
+            "    <member type='way' ref='10' role='outer'/>\n" +
+            "    <member type='node' ref='4' role=''/>\n" +
+            "    <tag k='type' v='multipolygon'/>\n" +
+            "  </relation>\n" +
+            "</osm>";
+
+    private MappedDataStore createStore(String osm) throws IOException, IllegalDataException {
+        return MappedOsmReader.parseMappedDataStore(new ByteArrayInputStream(osm.getBytes(StandardCharsets.UTF_8)),
+                new File(folder.getRoot(), "store"), null);
+    }
+
+    private static List<Long> ids(List<PrimitiveData> primitives, OsmPrimitiveType type) {
+        return primitives.stream().filter(p -> p.getType() == type).map(PrimitiveData::getUniqueId).sorted().collect(Collectors.toList());
+    }
+
+    /**
+     * Checks reads crossing the segments of a {@link MappedFile}.
+     * @throws IOException in case of I/O error
+     */
+    @Test
+    public void testMappedFileSegments() throws IOException {
+        MappedFile file = MappedFile.create(folder.newFile(), 12);
+        for (int i = 0; i < 3000; i++) {
+            file.appendShort((short) i);
+            file.appendLong(i * 1000000007L);
+            file.appendBytes(new byte[] {(byte) i});
+        }
+        file.seal();
+        byte[] b = new byte[1];
+        for (int i = 0; i < 3000; i++) {
+            assertEquals((short) i, file.getShort(11L * i));
+            assertEquals(i * 1000000007L, file.getLong(11L * i + 2));
+            file.getBytes(11L * i + 10, b);
+            assertEquals((byte) i, b[0]);
+        }
+        file.close();
+        // reads still running when the file is closed complete normally
+        assertEquals(2999 * 1000000007L, file.getLong(11L * 2999 + 2));
+    }
+
+    /**
+     * Checks the area queries of a store.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testGetPrimitives() throws Exception {
+        try (MappedDataStore store = createStore(OSM)) {
+            assertEquals(4, store.size(OsmPrimitiveType.NODE));
+            assertEquals(2, store.size(OsmPrimitiveType.WAY));
+            assertEquals(1, store.size(OsmPrimitiveType.RELATION));
+            assertEquals(1, store.getDataSources().size());
+
+            NodeData n3 = (NodeData) store.getPrimitiveById(new SimplePrimitiveId(3, OsmPrimitiveType.NODE));
+            assertEquals("Café & Co", n3.get("name"));
+            assertEquals(new LatLon(0.9, 0.9), n3.getCoor());
+            NodeData n1 = (NodeData) store.getPrimitiveById(new SimplePrimitiveId(1, OsmPrimitiveType.NODE));
+            assertEquals(10, n1.getChangesetId());
+            assertEquals("u", n1.getUser().getName());
+            assertEquals(1577836800, n1.getRawTimestamp());
+            assertNull(store.getPrimitiveById(new SimplePrimitiveId(5, OsmPrimitiveType.NODE)));
+
+            List<PrimitiveData> around1 = store.getPrimitives(new Bounds(0.09, 0.09, 0.11, 0.11));
+            // node 1, way 10 and its node 2, relation 20 having way 10 as member
+            assertEquals(Arrays.asList(1L, 2L), ids(around1, OsmPrimitiveType.NODE));
+            assertEquals(Arrays.asList(10L), ids(around1, OsmPrimitiveType.WAY));
+            assertEquals(Arrays.asList(20L), ids(around1, OsmPrimitiveType.RELATION));
+
+            List<PrimitiveData> around3 = store.getPrimitives(new Bounds(0.85, 0.85, 0.95, 0.95));
+            // way 11 goes from 0.12 to 0.9, node 99 is missing
+            assertEquals(Arrays.asList(2L, 3L), ids(around3, OsmPrimitiveType.NODE));
+            assertEquals(Arrays.asList(11L), ids(around3, OsmPrimitiveType.WAY));
+            assertTrue(ids(around3, OsmPrimitiveType.RELATION).isEmpty());
+
+            assertTrue(store.getPrimitives(new Bounds(10, 10, 11, 11)).isEmpty());
+        }
+    }
+
+    /**
+     * Checks the materialization of a store in a data set, and the writing of both.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testMaterializeAndWrite() throws Exception {
+        try (MappedDataStore store = createStore(OSM)) {
+            DataSet ds = store.createDataSet();
+            Bounds view = new Bounds(0.09, 0.09, 0.11, 0.11);
+            assertFalse(store.isMaterialized(view));
+            store.materialize(ds, view, Integer.MAX_VALUE);
+            assertTrue(store.isMaterialized(view));
+            Node n1 = (Node) ds.getPrimitiveById(1, OsmPrimitiveType.NODE);
+            assertNotNull(n1);
+            assertEquals("cafe", n1.get("amenity"));
+            assertEquals(1, ds.searchNodes(new BBox(0.09, 0.09, 0.11, 0.11)).size());
+            Relation r = (Relation) ds.getPrimitiveById(20, OsmPrimitiveType.RELATION);
+            assertFalse(r.isIncomplete());
+            assertTrue(ds.getPrimitiveById(4, OsmPrimitiveType.NODE).isIncomplete());
+
+            // the written file contains all stored primitives, with the local changes
+            n1.put("amenity", "bar");
+            ds.addPrimitive(new Node(new LatLon(0.2, 0.2)));
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(baos, StandardCharsets.UTF_8));
+                 OsmWriter writer = OsmWriterFactory.createOsmWriter(out, false, OsmWriter.DEFAULT_API_VERSION)) {
+                writer.write(ds.snapshot(), store);
+            }
+            DataSet written = OsmReader.parseDataSet(new ByteArrayInputStream(baos.toByteArray()), null);
+            // node 99 of way 11 is missing from the file
+            assertEquals(5, written.getNodes().stream().filter(n -> !n.isIncomplete()).count());
+            assertEquals(2, written.getWays().size());
+            assertEquals(1, written.getRelations().size());
+            assertEquals("bar", written.getPrimitiveById(1, OsmPrimitiveType.NODE).get("amenity"));
+            assertFalse(written.getPrimitiveById(4, OsmPrimitiveType.NODE).isIncomplete());
+
+            // local changes are kept when materializing again
+            store.materialize(ds, new Bounds(0, 0, 1, 1), Integer.MAX_VALUE);
+            assertEquals("bar", n1.get("amenity"));
+            assertFalse(ds.getPrimitiveById(4, OsmPrimitiveType.NODE).isIncomplete());
+            assertFalse(r.hasIncompleteMembers());
+        }
+    }
+
+    /**
+     * Checks that the least recently viewed tiles are evicted from the data set.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testEviction() throws Exception {
+        try (MappedDataStore store = createStore(OSM)) {
+            DataSet ds = store.createDataSet();
+            Bounds view1 = new Bounds(0.09, 0.09, 0.11, 0.11);
+            Bounds view2 = new Bounds(0.89, 0.89, 0.91, 0.91);
+            store.materialize(ds, view1, 4);
+            Node n1 = (Node) ds.getPrimitiveById(1, OsmPrimitiveType.NODE);
+            assertNotNull(ds.getPrimitiveById(10, OsmPrimitiveType.WAY));
+            n1.put("amenity", "bar");
+
+            store.materialize(ds, view2, 4);
+            assertFalse(store.isMaterialized(view1));
+            assertTrue(store.isMaterialized(view2));
+            // modified primitives are kept, as well as the nodes of the ways of the other tiles
+            assertEquals(ds, n1.getDataSet());
+            assertNotNull(ds.getPrimitiveById(2, OsmPrimitiveType.NODE));
+            assertNotNull(ds.getPrimitiveById(11, OsmPrimitiveType.WAY));
+            assertNull(ds.getPrimitiveById(10, OsmPrimitiveType.WAY));
+            assertNull(ds.getPrimitiveById(20, OsmPrimitiveType.RELATION));
+            assertNull(ds.getPrimitiveById(4, OsmPrimitiveType.NODE));
+
+            // evicted primitives are materialized again when viewed
+            store.materialize(ds, view1, 4);
+            assertNotNull(ds.getPrimitiveById(10, OsmPrimitiveType.WAY));
+            assertEquals("bar", n1.get("amenity"));
+        }
+    }
+
+    /**
+     * Checks that the primitives used by the commands which can be undone or redone are not evicted.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testEvictionKeepsCommandPrimitives() throws Exception {
+        try (MappedDataStore store = createStore(OSM)) {
+            DataSet ds = store.createDataSet();
+            store.materialize(ds, new Bounds(0.09, 0.09, 0.11, 0.11), 4);
+            Node n1 = (Node) ds.getPrimitiveById(1, OsmPrimitiveType.NODE);
+            UndoRedoHandler.getInstance().add(new ChangePropertyCommand(n1, "amenity", "bar"));
+            UndoRedoHandler.getInstance().undo();
+            assertFalse(n1.isModified());
+
+            store.materialize(ds, new Bounds(0.89, 0.89, 0.91, 0.91), 4);
+            assertNull(ds.getPrimitiveById(10, OsmPrimitiveType.WAY));
+            assertEquals(ds, n1.getDataSet());
+
+            UndoRedoHandler.getInstance().redo();
+            assertEquals("bar", ds.getPrimitiveById(1, OsmPrimitiveType.NODE).get("amenity"));
+        }
+    }
+
+    /**
+     * Checks that only the directories of the stores of previous sessions are deleted.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testDeleteStaleDirectories() throws Exception {
+        try (MappedDataStore store = createStore(OSM)) {
+            File stale = folder.newFolder("stale");
+            assertTrue(new File(stale, "store.lock").createNewFile());
+            assertTrue(new File(stale, "nodes.bin").createNewFile());
+            File unlocked = folder.newFolder("unlocked");
+            File old = folder.newFolder("old");
+            assertTrue(old.setLastModified(System.currentTimeMillis() - 86_400_000L));
+
+            MappedDataStore.deleteStaleDirectories(folder.getRoot());
+            assertFalse(stale.exists());
+            assertFalse(old.exists());
+            assertTrue(unlocked.exists());
+            assertTrue(new File(folder.getRoot(), "store").exists());
+            assertEquals(4, store.size(OsmPrimitiveType.NODE));
+        }
+        assertFalse(new File(folder.getRoot(), "store").exists());
+    }
+
+    /**
+     * Checks that files not sorted by id are rejected.
+     * @throws IOException in case of I/O error
+     */
+    @Test(expected = IllegalDataException.class)
+    public void testUnsorted() throws IOException, IllegalDataException {
+        createStore("<osm version='0.6'><node id='2' lat='0' lon='0'/><node id='1' lat='0' lon='0'/></osm>").close();
+    }
+}
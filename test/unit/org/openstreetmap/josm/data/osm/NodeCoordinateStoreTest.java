@@ -0,0 +1,186 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.projection.ProjectionRegistry;
+import org.openstreetmap.josm.data.projection.Projections;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of the {@link NodeCoordinateStore} class.
+ */
+public class NodeCoordinateStoreTest {
+
+    /**
+     * Setup test.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules().projection();
+
+    /**
+     * Checks that coordinates are stored without any loss of precision.
+     */
+    @Test
+    public void testLatLon() {
+        NodeCoordinateStore store = new NodeCoordinateStore(1);
+        int s1 = store.allocate();
+        int s2 = store.allocate();
+        int s3 = store.allocate();
+        assertEquals(3, store.size());
+        assertTrue(Double.isNaN(store.lat(s1)));
+        assertTrue(Double.isNaN(store.lon(s1)));
+
+        // OSM precision, stored as fixed-point
+        store.setLatLon(s1, 53.5587423, -179.9999999);
+        // full precision
+        store.setLatLon(s2, 1 / 3.0, Math.PI);
+        // partially known
+        store.setLatLon(s3, Double.NaN, 12.5);
+
+        assertEquals(Double.doubleToLongBits(53.5587423), Double.doubleToLongBits(store.lat(s1)));
+        assertEquals(Double.doubleToLongBits(-179.9999999), Double.doubleToLongBits(store.lon(s1)));
+        assertEquals(Double.doubleToLongBits(1 / 3.0), Double.doubleToLongBits(store.lat(s2)));
+        assertEquals(Double.doubleToLongBits(Math.PI), Double.doubleToLongBits(store.lon(s2)));
+        assertTrue(Double.isNaN(store.lat(s3)));
+        assertEquals(12.5, store.lon(s3), 0);
+
+        store.setLatLon(s2, 10, -0.0);
+        assertEquals(10, store.lat(s2), 0);
+        assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(store.lon(s2)));
+        store.setLatLon(s2, 10, 20);
+        assertEquals(20, store.lon(s2), 0);
+    }
+
+    /**
+     * Checks that released slots are reused.
+     */
+    @Test
+    public void testRelease() {
+        NodeCoordinateStore store = new NodeCoordinateStore();
+        int s1 = store.allocate();
+        store.setLatLon(s1, 1, 2);
+        store.release(s1);
+        assertEquals(0, store.size());
+        assertEquals(s1, store.allocate());
+        assertTrue(Double.isNaN(store.lat(s1)));
+    }
+
+    /**
+     * Checks the east/north cache and its invalidation.
+     */
+    @Test
+    public void testEastNorthCache() {
+        NodeCoordinateStore store = new NodeCoordinateStore();
+        int slot = store.allocate();
+        LatLon ll = new LatLon(48.5, 7.5);
+        store.setLatLon(slot, ll.lat(), ll.lon());
+        EastNorth expected = ProjectionRegistry.getProjection().latlon2eastNorth(ll);
+        assertEquals(expected, store.getEastNorth(slot, ProjectionRegistry.getProjection(), ll));
+        assertEquals(expected, store.getEastNorth(slot, ProjectionRegistry.getProjection(), ll));
+
+        // another projection is computed but does not replace the cache of the current one
+        EastNorth other = store.getEastNorth(slot, Projections.getProjectionByCode("EPSG:4326"), ll);
+        assertEquals(7.5, other.east(), 1e-9);
+        store.cacheEastNorth(slot, ProjectionRegistry.getProjection().getCacheKey(), 1, 2);
+        assertEquals(new EastNorth(1, 2), store.getEastNorth(slot, ProjectionRegistry.getProjection(), ll));
+
+        store.invalidateEastNorth(slot);
+        assertEquals(expected, store.getEastNorth(slot, ProjectionRegistry.getProjection(), ll));
+        store.cacheEastNorth(slot, ProjectionRegistry.getProjection().getCacheKey(), 1, 2);
+        store.invalidateEastNorthCache();
+        assertEquals(expected, store.getEastNorth(slot, ProjectionRegistry.getProjection(), ll));
+    }
+
+    /**
+     * Checks that full precision coordinates are kept in compact columns, which are reused.
+     */
+    @Test
+    public void testExactCoordinates() {
+        NodeCoordinateStore store = new NodeCoordinateStore(1);
+        int s1 = store.allocate();
+        int s2 = store.allocate();
+        store.setLatLon(s1, 1 / 3.0, 2 / 3.0);
+        store.setLatLon(s2, 1 / 7.0, 2.5);
+        assertEquals(2, store.exactSize());
+        assertEquals(Double.doubleToLongBits(2 / 3.0), Double.doubleToLongBits(store.lon(s1)));
+        assertEquals(Double.doubleToLongBits(2.5), Double.doubleToLongBits(store.lon(s2)));
+
+        store.setLatLon(s1, 1.5, 2.5);
+        assertEquals(1, store.exactSize());
+        store.setLatLon(s1, 1 / 9.0, 200);
+        assertEquals(2, store.exactSize());
+        assertEquals(Double.doubleToLongBits(1 / 9.0), Double.doubleToLongBits(store.lat(s1)));
+        assertEquals(200, store.lon(s1), 0);
+        assertEquals(Double.doubleToLongBits(1 / 7.0), Double.doubleToLongBits(store.lat(s2)));
+
+        store.release(s2);
+        assertEquals(1, store.exactSize());
+        assertTrue(Double.isNaN(store.lat(s2)));
+    }
+
+    /**
+     * Checks that nodes keep their coordinates when they are moved between data sets,
+     * and that their slots are released when they leave a data set.
+     */
+    @Test
+    public void testNodeDataSetMembership() {
+        Node n = new Node(new LatLon(1.5, 2.5));
+        DataSet ds1 = new DataSet();
+        ds1.addPrimitive(n);
+        assertEquals(1, ds1.getNodeCoordinates().size());
+        assertEquals(new LatLon(1.5, 2.5), n.getCoor());
+
+        ds1.removePrimitive(n);
+        assertEquals(0, ds1.getNodeCoordinates().size());
+        assertEquals(new LatLon(1.5, 2.5), n.getCoor());
+        n.setCoor(new LatLon(3.5, 4.5));
+
+        DataSet ds2 = new DataSet();
+        ds2.addPrimitive(n);
+        assertEquals(1, ds2.getNodeCoordinates().size());
+        assertEquals(new LatLon(3.5, 4.5), n.getCoor());
+
+        NodeCoordinateStore before = ds2.getNodeCoordinates();
+        ds2.clear();
+        assertSame(before, ds2.getNodeCoordinates());
+        assertEquals(0, before.size());
+        assertEquals(new LatLon(3.5, 4.5), n.getCoor());
+        ds2.addPrimitive(n);
+        assertEquals(new LatLon(3.5, 4.5), n.getCoor());
+        assertEquals(n.getEastNorth(), ProjectionRegistry.getProjection().latlon2eastNorth(n.getCoor()));
+
+        Node incomplete = new Node(42);
+        ds2.addPrimitive(incomplete);
+        assertFalse(incomplete.isLatLonKnown());
+        assertEquals(1, ds2.getNodeCoordinates().size());
+    }
+
+    /**
+     * Checks that the projected coordinates set on a node are kept, in and out of a data set.
+     */
+    @Test
+    public void testNodeEastNorth() {
+        EastNorth en = ProjectionRegistry.getProjection().latlon2eastNorth(new LatLon(48.5, 7.5)).add(0.1, 0.1);
+        Node n = new Node(en);
+        assertEquals(en, n.getEastNorth());
+        DataSet ds = new DataSet(n);
+        assertEquals(en, n.getEastNorth());
+        n.setEastNorth(en.add(1, 1));
+        assertEquals(en.add(1, 1), n.getEastNorth());
+        assertEquals(1, ds.getNodeCoordinates().exactSize());
+        ds.removePrimitive(n);
+        assertEquals(0, ds.getNodeCoordinates().exactSize());
+        assertEquals(ProjectionRegistry.getProjection().eastNorth2latlon(en.add(1, 1)), n.getCoor());
+    }
+}
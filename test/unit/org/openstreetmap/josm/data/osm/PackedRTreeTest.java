@@ -0,0 +1,160 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of {@link PackedRTree}.
+ */
+public class PackedRTreeTest {
+
+    /**
+     * Setup test.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules().preferences();
+
+    private static Way randomWay(Random random, long id) {
+        double lat = random.nextDouble() * 10;
+        double lon = random.nextDouble() * 10;
+        // a few long ways, as for rivers or boundaries
+        double size = random.nextInt(20) == 0 ? 5 : 0.01;
+        Way w = new Way(id);
+        w.setNodes(Arrays.asList(new Node(new LatLon(lat, lon)),
+                new Node(new LatLon(lat + random.nextDouble() * size, lon + random.nextDouble() * size))));
+        return w;
+    }
+
+    private static void assertSearch(PackedRTree<Way> tree, List<Way> ways, Random random) {
+        for (int i = 0; i < 50; i++) {
+            double lat = random.nextDouble() * 10;
+            double lon = random.nextDouble() * 10;
+            BBox bbox = new BBox(lon, lat, lon + random.nextDouble(), lat + random.nextDouble());
+            Set<Way> expected = ways.stream().filter(w -> w.getBBox().intersects(bbox)).collect(Collectors.toSet());
+            List<Way> actual = tree.search(bbox);
+            assertEquals(expected.size(), actual.size());
+            assertEquals(expected, new HashSet<>(actual));
+        }
+    }
+
+    /**
+     * Checks search results after bulk loading, incremental insertions and removals.
+     */
+    @Test
+    public void testSearch() {
+        Random random = new Random(42);
+        PackedRTree<Way> tree = new PackedRTree<>();
+        List<Way> ways = new ArrayList<>();
+        // bulk load
+        for (int i = 0; i < 5000; i++) {
+            Way w = randomWay(random, i + 1);
+            ways.add(w);
+            tree.add(w);
+        }
+        tree.flush();
+        assertEquals(5000, tree.size());
+        assertSearch(tree, ways, random);
+
+        // incremental insertions, searched before and after flush
+        for (int i = 0; i < 200; i++) {
+            Way w = randomWay(random, 10_000 + i);
+            ways.add(w);
+            tree.add(w);
+        }
+        assertSearch(tree, ways, random);
+        tree.flush();
+        assertSearch(tree, ways, random);
+
+        // removals
+        for (Iterator<Way> it = ways.iterator(); it.hasNext();) {
+            Way w = it.next();
+            if (random.nextBoolean()) {
+                assertTrue(tree.remove(w));
+                assertFalse(tree.contains(w));
+                it.remove();
+            } else {
+                assertTrue(tree.contains(w));
+            }
+        }
+        assertEquals(ways.size(), tree.size());
+        assertSearch(tree, ways, random);
+        assertEquals(new HashSet<>(ways), new HashSet<>(tree));
+
+        tree.removeAll(new ArrayList<>(ways));
+        assertTrue(tree.isEmpty());
+        assertTrue(tree.search(new BBox(-180, -90, 180, 90)).isEmpty());
+    }
+
+    /**
+     * Test handling of objects with invalid bbox and removal with the iterator.
+     */
+    @Test
+    public void testSpecialBBoxAndIterator() {
+        PackedRTree<Way> tree = new PackedRTree<>();
+        Random random = new Random(1);
+        Way incomplete = new Way(1);
+        tree.add(incomplete);
+        for (int i = 0; i < 1000; i++) {
+            tree.add(randomWay(random, i + 2));
+        }
+        tree.flush();
+        assertEquals(1001, tree.size());
+        assertTrue(tree.contains(incomplete));
+        assertFalse(tree.search(new BBox(-180, -90, 180, 90)).contains(incomplete));
+
+        int count = 1001;
+        Iterator<Way> it = tree.iterator();
+        while (it.hasNext()) {
+            it.next();
+            it.remove();
+            assertEquals(--count, tree.size());
+        }
+        assertTrue(tree.isEmpty());
+    }
+
+    /**
+     * Checks that a data set can use a packed R-tree.
+     */
+    @Test
+    public void testDataSet() {
+        Config.getPref().putBoolean("osm.dataset.packed-rtree", true);
+        DataSet ds = new DataSet();
+        Random random = new Random(7);
+        List<Way> ways = new ArrayList<>();
+        ds.update(() -> {
+            for (int i = 0; i < 1000; i++) {
+                Way w = randomWay(random, i + 1);
+                w.getNodes().forEach(ds::addPrimitive);
+                ds.addPrimitive(w);
+                ways.add(w);
+            }
+        });
+        BBox bbox = new BBox(2, 2, 4, 4);
+        assertEquals(ways.stream().filter(w -> w.getBBox().intersects(bbox)).count(), ds.searchWays(bbox).size());
+
+        Node n = ways.get(0).firstNode();
+        n.setCoor(new LatLon(50, 50));
+        assertTrue(ds.searchNodes(new BBox(49, 49, 51, 51)).contains(n));
+        assertTrue(ds.searchWays(new BBox(49, 49, 51, 51)).contains(ways.get(0)));
+    }
+}
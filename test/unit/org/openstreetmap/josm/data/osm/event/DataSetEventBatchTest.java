@@ -0,0 +1,107 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent.DatasetEventType;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of {@link DataSetEventBatch} class.
+ */
+public class DataSetEventBatchTest {
+
+    /**
+     * Setup test.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules();
+
+    /**
+     * Checks that many events of a single update are merged instead of collapsing into a "everything changed" event.
+     */
+    @Test
+    public void testMergedEvents() {
+        DataSet ds = new DataSet();
+        List<Node> existing = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Node n = new Node(new LatLon(i, i));
+            n.put("name", "n" + i);
+            ds.addPrimitive(n);
+            existing.add(n);
+        }
+        List<AbstractDatasetChangedEvent> events = new ArrayList<>();
+        ds.addDataSetListener(new DataSetListenerAdapter(events::add));
+
+        List<Node> added = new ArrayList<>();
+        ds.update(() -> {
+            for (int i = 0; i < 2000; i++) {
+                Node n = new Node(new LatLon(-i * 0.01, i * 0.01));
+                ds.addPrimitive(n);
+                added.add(n);
+                n.setCoor(new LatLon(i * 0.01, i * 0.01));
+            }
+            for (int i = 0; i < 10; i++) {
+                existing.get(i).setCoor(new LatLon(50, i));
+                existing.get(i).setCoor(new LatLon(51, i));
+                existing.get(i).put("name", "first");
+                existing.get(i).put("name", "second");
+            }
+            ds.removePrimitive(added.remove(0));
+            ds.removePrimitive(existing.get(0));
+        });
+
+        assertEquals(1, events.size());
+        DataSetEventBatch batch = ((DataChangedEvent) events.get(0)).getBatch();
+        assertNotNull(batch);
+        assertFalse(batch.isCompleteChange());
+        assertEquals(new HashSet<>(added), batch.getAddedPrimitives());
+        assertEquals(Collections.singleton(existing.get(0)), batch.getRemovedPrimitives());
+        assertEquals(new HashSet<>(existing.subList(1, 10)), batch.getChangedPrimitives(DatasetEventType.NODE_MOVED));
+        assertEquals(new HashSet<>(existing.subList(1, 10)), batch.getChangedPrimitives(DatasetEventType.TAGS_CHANGED));
+
+        // one event per changed primitive, keeping the original tags
+        List<AbstractDatasetChangedEvent> merged = ((DataChangedEvent) events.get(0)).getEvents();
+        assertEquals(2 + 9 + 9, merged.size());
+        for (AbstractDatasetChangedEvent e : merged) {
+            if (e instanceof TagsChangedEvent) {
+                TagsChangedEvent tagsChanged = (TagsChangedEvent) e;
+                assertEquals("n" + existing.indexOf(tagsChanged.getPrimitive()), tagsChanged.getOriginalKeys().get("name"));
+            }
+        }
+    }
+
+    /**
+     * Checks that a complete change absorbs the other events.
+     */
+    @Test
+    public void testCompleteChange() {
+        DataSet ds = new DataSet();
+        Node n = new Node(LatLon.ZERO);
+        DataSetEventBatch batch = new DataSetEventBatch(ds);
+        batch.add(new NodeMovedEvent(ds, n));
+        assertTrue(batch.toEvent() instanceof NodeMovedEvent);
+        batch.add(new DataChangedEvent(ds));
+        batch.add(new TagsChangedEvent(ds, n, Collections.emptyMap()));
+        assertTrue(batch.isCompleteChange());
+        assertEquals(3, batch.getEventCount());
+        assertTrue(batch.getChangedPrimitives(DatasetEventType.TAGS_CHANGED).isEmpty());
+        assertEquals(null, ((DataChangedEvent) batch.toEvent()).getEvents());
+    }
+}
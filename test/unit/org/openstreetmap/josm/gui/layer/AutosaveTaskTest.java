@@ -25,9 +25,12 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DataSetSnapshot;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.layer.AutosaveTask.AutosaveLayerInfo;
+import org.openstreetmap.josm.gui.util.GuiHelper;
+import org.openstreetmap.josm.io.OsmBinaryWriter;
 import org.openstreetmap.josm.testutils.JOSMTestRules;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -254,4 +257,31 @@ public class AutosaveTaskTest {
 
         assertEquals(1, countFiles());
     }
+
+    /**
+     * Test that {@link AutosaveTask#recoverUnsavedLayers()} replays a checkpoint even if an OSM file of the same name
+     * was left by an interrupted replay.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testRecoverCheckpointOverStaleFile() throws Exception {
+        DataSet ds = new DataSet();
+        ds.addPrimitive(new Node(new LatLon(1, 2)));
+        DataSetSnapshot snapshot = ds.snapshot();
+        Files.createDirectories(task.getAutosaveDir());
+        try (OsmBinaryWriter writer = new OsmBinaryWriter(Files.newOutputStream(task.getAutosaveDir().resolve("recovered.osmbin")))) {
+            writer.write(snapshot);
+        } finally {
+            ds.releaseSnapshot(snapshot);
+        }
+        Files.write(task.getAutosaveDir().resolve("recovered.osm"), "stale".getBytes(StandardCharsets.UTF_8));
+
+        task.recoverUnsavedLayers().get();
+        GuiHelper.runInEDTAndWait(() -> { });
+
+        assertEquals(0, countFiles());
+        assertFalse(Files.exists(task.getAutosaveDir().resolve("recovered.osmbin")));
+        assertTrue(MainApplication.getLayerManager().getLayersOfType(OsmDataLayer.class).stream()
+                .anyMatch(l -> l.getDataSet().getNodes().stream().anyMatch(n -> new LatLon(1, 2).equals(n.getCoor()))));
+    }
 }
@@ -0,0 +1,111 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of {@link CachedFile} against a mocked HTTP server.
+ */
+public class CachedFileTest {
+
+    /**
+     * Setup tests
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules().preferences().timeout(30000);
+
+    /**
+     * HTTP mock.
+     */
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(options().dynamicPort());
+
+    /**
+     * Temporary cache directory.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CachedFile newCachedFile() {
+        return new CachedFile(wireMockRule.url("/resource")).setDestDir(folder.getRoot().getPath());
+    }
+
+    /**
+     * Test that concurrent requests of the same resource by different instances share one download.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testConcurrentDownloads() throws Exception {
+        wireMockRule.stubFor(get(urlEqualTo("/resource")).willReturn(aResponse().withStatus(200).withBody("content").withFixedDelay(1000)));
+        CachedFile a = newCachedFile();
+        CachedFile b = newCachedFile();
+        CachedFile.prefetch(Arrays.asList(a, b));
+        wireMockRule.verify(1, getRequestedFor(urlEqualTo("/resource")));
+        assertEquals(a.getFile(), b.getFile());
+        assertArrayEquals("content".getBytes(StandardCharsets.UTF_8), b.getByteContent());
+    }
+
+    /**
+     * Test that concurrent requests of the same resource with different settings do not share a download.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testConcurrentDownloadsWithOtherSettings() throws Exception {
+        wireMockRule.stubFor(get(urlEqualTo("/resource")).willReturn(aResponse().withStatus(200).withBody("content").withFixedDelay(1000)));
+        wireMockRule.stubFor(get(urlEqualTo("/resource")).withHeader("X-Test", equalTo("1"))
+                .willReturn(aResponse().withStatus(200).withBody("other").withFixedDelay(1000)));
+        // every cached copy is stale, the second download does not reuse the file of the first one
+        Config.getPref().putLong("mirror.maxtime", 0);
+        CachedFile a = newCachedFile();
+        CachedFile b = newCachedFile().setHttpHeaders(Collections.singletonMap("X-Test", "1"));
+        CachedFile.prefetch(Arrays.asList(a, b));
+        wireMockRule.verify(2, getRequestedFor(urlEqualTo("/resource")));
+        wireMockRule.verify(1, getRequestedFor(urlEqualTo("/resource")).withHeader("X-Test", equalTo("1")));
+    }
+
+    /**
+     * Test that a stale copy is revalidated with its ETag, and kept if the server replies "304 Not Modified".
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testETagRevalidation() throws Exception {
+        wireMockRule.stubFor(get(urlEqualTo("/resource"))
+                .willReturn(aResponse().withStatus(200).withHeader("ETag", "\"v1\"").withBody("content")));
+        wireMockRule.stubFor(get(urlEqualTo("/resource")).withHeader("If-None-Match", equalTo("\"v1\""))
+                .willReturn(aResponse().withStatus(304)));
+        // every cached copy is stale
+        Config.getPref().putLong("mirror.maxtime", 0);
+
+        File file = newCachedFile().getFile();
+        assertEquals("content", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        assertEquals(file, newCachedFile().getFile());
+        assertEquals("content", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        wireMockRule.verify(2, getRequestedFor(urlEqualTo("/resource")));
+        wireMockRule.verify(1, getRequestedFor(urlEqualTo("/resource")).withHeader("If-None-Match", equalTo("\"v1\"")));
+    }
+}
@@ -0,0 +1,124 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of {@link Compression} class.
+ */
+public class CompressionTest {
+
+    /**
+     * Setup rule
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules();
+
+    /**
+     * Temporary folder for the compressed files
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] compress(Compression compression, byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = compression.getParallelCompressedOutputStream(compressed)) {
+            // odd write sizes, to cross the block boundaries
+            for (int i = 0; i < data.length; i += 4093) {
+                out.write(data, i, Math.min(4093, data.length - i));
+                out.flush();
+            }
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            result.write(buffer, 0, n);
+        }
+        return result.toByteArray();
+    }
+
+    private static byte[] roundTrip(Compression compression, byte[] data) throws IOException {
+        try (InputStream in = compression.getUncompressedInputStream(new ByteArrayInputStream(compress(compression, data)))) {
+            return readAll(in);
+        }
+    }
+
+    private byte[] fileRoundTrip(Compression compression, String extension, byte[] data) throws IOException {
+        File file = File.createTempFile("data", ".osm." + extension, folder.getRoot());
+        Files.write(file.toPath(), compress(compression, data));
+        try (InputStream in = Compression.getUncompressedFileInputStream(file)) {
+            return readAll(in);
+        }
+    }
+
+    private static byte[] sampleData(int size) {
+        byte[] data = new byte[size];
+        Random random = new Random(42);
+        for (int i = 0; i < size; i++) {
+            // compressible, but not trivially
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return data;
+    }
+
+    /**
+     * Test that the parallel compressions are read back as a single stream, for several blocks.
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    public void testParallelCompression() throws IOException {
+        byte[] data = sampleData(3 * (1 << 20) + 12345);
+        for (Compression compression : new Compression[] {Compression.GZIP, Compression.BZIP2}) {
+            assertArrayEquals(compression.name(), data, roundTrip(compression, data));
+        }
+        byte[] xzData = sampleData(9 << 20);
+        assertArrayEquals(xzData, roundTrip(Compression.XZ, xzData));
+    }
+
+    /**
+     * Test that an empty output is still a valid compressed stream.
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    public void testParallelCompressionEmpty() throws IOException {
+        for (Compression compression : new Compression[] {Compression.GZIP, Compression.BZIP2, Compression.XZ}) {
+            assertArrayEquals(compression.name(), new byte[0], roundTrip(compression, new byte[0]));
+        }
+    }
+
+    /**
+     * Test that the files decompressed ahead, in parallel for the multi-stream files, are read in order.
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    public void testReadAhead() throws IOException {
+        byte[] data = sampleData(5 * (1 << 20) + 54321);
+        assertArrayEquals(data, fileRoundTrip(Compression.GZIP, "gz", data));
+        assertArrayEquals(data, fileRoundTrip(Compression.BZIP2, "bz2", data));
+        byte[] xzData = sampleData(17 << 20);
+        assertArrayEquals(xzData, fileRoundTrip(Compression.XZ, "xz", xzData));
+        assertArrayEquals(new byte[0], fileRoundTrip(Compression.BZIP2, "bz2", new byte[0]));
+    }
+}
@@ -2,17 +2,25 @@
 package org.openstreetmap.josm.io;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Set;
 
 import org.junit.Rule;
 import org.junit.Test;
+import org.openstreetmap.josm.TestUtils;
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.Changeset;
+import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
@@ -236,4 +244,46 @@ public class DiffResultProcessorTest {
         assertEquals(5, n.getChangesetId());
         assertEquals(2, n.getVersion());
     }
+
+    /**
+     * Test {@link DiffResultProcessor#parse(java.io.InputStream, org.openstreetmap.josm.gui.progress.ProgressMonitor)}
+     * and {@link DiffResultProcessor#postProcess} for primitives of a data set, which are remapped in one update.
+     * @throws XmlParsingException never
+     */
+    @Test
+    public void testPostProcess_InDataSet() throws XmlParsingException {
+        DataSet ds = new DataSet();
+        Node n1 = new Node(new LatLon(1, 1));
+        Node n2 = new Node(new LatLon(1, 2));
+        Way w = TestUtils.newWay("", n1, n2);
+        Node deleted = new Node(4, 1);
+        ds.update(() -> {
+            ds.addPrimitive(n1);
+            ds.addPrimitive(n2);
+            ds.addPrimitive(w);
+            ds.addPrimitive(deleted);
+        });
+        deleted.setDeleted(true);
+        long oldId = n1.getUniqueId();
+        String doc =
+            "<diffResult version=\"0.6\" generator=\"Test Data\">\n" +
+            "    <node old_id=\""+n1.getUniqueId()+"\" new_id=\"1\" new_version=\"1\"/>\n" +
+            "    <node old_id=\""+n2.getUniqueId()+"\" new_id=\"2\" new_version=\"1\"/>\n" +
+            "    <way old_id=\""+w.getUniqueId()+"\" new_id=\"3\" new_version=\"1\"/>\n" +
+            "    <node old_id=\"4\"/>\n" +
+            "</diffResult>";
+
+        DiffResultProcessor processor = new DiffResultProcessor(Arrays.asList(n1, n2, w, deleted));
+        processor.parse(new ByteArrayInputStream(doc.getBytes(StandardCharsets.UTF_8)), null);
+        Set<OsmPrimitive> processed = processor.postProcess(new Changeset(5), null);
+        assertEquals(4, processed.size());
+        assertSame(n1, ds.getPrimitiveById(1, OsmPrimitiveType.NODE));
+        assertSame(w, ds.getPrimitiveById(3, OsmPrimitiveType.WAY));
+        assertNull(ds.getPrimitiveById(oldId, OsmPrimitiveType.NODE));
+        assertTrue(processed.contains(n1));
+        assertEquals(5, w.getChangesetId());
+        assertEquals(1, w.getVersion());
+        assertFalse(deleted.isVisible());
+        assertEquals(1, deleted.getVersion());
+    }
 }
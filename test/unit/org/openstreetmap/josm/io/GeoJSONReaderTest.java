@@ -160,6 +160,26 @@ public class GeoJSONReaderTest {
         }
     }
 
+    /**
+     * Test reading a FeatureCollection whose named CRS follows the streamed features.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testReadGeoJsonCrsAfterFeatures() throws Exception {
+        String json = "{\"type\":\"FeatureCollection\",\"features\":["
+                + "{\"type\":\"Feature\",\"properties\":{\"name\":\"a\"},"
+                + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[1113194.9079327357,1118889.9748579594]}}],"
+                + "\"crs\":{\"type\":\"name\",\"properties\":{\"name\":\"urn:ogc:def:crs:EPSG:3857\"}}}";
+        Collection<Node> nodes = new GeoJSONReader()
+                .doParseDataSet(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), null)
+                .getNodes();
+        assertEquals(1, nodes.size());
+        Node node = nodes.iterator().next();
+        assertEquals("a", node.get("name"));
+        assertEquals(10, node.lat(), 1e-6);
+        assertEquals(10, node.lon(), 1e-6);
+    }
+
     /**
      * Test reading a JSON file which is not a proper GeoJSON (type missing).
      */
@@ -0,0 +1,80 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.TestUtils;
+import org.openstreetmap.josm.data.gpx.GpxData;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+import org.xml.sax.SAXException;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of {@link GpxBinaryReader} and {@link GpxBinaryWriter}.
+ */
+public class GpxBinaryReaderTest {
+
+    /**
+     * Setup rule
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules();
+
+    private static GpxData writeAndRead(GpxData data) throws IOException, SAXException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GpxBinaryWriter writer = new GpxBinaryWriter(out)) {
+            writer.write(data);
+        }
+        GpxBinaryReader reader = new GpxBinaryReader(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(reader.parse(false));
+        return reader.getGpxData();
+    }
+
+    /**
+     * Test that the tracks, way points and metadata are restored as they were saved.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        GpxData data = GpxReaderTest.parseGpxData(TestUtils.getTestDataRoot() + "tracks/tracks.gpx");
+        GpxData result = writeAndRead(data);
+        assertEquals(data, result);
+        assertEquals(data.getTrackPoints().count(), result.getTrackPoints().count());
+        assertEquals(data.getMetaBounds(), result.getMetaBounds());
+    }
+
+    /**
+     * Test that the layer preferences and the JOSM extensions are restored.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testLayerPrefs() throws Exception {
+        GpxData data = GpxReaderTest.parseGpxData(TestUtils.getTestDataRoot() + "tracks/tracks-layerprefs.gpx");
+        data.fromServer = true;
+        GpxData result = writeAndRead(data);
+        assertFalse(result.getLayerPrefs().isEmpty());
+        assertEquals(data.getLayerPrefs(), result.getLayerPrefs());
+        assertTrue(result.fromServer);
+        assertEquals(data, result);
+    }
+
+    /**
+     * Test that a file of another format is rejected.
+     * @throws Exception if an error occurs
+     */
+    @Test(expected = SAXException.class)
+    public void testInvalidMagic() throws Exception {
+        new GpxBinaryReader(new ByteArrayInputStream("<gpx version=\"1.1\"/>".getBytes(StandardCharsets.UTF_8))).parse(false);
+    }
+}
@@ -0,0 +1,126 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.TestUtils;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.SimplePrimitiveId;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of {@link MultiFetchServerObjectReader} against a mocked API server.
+ */
+public class MultiFetchServerObjectReaderMockTest {
+
+    private static final int NODES = 2000;
+
+    /**
+     * Setup tests
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules().preferences().timeout(30000);
+
+    /**
+     * HTTP mock.
+     */
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(options().dynamicPort().usingFilesUnderDirectory(TestUtils.getTestDataRoot()));
+
+    /**
+     * Setup the mocked API, replying the same nodes to every Multi Get request.
+     */
+    @Before
+    public void setUp() {
+        Config.getPref().put("osm-server.url", wireMockRule.url("/__files/api"));
+        StringBuilder osm = new StringBuilder("<osm version='0.6'>");
+        for (int i = 1; i <= NODES; i++) {
+            osm.append("<node id='").append(i).append("' version='1' lat='53.5' lon='13.2' visible='true'/>");
+        }
+        wireMockRule.stubFor(get(urlPathEqualTo("/__files/api/0.6/nodes"))
+                .willReturn(aResponse().withStatus(200).withBody(osm.append("</osm>").toString())));
+    }
+
+    /**
+     * Test that all ids are requested exactly once, in packages which fit in the URL length limit.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testPackages() throws Exception {
+        MultiFetchServerObjectReader reader = MultiFetchServerObjectReader.create(false);
+        for (long id = 1; id <= NODES; id++) {
+            reader.append(new SimplePrimitiveId(id, OsmPrimitiveType.NODE));
+        }
+        DataSet ds = reader.parseOsm(NullProgressMonitor.INSTANCE);
+        assertEquals(NODES, ds.getNodes().size());
+        assertTrue(reader.getMissingPrimitives().isEmpty());
+
+        List<LoggedRequest> requests = wireMockRule.findAll(getRequestedFor(urlPathEqualTo("/__files/api/0.6/nodes")));
+        Set<Long> requested = new HashSet<>();
+        for (LoggedRequest request : requests) {
+            assertTrue(request.getAbsoluteUrl().length() <= MultiFetchServerObjectReader.MAX_URL_LENGTH);
+            for (String id : request.queryParameter("nodes").firstValue().split(",")) {
+                assertTrue(id, requested.add(Long.valueOf(id)));
+            }
+        }
+        assertEquals(NODES, requested.size());
+    }
+
+    /**
+     * Test that packages are bounded by the URL length, and hold at least one id.
+     */
+    @Test
+    public void testExtractIdPackage() {
+        MultiFetchServerObjectReader reader = MultiFetchServerObjectReader.create(false);
+        Set<Long> ids = LongStream.rangeClosed(10_000_000_000L, 10_000_001_000L).boxed().collect(Collectors.toCollection(LinkedHashSet::new));
+        Set<Long> pkg = reader.extractIdPackage(ids, OsmPrimitiveType.NODE, 1000);
+        assertTrue(pkg.size() > 100);
+        assertTrue(reader.getBaseUrl().length() + reader.buildRequestString(OsmPrimitiveType.NODE, pkg).length()
+                <= MultiFetchServerObjectReader.MAX_URL_LENGTH);
+        assertEquals(1001 - pkg.size(), ids.size());
+        assertEquals(5, reader.extractIdPackage(ids, OsmPrimitiveType.NODE, 5).size());
+    }
+
+    /**
+     * Test that packages grow while responses are fast, and shrink when they are slow or fail.
+     */
+    @Test
+    public void testPackageSizer() {
+        MultiFetchServerObjectReader.PackageSizer sizer = new MultiFetchServerObjectReader.PackageSizer(100, 1000);
+        sizer.onResponse(100, 200);
+        assertEquals(150, sizer.getSize());
+        sizer.onResponse(20, 200);
+        assertEquals(150, sizer.getSize());
+        sizer.onResponse(150, 700);
+        assertEquals(150, sizer.getSize());
+        sizer.onResponse(150, 3000);
+        assertEquals(75, sizer.getSize());
+        sizer.onFailure();
+        assertEquals(37, sizer.getSize());
+    }
+}
@@ -0,0 +1,210 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DataSetSnapshot;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.PrimitiveData;
+import org.openstreetmap.josm.data.osm.PrimitiveId;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.UploadPolicy;
+import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of {@link OsmBinaryReader} and {@link OsmBinaryWriter}.
+ */
+public class OsmBinaryReaderTest {
+
+    /**
+     * Setup rule
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules();
+
+    /**
+     * Temporary folder for the journal
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static DataSet writeAndRead(DataSet ds) throws IOException, IllegalDataException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OsmBinaryWriter writer = new OsmBinaryWriter(out)) {
+            writer.write(ds.snapshot());
+        }
+        return OsmBinaryReader.parseDataSet(new ByteArrayInputStream(out.toByteArray()), null);
+    }
+
+    /**
+     * Test that the data set, including the modified, deleted and new primitives, is restored as it was saved.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        DataSet ds = new DataSet();
+        User user = User.createOsmUser(1234, "binary-user");
+        Node n1 = new Node(1, 3);
+        n1.setCoor(new LatLon(53.5577, 13.2612345678));
+        n1.put("amenity", "bench");
+        n1.setUser(user);
+        n1.setChangesetId(42);
+        n1.setRawTimestamp(1_500_000_000);
+        Node n2 = new Node(2, 1);
+        n2.setCoor(new LatLon(-33.9, 151.2));
+        n2.setUser(user);
+        Node n3 = new Node(new LatLon(53.56, 13.27));
+        n3.put("name", "new node");
+        Way w = new Way(10, 2);
+        w.setNodes(Arrays.asList(n1, n3));
+        w.put("highway", "footway");
+        Relation r = new Relation(20, 1);
+        r.addMember(new RelationMember("outer", w));
+        r.addMember(new RelationMember("", n1));
+        ds.addPrimitive(n1);
+        ds.addPrimitive(n2);
+        ds.addPrimitive(n3);
+        ds.addPrimitive(w);
+        ds.addPrimitive(r);
+        n1.setModified(true);
+        n2.setDeleted(true);
+        ds.addDataSource(new DataSource(new Bounds(53, 13, 54, 14), "test"));
+        ds.setUploadPolicy(UploadPolicy.BLOCKED);
+        ds.lock();
+
+        DataSet result = writeAndRead(ds);
+        assertTrue(result.isLocked());
+        assertEquals(UploadPolicy.BLOCKED, result.getUploadPolicy());
+        assertEquals(1, result.getDataSources().size());
+        assertEquals("test", result.getDataSources().iterator().next().origin);
+
+        Node r1 = result.getNode(1);
+        assertTrue(r1.isModified());
+        assertEquals(3, r1.getVersion());
+        assertEquals(42, r1.getChangesetId());
+        assertEquals(1_500_000_000, r1.getRawTimestamp());
+        assertEquals(user, r1.getUser());
+        assertEquals("bench", r1.get("amenity"));
+        assertEquals(n1.getCoor(), r1.getCoor());
+        assertSame(r1.getUser(), result.getNode(2).getUser());
+        assertTrue(result.getNode(2).isDeleted());
+
+        Node r3 = result.getNodes().stream().filter(n -> n.hasTag("name", "new node")).findAny().orElse(null);
+        assertNotNull(r3);
+        assertTrue(r3.isNew());
+        assertEquals(n3.getCoor(), r3.getCoor());
+
+        Way rw = result.getWay(10);
+        assertEquals(w.isModified(), rw.isModified());
+        assertEquals(Arrays.asList(r1, r3), rw.getNodes());
+        Relation rr = result.getRelation(20);
+        assertEquals(2, rr.getMembersCount());
+        assertEquals("outer", rr.getMember(0).getRole());
+        assertSame(rw, rr.getMember(0).getMember());
+        assertSame(r1, rr.getMember(1).getMember());
+    }
+
+    /**
+     * Test that a file of another format is rejected.
+     * @throws Exception if an error occurs
+     */
+    @Test(expected = IllegalDataException.class)
+    public void testInvalidMagic() throws Exception {
+        OsmBinaryReader.parseDataSet(new ByteArrayInputStream("<osm version='0.6'/>".getBytes(StandardCharsets.UTF_8)), null);
+    }
+
+    private static DataSetSnapshot appendChanges(Path journal, DataSet ds, DataSetSnapshot previous) throws IOException {
+        DataSetSnapshot snapshot = ds.snapshot();
+        List<PrimitiveData> changed = new ArrayList<>();
+        List<PrimitiveId> removed = new ArrayList<>();
+        assertTrue(snapshot.diff(previous, changed, removed));
+        OsmBinaryWriter.appendJournalEntry(journal, snapshot, changed, removed);
+        return snapshot;
+    }
+
+    /**
+     * Test that the changes appended to a journal are replayed over the checkpoint, including new and removed primitives.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testJournal() throws Exception {
+        DataSet ds = new DataSet();
+        Node n1 = new Node(1, 1);
+        n1.setCoor(new LatLon(53.5, 13.2));
+        Node n2 = new Node(2, 1);
+        n2.setCoor(new LatLon(53.6, 13.3));
+        Way w = new Way(10, 1);
+        w.setNodes(Arrays.asList(n1, n2));
+        ds.addPrimitive(n1);
+        ds.addPrimitive(n2);
+        ds.addPrimitive(w);
+
+        DataSetSnapshot snapshot = ds.snapshot();
+        ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+        try (OsmBinaryWriter writer = new OsmBinaryWriter(checkpoint)) {
+            writer.write(snapshot);
+        }
+        Path journal = folder.newFile().toPath();
+
+        Node n3 = new Node(new LatLon(53.7, 13.4));
+        n3.put("name", "new node");
+        ds.addPrimitive(n3);
+        w.addNode(n3);
+        n1.put("amenity", "bench");
+        snapshot = appendChanges(journal, ds, snapshot);
+
+        n3.setCoor(new LatLon(53.8, 13.5));
+        Relation r = new Relation();
+        r.addMember(new RelationMember("", w));
+        ds.addPrimitive(r);
+        ds.removePrimitive(r.getPrimitiveId());
+        w.removeNode(n2);
+        ds.removePrimitive(n2.getPrimitiveId());
+        snapshot = appendChanges(journal, ds, snapshot);
+
+        // a torn entry at the end of the journal is ignored
+        byte[] bytes = Files.readAllBytes(journal);
+        Files.write(journal, Arrays.copyOf(bytes, bytes.length + 3));
+
+        DataSet result = OsmBinaryReader.parseDataSet(new ByteArrayInputStream(checkpoint.toByteArray()),
+                Files.newInputStream(journal), null);
+        assertEquals(ds.allPrimitives().size(), result.allPrimitives().size());
+        assertEquals("bench", result.getNode(1).get("amenity"));
+        assertNull(result.getNode(2));
+        assertTrue(result.getRelations().isEmpty());
+        Way rw = result.getWay(10);
+        assertEquals(2, rw.getNodesCount());
+        Node r3 = rw.getNode(1);
+        assertTrue(r3.isNew());
+        assertEquals("new node", r3.get("name"));
+        assertEquals(n3.getCoor(), r3.getCoor());
+    }
+}
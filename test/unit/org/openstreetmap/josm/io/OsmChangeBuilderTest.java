@@ -4,6 +4,9 @@ package org.openstreetmap.josm.io;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 import org.junit.Rule;
@@ -189,4 +192,26 @@ public class OsmChangeBuilderTest {
                 "</modify>%n" +
                 "</osmChange>%n"), builder.getDocument());
     }
+
+    /**
+     * Test that the document written to bytes by {@link OsmApi#createDiffUploadRequest} is the same as the one built in memory.
+     */
+    @Test
+    public void testDiffUploadRequest() {
+        Changeset cs = new Changeset(1);
+        Node n1 = new Node(LatLon.ZERO);
+        n1.put("name", "Straße");
+        Node n2 = new Node(LatLon.ZERO);
+        n2.setOsmId(2, 1);
+        n2.setModified(true);
+
+        OsmChangeBuilder builder = new OsmChangeBuilder(cs);
+        builder.start();
+        builder.append(Arrays.asList(n1, n2));
+        builder.finish();
+
+        assertEquals(builder.getDocument(), new String(OsmApi.createDiffUploadRequest(cs, Arrays.asList(n1, n2)), StandardCharsets.UTF_8));
+        shouldFail(() -> new OsmChangeBuilder(cs, null, new OutputStreamWriter(new ByteArrayOutputStream(), StandardCharsets.UTF_8))
+                .getDocument());
+    }
 }
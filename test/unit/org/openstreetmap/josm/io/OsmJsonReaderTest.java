@@ -3,6 +3,7 @@ package org.openstreetmap.josm.io;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
@@ -159,6 +160,9 @@ public class OsmJsonReaderTest {
         assertTrue(n.isTagged());
         assertEquals("bus_stop", n.get("highway"));
         assertEquals("Main Street", n.get("name"));
+        // tags are interned, as by the other readers
+        assertSame("bus_stop", n.get("highway"));
+        assertSame("highway", n.keySet().stream().filter("highway"::equals).findFirst().get());
     }
 
     /**
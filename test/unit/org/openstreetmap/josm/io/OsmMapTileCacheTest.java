@@ -0,0 +1,190 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openstreetmap.josm.TestUtils;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of {@link OsmMapTileCache}.
+ */
+public class OsmMapTileCacheTest {
+
+    private static final Bounds AREA = new Bounds(53.504, 13.204, 53.506, 13.206);
+
+    /**
+     * Setup tests
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules().preferences().timeout(30000);
+
+    /**
+     * HTTP mock.
+     */
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(options().dynamicPort().usingFilesUnderDirectory(TestUtils.getTestDataRoot()));
+
+    /**
+     * Temporary cache directory.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Setup the mocked API, replying the same node to every map request.
+     */
+    @Before
+    public void setUp() {
+        Config.getPref().put("osm-server.url", wireMockRule.url("/__files/api"));
+        wireMockRule.stubFor(get(urlPathEqualTo("/__files/api/0.6/map")).willReturn(aResponse().withStatus(200).withBody(
+                "<osm version='0.6'><node id='1' version='1' lat='53.505' lon='13.205' visible='true'/></osm>")));
+    }
+
+    private DataSet download(OsmMapTileCache cache, Bounds bounds) throws OsmTransferException {
+        return new BoundingBoxDownloader(bounds).setTileCache(cache).parseOsm(NullProgressMonitor.INSTANCE);
+    }
+
+    /**
+     * Unit test of {@link OsmMapTileCache#getTiles}.
+     */
+    @Test
+    public void testGetTiles() {
+        OsmMapTileCache cache = new OsmMapTileCache(folder.getRoot(), 16, 60_000);
+        List<OsmMapTileCache.Tile> tiles = cache.getTiles(AREA);
+        assertEquals(4, tiles.size());
+        assertEquals("16/35171/21194", tiles.get(0).toString());
+        for (LatLon ll : new LatLon[] {AREA.getMin(), AREA.getMax(), AREA.getCenter()}) {
+            assertTrue(ll.toString(), tiles.stream().anyMatch(t -> t.getBounds().contains(ll)));
+        }
+        assertTrue(cache.getTiles(new Bounds(85.1, 0, 86, 1)).isEmpty());
+    }
+
+    /**
+     * Unit test of {@link OsmMapTileCache#getBounds} and {@link OsmMapTileCache#getTilesInside}.
+     */
+    @Test
+    public void testGetTilesInside() {
+        OsmMapTileCache cache = new OsmMapTileCache(folder.getRoot(), 16, 60_000);
+        List<OsmMapTileCache.Tile> tiles = cache.getTiles(new Bounds(53.505, 13.204, 53.511, 13.212));
+        assertEquals(9, tiles.size());
+        // the first and the middle tiles of the first row, the tiles of the last column are outside
+        List<OsmMapTileCache.Tile> inside = OsmMapTileCache.getTilesInside(tiles, Arrays.asList(tiles.get(0), tiles.get(7)));
+        assertEquals(Arrays.asList(tiles.get(0), tiles.get(1), tiles.get(3), tiles.get(4), tiles.get(6), tiles.get(7)), inside);
+        Bounds bounds = OsmMapTileCache.getBounds(inside);
+        assertEquals(tiles.get(0).getBounds().getMinLon(), bounds.getMinLon(), 0);
+        assertEquals(tiles.get(0).getBounds().getMaxLat(), bounds.getMaxLat(), 0);
+        assertEquals(tiles.get(7).getBounds().getMaxLon(), bounds.getMaxLon(), 0);
+        assertEquals(tiles.get(7).getBounds().getMinLat(), bounds.getMinLat(), 0);
+    }
+
+    /**
+     * Unit test of {@link OsmMapTileCache#getFreshFile} and {@link OsmMapTileCache#store}.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testStore() throws Exception {
+        OsmMapTileCache cache = new OsmMapTileCache(folder.getRoot(), 16, 60_000);
+        List<OsmMapTileCache.Tile> tiles = cache.getTiles(AREA);
+        OsmMapTileCache.Tile tile = tiles.get(0);
+        assertNull(cache.getFreshFile(tile));
+
+        // a way from the tile to another one, a node in another tile, and a relation of the way
+        DataSet data = new DataSet();
+        Node inside = new Node(1, 1);
+        inside.setCoor(tile.getBounds().getCenter());
+        Node outside = new Node(2, 1);
+        outside.setCoor(tiles.get(3).getBounds().getCenter());
+        Node other = new Node(3, 1);
+        other.setCoor(tiles.get(3).getBounds().getCenter());
+        Way way = new Way(10, 1);
+        way.setNodes(Arrays.asList(inside, outside));
+        Relation relation = new Relation(20, 1);
+        relation.addMember(new RelationMember("", way));
+        for (OsmPrimitive p : Arrays.asList(inside, outside, other, way, relation)) {
+            data.addPrimitive(p);
+        }
+        cache.store(tile, data);
+
+        File file = cache.getFreshFile(tile);
+        assertNotNull(file);
+        DataSet stored;
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            stored = OsmReader.parseDataSet(in, null);
+        }
+        assertEquals(4, stored.allPrimitives().size());
+        assertNull(stored.getPrimitiveById(3, OsmPrimitiveType.NODE));
+        assertEquals(1, stored.getDataSources().size());
+        assertTrue(file.setLastModified(System.currentTimeMillis() - 120_000));
+        assertNull(cache.getFreshFile(tile));
+    }
+
+    /**
+     * Test that downloads are assembled from the cached tiles, and that the missing tiles are downloaded at once.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testDownload() throws Exception {
+        OsmMapTileCache cache = new OsmMapTileCache(folder.getRoot(), 16, 60_000);
+        DataSet ds = download(cache, AREA);
+        assertNotNull(ds.getPrimitiveById(1, OsmPrimitiveType.NODE));
+        assertEquals(1, ds.allPrimitives().size());
+        wireMockRule.verify(1, getRequestedFor(urlPathEqualTo("/__files/api/0.6/map")));
+
+        ds = download(cache, new Bounds(53.5045, 13.2045, 53.5055, 13.2055));
+        assertNotNull(ds.getPrimitiveById(1, OsmPrimitiveType.NODE));
+        wireMockRule.verify(1, getRequestedFor(urlPathEqualTo("/__files/api/0.6/map")));
+
+        // a stale tile is downloaded alone, the node comes from the cached tile containing it
+        List<OsmMapTileCache.Tile> tiles = cache.getTiles(AREA);
+        OsmMapTileCache.Tile stale = tiles.stream().filter(t -> !t.getBounds().contains(new LatLon(53.505, 13.205)))
+                .findFirst().get();
+        assertTrue(cache.getFreshFile(stale).setLastModified(System.currentTimeMillis() - 120_000));
+        ds = download(cache, AREA);
+        assertEquals(1, ds.allPrimitives().size());
+        wireMockRule.verify(2, getRequestedFor(urlPathEqualTo("/__files/api/0.6/map")));
+        Bounds b = stale.getBounds();
+        wireMockRule.verify(getRequestedFor(urlPathEqualTo("/__files/api/0.6/map"))
+                .withQueryParam("bbox", equalTo(b.getMinLon() + "," + b.getMinLat() + "," + b.getMaxLon() + "," + b.getMaxLat())));
+
+        // disabled cache: the whole area is downloaded at once
+        download(new OsmMapTileCache(folder.getRoot(), 16, 0), AREA);
+        wireMockRule.verify(3, getRequestedFor(urlPathEqualTo("/__files/api/0.6/map")));
+    }
+}
@@ -0,0 +1,214 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of {@link OsmPbfReader} and {@link OsmPbfWriter}.
+ */
+public class OsmPbfReaderTest {
+
+    /**
+     * Setup test.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules();
+
+    private static DataSet roundTrip(DataSet ds) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OsmPbfWriter writer = new OsmPbfWriter(out)) {
+            writer.write(ds.snapshot());
+        }
+        return OsmPbfReader.parseDataSet(new ByteArrayInputStream(out.toByteArray()), null);
+    }
+
+    /**
+     * Checks that the written data is read identically.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        String osm = "<?xml version='1.0' encoding='UTF-8'?>\n" +
+                "<osm version='0.6' generator='test'>\n" +
+                "  <bounds minlat='-1' minlon='-2' maxlat='1' maxlon='2' origin='test'/>\n" +
+                "  <node id='1' version='3' changeset='10' uid='7' user='u' timestamp='2020-01-01T00:00:00Z' lat='0.1234567' lon='-1.5'>\n" +
+                "    <tag k='amenity' v='cafe'/>\n" +
+                "    <tag k='name' v='Café'/>\n" +
+                "  </node>\n" +
+                "  <node id='2' version='1' lat='0.5' lon='0.5'/>\n" +
+                "  <node id='-5' lat='0.6' lon='0.6' action='modify'/>\n" +
+                "  <way id='10' version='2'>\n" +
+                "    <nd ref='1'/><nd ref='2'/><nd ref='-5'/><nd ref='99'/>\n" +
+                "    <tag k='highway' v='service'/>\n" +
+                "  </way>\n" +
+                "  <relation id='20' version='1'>\n" +
+                "    <member type='way' ref='10' role='outer'/>\n" +
+                "    <member type='node' ref='2' role=''/>\n" +
+                "    <member type='relation' ref='21' role='sub'/>\n" +
+                "    <tag k='type' v='multipolygon'/>\n" +
+                "  </relation>\n" +
+                "</osm>";
+        DataSet read = roundTrip(OsmReader.parseDataSet(new ByteArrayInputStream(osm.getBytes(StandardCharsets.UTF_8)), null));
+
+        assertEquals(1, read.getDataSources().size());
+        assertEquals(-1, read.getDataSources().iterator().next().bounds.getMinLat(), 1e-9);
+        assertEquals("test", read.getDataSources().iterator().next().origin);
+
+        Node n1 = (Node) read.getPrimitiveById(1, OsmPrimitiveType.NODE);
+        assertEquals(3, n1.getVersion());
+        assertEquals(10, n1.getChangesetId());
+        assertEquals(7, n1.getUser().getId());
+        assertEquals("u", n1.getUser().getName());
+        assertEquals(1577836800, n1.getRawTimestamp());
+        assertEquals(new LatLon(0.1234567, -1.5), n1.getCoor());
+        assertEquals("Café", n1.get("name"));
+        assertEquals("cafe", n1.get("amenity"));
+
+        Way w = (Way) read.getPrimitiveById(10, OsmPrimitiveType.WAY);
+        assertEquals(4, w.getNodesCount());
+        assertEquals(Arrays.asList(1L, 2L, 99L), Arrays.asList(w.getNodeId(0), w.getNodeId(1), w.getNodeId(3)));
+        // new primitives get new ids, as when reading an OSM file
+        assertTrue(w.getNode(2).isNew());
+        assertEquals(new LatLon(0.6, 0.6), w.getNode(2).getCoor());
+        assertTrue(w.getNode(3).isIncomplete());
+        assertFalse(w.getNode(0).isIncomplete());
+
+        Relation r = (Relation) read.getPrimitiveById(20, OsmPrimitiveType.RELATION);
+        assertEquals(3, r.getMembersCount());
+        assertEquals("outer", r.getMember(0).getRole());
+        assertEquals(w, r.getMember(0).getMember());
+        assertEquals("", r.getMember(1).getRole());
+        assertTrue(r.getMember(2).getMember().isIncomplete());
+        // incomplete primitives are only written as references
+        assertEquals(3, read.getNodes().stream().filter(n -> !n.isIncomplete()).count());
+    }
+
+    /**
+     * Checks that deleted primitives are not written.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void testDeleted() throws Exception {
+        DataSet ds = new DataSet();
+        Node n = new Node(new LatLon(1, 2));
+        Node deleted = new Node(3, 1);
+        deleted.setCoor(new LatLon(3, 4));
+        ds.addPrimitive(n);
+        ds.addPrimitive(deleted);
+        deleted.setDeleted(true);
+        DataSet read = roundTrip(ds);
+        assertEquals(1, read.getNodes().size());
+        assertNull(read.getPrimitiveById(3, OsmPrimitiveType.NODE));
+    }
+
+    private static void writeBlob(DataOutputStream out, String type, ProtobufOutput data) throws IOException {
+        ProtobufOutput blob = new ProtobufOutput();
+        blob.writeMessage(1, data, false);
+        ProtobufOutput header = new ProtobufOutput();
+        header.writeString(1, type);
+        header.writeVarint(3, blob.size());
+        out.writeInt(header.size());
+        header.writeTo(out);
+        blob.writeTo(out);
+    }
+
+    /**
+     * Checks that files without metadata (e.g. written by {@code osmium --omit-metadata}) are read, with version 0.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void testWithoutMetadata() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            ProtobufOutput header = new ProtobufOutput();
+            header.writeString(4, "OsmSchema-V0.6");
+            header.writeString(4, "DenseNodes");
+            writeBlob(out, "OSMHeader", header);
+
+            ProtobufOutput strings = new ProtobufOutput();
+            for (String s : Arrays.asList("", "highway", "residential")) {
+                strings.writeString(1, s);
+            }
+            // dense nodes 1 and 2, delta coded, without dense info
+            ProtobufOutput ids = new ProtobufOutput();
+            ProtobufOutput lats = new ProtobufOutput();
+            ProtobufOutput lons = new ProtobufOutput();
+            ProtobufOutput keysVals = new ProtobufOutput();
+            for (long delta : new long[] {1, 1}) {
+                ids.writeRawSint64(delta);
+                lats.writeRawSint64(delta * 10_000_000);
+                lons.writeRawSint64(delta * 10_000_000);
+                keysVals.writeRawVarint(0);
+            }
+            ProtobufOutput dense = new ProtobufOutput();
+            dense.writeMessage(1, ids, true);
+            dense.writeMessage(8, lats, true);
+            dense.writeMessage(9, lons, true);
+            dense.writeMessage(10, keysVals, true);
+            ProtobufOutput nodes = new ProtobufOutput();
+            nodes.writeMessage(2, dense, false);
+            // way 10 without info
+            ProtobufOutput keys = new ProtobufOutput();
+            keys.writeRawVarint(1);
+            ProtobufOutput values = new ProtobufOutput();
+            values.writeRawVarint(2);
+            ProtobufOutput refs = new ProtobufOutput();
+            refs.writeRawSint64(1);
+            refs.writeRawSint64(1);
+            ProtobufOutput way = new ProtobufOutput();
+            way.writeVarint(1, 10);
+            way.writeMessage(2, keys, true);
+            way.writeMessage(3, values, true);
+            way.writeMessage(8, refs, true);
+            ProtobufOutput ways = new ProtobufOutput();
+            ways.writeMessage(3, way, false);
+
+            ProtobufOutput block = new ProtobufOutput();
+            block.writeMessage(1, strings, false);
+            block.writeMessage(2, nodes, false);
+            block.writeMessage(2, ways, false);
+            writeBlob(out, "OSMData", block);
+        }
+        DataSet ds = OsmPbfReader.parseDataSet(new ByteArrayInputStream(bytes.toByteArray()), null);
+        assertEquals(2, ds.getNodes().size());
+        Node n2 = (Node) ds.getPrimitiveById(2, OsmPrimitiveType.NODE);
+        assertEquals(0, n2.getVersion());
+        assertEquals(new LatLon(2, 2), n2.getCoor());
+        Way w = (Way) ds.getPrimitiveById(10, OsmPrimitiveType.WAY);
+        assertEquals(0, w.getVersion());
+        assertEquals("residential", w.get("highway"));
+        assertEquals(2, w.getNodesCount());
+    }
+
+    /**
+     * Checks that invalid data is rejected.
+     * @throws IllegalDataException always
+     */
+    @Test(expected = IllegalDataException.class)
+    public void testTruncated() throws IllegalDataException {
+        OsmPbfReader.parseDataSet(new ByteArrayInputStream(new byte[] {0, 0, 0, 10, 10, 9, 'O', 'S', 'M'}), null);
+    }
+}
@@ -22,6 +22,7 @@ import org.junit.Test;
 import org.openstreetmap.josm.TestUtils;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
@@ -413,4 +414,97 @@ public class OsmReaderTest {
             }
         }
     }
+
+    /**
+     * Test that the pipelined parsing builds the same primitives as the sequential one, over several batches.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void testPipeline() throws Exception {
+        StringBuilder sb = new StringBuilder("<osm version='0.6'>");
+        for (int i = 1; i <= 5000; i++) {
+            sb.append("<node id='").append(i).append("' version='1' lat='").append(i / 1000.0).append("' lon='1'><tag k='n' v='")
+              .append(i % 7).append("'/></node>");
+        }
+        for (int i = 1; i < 5000; i++) {
+            sb.append("<way id='").append(i).append("' version='1'><nd ref='").append(i).append("'/><nd ref='").append(i + 1)
+              .append("'/><tag k='highway' v='road'/></way>");
+        }
+        sb.append("<relation id='1' version='1'><member type='way' ref='1' role='from'/><member type='node' ref='9999' role=''/>")
+          .append("</relation></osm>");
+        DataSet sequential = testValidData(sb.toString(), new Options[0]);
+        DataSet pipelined;
+        OsmReader.PROPERTY_PIPELINE.put(true);
+        try {
+            pipelined = testValidData(sb.toString(), new Options[0]);
+        } finally {
+            OsmReader.PROPERTY_PIPELINE.put(false);
+        }
+        assertEquals(sequential.allPrimitives().size(), pipelined.allPrimitives().size());
+        for (Node n : sequential.getNodes()) {
+            Node p = pipelined.getNode(n.getUniqueId());
+            assertEquals(n.getCoor(), p.getCoor());
+            assertEquals(n.getKeys(), p.getKeys());
+            assertEquals(n.isIncomplete(), p.isIncomplete());
+        }
+        for (Way w : sequential.getWays()) {
+            Way p = pipelined.getWay(w.getUniqueId());
+            assertEquals(w.getNodeIds(), p.getNodeIds());
+            assertEquals(w.getKeys(), p.getKeys());
+        }
+        Relation r = pipelined.getRelation(1);
+        assertEquals(pipelined.getWay(1), r.getMember(0).getMember());
+        assertTrue(r.getMember(1).getMember().isIncomplete());
+    }
+
+    /**
+     * Test that the errors found by the pipelined parsing are located at the start of the faulty element.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void testPipelineInvalidData() throws Exception {
+        OsmReader.PROPERTY_PIPELINE.put(true);
+        try {
+            testInvalidData("<osm version='0.6'><way id='1' version='1'><nd ref='0'/></way></osm>",
+                    "Illegal value of attribute 'ref' of element <nd>. Got 0. (at line 1, column 82). 81 bytes have been read");
+        } finally {
+            OsmReader.PROPERTY_PIPELINE.put(false);
+        }
+    }
+
+    /**
+     * Test that the references of more ways and relations than the parallel resolution threshold are resolved,
+     * while the data set is being updated by the reader, with and without the original ids.
+     * @throws Exception if any error occurs
+     */
+    @Test(timeout = 60_000)
+    public void testManyWaysAndRelations() throws Exception {
+        StringBuilder sb = new StringBuilder("<osm version='0.6'>");
+        for (int i = 1; i <= 2001; i++) {
+            sb.append("<node id='").append(i).append("' version='1' lat='").append(i / 10000.0).append("' lon='1'/>");
+        }
+        for (int i = 1; i <= 2000; i++) {
+            sb.append("<way id='").append(i).append("' version='1'><nd ref='").append(i).append("'/><nd ref='").append(i + 1)
+              .append("'/></way>");
+        }
+        for (int i = 1; i <= 2000; i++) {
+            sb.append("<relation id='").append(i).append("' version='1'><member type='way' ref='").append(i)
+              .append("' role=''/><member type='relation' ref='").append(i % 2000 + 1).append("' role=''/></relation>");
+        }
+        sb.append("</osm>");
+        for (Options[] options : options()) {
+            DataSet ds = testValidData(sb.toString(), options);
+            assertEquals(2001, ds.getNodes().size());
+            assertEquals(2000, ds.getWays().size());
+            assertEquals(2000, ds.getRelations().size());
+            for (Way w : ds.getWays()) {
+                assertEquals(2, w.getNodesCount());
+                assertFalse(w.hasIncompleteNodes());
+            }
+            for (Relation r : ds.getRelations()) {
+                assertEquals(2, r.getMembersCount());
+                assertFalse(r.hasIncompleteMembers());
+            }
+        }
+    }
 }
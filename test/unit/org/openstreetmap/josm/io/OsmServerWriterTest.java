@@ -0,0 +1,152 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.put;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.TestUtils;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.Changeset;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.testutils.FakeDiffUploadTransformer;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of {@link OsmServerWriter} against a mocked API server.
+ */
+public class OsmServerWriterTest {
+
+    /**
+     * Setup tests
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules().preferences().timeout(60000);
+
+    private final FakeDiffUploadTransformer transformer = new FakeDiffUploadTransformer();
+
+    /**
+     * HTTP mock.
+     */
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(options().dynamicPort()
+            .usingFilesUnderDirectory(TestUtils.getTestDataRoot()).extensions(transformer));
+
+    /**
+     * Setup the mocked API.
+     */
+    @Before
+    public void setUp() {
+        Config.getPref().put("osm-server.url", wireMockRule.url("/__files/api"));
+        Config.getPref().put("osm-server.auth-method", "basic");
+        Config.getPref().put("osm-server.username", "josm");
+        Config.getPref().put("osm-server.password", "josm");
+        wireMockRule.stubFor(put(urlEqualTo("/__files/api/0.6/changeset/1")).willReturn(aResponse().withStatus(200)));
+        wireMockRule.stubFor(post(urlEqualTo("/__files/api/0.6/changeset/1/upload"))
+                .willReturn(aResponse().withTransformers(FakeDiffUploadTransformer.NAME)));
+    }
+
+    /**
+     * Creates new nodes, then new ways and relations referring to them, in this order.
+     * @param ds the data set
+     * @param count the number of ways
+     * @return the primitives to upload
+     */
+    static List<OsmPrimitive> createPrimitives(DataSet ds, int count) {
+        List<OsmPrimitive> nodes = new ArrayList<>();
+        List<OsmPrimitive> others = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Node n1 = new Node(new LatLon(53.5 + i * 1e-5, 13.2));
+            Node n2 = new Node(new LatLon(53.5 + i * 1e-5, 13.3));
+            Way w = new Way();
+            w.setNodes(Arrays.asList(n1, n2));
+            w.put("highway", "footway");
+            ds.addPrimitive(n1);
+            ds.addPrimitive(n2);
+            ds.addPrimitive(w);
+            nodes.add(n1);
+            nodes.add(n2);
+            others.add(w);
+            if (i % 10 == 0) {
+                Relation r = new Relation();
+                r.addMember(new RelationMember("", w));
+                r.addMember(new RelationMember("", n1));
+                ds.addPrimitive(r);
+                others.add(r);
+            }
+        }
+        nodes.addAll(others);
+        return nodes;
+    }
+
+    /**
+     * Uploads the primitives in chunks, and checks that all of them got their new id.
+     * @param primitives the primitives to upload
+     * @param chunkSize the chunk size
+     * @throws OsmTransferException if an error occurs
+     */
+    static void uploadInChunks(List<OsmPrimitive> primitives, int chunkSize) throws OsmTransferException {
+        Changeset cs = new Changeset(1);
+        cs.setOpen(true);
+        OsmServerWriter writer = new OsmServerWriter();
+        writer.uploadOsm(new UploadStrategySpecification().setStrategy(UploadStrategy.CHUNKED_DATASET_STRATEGY).setChunkSize(chunkSize),
+                primitives, cs, NullProgressMonitor.INSTANCE);
+        assertEquals(primitives.size(), writer.getProcessedPrimitives().size());
+        for (OsmPrimitive p : primitives) {
+            assertFalse(p.toString(), p.isNew());
+            assertEquals(1, p.getVersion());
+        }
+    }
+
+    /**
+     * Test that chunks referring to the new primitives of the previous chunk are uploaded with their new ids.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testUploadInChunks() throws Exception {
+        List<OsmPrimitive> primitives = createPrimitives(new DataSet(), 500);
+        uploadInChunks(primitives, 170);
+        assertEquals((primitives.size() + 169) / 170, transformer.getUploads());
+        assertEquals(primitives.size(), transformer.getPrimitives());
+    }
+
+    /**
+     * Test {@link OsmServerWriter#refersToNewPrimitives}.
+     */
+    @Test
+    public void testRefersToNewPrimitives() {
+        List<OsmPrimitive> primitives = createPrimitives(new DataSet(), 1);
+        List<OsmPrimitive> nodes = primitives.subList(0, 2);
+        List<OsmPrimitive> way = primitives.subList(2, 3);
+        List<OsmPrimitive> relation = primitives.subList(3, 4);
+        assertTrue(OsmServerWriter.refersToNewPrimitives(way, nodes));
+        assertTrue(OsmServerWriter.refersToNewPrimitives(relation, way));
+        assertFalse(OsmServerWriter.refersToNewPrimitives(nodes, way));
+        assertFalse(OsmServerWriter.refersToNewPrimitives(way, Collections.emptyList()));
+    }
+}
@@ -14,21 +14,39 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
+import org.junit.Rule;
 import org.junit.Test;
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.Changeset;
 import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DataSetSnapshot;
 import org.openstreetmap.josm.data.osm.DownloadPolicy;
+import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
 import org.openstreetmap.josm.data.osm.UploadPolicy;
 import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 /**
  * Unit tests of {@link OsmWriter} class.
  */
 public class OsmWriterTest {
 
+    /**
+     * Setup test.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules();
+
     /**
      * Unit test of {@link OsmWriter#byIdComparator}.
      */
@@ -95,6 +113,53 @@ public class OsmWriterTest {
                         .replaceAll("\n", ""));
     }
 
+    /**
+     * Unit test of {@link OsmWriter#write(org.openstreetmap.josm.data.osm.DataSetSnapshot)}.
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    public void testWriteSnapshot() throws IOException {
+        DataSet ds = new DataSet();
+        Node n1 = new Node(new LatLon(1, 2));
+        Node n2 = new Node(3, 1);
+        n2.setCoor(new LatLon(3, 4));
+        n2.put("name", "b & c");
+        Node deleted = new Node(LatLon.ZERO);
+        Way w = new Way();
+        w.setNodes(Arrays.asList(n1, n2));
+        w.put("highway", "residential");
+        Relation r = new Relation(5, 2);
+        r.addMember(new RelationMember("outer", w));
+        for (OsmPrimitive p : Arrays.asList(n1, n2, deleted, w, r)) {
+            ds.addPrimitive(p);
+        }
+        deleted.setDeleted(true);
+
+        String expected = write(ds, false);
+        assertEquals(expected, write(ds, true));
+        // the snapshot is not affected by later changes
+        DataSetSnapshot snapshot = ds.snapshot();
+        n1.setCoor(new LatLon(5, 6));
+        assertEquals(expected, write(snapshot));
+    }
+
+    private static String write(DataSet ds, boolean snapshot) throws IOException {
+        return snapshot ? write(ds.snapshot()) : write(w -> w.write(ds));
+    }
+
+    private static String write(DataSetSnapshot snapshot) throws IOException {
+        return write(w -> w.write(snapshot));
+    }
+
+    private static String write(Consumer<OsmWriter> action) throws IOException {
+        try (StringWriter stringWriter = new StringWriter();
+             OsmWriter osmWriter = OsmWriterFactory.createOsmWriter(new PrintWriter(stringWriter), true, OsmWriter.DEFAULT_API_VERSION)) {
+            action.accept(osmWriter);
+            osmWriter.flush();
+            return stringWriter.toString();
+        }
+    }
+
     /**
      * Unit test of {@link OsmWriter#visit(Changeset)}.
      * @throws IOException if an I/O error occurs
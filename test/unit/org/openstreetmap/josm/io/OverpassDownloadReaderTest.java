@@ -3,9 +3,12 @@ package org.openstreetmap.josm.io;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -17,8 +20,12 @@ import java.util.regex.Matcher;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.openstreetmap.josm.TestUtils;
 import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
 import org.openstreetmap.josm.io.OverpassDownloadReader.OverpassOutpoutFormat;
 import org.openstreetmap.josm.testutils.JOSMTestRules;
 import org.openstreetmap.josm.tools.SearchCompilerQueryWizard;
@@ -47,7 +54,17 @@ public class OverpassDownloadReaderTest {
     @Rule
     public WireMockRule wireMockRule = new WireMockRule(options().dynamicPort().usingFilesUnderDirectory(TestUtils.getTestDataRoot()));
 
+    /**
+     * Temporary cache directory.
+     */
+    @Rule
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private static final String NOMINATIM_URL_PATH = "/search?format=xml&q=";
+    private static final String CACHED_QUERY = "[out:xml][timeout:25];\n(nwr({{bbox}}););\n(._;>;);\nout meta;";
+    private static final String CACHED_NODE_QUERY =
+            "[out:xml][timeout:25];\n(\n  node[\"amenity\"=\"cafe\"]({{bbox}});\n);\n(._;>;);\nout meta;";
 
     /**
      * Setup test.
@@ -225,4 +242,83 @@ public class OverpassDownloadReaderTest {
                     OverpassDownloadReader.searchName(NameFinder.parseSearchResults(reader)).getOsmId().getUniqueId());
         }
     }
+
+    private DataSet downloadCached(OverpassResultCache cache, String query, Bounds bounds) throws OsmTransferException {
+        return new OverpassDownloadReader(bounds, wireMockRule.url("/"), query)
+                .setResultCache(cache).parseOsm(NullProgressMonitor.INSTANCE);
+    }
+
+    /**
+     * Unit test of the {@link OverpassResultCache}, with a stand-in Overpass server.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testResultCache() throws Exception {
+        wireMockRule.stubFor(post(urlEqualTo("/interpreter")).willReturn(aResponse().withStatus(200).withBody(
+                "<osm version='0.6'>" +
+                "<node id='1' version='1' lat='0.5' lon='0.5'/>" +
+                "<node id='2' version='1' lat='1.5' lon='1.5'/>" +
+                "<node id='3' version='1' lat='1.6' lon='1.6'/>" +
+                "<way id='4' version='1'><nd ref='1'/><nd ref='2'/></way>" +
+                "<way id='5' version='1'><nd ref='2'/><nd ref='3'/></way>" +
+                "</osm>")));
+        OverpassResultCache cache = new OverpassResultCache(folder.getRoot(), 60_000);
+
+        DataSet ds = downloadCached(cache, CACHED_QUERY, new Bounds(0, 0, 2, 2));
+        assertEquals(5, ds.allPrimitives().size());
+        wireMockRule.verify(1, postRequestedFor(urlEqualTo("/interpreter")));
+
+        // served from the cache, as received, for the same bounding box
+        ds = downloadCached(cache, CACHED_QUERY, new Bounds(0, 0, 2, 2));
+        assertEquals(5, ds.allPrimitives().size());
+        wireMockRule.verify(1, postRequestedFor(urlEqualTo("/interpreter")));
+
+        // the response may not be filtered to a smaller bounding box, e.g. for ways crossing it: it is not reused
+        downloadCached(cache, CACHED_QUERY, new Bounds(0, 0, 1, 1));
+        wireMockRule.verify(2, postRequestedFor(urlEqualTo("/interpreter")));
+
+        // larger bounding box, or disabled cache
+        downloadCached(cache, CACHED_QUERY, new Bounds(0, 0, 3, 3));
+        wireMockRule.verify(3, postRequestedFor(urlEqualTo("/interpreter")));
+        downloadCached(new OverpassResultCache(folder.getRoot(), 0), CACHED_QUERY, new Bounds(0, 0, 2, 2));
+        wireMockRule.verify(4, postRequestedFor(urlEqualTo("/interpreter")));
+    }
+
+    /**
+     * Unit test of the {@link OverpassResultCache} with a query on nodes, whose response is filtered to smaller bounding boxes.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testResultCacheFiltered() throws Exception {
+        wireMockRule.stubFor(post(urlEqualTo("/interpreter")).willReturn(aResponse().withStatus(200).withBody(
+                "<osm version='0.6'>" +
+                "<node id='1' version='1' lat='0.5' lon='0.5'><tag k='amenity' v='cafe'/></node>" +
+                "<node id='2' version='1' lat='1.5' lon='1.5'><tag k='amenity' v='cafe'/></node>" +
+                "</osm>")));
+        OverpassResultCache cache = new OverpassResultCache(folder.getRoot(), 60_000);
+
+        DataSet ds = downloadCached(cache, CACHED_NODE_QUERY, new Bounds(0, 0, 2, 2));
+        assertEquals(2, ds.allPrimitives().size());
+        wireMockRule.verify(1, postRequestedFor(urlEqualTo("/interpreter")));
+
+        ds = downloadCached(cache, CACHED_NODE_QUERY, new Bounds(0, 0, 1, 1));
+        wireMockRule.verify(1, postRequestedFor(urlEqualTo("/interpreter")));
+        assertNotNull(ds.getPrimitiveById(1, OsmPrimitiveType.NODE));
+        assertNull(ds.getPrimitiveById(2, OsmPrimitiveType.NODE));
+    }
+
+    /**
+     * Unit test of {@link OverpassResultCache#isFilterable}.
+     */
+    @Test
+    public void testIsFilterable() {
+        assertTrue(OverpassResultCache.isFilterable(CACHED_NODE_QUERY));
+        assertTrue(OverpassResultCache.isFilterable("node({{bbox}});out meta;"));
+        assertFalse(OverpassResultCache.isFilterable(CACHED_QUERY));
+        assertFalse(OverpassResultCache.isFilterable("[out:xml];\n(\n  node[\"a\"]({{bbox}});\n  way[\"a\"]({{bbox}});\n);\nout meta;"));
+        assertFalse(OverpassResultCache.isFilterable("relation[\"type\"=\"route\"]({{bbox}});out meta;"));
+        assertFalse(OverpassResultCache.isFilterable("node({{bbox}});out center;"));
+        assertFalse(OverpassResultCache.isFilterable("node({{bbox}});out geom;"));
+        assertFalse(OverpassResultCache.isFilterable("node({{bbox}});(._;<;);out meta;"));
+    }
 }
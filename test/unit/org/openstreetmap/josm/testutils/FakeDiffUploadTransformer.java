@@ -0,0 +1,110 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.testutils;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformer;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+
+/**
+ * A WireMock extension replying to diff uploads like the OSM API does.
+ * <p>
+ * New primitives get consecutive positive ids, and the version of modified primitives is incremented. As with the
+ * real API, a placeholder id may only be referenced by the upload creating it, otherwise the upload is rejected
+ * with a {@code 412 Precondition Failed} response.
+ * <p>
+ * Only the stubs with the {@link #NAME} transformer are replied by this extension.
+ */
+public class FakeDiffUploadTransformer extends ResponseDefinitionTransformer {
+
+    /** The name of the transformer, to use in {@code withTransformers} */
+    public static final String NAME = "fake-diff-upload";
+
+    private static final Pattern MODE = Pattern.compile("^\\s*<(create|modify|delete)>");
+    private static final Pattern PRIMITIVE = Pattern.compile("^\\s*<(node|way|relation) id='(-?\\d+)'(?:.* version='(\\d+)')?");
+    private static final Pattern NODE_REF = Pattern.compile("^\\s*<nd ref='(-?\\d+)'");
+    private static final Pattern MEMBER_REF = Pattern.compile("^\\s*<member type='(\\w+)' ref='(-?\\d+)'");
+
+    private final AtomicLong nextId = new AtomicLong(1_000_000);
+    private final AtomicInteger uploads = new AtomicInteger();
+    private final AtomicInteger primitives = new AtomicInteger();
+
+    @Override
+    public ResponseDefinition transform(Request request, ResponseDefinition responseDefinition, FileSource files, Parameters parameters) {
+        uploads.incrementAndGet();
+        Set<String> placeholders = new HashSet<>();
+        StringBuilder result = new StringBuilder("<diffResult version=\"0.6\" generator=\"FakeDiffUploadTransformer\">\n");
+        String mode = null;
+        for (String line : request.getBodyAsString().split("\n")) {
+            Matcher m = MODE.matcher(line);
+            if (m.find()) {
+                mode = m.group(1);
+                continue;
+            }
+            String ref = null;
+            if ((m = NODE_REF.matcher(line)).find()) {
+                ref = "node" + m.group(1);
+            } else if ((m = MEMBER_REF.matcher(line)).find()) {
+                ref = m.group(1) + m.group(2);
+            }
+            if (ref != null) {
+                if (ref.contains("-") && !placeholders.contains(ref)) {
+                    return new ResponseDefinitionBuilder().withStatus(412)
+                            .withHeader("Error", "Placeholder " + ref + " not found").build();
+                }
+                continue;
+            }
+            if (!(m = PRIMITIVE.matcher(line)).find()) {
+                continue;
+            }
+            primitives.incrementAndGet();
+            String type = m.group(1);
+            String id = m.group(2);
+            int version = m.group(3) == null ? 0 : Integer.parseInt(m.group(3));
+            result.append("  <").append(type).append(" old_id=\"").append(id).append('"');
+            if ("create".equals(mode)) {
+                placeholders.add(type + id);
+                result.append(" new_id=\"").append(nextId.getAndIncrement()).append("\" new_version=\"1\"");
+            } else if ("modify".equals(mode)) {
+                result.append(" new_id=\"").append(id).append("\" new_version=\"").append(version + 1).append('"');
+            }
+            result.append("/>\n");
+        }
+        return new ResponseDefinitionBuilder().withStatus(200).withBody(result.append("</diffResult>\n").toString()).build();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean applyGlobally() {
+        return false;
+    }
+
+    /**
+     * Returns the number of diff uploads replied.
+     * @return the number of diff uploads
+     */
+    public int getUploads() {
+        return uploads.get();
+    }
+
+    /**
+     * Returns the number of primitives uploaded.
+     * @return the number of primitives
+     */
+    public int getPrimitives() {
+        return primitives.get();
+    }
+}